@@ -0,0 +1,133 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.graph_builder.impl.osm.DefaultWayPropertySetSource;
+import org.opentripplanner.graph_builder.impl.osm.OpenStreetMapGraphBuilderImpl;
+import org.opentripplanner.openstreetmap.impl.FileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.util.TestUtils;
+
+/**
+ * The fixed graphs shared by all benchmarks. They are built from the test fixtures on first use
+ * and kept for the lifetime of the (forked) benchmark JVM, so graph building never shows up in
+ * the measurements.
+ *
+ * There is no pair of OSM and GTFS fixtures covering the same area, so street searches run on a
+ * street-only graph built from the Poznan OSM extract, and transit searches run on a transit-only
+ * graph built from the Caltrain feed.
+ */
+public class BenchmarkGraphs {
+
+    /** Seed for every random choice of origins, destinations and edges, to keep runs comparable. */
+    public static final long SEED = 42;
+
+    public static final String STREET_OSM =
+            "src/test/resources/org/opentripplanner/graph_builder/impl/osm/map.osm.gz";
+
+    public static final String ORIGIN_STOP = "Caltrain:Millbrae Caltrain";
+
+    public static final String DESTINATION_STOP = "Caltrain:Mountain View Caltrain";
+
+    /** A weekday on which the Caltrain fixture has service, at noon. */
+    public static final long TRANSIT_TIME =
+            TestUtils.dateInSeconds("America/Los_Angeles", 2009, 8, 7, 12, 0, 0);
+
+    private static Graph streetGraph;
+
+    private static Graph transitGraph;
+
+    public static synchronized Graph getStreetGraph() {
+        if (streetGraph == null) {
+            OpenStreetMapGraphBuilderImpl loader = new OpenStreetMapGraphBuilderImpl();
+            loader.setDefaultWayPropertySetSource(new DefaultWayPropertySetSource());
+            FileBasedOpenStreetMapProviderImpl provider = new FileBasedOpenStreetMapProviderImpl();
+            provider.setPath(new File(STREET_OSM));
+            loader.setProvider(provider);
+            Graph graph = new Graph();
+            loader.buildGraph(graph, new HashMap<Class<?>, Object>());
+            graph.index(new DefaultStreetVertexIndexFactory());
+            streetGraph = graph;
+        }
+        return streetGraph;
+    }
+
+    public static synchronized Graph getTransitGraph() {
+        if (transitGraph == null) {
+            Graph graph = ConstantsForTests.buildGraph(ConstantsForTests.CALTRAIN_GTFS);
+            graph.index(new DefaultStreetVertexIndexFactory());
+            transitGraph = graph;
+        }
+        return transitGraph;
+    }
+
+    /**
+     * Serialize the given graph to a temporary file, which is deleted when the JVM exits.
+     */
+    public static File saveToTempFile(Graph graph) throws IOException {
+        File file = File.createTempFile("otp-benchmark-", ".obj");
+        file.deleteOnExit();
+        graph.save(file);
+        return file;
+    }
+
+    /** @return the street vertices of the graph in a stable order, for reproducible sampling. */
+    public static List<StreetVertex> getStreetVertices(Graph graph) {
+        List<StreetVertex> vertices = new ArrayList<StreetVertex>();
+        for (Vertex v : graph.getVertices()) {
+            if (v instanceof StreetVertex) {
+                vertices.add((StreetVertex) v);
+            }
+        }
+        Collections.sort(vertices, new Comparator<StreetVertex>() {
+            @Override
+            public int compare(StreetVertex a, StreetVertex b) {
+                return a.getLabel().compareTo(b.getLabel());
+            }
+        });
+        return vertices;
+    }
+
+    /** @return the street edges of the graph in a stable order, for reproducible sampling. */
+    public static List<StreetEdge> getStreetEdges(Graph graph) {
+        List<StreetEdge> edges = new ArrayList<StreetEdge>(graph.getStreetEdges());
+        Collections.sort(edges, new Comparator<StreetEdge>() {
+            @Override
+            public int compare(StreetEdge a, StreetEdge b) {
+                int c = a.getFromVertex().getLabel().compareTo(b.getFromVertex().getLabel());
+                if (c != 0)
+                    return c;
+                c = a.getToVertex().getLabel().compareTo(b.getToVertex().getLabel());
+                if (c != 0)
+                    return c;
+                return Double.compare(a.getDistance(), b.getDistance());
+            }
+        });
+        return edges;
+    }
+
+}
@@ -0,0 +1,65 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Graph.LoadLevel;
+
+/**
+ * Graph.load of a serialized graph, including the indexing done at load time. Each fixture graph
+ * is serialized once per fork and then read back from the same file on every invocation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphLoadBenchmark {
+
+    @Param({ "streets", "transit" })
+    public String graph;
+
+    @Param({ "BASIC", "FULL" })
+    public String level;
+
+    private File file;
+
+    @Setup
+    public void setup() throws Exception {
+        Graph g = graph.equals("transit") ? BenchmarkGraphs.getTransitGraph()
+                : BenchmarkGraphs.getStreetGraph();
+        file = BenchmarkGraphs.saveToTempFile(g);
+    }
+
+    @Benchmark
+    public Graph load() throws Exception {
+        return Graph.load(file, LoadLevel.valueOf(level));
+    }
+
+}
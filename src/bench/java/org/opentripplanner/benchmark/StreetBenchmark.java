@@ -0,0 +1,109 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraversalRequirements;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.CandidateEdgeBundle;
+import org.opentripplanner.routing.services.StreetVertexIndexService;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+/**
+ * The two street operations on the critical path of every request: traversing a single
+ * StreetEdge, and finding the closest street edges to a coordinate when linking the origin and
+ * destination into the graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class StreetBenchmark {
+
+    private static final int N_SAMPLES = 1024;
+
+    /** Maximum distance in degrees between a sampled location and the vertex it is taken near. */
+    private static final double JITTER = 0.001;
+
+    @Param({ "WALK", "BICYCLE", "CAR" })
+    public String mode;
+
+    private StreetEdge[] edges = new StreetEdge[N_SAMPLES];
+
+    private State[] states = new State[N_SAMPLES];
+
+    private GenericLocation[] locations = new GenericLocation[N_SAMPLES];
+
+    private TraversalRequirements requirements;
+
+    private StreetVertexIndexService streetIndex;
+
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Graph graph = BenchmarkGraphs.getStreetGraph();
+        Random random = new Random(BenchmarkGraphs.SEED);
+        List<StreetVertex> vertices = BenchmarkGraphs.getStreetVertices(graph);
+        List<StreetEdge> streetEdges = BenchmarkGraphs.getStreetEdges(graph);
+
+        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.valueOf(mode)));
+        options.setRoutingContext(graph, vertices.get(0), vertices.get(vertices.size() - 1));
+        for (int i = 0; i < N_SAMPLES; i++) {
+            edges[i] = streetEdges.get(random.nextInt(streetEdges.size()));
+            states[i] = new State(edges[i].getFromVertex(), options);
+            StreetVertex v = vertices.get(random.nextInt(vertices.size()));
+            locations[i] = new GenericLocation(v.getLat() + (random.nextDouble() - 0.5) * JITTER,
+                    v.getLon() + (random.nextDouble() - 0.5) * JITTER);
+        }
+        requirements = new TraversalRequirements(options);
+        streetIndex = graph.streetIndex;
+    }
+
+    @Benchmark
+    public State traverse() {
+        int i = next;
+        next = (next + 1) % N_SAMPLES;
+        return edges[i].traverse(states[i]);
+    }
+
+    @Benchmark
+    public CandidateEdgeBundle getClosestEdges() {
+        int i = next;
+        next = (next + 1) % N_SAMPLES;
+        return streetIndex.getClosestEdges(locations[i], requirements);
+    }
+
+}
@@ -0,0 +1,95 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+/**
+ * Point-to-point GenericAStar searches on the street-only graph, cycling through a fixed set of
+ * randomly chosen origin and destination vertices. Each mode is measured with both the map-based
+ * and the index-based multi-state shortest path tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class StreetRoutingBenchmark {
+
+    private static final int N_PAIRS = 64;
+
+    @Param({ "WALK", "BICYCLE", "CAR" })
+    public String mode;
+
+    @Param({ "false", "true" })
+    public boolean indexedSpt;
+
+    private Graph graph;
+
+    private GenericAStar aStar;
+
+    private StreetVertex[] origins = new StreetVertex[N_PAIRS];
+
+    private StreetVertex[] destinations = new StreetVertex[N_PAIRS];
+
+    private int pair = 0;
+
+    @Setup
+    public void setup() {
+        graph = BenchmarkGraphs.getStreetGraph();
+        List<StreetVertex> vertices = BenchmarkGraphs.getStreetVertices(graph);
+        Random random = new Random(BenchmarkGraphs.SEED);
+        for (int i = 0; i < N_PAIRS; i++) {
+            origins[i] = vertices.get(random.nextInt(vertices.size()));
+            destinations[i] = vertices.get(random.nextInt(vertices.size()));
+        }
+        aStar = new GenericAStar();
+        aStar.setIndexedSpt(indexedSpt);
+    }
+
+    @Benchmark
+    public int route() {
+        int i = pair;
+        pair = (pair + 1) % N_PAIRS;
+        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.valueOf(mode)));
+        options.setRoutingContext(graph, origins[i], destinations[i]);
+        ShortestPathTree spt = aStar.getShortestPathTree(options);
+        int nVertices = spt.getVertexCount();
+        spt.release();
+        return nVertices;
+    }
+
+}
@@ -0,0 +1,117 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.gtfs.model.Stop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+/**
+ * Timetable.getNextTrip on the scheduled timetables of the Caltrain graph. Each invocation looks
+ * up the next (or previous) trip at one stop of one pattern, on every service day of the routing
+ * context as the board and alight edges do, cycling through all stops of all patterns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class TimetableBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean boarding;
+
+    private List<ServiceDay> serviceDays;
+
+    /** One initial state, timetable and stop index per pattern stop. */
+    private State[] states;
+
+    private Timetable[] timetables;
+
+    private int[] stopIndexes;
+
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Graph graph = BenchmarkGraphs.getTransitGraph();
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = BenchmarkGraphs.TRANSIT_TIME;
+        options.setArriveBy(!boarding);
+        options.setRoutingContext(graph, BenchmarkGraphs.ORIGIN_STOP, BenchmarkGraphs.DESTINATION_STOP);
+        serviceDays = options.rctx.serviceDays;
+
+        List<TripPattern> patterns = new ArrayList<TripPattern>(graph.index.patternForId.values());
+        Collections.sort(patterns, new Comparator<TripPattern>() {
+            @Override
+            public int compare(TripPattern a, TripPattern b) {
+                return a.code.compareTo(b.code);
+            }
+        });
+        List<State> stateList = new ArrayList<State>();
+        List<Timetable> timetableList = new ArrayList<Timetable>();
+        List<Integer> stopIndexList = new ArrayList<Integer>();
+        for (TripPattern pattern : patterns) {
+            List<Stop> stops = pattern.getStops();
+            for (int s = 0; s < stops.size(); s++) {
+                stateList.add(new State(graph.index.stopVertexForStop.get(stops.get(s)), options));
+                timetableList.add(pattern.scheduledTimetable);
+                stopIndexList.add(s);
+            }
+        }
+        int n = stateList.size();
+        states = stateList.toArray(new State[n]);
+        timetables = timetableList.toArray(new Timetable[n]);
+        stopIndexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            stopIndexes[i] = stopIndexList.get(i);
+        }
+    }
+
+    @Benchmark
+    public TripTimes getNextTrip() {
+        int i = next;
+        next = (next + 1) % states.length;
+        TripTimes best = null;
+        for (ServiceDay sd : serviceDays) {
+            TripTimes tt = timetables[i].getNextTrip(states[i], sd, stopIndexes[i], boarding);
+            if (tt != null)
+                best = tt;
+        }
+        return best;
+    }
+
+}
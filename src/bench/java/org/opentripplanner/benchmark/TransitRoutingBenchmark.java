@@ -0,0 +1,86 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+
+/**
+ * Walk+transit GenericAStar searches on the Caltrain graph between two fixed stations, in both
+ * the depart-after and the arrive-by direction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class TransitRoutingBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean arriveBy;
+
+    private Graph graph;
+
+    private GenericAStar aStar;
+
+    private long dateTime;
+
+    @Setup
+    public void setup() {
+        graph = BenchmarkGraphs.getTransitGraph();
+        aStar = new GenericAStar();
+        // Arrive-by searches start from the end of the forward trip, so both cover the same ride.
+        RoutingRequest options = newRequest(BenchmarkGraphs.TRANSIT_TIME, false);
+        ShortestPathTree spt = aStar.getShortestPathTree(options);
+        GraphPath path = spt.getPath(graph.getVertex(BenchmarkGraphs.DESTINATION_STOP), true);
+        if (path == null)
+            throw new IllegalStateException("Benchmark stations are not connected.");
+        dateTime = arriveBy ? path.getEndTime() : BenchmarkGraphs.TRANSIT_TIME;
+    }
+
+    @Benchmark
+    public int route() {
+        RoutingRequest options = newRequest(dateTime, arriveBy);
+        ShortestPathTree spt = aStar.getShortestPathTree(options);
+        int nVertices = spt.getVertexCount();
+        spt.release();
+        return nVertices;
+    }
+
+    private RoutingRequest newRequest(long time, boolean arriveBy) {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = time;
+        options.setArriveBy(arriveBy);
+        options.setRoutingContext(graph, BenchmarkGraphs.ORIGIN_STOP, BenchmarkGraphs.DESTINATION_STOP);
+        return options;
+    }
+
+}
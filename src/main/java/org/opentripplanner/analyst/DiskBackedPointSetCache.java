@@ -50,6 +50,8 @@ public class DiskBackedPointSetCache extends PointSetCache {
 	                PointSet pset = PointSet.fromCsv(pointSetData);
 	                if (pset == null) {
 	                    LOG.warn("Failure, skipping this pointset.");
+	                } else {
+	                    pset.setSourceFile(pointSetData);
 	                }
 	                
 	                return pset;
@@ -64,7 +66,9 @@ public class DiskBackedPointSetCache extends PointSetCache {
 	            PointSet pset = PointSet.fromGeoJson(pointSetData);
 	            if (pset == null) {
 	                LOG.warn("Failure, skipping this pointset.");
-	            }       	            
+	            } else {
+	                pset.setSourceFile(pointSetData);
+	            }
 	            return pset;
 	        }
 			return null;
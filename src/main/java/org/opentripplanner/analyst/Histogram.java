@@ -7,6 +7,7 @@ import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -37,36 +38,76 @@ public class Histogram implements Serializable {
      * @param weights the weight or magnitude of each destination reached. parallel to times.
      */
     public Histogram (int[] times, int[] weights) {
+        Partial partial = new Partial();
+        partial.add(times, weights, 0, times.length);
+        counts = partial.trimmedCounts();
+        sums = partial.trimmedSums();
+    }
 
-		// FIXME Hard coded array sizes.
-		int tmpCounts[] = new int[1000];
-    	int tmpSums[] = new int[1000];
-    	
-    	int uppperBound = 0;
-    	
-    	for(int i = 0; i < times.length; i++) {
-    		
-    		if(times[i] < 0 || times[i] == Integer.MAX_VALUE)
-    			continue;
-    	
-    		int minuteBin = (int) Math.floor(times[i] / 60.0);
-    		
-    		tmpCounts[minuteBin] += 1; 
-    		tmpSums[minuteBin] += weights[i];
-    				
-    		if(minuteBin > uppperBound)
-    			uppperBound = minuteBin;
-    	}
-    	
-    	counts = new int[uppperBound];
-    	sums = new int[uppperBound];
+    private Histogram (Partial partial) {
+        counts = partial.trimmedCounts();
+        sums = partial.trimmedSums();
+    }
+
+    /**
+     * Counts and weighted sums per one-minute bin over part of the destinations. Partials built over disjoint ranges
+     * of the same destinations can be merged, which allows building a histogram in parallel.
+     */
+    static class Partial {
 
-    	for(int i = 0; i < uppperBound; i++) {
-    		counts[i] = tmpCounts[i];
-    		sums[i] = tmpSums[i];
-    	}   	
+        private int[] counts = new int[128];
+        private int[] sums = new int[128];
+
+        /* Bins at and beyond the last one holding destinations are left out of the histogram. */
+        private int upperBound = 0;
+
+        /** Add the destinations in [from, to) of the parallel arrays times and weights. */
+        void add (int[] times, int[] weights, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int t = times[i];
+                if (t < 0 || t == Integer.MAX_VALUE)
+                    continue;
+                int minuteBin = t / 60;
+                if (minuteBin >= counts.length)
+                    grow(minuteBin + 1);
+                counts[minuteBin] += 1;
+                sums[minuteBin] += weights[i];
+                if (minuteBin > upperBound)
+                    upperBound = minuteBin;
+            }
+        }
+
+        /** Add the bins of another partial histogram to this one. */
+        void merge (Partial other) {
+            if (other.counts.length > counts.length)
+                grow(other.counts.length);
+            for (int i = 0; i <= other.upperBound; i++) {
+                counts[i] += other.counts[i];
+                sums[i] += other.sums[i];
+            }
+            if (other.upperBound > upperBound)
+                upperBound = other.upperBound;
+        }
+
+        Histogram toHistogram () {
+            return new Histogram(this);
+        }
+
+        private void grow (int minLength) {
+            int length = Math.max(minLength, counts.length * 2);
+            counts = Arrays.copyOf(counts, length);
+            sums = Arrays.copyOf(sums, length);
+        }
+
+        private int[] trimmedCounts () {
+            return Arrays.copyOf(counts, upperBound);
+        }
+
+        private int[] trimmedSums () {
+            return Arrays.copyOf(sums, upperBound);
+        }
     }
-    
+
     public void writeJson(JsonGenerator jgen) throws JsonGenerationException, IOException {
     	
     	jgen.writeArrayFieldStart("sums"); {
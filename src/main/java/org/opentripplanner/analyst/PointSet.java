@@ -90,6 +90,12 @@ public class PointSet implements Serializable{
      * duplication of pointset when used across multiple graphs
      */
     private Map<String, SampleSet> samples = new ConcurrentHashMap<String, SampleSet>();
+
+    /*
+     * The file this PointSet was loaded from, if any. Links to the street network of each graph are persisted
+     * next to it so they survive server restarts.
+     */
+    protected transient File sourceFile;
     
     /**
      * Map from string IDs to indices. This is a view into PointSet.ids.
@@ -431,27 +437,64 @@ public class PointSet implements Serializable{
         if(this.graphService == null) 
             return null;
 
-        if (this.samples.containsKey(routerId))
-            return this.samples.get(routerId);
         Graph g = this.graphService.getRouter(routerId).graph;
 
         return getSampleSet(g);
     }
 
     /** 
-     * gets a sample set for a graph object -- does not require graph service to be set 
+     * gets a sample set for a graph object -- does not require graph service to be set.
+     * Linking is reused for as long as the same graph is loaded, and is read from or written to a linkage file next
+     * to the source file of this PointSet when there is one.
      * @param g a graph objects
      * @return sampleset for graph
      */
-
-    public SampleSet getSampleSet(Graph g) {	
+    public synchronized SampleSet getSampleSet(Graph g) {
         if (g == null)
             return null;
-        SampleSet sampleSet = new SampleSet(this, g.getSampleFactory());
-        this.samples.put(g.routerId, sampleSet);
+        String key = String.valueOf(g.routerId);
+        SampleSet sampleSet = this.samples.get(key);
+        if (sampleSet != null && sampleSet.isFor(g))
+            return sampleSet;
+        File linkageFile = getLinkageFile(g);
+        if (linkageFile != null && linkageFile.lastModified() >= sourceFile.lastModified()) {
+            sampleSet = SampleSet.read(linkageFile, this, g);
+        } else {
+            sampleSet = null;
+        }
+        if (sampleSet == null) {
+            sampleSet = new SampleSet(this, g);
+            if (linkageFile != null) {
+                // write under a temporary name so that a half-written file is never read back
+                File tempFile = new File(linkageFile.getPath() + ".tmp");
+                try {
+                    sampleSet.write(tempFile, g);
+                    linkageFile.delete();
+                    if (!tempFile.renameTo(linkageFile)) {
+                        throw new IOException("cannot rename " + tempFile);
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Could not save linkage of PointSet to {}: {}", linkageFile, e.toString());
+                    tempFile.delete();
+                }
+            }
+        }
+        this.samples.put(key, sampleSet);
         return sampleSet;
     }
 
+    /** Record the file this PointSet was loaded from, enabling persisted linkages next to it. */
+    public void setSourceFile(File sourceFile) {
+        this.sourceFile = sourceFile;
+    }
+
+    /** @return the file holding the linkage of this PointSet to the given graph, or null if it has no source file. */
+    protected File getLinkageFile(Graph g) {
+        if (sourceFile == null)
+            return null;
+        return new File(sourceFile.getParentFile(), sourceFile.getName() + "." + g.routerId + ".linkage");
+    }
+
     public int featureCount() {
         return ids.length;
     }
@@ -3,9 +3,13 @@ package org.opentripplanner.analyst;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.opentripplanner.analyst.pointset.PropertyMetadata;
 import org.slf4j.Logger;
@@ -21,6 +25,15 @@ public class ResultSet implements Serializable{
 
     private static final Logger LOG = LoggerFactory.getLogger(ResultSet.class);
 
+    /* PointSets with at least this many points are evaluated in parallel. */
+    static final int PARALLEL_THRESHOLD = 50000;
+
+    /* Number of points evaluated by a single task when evaluating in parallel. */
+    private static final int EVAL_CHUNK = 4096;
+
+    /* Shared by all parallel evaluations. Its worker threads are daemons and do not prevent shutdown. */
+    private static final ForkJoinPool EVAL_POOL = new ForkJoinPool();
+
     public String id;
     public Map<String,Histogram> histograms = new HashMap<String,Histogram>();
 
@@ -32,6 +45,13 @@ public class ResultSet implements Serializable{
         id = samples.pset.id + "_" + surface.id;
 
         PointSet targets = samples.pset;
+        if (targets.capacity >= PARALLEL_THRESHOLD) {
+            if (!samples.isFor(surface)) {
+                throw new IllegalArgumentException("TimeSurface " + surface.id + " was not made on the graph of this SampleSet.");
+            }
+            buildHistogramsInParallel(samples, surface);
+            return;
+        }
         // Evaluate the surface at all points in the pointset
         int[] times = samples.eval(surface);
         buildHistograms(times, targets);
@@ -46,6 +66,69 @@ public class ResultSet implements Serializable{
         }
     }
 
+    /**
+     * Evaluate the surface and bin the times for every category on a fork-join pool. Each task works on a range of
+     * points, producing partial histograms that are merged on the way back up. The result is the same as
+     * buildHistograms(samples.eval(surface), samples.pset).
+     */
+    protected void buildHistogramsInParallel(SampleSet samples, TimeSurface surface) {
+        PointSet targets = samples.pset;
+        List<Entry<String, int[]>> cats = new ArrayList<Entry<String, int[]>>(targets.properties.entrySet());
+        int[][] mags = new int[cats.size()][];
+        for (int c = 0; c < mags.length; c++) {
+            mags[c] = cats.get(c).getValue();
+        }
+        int[] times = new int[targets.capacity];
+        Histogram.Partial[] partials = EVAL_POOL.invoke(
+                new EvalTask(samples, surface, times, mags, 0, targets.capacity));
+        for (int c = 0; c < mags.length; c++) {
+            this.histograms.put(cats.get(c).getKey(), partials[c].toHistogram());
+        }
+    }
+
+    /** Evaluates a range of points and bins their times for each category, splitting the range until it is small. */
+    private static class EvalTask extends RecursiveTask<Histogram.Partial[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SampleSet samples;
+        private final TimeSurface surface;
+        private final int[] times;
+        private final int[][] mags;
+        private final int from, to;
+
+        EvalTask(SampleSet samples, TimeSurface surface, int[] times, int[][] mags, int from, int to) {
+            this.samples = samples;
+            this.surface = surface;
+            this.times = times;
+            this.mags = mags;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Histogram.Partial[] compute() {
+            if (to - from <= EVAL_CHUNK) {
+                samples.eval(surface, times, from, to);
+                Histogram.Partial[] partials = new Histogram.Partial[mags.length];
+                for (int c = 0; c < mags.length; c++) {
+                    partials[c] = new Histogram.Partial();
+                    partials[c].add(times, mags[c], from, to);
+                }
+                return partials;
+            }
+            int mid = (from + to) >>> 1;
+            EvalTask right = new EvalTask(samples, surface, times, mags, mid, to);
+            right.fork();
+            Histogram.Partial[] partials = new EvalTask(samples, surface, times, mags, from, mid).compute();
+            Histogram.Partial[] rightPartials = right.join();
+            for (int c = 0; c < mags.length; c++) {
+                partials[c].merge(rightPartials[c]);
+            }
+            return partials;
+        }
+    }
+
     /**
      * Sum the values of specified categories at all time limits within the
      * bounds of the search. If no categories are specified, sum all categories. 
@@ -1,65 +1,277 @@
 package org.opentripplanner.analyst;
 
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import org.opentripplanner.analyst.core.Sample;
 import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * We never use samples in isolation, so let's store them as a column store.
+ *
+ * Linking a large PointSet to the street network is expensive, so the links can be written to a file with
+ * {@link #write(File, Graph)} and read back with {@link #read(File, PointSet, Graph)}. Vertex indexes are assigned
+ * anew each time a graph is loaded, so the file refers to vertices by label and is only valid for the graph build it
+ * was made from.
  */
 public class SampleSet {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SampleSet.class);
+
+    /* Changing the layout of linkage files requires changing this number. */
+    private static final int FORMAT_VERSION = 1;
+
+    /* Number of points linked by a single task when linking in parallel. */
+    private static final int LINK_CHUNK = 1024;
+
     public final PointSet pset;
 
-    /* Vertices at the two ends of a road, one per sample. */
-    Vertex[] v0s;
-    Vertex[] v1s;
+    /* The graph whose vertex indexes this SampleSet refers to. Weak so that it does not outlive a graph reload. */
+    private final WeakReference<Graph> graph;
+
+    /* Indexes of the vertices at the two ends of a road, one per sample, or -1 where there is no such vertex. */
+    int[] i0s;
+    int[] i1s;
 
     /* Distances to the vertices at the two ends of a road, one per sample. */
     float[] d0s;
     float[] d1s;
 
-    public SampleSet (PointSet pset, SampleFactory sfac) {
+    /** Link every point in the PointSet to the street network of the given graph, in parallel for large PointSets. */
+    public SampleSet (PointSet pset, Graph graph) {
+        SampleFactory sfac = graph.getSampleFactory();
         this.pset = pset;
-        v0s = new Vertex[pset.capacity];
-        v1s = new Vertex[pset.capacity];
+        this.graph = new WeakReference<Graph>(graph);
+        i0s = new int[pset.capacity];
+        i1s = new int[pset.capacity];
         d0s = new float[pset.capacity];
         d1s = new float[pset.capacity];
-        for (int i = 0; i < pset.capacity; i++) {
+        long t0 = System.currentTimeMillis();
+        if (pset.capacity <= LINK_CHUNK) {
+            link(sfac, 0, pset.capacity);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                pool.invoke(new LinkTask(sfac, 0, pset.capacity));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        LOG.info("Linked {} points to the street network in {} msec.", pset.capacity,
+                System.currentTimeMillis() - t0);
+    }
+
+    /* Used when reading a linkage file. */
+    private SampleSet (PointSet pset, Graph graph, int[] i0s, int[] i1s, float[] d0s, float[] d1s) {
+        this.pset = pset;
+        this.graph = new WeakReference<Graph>(graph);
+        this.i0s = i0s;
+        this.i1s = i1s;
+        this.d0s = d0s;
+        this.d1s = d1s;
+    }
+
+    private void link (SampleFactory sfac, int from, int to) {
+        for (int i = from; i < to; i++) {
             Sample sample = sfac.getSample(pset.lons[i], pset.lats[i]);
+            i0s[i] = -1;
+            i1s[i] = -1;
             if (sample == null) {
                 d0s[i] = Float.NaN;
                 d1s[i] = Float.NaN;
                 continue;
             }
-            v0s[i] = sample.v0;
-            v1s[i] = sample.v1;
+            if (sample.v0 != null) i0s[i] = sample.v0.getIndex();
+            if (sample.v1 != null) i1s[i] = sample.v1.getIndex();
             d0s[i] = sample.t0; // TODO time not distance in samples
             d1s[i] = sample.t1; // TODO time not distance in samples
         }
     }
 
+    /** Links a range of points, splitting it in halves until it is small enough. Each task writes its own slots. */
+    private class LinkTask extends RecursiveAction {
+
+        private final SampleFactory sfac;
+        private final int from, to;
+
+        LinkTask (SampleFactory sfac, int from, int to) {
+            this.sfac = sfac;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute () {
+            if (to - from <= LINK_CHUNK) {
+                link(sfac, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LinkTask(sfac, from, mid), new LinkTask(sfac, mid, to));
+            }
+        }
+    }
+
+    /** @return true if this SampleSet was linked to the given graph instance, and its vertex indexes are valid for it. */
+    public boolean isFor (Graph graph) {
+        return graph != null && this.graph.get() == graph;
+    }
+
+    /**
+     * Write the links of this SampleSet to a compressed file of primitive arrays, identifying vertices by label.
+     * The file records the router ID and build time of the graph, and the size of the PointSet.
+     */
+    public void write (File file, Graph graph) throws IOException {
+        // Vertex indexes are only meaningful within this JVM, look up the labels of the vertices we link to.
+        TIntObjectMap<Vertex> vertexForIndex = new TIntObjectHashMap<Vertex>();
+        for (Vertex v : graph.getVertices()) {
+            vertexForIndex.put(v.getIndex(), v);
+        }
+        List<String> labels = new ArrayList<String>();
+        TObjectIntMap<String> labelIndex = new TObjectIntHashMap<String>(1000, 0.5f, -1);
+        int[] l0s = labelIndexes(i0s, vertexForIndex, labels, labelIndex);
+        int[] l1s = labelIndexes(i1s, vertexForIndex, labels, labelIndex);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))));
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(String.valueOf(graph.routerId));
+            out.writeLong(graph.buildTime.getTime());
+            out.writeInt(pset.capacity);
+            out.writeInt(labels.size());
+            for (String label : labels) {
+                out.writeUTF(label);
+            }
+            for (int i = 0; i < pset.capacity; i++) {
+                out.writeInt(l0s[i]);
+                out.writeInt(l1s[i]);
+                out.writeFloat(d0s[i]);
+                out.writeFloat(d1s[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int[] labelIndexes (int[] vertexIndexes, TIntObjectMap<Vertex> vertexForIndex,
+            List<String> labels, TObjectIntMap<String> labelIndex) {
+        int[] ret = new int[vertexIndexes.length];
+        for (int i = 0; i < vertexIndexes.length; i++) {
+            ret[i] = -1;
+            Vertex v = vertexForIndex.get(vertexIndexes[i]);
+            if (v == null) continue;
+            int l = labelIndex.get(v.getLabel());
+            if (l == -1) {
+                l = labels.size();
+                labels.add(v.getLabel());
+                labelIndex.put(v.getLabel(), l);
+            }
+            ret[i] = l;
+        }
+        return ret;
+    }
+
+    /**
+     * Read the links of a PointSet written by {@link #write(File, Graph)}.
+     * @return the SampleSet, or null if the file was made for another graph build or PointSet, or cannot be read.
+     */
+    public static SampleSet read (File file, PointSet pset, Graph graph) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            try {
+                if (in.readInt() != FORMAT_VERSION
+                        || !in.readUTF().equals(String.valueOf(graph.routerId))
+                        || in.readLong() != graph.buildTime.getTime()
+                        || in.readInt() != pset.capacity) {
+                    LOG.info("Linkage {} was made for another graph or PointSet, ignoring it.", file);
+                    return null;
+                }
+                int[] indexForLabel = new int[in.readInt()];
+                for (int l = 0; l < indexForLabel.length; l++) {
+                    Vertex v = graph.getVertex(in.readUTF());
+                    if (v == null) {
+                        LOG.info("Linkage {} refers to vertices missing from the graph, ignoring it.", file);
+                        return null;
+                    }
+                    indexForLabel[l] = v.getIndex();
+                }
+                int[] i0s = new int[pset.capacity];
+                int[] i1s = new int[pset.capacity];
+                float[] d0s = new float[pset.capacity];
+                float[] d1s = new float[pset.capacity];
+                for (int i = 0; i < pset.capacity; i++) {
+                    int l0 = in.readInt();
+                    int l1 = in.readInt();
+                    i0s[i] = l0 < 0 ? -1 : indexForLabel[l0];
+                    i1s[i] = l1 < 0 ? -1 : indexForLabel[l1];
+                    d0s[i] = in.readFloat();
+                    d1s[i] = in.readFloat();
+                }
+                return new SampleSet(pset, graph, i0s, i1s, d0s, d1s);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read linkage {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /** @return true if the surface was made on the graph this SampleSet was linked to, so their vertex indexes agree. */
+    public boolean isFor (TimeSurface surf) {
+        return surf.isFor(graph.get());
+    }
+
     public int[] eval (TimeSurface surf) {
-        final float WALK_SPEED = 1.3f;
+        if (!isFor(surf)) {
+            throw new IllegalArgumentException("TimeSurface " + surf.id + " was not made on the graph of this SampleSet.");
+        }
         int[] ret = new int[pset.capacity];
-        for (int i = 0; i < pset.capacity; i++) {
+        eval(surf, ret, 0, pset.capacity);
+        return ret;
+    }
+
+    /** Evaluate the surface at the points in [from, to), storing the times in the corresponding slots of ret. */
+    void eval (TimeSurface surf, int[] ret, int from, int to) {
+        final float WALK_SPEED = 1.3f;
+        for (int i = from; i < to; i++) {
             int m0 = Integer.MAX_VALUE;
             int m1 = Integer.MAX_VALUE;
-            if (v0s[i] != null) {
-                int s0 = surf.getTime(v0s[i]);
+            if (i0s[i] >= 0) {
+                int s0 = surf.getTime(i0s[i]);
                 if (s0 != TimeSurface.UNREACHABLE) {
                     m0 = (int) (s0 + d0s[i] / WALK_SPEED);
                 }
             }
-            if (v1s[i] != null) {
-                int s1 = surf.getTime(v1s[i]);
+            if (i1s[i] >= 0) {
+                int s1 = surf.getTime(i1s[i]);
                 if (s1 != TimeSurface.UNREACHABLE) {
                     m1 = (int) (s1 + d1s[i] / WALK_SPEED);
                 }
             }
             ret[i] = (m0 < m1) ? m0 : m1;
         }
-        return ret;
     }
 
 }
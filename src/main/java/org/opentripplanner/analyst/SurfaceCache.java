@@ -2,40 +2,234 @@ package org.opentripplanner.analyst;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
-import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.List;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Caches travel time surfaces, which are derived from shortest path trees.
- * TODO add LRU behavior upon get
+ *
+ * The cache is bounded by the estimated size of the surfaces it holds rather than by their number, since a surface
+ * is proportionate to the graph size. When a spill directory is given, surfaces evicted to stay within that budget
+ * are written there as compressed files and transparently reloaded when their ID is requested again, so surface IDs
+ * handed out to clients remain valid for the whole life of the server. Sample grids are not spilled: a reloaded
+ * surface rebuilds a coarser one from its vertex times when isochrones are requested.
+ *
+ * The weight of a surface is estimated once, when it is added: a sample grid built afterwards, for instance by
+ * makeSampleGridWithoutSPT when isochrones are requested for a reloaded surface, is not counted toward the byte limit.
+ *
  * TODO extend to store any type by moving the IDs into the cache
- * TODO use a disk-backed MapDB to avoid eating memory
  */
 public class SurfaceCache {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SurfaceCache.class);
+
     public static final int NONE = -1;
+
+    private static final String SPILL_SUFFIX = ".surface.gz";
+
+    /** How long get() waits for the spill of a surface evicted by another thread to begin. */
+    private static final long SPILL_WAIT_MILLIS = 1000;
+
     public final Cache<Integer, TimeSurface> cache;
 
-    public SurfaceCache (int capacity) {
+    /** Where evicted surfaces are written, or null to drop them. */
+    private final File spillDirectory;
+
+    /** Surfaces that have been evicted but whose spill file is still being written. */
+    private final Map<Integer, TimeSurface> spilling = Maps.newConcurrentMap();
+
+    /**
+     * IDs of the surfaces that are either in the cache or spilled, so that get() can tell an unknown ID from a surface
+     * that Guava has already evicted but whose removal listener has not started spilling it yet.
+     */
+    private final Set<Integer> stored = Sets.newSetFromMap(Maps.<Integer, Boolean>newConcurrentMap());
+
+    /** The graphs of the spilled surfaces, which are not serialized, to restore on reload. */
+    private final Map<Integer, WeakReference<Graph>> spilledGraphs = Maps.newConcurrentMap();
+
+    public SurfaceCache (long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    public SurfaceCache (long maxBytes, File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        if (spillDirectory != null) {
+            prepareSpillDirectory();
+        }
         this.cache = CacheBuilder.newBuilder()
-        	       		.maximumSize(100)
-        	       		.build();
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<Integer, TimeSurface>() {
+                    // Called once on insertion, the weight does not follow later changes to the surface.
+                    @Override
+                    public int weigh(Integer id, TimeSurface surface) {
+                        return (int) Math.min(surface.estimateBytes(), Integer.MAX_VALUE);
+                    }
+                })
+                .removalListener(new RemovalListener<Integer, TimeSurface>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Integer, TimeSurface> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            spill(notification.getKey(), notification.getValue());
+                        } else if (notification.getCause() != RemovalCause.REPLACED) {
+                            stored.remove(notification.getKey());
+                        }
+                    }
+                })
+                .build();
     }
 
     public int add(TimeSurface surface) {
-    	this.cache.put(surface.id, surface);
-    	return surface.id;
+        if (spillDirectory != null) {
+            stored.add(surface.id);
+        }
+        this.cache.put(surface.id, surface);
+        return surface.id;
     }
 
+    /**
+     * @return the surface with the given ID, reloading it from the spill directory if it was evicted. When another
+     * thread has just evicted the surface, waits for up to a second for it to be handed over to the spilling code.
+     */
     public TimeSurface get(int id) {
-        return this.cache.getIfPresent(id);
+        TimeSurface surface = this.cache.getIfPresent(id);
+        if (surface != null || spillDirectory == null) {
+            return surface;
+        }
+        long deadline = System.currentTimeMillis() + SPILL_WAIT_MILLIS;
+        synchronized (this) {
+            while (true) {
+                surface = this.cache.getIfPresent(id);
+                if (surface == null) {
+                    surface = spilling.get(id);
+                }
+                if (surface != null) {
+                    return surface;
+                }
+                File file = spillFile(id);
+                if (file.exists()) {
+                    return reload(id, file);
+                }
+                if (!stored.contains(id)) {
+                    return null;
+                }
+                // Evicted by Guava, but the removal listener has not been called yet
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOG.warn("TimeSurface {} was evicted but never spilled.", id);
+                    return null;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+    }
+
+    /** Called with the lock held, so that concurrent requests for the same ID do not read a file being deleted. */
+    private TimeSurface reload(int id, File file) {
+        TimeSurface surface = read(file);
+        file.delete();
+        if (surface == null) {
+            stored.remove(id);
+            spilledGraphs.remove(id);
+            return null;
+        }
+        WeakReference<Graph> graph = spilledGraphs.remove(id);
+        if (graph != null) {
+            surface.setGraphReference(graph);
+        }
+        this.cache.put(id, surface);
+        return surface;
+    }
+
+    private void spill(Integer id, TimeSurface surface) {
+        if (spillDirectory == null || surface == null) {
+            return;
+        }
+        spilling.put(id, surface);
+        if (surface.getGraphReference() != null) {
+            spilledGraphs.put(id, surface.getGraphReference());
+        }
+        // Wakes up get() calls waiting for this surface. Taking the lock also keeps the file from being created
+        // while get() is looking for the surface, so that it never reads a partially written file.
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(spillFile(id)))));
+            try {
+                out.writeObject(surface);
+            } finally {
+                out.close();
+            }
+            LOG.debug("Spilled TimeSurface {} to disk.", id);
+        } catch (IOException e) {
+            LOG.warn("Could not spill TimeSurface {} to disk, dropping it: {}", id, e.toString());
+            spillFile(id).delete();
+            spilledGraphs.remove(id);
+            stored.remove(id);
+        } finally {
+            spilling.remove(id);
+        }
+    }
+
+    private TimeSurface read(File file) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            try {
+                return (TimeSurface) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            LOG.warn("Could not reload TimeSurface from {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /** Surface IDs restart at each server start, so surfaces spilled by an earlier run must not be picked up. */
+    private void prepareSpillDirectory() {
+        if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            throw new IllegalStateException("Cannot create TimeSurface spill directory " + spillDirectory);
+        }
+        File[] stale = spillDirectory.listFiles();
+        if (stale == null) return;
+        for (File file : stale) {
+            if (file.getName().endsWith(SPILL_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    private File spillFile(int id) {
+        return new File(spillDirectory, id + SPILL_SUFFIX);
     }
 
 }
@@ -1,9 +1,6 @@
 package org.opentripplanner.analyst;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
@@ -14,6 +11,7 @@ import org.opentripplanner.profile.ProfileRequest;
 import org.opentripplanner.profile.ProfileRouter;
 import org.opentripplanner.profile.TimeRange;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.StreetVertex;
@@ -23,6 +21,8 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.font.NumericShaper;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Map;
 
 import static org.apache.commons.math3.util.FastMath.max;
@@ -33,6 +33,11 @@ import static org.apache.commons.math3.util.FastMath.toRadians;
  * A travel time surface. Timing information from the leaves of a ShortestPathTree.
  * In Portland, one timesurface takes roughly one MB of memory and is also about that size as JSON.
  * However it is proportionate to the graph size not the time cutoff.
+ *
+ * Times are kept in a plain array indexed by Vertex.getIndex() rather than in a hash map keyed on vertices, which
+ * costs four bytes per vertex in the graph instead of tens of megabytes of hash table per surface. Vertex indexes are
+ * assigned anew each time a graph is loaded, so the times are only meaningful for the graph instance the surface was
+ * made on: check isFor() before reading them against a graph.
  */
 public class TimeSurface implements Serializable {
 
@@ -42,12 +47,21 @@ public class TimeSurface implements Serializable {
 
     public final String routerId;
     public final int id;
-    public final TObjectIntMap<Vertex> times = new TObjectIntHashMap<Vertex>(500000, 0.5f, UNREACHABLE);
+    /**
+     * Travel times in seconds indexed by vertex index minus indexOffset, UNREACHABLE for vertices this surface does
+     * not reach. Vertex indexes are handed out by a global counter, so the offset keeps the array to the index range
+     * of the graph of the surface rather than that of every vertex created since the server started.
+     */
+    private int[] times;
+    private int indexOffset;
+    /* The graph whose vertex indexes the times refer to. Weak so that a surface does not outlive a graph reload. */
+    private transient WeakReference<Graph> graph;
+    private int nReached = 0;
     public final double lat, lon;
     public int cutoffMinutes;
     public long dateTime;
     public Map<String, String> params; // The query params sent by the user, for reference only
-    public SparseMatrixZSampleGrid<WTWD> sampleGrid; // another representation on a regular grid with a triangulation
+    public transient SparseMatrixZSampleGrid<WTWD> sampleGrid; // another representation on a regular grid with a triangulation
     public String description;
 
     public TimeSurface(ShortestPathTree spt) {
@@ -61,14 +75,15 @@ public class TimeSurface implements Serializable {
         // Here we use the key "default" unlike the graphservice which substitutes in the default ID.
         // We don't want to keep that default in sync across two modules.
         this.routerId = routerId;
+        bindGraph(spt.getOptions().rctx.graph);
         long t0 = System.currentTimeMillis();
         for (State state : spt.getAllStates()) {
             Vertex vertex = state.getVertex();
             if (vertex instanceof StreetVertex || vertex instanceof TransitStop) {
-                int existing = times.get(vertex);
+                int existing = getTime(vertex);
                 int t = (int) state.getActiveTime();
                 if (existing == UNREACHABLE || existing > t) {
-                    times.put(vertex, t);
+                    setTime(vertex, t);
                 }
             }
         }
@@ -92,6 +107,7 @@ public class TimeSurface implements Serializable {
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
+        bindGraph(profileRouter.graph);
     }
 
     /** Make a max or min timesurface from propagated times in a ProfileRouter. */
@@ -105,6 +121,7 @@ public class TimeSurface implements Serializable {
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
+        bindGraph(profileRouter.graph);
     }
 
     public static TimeSurface.RangeSet makeSurfaces (AnalystProfileRouterPrototype profileRouter) {
@@ -114,9 +131,9 @@ public class TimeSurface implements Serializable {
         for (Map.Entry<Vertex, TimeRange> vtr : profileRouter.propagatedTimes.entrySet()) {
             Vertex v = vtr.getKey();
             TimeRange tr = vtr.getValue();
-            minSurface.times.put(v, tr.min);
-            avgSurface.times.put(v, tr.avg);
-            maxSurface.times.put(v, tr.max);
+            minSurface.setTime(v, tr.min);
+            avgSurface.setTime(v, tr.avg);
+            maxSurface.setTime(v, tr.max);
         }
         RangeSet result = new RangeSet();
         minSurface.description = "Travel times assuming best luck (never waiting for a transfer).";
@@ -135,8 +152,87 @@ public class TimeSurface implements Serializable {
         public TimeSurface max;
     }
 
+    /** @return true if this surface was made on the given graph instance, and its vertex indexes are valid for it. */
+    public boolean isFor(Graph graph) {
+        return graph != null && this.graph != null && this.graph.get() == graph;
+    }
+
+    /* Accessors for the SurfaceCache, which keeps the graph of a surface across spilling it to disk. */
+
+    WeakReference<Graph> getGraphReference() {
+        return graph;
+    }
+
+    void setGraphReference(WeakReference<Graph> graph) {
+        this.graph = graph;
+    }
+
+    private void bindGraph(Graph graph) {
+        this.graph = new WeakReference<Graph>(graph);
+        int minIndex = Integer.MAX_VALUE, maxIndex = -1;
+        for (Vertex v : graph.getVertices()) {
+            minIndex = Math.min(minIndex, v.getIndex());
+            maxIndex = Math.max(maxIndex, v.getIndex());
+        }
+        indexOffset = maxIndex < 0 ? 0 : minIndex;
+        times = newTimes(maxIndex + 1 - indexOffset);
+    }
+
     public int getTime(Vertex v) {
-        return times.get(v);
+        return getTime(v.getIndex());
+    }
+
+    /** @return the travel time to the vertex with the given index, or UNREACHABLE. */
+    public int getTime(int vertexIndex) {
+        int i = vertexIndex - indexOffset;
+        if (i < 0 || i >= times.length) {
+            return UNREACHABLE;
+        }
+        return times[i];
+    }
+
+    public void setTime(Vertex v, int time) {
+        int index = v.getIndex() - indexOffset;
+        if (index < 0) {
+            throw new IllegalArgumentException("Vertex " + v + " does not belong to the graph of this TimeSurface.");
+        }
+        if (index >= times.length) {
+            // Temporary vertices created during routing get indexes beyond those of the graph.
+            int oldLength = times.length;
+            times = Arrays.copyOf(times, Math.max(index + 1, oldLength + oldLength / 2));
+            Arrays.fill(times, oldLength, times.length, UNREACHABLE);
+        }
+        if (times[index] == UNREACHABLE) {
+            if (time == UNREACHABLE) return;
+            nReached++;
+        } else if (time == UNREACHABLE) {
+            nReached--;
+        }
+        times[index] = time;
+    }
+
+    /**
+     * @return a rough estimate of the heap used by this surface in bytes, including its sample grid if one has been
+     * built at the time of the call. Used to weigh surfaces in the SurfaceCache.
+     */
+    public long estimateBytes() {
+        long bytes = 128 + 4L * times.length;
+        if (sampleGrid != null) {
+            // Sample point, its WTWD value and its slot in the sparse matrix
+            bytes += 128L * sampleGrid.size();
+        }
+        return bytes;
+    }
+
+    /** @return the number of vertices reached by this surface. */
+    public int countReached() {
+        return nReached;
+    }
+
+    private static int[] newTimes(int nVertices) {
+        int[] times = new int[Math.max(nVertices, 16)];
+        Arrays.fill(times, UNREACHABLE);
+        return times;
     }
 
     private synchronized int makeUniqueId() {
@@ -166,8 +262,13 @@ public class TimeSurface implements Serializable {
     /**
      * Create the SampleGrid from whatever values are already in the TimeSurface, rather than looking at the SPT.
      * This is not really ideal since it includes only intersection nodes, and no points along the road segments.
+     * The graph supplies the coordinates of the vertices, which the surface itself does not keep, and must be the one
+     * the surface was made on.
      */
-    public void makeSampleGridWithoutSPT () {
+    public void makeSampleGridWithoutSPT (Graph graph) {
+        if (!isFor(graph)) {
+            throw new IllegalArgumentException("TimeSurface " + id + " was not made on this graph.");
+        }
         long t0 = System.currentTimeMillis();
         final double gridSizeMeters = 300; // Todo: set dynamically and make sure this matches isoline builder params
         // Off-road max distance MUST be APPROX EQUALS to the grid precision
@@ -179,15 +280,14 @@ public class TimeSurface implements Serializable {
         final double cosLat = FastMath.cos(toRadians(coordinateOrigin.y));
         double dY = Math.toDegrees(gridSizeMeters / SphericalDistanceLibrary.RADIUS_OF_EARTH_IN_M);
         double dX = dY / cosLat;
-        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, this.times.size(), dX, dY, coordinateOrigin);
+        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, nReached, dX, dY, coordinateOrigin);
         AccumulativeGridSampler.AccumulativeMetric<WTWD> metric = new SampleGridRenderer.WTWDAccumulativeMetric(cosLat, D0, V0, gridSizeMeters);
         AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(sampleGrid, metric);
         // Iterate over every vertex in this timesurface, adding it to the ZSampleGrid
         // TODO propagation along street geometries could happen at this stage, rather than when the SPT is still available.
-        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            Vertex vertex = iter.key();
-            int time = iter.value();
+        for (Vertex vertex : graph.getVertices()) {
+            int time = getTime(vertex);
+            if (time == UNREACHABLE) continue;
             WTWD z = new WTWD();
             z.w = 1.0;
             z.d = 0.0;
@@ -13,7 +13,9 @@
 
 package org.opentripplanner.analyst.batch;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.TimeZone;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
@@ -35,6 +37,14 @@ import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Runs one search from each origin in a population and saves or aggregates the results over the destinations.
+ *
+ * Only the tasks are bounded: at most maxTasksInFlight origins are queued or searched at a time, so the shortest
+ * path trees and results awaiting collection do not grow with the number of origins. The origin population itself is
+ * still loaded in full by Population.setup(), as are the destinations, so memory use remains proportional to the
+ * size of both populations.
+ */
 public class BatchProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BatchProcessor.class);
@@ -67,6 +77,19 @@ public class BatchProcessor {
     private TimeZone timeZone = TimeZone.getDefault();
     private String outputPath = "/tmp/analystOutput";
     private float checkpointIntervalMinutes = -1;
+
+    /** File recording each origin as it is completed, so an interrupted run can be resumed. Null for none. */
+    private String progressPath = null;
+
+    /** Skip the origins recorded in the progress file by an earlier run, restoring their aggregate values. */
+    private boolean resume = false;
+
+    /**
+     * The maximum number of origins queued or being searched at any time. Tasks are created from the (fully loaded)
+     * population only as earlier ones complete, which bounds the memory held by pending tasks. Defaults to 4 per
+     * thread.
+     */
+    private int maxTasksInFlight = -1;
     
     enum Mode { BASIC, AGGREGATE, ACCUMULATE };
     private Mode mode;
@@ -80,6 +103,18 @@ public class BatchProcessor {
         this.searchCutoffSeconds = minutes * 60;
     }
 
+    public void setProgressPath(String progressPath) {
+        this.progressPath = progressPath;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public void setMaxTasksInFlight(int maxTasksInFlight) {
+        this.maxTasksInFlight = maxTasksInFlight;
+    }
+
     /*
     public static void main(String[] args) throws IOException {
         org.springframework.core.io.Resource appContextResource;
@@ -111,7 +146,7 @@ public class BatchProcessor {
         LOG.info("Number of threads: {}", nThreads);
         ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
         // ECS enqueues results in the order they complete (unlike invokeAll, which blocks)
-        CompletionService<Void> ecs = new ExecutorCompletionService<Void>(threadPool);
+        CompletionService<BatchAnalystTask> ecs = new ExecutorCompletionService<BatchAnalystTask>(threadPool);
         if (aggregator != null) {
             /* aggregate over destinations and save one value per origin */
             mode = Mode.AGGREGATE;
@@ -129,25 +164,84 @@ public class BatchProcessor {
                 System.exit(-1);
             }
         }
+        ProgressLog.Completed completedBefore = new ProgressLog.Completed();
+        ProgressLog progressLog = null;
+        if (progressPath != null) {
+            progressLog = new ProgressLog(new File(progressPath));
+            try {
+                if (resume) {
+                    if (mode == Mode.ACCUMULATE) {
+                        // accumulated values are only saved as a whole, they cannot be matched to completed origins
+                        LOG.error("cannot resume a run using an accumulator.");
+                        System.exit(-1);
+                    }
+                    completedBefore = progressLog.readCompleted();
+                    LOG.info("resuming, {} origins were completed by an earlier run.", completedBefore.size());
+                }
+                progressLog.open(resume);
+            } catch (IOException e) {
+                LOG.error("cannot use progress file {}: {}", progressPath, e);
+                System.exit(-1);
+            }
+        } else if (resume) {
+            LOG.error("resuming a run requires a progress file.");
+            System.exit(-1);
+        }
+        int maxInFlight = maxTasksInFlight > 0 ? maxTasksInFlight : nThreads * 4;
         startTime = System.currentTimeMillis();
+        // count the origins left by the filters without creating any tasks
         int nTasks = 0;
-        for (Individual oi : origins) { // using filtered iterator
-            ecs.submit(new BatchAnalystTask(nTasks, oi), null);
-            ++nTasks;
+        int nOrigins = 0;
+        for (Individual oi : origins) {
+            int i = nOrigins++;
+            if (!completedBefore.contains(i)) {
+                ++nTasks;
+            } else if (!completedBefore.labelMatches(i, oi.label)) {
+                // the origins or their filters have changed since the progress file was written
+                LOG.error("cannot resume: origin {} is '{}' but the progress file has '{}'.", i, oi.label,
+                        completedBefore.getLabel(i));
+                System.exit(-1);
+            }
         }
-        LOG.info("created {} tasks.", nTasks);
+        LOG.info("{} origins to process, at most {} at a time.", nTasks, maxInFlight);
+        Iterator<Individual> originIterator = origins.iterator(); // using filtered iterator
+        int originIndex = 0;
+        int nInFlight = 0;
         int nCompleted = 0;
-        try { // pull Futures off the queue as tasks are finished
-            while (nCompleted < nTasks) {
+        try { // keep the pipeline full, pulling Futures off the queue as tasks are finished
+            while (true) {
+                while (nInFlight < maxInFlight && originIterator.hasNext()) {
+                    Individual oi = originIterator.next();
+                    int i = originIndex++;
+                    if (completedBefore.contains(i)) {
+                        if (mode == Mode.AGGREGATE)
+                            aggregateResultSet.results[i] = completedBefore.getValue(i);
+                        continue;
+                    }
+                    BatchAnalystTask task = new BatchAnalystTask(i, oi);
+                    ecs.submit(task, task);
+                    ++nInFlight;
+                }
+                if (nInFlight == 0)
+                    break;
                 try {
-                    ecs.take().get(); // call get to check for exceptions in the completed task
+                    // call get to check for exceptions in the completed task
+                    BatchAnalystTask task = ecs.take().get();
                     LOG.debug("got result {}/{}", nCompleted, nTasks);
+                    if (progressLog != null) {
+                        double value = (mode == Mode.AGGREGATE) ? aggregateResultSet.results[task.i] : Double.NaN;
+                        progressLog.completed(task.i, value, task.oi.label);
+                    }
                     if (checkpoint()) {
                         LOG.info("checkpoint written.");
                     }
                 } catch (ExecutionException e) {
                     LOG.error("exception in thread task: {}", e);
+                } catch (IOException e) {
+                    LOG.error("cannot write to progress file: {}", e);
+                    System.exit(-1);
                 }
+                --nInFlight;
                 ++nCompleted;
                 projectRunTime(nCompleted, nTasks);
             }
@@ -155,6 +249,13 @@ public class BatchProcessor {
             LOG.warn("run was interrupted after {} tasks", nCompleted);
         }
         threadPool.shutdown();
+        if (progressLog != null) {
+            try {
+                progressLog.close();
+            } catch (IOException e) {
+                LOG.warn("cannot close progress file: {}", e);
+            }
+        }
         if (accumulator != null)
             accumulator.finish();
         if (aggregateResultSet != null)
@@ -252,6 +353,8 @@ public class BatchProcessor {
                 ShortestPathTree spt = sptService.getShortestPathTree(req);
                 // ResultSet should be a local to avoid memory leak
                 ResultSet results = ResultSet.forTravelTimes(destinations, spt);
+                if (spt != null)
+                    spt.release();
                 req.cleanup();
                 switch (mode) {
                 case ACCUMULATE:
@@ -0,0 +1,183 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.analyst.batch;
+
+import gnu.trove.map.TIntDoubleMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+/**
+ * An append-only file recording each origin of a batch run as soon as it is completed, one line per origin in the
+ * form "index,value,label". The index is the position of the origin in the filtered origin population, and the value
+ * is its aggregate result, or NaN when results are not aggregated per origin.
+ *
+ * Every line is flushed as it is written, so after a crash the file lists all the origins that were completed, save
+ * perhaps a truncated last line, which is ignored when reading the file back and removed before appending to it. The label lets a resumed run check that
+ * each index still designates the same origin.
+ */
+public class ProgressLog implements Closeable {
+
+    private final File file;
+    private Writer writer;
+
+    public ProgressLog(File file) {
+        this.file = file;
+    }
+
+    /** The origins recorded in a progress file, keyed on origin index. */
+    public static class Completed {
+
+        private final TIntDoubleMap values = new TIntDoubleHashMap();
+
+        private final TIntObjectMap<String> labels = new TIntObjectHashMap<String>();
+
+        public boolean contains(int index) {
+            return values.containsKey(index);
+        }
+
+        public double getValue(int index) {
+            return values.get(index);
+        }
+
+        /** @return the label recorded for the origin, an empty string if it had none. */
+        public String getLabel(int index) {
+            return labels.get(index);
+        }
+
+        /** @return whether the origin was recorded with the given label, as it would be written to the file. */
+        public boolean labelMatches(int index, String label) {
+            return escape(label).equals(labels.get(index));
+        }
+
+        public int size() {
+            return values.size();
+        }
+
+        public boolean isEmpty() {
+            return values.isEmpty();
+        }
+    }
+
+    /**
+     * @return the value and label recorded for each completed origin. Empty if the file does not exist.
+     */
+    public Completed readCompleted() throws IOException {
+        Completed completed = new Completed();
+        if (!file.exists())
+            return completed;
+        // a last line without a line break was cut short by a crash, even if all its fields are present
+        boolean terminated = file.length() > 0 && endsWithNewline();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                String next = reader.readLine();
+                if (next != null || terminated)
+                    parse(line, completed);
+                line = next;
+            }
+        } finally {
+            reader.close();
+        }
+        return completed;
+    }
+
+    private static void parse(String line, Completed completed) {
+        String[] fields = line.split(",", 3);
+        if (fields.length < 3)
+            return;
+        try {
+            int index = Integer.parseInt(fields[0]);
+            completed.values.put(index, Double.parseDouble(fields[1]));
+            completed.labels.put(index, fields[2]);
+        } catch (NumberFormatException e) {
+            // not a record
+        }
+    }
+
+    /**
+     * Open the file for writing.
+     * @param append keep the origins recorded by an earlier run, rather than starting a new file.
+     */
+    public void open(boolean append) throws IOException {
+        if (append && file.length() > 0 && !endsWithNewline()) {
+            // Drop a line truncated by a crash rather than terminating it, or it would be read back as a record
+            // with a cut-off label if this run stops before recording that origin again.
+            dropIncompleteLine();
+        }
+        writer = new BufferedWriter(new FileWriter(file, append));
+    }
+
+    /** Record that the origin with the given index is complete. Not thread-safe, call from a single thread. */
+    public void completed(int index, double value, String label) throws IOException {
+        writer.write(Integer.toString(index));
+        writer.write(',');
+        writer.write(Double.toString(value));
+        writer.write(',');
+        writer.write(escape(label));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /** Labels are the last field of a line, so they may hold commas but not line breaks. */
+    private static String escape(String label) {
+        return label == null ? "" : label.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private void dropIncompleteLine() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            while (length > 0) {
+                raf.seek(length - 1);
+                if (raf.read() == '\n')
+                    break;
+                length--;
+            }
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+
+}
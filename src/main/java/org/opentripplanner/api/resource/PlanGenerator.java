@@ -945,7 +945,7 @@ public class PlanGenerator {
                     if (edge instanceof StreetEdge) {
                         // the next edges will be PlainStreetEdges, we hope
                         double angleDiff = getAbsoluteAngleDiff(thisAngle, lastAngle);
-                        for (Edge alternative : backState.getVertex().getOutgoingStreetEdges()) {
+                        for (Edge alternative : getOutgoingStreetEdges(backState, backState.getVertex())) {
                             if (alternative.getName().equals(streetName)) {
                                 // alternatives that have the same name
                                 // are usually caused by street splits
@@ -964,9 +964,9 @@ public class PlanGenerator {
                         // FIXME: this code might be wrong with the removal of the edge-based graph
                         State twoStatesBack = backState.getBackState();
                         Vertex backVertex = twoStatesBack.getVertex();
-                        for (Edge alternative : backVertex.getOutgoingStreetEdges()) {
-                            List<Edge> alternatives = alternative.getToVertex()
-                                    .getOutgoingStreetEdges();
+                        for (Edge alternative : getOutgoingStreetEdges(backState, backVertex)) {
+                            List<Edge> alternatives = getOutgoingStreetEdges(backState,
+                                    alternative.getToVertex());
                             if (alternatives.size() == 0) {
                                 continue; // this is not an alternative
                             }
@@ -1091,6 +1091,20 @@ public class PlanGenerator {
         return edge instanceof StreetEdge && (((StreetEdge)edge).getStreetClass() & StreetEdge.CLASS_LINK) == StreetEdge.CLASS_LINK;
     }
 
+    /**
+     * The street edges leaving v in the request that produced the given state, including the
+     * temporary edges of that request, which are not on the graph's own vertices.
+     */
+    private static List<Edge> getOutgoingStreetEdges(State state, Vertex v) {
+        RoutingContext rctx = state.getContext();
+        List<Edge> result = new ArrayList<Edge>();
+        for (Edge out : rctx == null ? v.getOutgoing() : rctx.getOutgoing(v)) {
+            if (out instanceof StreetEdge)
+                result.add(out);
+        }
+        return result;
+    }
+
     private static double getAbsoluteAngleDiff(double thisAngle, double lastAngle) {
         double angleDiff = thisAngle - lastAngle;
         if (angleDiff < 0) {
@@ -69,9 +69,13 @@ public class Planner extends RoutingResource {
         try {
             // fill in request from query parameters via shared superclass method
             request = super.buildRequest();
-            Router router = otpServer.getRouter(request.routerId);
-            TripPlan plan = router.planGenerator.generate(request);
-            response.setPlan(plan);
+            Router router = otpServer.acquireRouter(request.routerId);
+            try {
+                TripPlan plan = router.planGenerator.generate(request);
+                response.setPlan(plan);
+            } finally {
+                router.requestFinished();
+            }
         } catch (Exception e) {
             PlannerError error = new PlannerError(e);
             if(!PlannerError.isPlanningError(e.getClass()))
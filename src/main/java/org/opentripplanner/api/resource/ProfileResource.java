@@ -38,12 +38,13 @@ import org.slf4j.LoggerFactory;
 public class ProfileResource {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProfileResource.class);
-    private Graph graph;
+    private OTPServer otpServer;
+    private String routerId;
     private SurfaceCache surfaceCache;
 
     public ProfileResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
-        Router router = otpServer.getRouter(routerId);
-        graph = router.graph;
+        this.otpServer = otpServer;
+        this.routerId = routerId;
         surfaceCache = otpServer.surfaceCache;
     }
 
@@ -115,6 +116,15 @@ public class ProfileResource {
         req.minCarTime   = minCarTime;
         req.suboptimalMinutes = suboptimalMinutes;
 
+        Router router = otpServer.acquireRouter(routerId);
+        try {
+            return route(router.graph, req);
+        } finally {
+            router.requestFinished();
+        }
+    }
+
+    private Response route (Graph graph, ProfileRequest req) {
         if (req.analyst) {
             if (surfaceCache == null) {
                 LOG.error ("You must run OTP with the --analyst option to enable spatial analysis features.");
@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -96,6 +97,9 @@ import com.google.common.io.Files;
  * DELETE http://localhost/otp-rest-servlet/ws/routers
  * will de-register all currently registered routerIds.
  * 
+ * GET http://localhost/otp-rest-servlet/ws/routers/london/metrics
+ * will return the time spent in each phase of loading and indexing the 'london' graph.
+ * 
  * The GET methods are not secured, but all other methods are secured under ROLE_ROUTERS.
  * See documentation for individual methods for additional parameters.
  */
@@ -142,6 +146,23 @@ public class Routers {
         return routerInfo;
     }
     
+    /**
+     * Returns the time in milliseconds spent in each phase of loading and indexing the graph for
+     * a specific routerId, for diagnosing slow router startup.
+     * @returns status code 200 if the routerId is registered, otherwise a 404.
+     */
+    @GET @Path("{routerId}/metrics")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Map<String, Long> getLoadMetrics(@PathParam("routerId") String routerId) {
+        try {
+            return otpServer.getRouter(routerId).graph.getLoadMetrics().getPhaseMillis();
+        } catch (GraphNotFoundException e) {
+            throw new WebApplicationException(Response.status(Status.NOT_FOUND)
+                    .entity("Graph id '" + routerId + "' not registered.\n").type("text/plain")
+                    .build());
+        }
+    }
+
     private RouterInfo getRouterInfo(String routerId) {
         try {
             Router router = otpServer.getRouter(routerId);
@@ -28,6 +28,7 @@ import org.opentripplanner.common.geometry.DirectionUtils;
 import org.opentripplanner.common.geometry.DistanceLibrary;
 import org.opentripplanner.common.geometry.ReversibleLineStringWrapper;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
@@ -241,6 +242,8 @@ public class SIsochrone extends RoutingResource {
         ShortestPathTree sptA = router.sptServiceFactory.instantiate().getShortestPathTree(
                 sptRequestA);
         StreetLocation origin = (StreetLocation) sptRequestA.rctx.fromVertex;
+        // destroying the context leaves its temporary edges readable, so keep it to expand vertices
+        RoutingContext rctx = sptRequestA.rctx;
         sptRequestA.cleanup(); // remove inserted points
 
         // create a LineString for display
@@ -292,7 +295,7 @@ public class SIsochrone extends RoutingResource {
                     // -- get all Edges needed later for the edge representation
                     // and to calculate an edge-based walkshed
                     // Note, it can happen that we get a null geometry here, e.g. for hop-edges!
-                    Collection<Edge> vertexEdgesIn = state.getVertex().getIncoming();
+                    Collection<Edge> vertexEdgesIn = rctx.getIncoming(state.getVertex());
                     for (Iterator<Edge> iterator = vertexEdgesIn.iterator(); iterator.hasNext();) {
                         Edge edge = (Edge) iterator.next();
                         Geometry edgeGeom = edge.getGeometry();
@@ -304,7 +307,7 @@ public class SIsochrone extends RoutingResource {
                             }
                         }
                     }
-                    Collection<Edge> vertexEdgesOut = state.getVertex().getOutgoing();
+                    Collection<Edge> vertexEdgesOut = rctx.getOutgoing(state.getVertex());
                     for (Iterator<Edge> iterator = vertexEdgesOut.iterator(); iterator.hasNext();) {
                         Edge edge = (Edge) iterator.next();
                         Geometry edgeGeom = edge.getGeometry();
@@ -87,6 +87,9 @@ public class SurfaceResource extends RoutingResource {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimeSurface.class);
 
+    /** Vertex indexes change when a graph is reloaded, which invalidates the surfaces made on the previous graph. */
+    private static final String STALE_SURFACE = "TimeSurface was made on a graph which has since been reloaded.";
+
     @Context
     UriInfo uriInfo;
 
@@ -100,13 +103,17 @@ public class SurfaceResource extends RoutingResource {
             RoutingRequest req = buildRequest(0); // batch must be true
            
             // routerId is optional -- select default graph if not set
-            Router router = otpServer.getRouter(routerId);
-            req.setRoutingContext(router.graph);
-        	
-            EarliestArrivalSPTService sptService = new EarliestArrivalSPTService();
-            sptService.maxDuration = (60 * cutoffMinutes);
-            ShortestPathTree spt = sptService.getShortestPathTree(req);
-            req.cleanup();
+            Router router = otpServer.acquireRouter(routerId);
+            ShortestPathTree spt;
+            try {
+                req.setRoutingContext(router.graph);
+                EarliestArrivalSPTService sptService = new EarliestArrivalSPTService();
+                sptService.maxDuration = (60 * cutoffMinutes);
+                spt = sptService.getShortestPathTree(req);
+                req.cleanup();
+            } finally {
+                router.requestFinished();
+            }
             if (spt != null) {
                 TimeSurface surface = new TimeSurface(spt);
                 surface.params = Maps.newHashMap();
@@ -155,6 +162,7 @@ public class SurfaceResource extends RoutingResource {
         if (pset == null) return badRequest("Missing or invalid target PointSet ID.");
 
         Router router = otpServer.getRouter(surf.routerId);
+        if (!surf.isFor(router.graph)) return badRequest(STALE_SURFACE);
         // TODO cache this sampleset
         SampleSet samples = pset.getSampleSet(router.graph);
         final ResultSet indicator = new ResultSet(samples, surf);
@@ -177,6 +185,7 @@ public class SurfaceResource extends RoutingResource {
         final TimeSurface surf = otpServer.surfaceCache.get(surfaceId);
         if (surf == null) return badRequest("Invalid TimeSurface ID.");
         if (spacing < 1) spacing = 5;
+        if (!surf.isFor(otpServer.getRouter(surf.routerId).graph)) return badRequest(STALE_SURFACE);
         List<IsochroneData> isochrones = getIsochronesAccumulative(surf, spacing);
         final FeatureCollection fc = LIsochrone.makeContourFeatures(isochrones);
         return Response.ok().entity(new StreamingOutput() {
@@ -206,6 +215,7 @@ public class SurfaceResource extends RoutingResource {
                 new RenderRequest(imageFormat, Layer.TRAVELTIME, Style.COLOR30, true, false);
         // TODO why can't the renderer be static?
         Router router = otpServer.getRouter(surfA.routerId);
+        if (!surfA.isFor(router.graph)) return badRequest(STALE_SURFACE);
         return router.renderer.getResponse(tileRequest, surfA, null, renderRequest);
     }
     /**
@@ -247,6 +257,7 @@ public class SurfaceResource extends RoutingResource {
         RenderRequest renderRequest = new RenderRequest(imageFormat, Layer.DIFFERENCE, Style.DIFFERENCE, true, false);
         // TODO why can't the renderer be static?
         Router router = otpServer.getRouter(surfA.routerId);
+        if (!surfA.isFor(router.graph) || !surfB.isFor(router.graph)) return badRequest(STALE_SURFACE);
         return router.renderer.getResponse(tileRequest, surfA, surfB, renderRequest);
     }
 
@@ -270,7 +281,8 @@ public class SurfaceResource extends RoutingResource {
         long t0 = System.currentTimeMillis();
         if (surf.sampleGrid == null) {
             // The sample grid was not built from the SPT; make a minimal one including only time from the vertices in this timesurface
-            surf.makeSampleGridWithoutSPT();
+            Router router = otpServer.getRouter(surf.routerId);
+            surf.makeSampleGridWithoutSPT(router.graph);
         }
         DelaunayIsolineBuilder<WTWD> isolineBuilder = new DelaunayIsolineBuilder<WTWD>(
                 surf.sampleGrid.delaunayTriangulate(), new WTWD.IsolineMetric());
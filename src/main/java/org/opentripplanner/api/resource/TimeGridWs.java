@@ -87,9 +87,6 @@ public class TimeGridWs extends RoutingResource {
     @Produces({ "image/png" })
     public Response getTimeGridPng(@QueryParam("base64") @DefaultValue("false") boolean base64) throws Exception {
 
-        /* Fetch the Router for this request using server and routerId fields from superclass. */
-        Router router = otpServer.getRouter(routerId);
-
         if (precisionMeters < 10)
             throw new IllegalArgumentException("Too small precisionMeters: " + precisionMeters);
 
@@ -101,8 +98,16 @@ public class TimeGridWs extends RoutingResource {
         if (coordinateOrigin != null)
             tgRequest.coordinateOrigin = new GenericLocation(null, coordinateOrigin).getCoordinate();
 
+        /* Fetch the Router for this request using server and routerId fields from superclass. */
+        Router router = otpServer.acquireRouter(routerId);
+
         // Get a sample grid
-		ZSampleGrid<WTWD> sampleGrid = router.sampleGridRenderer.getSampleGrid(tgRequest, sptRequest);
+        ZSampleGrid<WTWD> sampleGrid;
+        try {
+            sampleGrid = router.sampleGridRenderer.getSampleGrid(tgRequest, sptRequest);
+        } finally {
+            router.requestFinished();
+        }
 
         int cols = sampleGrid.getXMax() - sampleGrid.getXMin() + 1;
         int rows = sampleGrid.getYMax() - sampleGrid.getYMin() + 1;
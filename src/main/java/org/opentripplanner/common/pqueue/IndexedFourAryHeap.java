@@ -0,0 +1,209 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+import java.util.Arrays;
+
+/**
+ * A 4-ary min-heap that, unlike BinHeap, supports decrease-key for elements identified by a small
+ * non-negative integer key (typically Vertex.getIndex()). At most one keyed element per key is
+ * present in the queue at any time: inserting with a key that is already queued replaces that
+ * element and moves it to its new priority instead of adding a second entry.
+ *
+ * Elements may also be inserted without a key, in which case they behave exactly as in BinHeap.
+ * This allows a search to use decrease-key for the states it tracks one per vertex, while still
+ * enqueueing the occasional extra state (e.g. around turn restrictions) alongside them.
+ *
+ * A 4-ary heap is shallower than a binary heap and its children sit next to each other in memory,
+ * which makes sift-down cheaper in practice despite the extra comparisons.
+ */
+public class IndexedFourAryHeap<T> {
+
+    private static final int D = 4;
+
+    private static final int NONE = -1;
+
+    private static final double GROW_FACTOR = 2.0;
+
+    private double[] prio;
+
+    private T[] elem;
+
+    /** For each heap slot, the key of the element in that slot or NONE. */
+    private int[] keys;
+
+    /** For each key, the heap slot holding its element or NONE. */
+    private int[] pos;
+
+    private int size;
+
+    public IndexedFourAryHeap() {
+        this(1000, 0);
+    }
+
+    /**
+     * @param capacity the initial number of elements that can be held without resizing.
+     * @param nKeys the initial size of the key space, e.g. Vertex.getMaxIndex(). The key space is
+     *        grown as needed when larger keys are inserted.
+     */
+    @SuppressWarnings("unchecked")
+    public IndexedFourAryHeap(int capacity, int nKeys) {
+        if (capacity < 10) capacity = 10;
+        elem = (T[]) new Object[capacity];
+        prio = new double[capacity];
+        keys = new int[capacity];
+        pos = new int[Math.max(nKeys, 16)];
+        Arrays.fill(pos, NONE);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean empty() {
+        return size <= 0;
+    }
+
+    public double peek_min_key() {
+        if (size > 0)
+            return prio[0];
+        else
+            throw new IllegalStateException("An empty queue does not have a minimum key.");
+    }
+
+    public T peek_min() {
+        if (size > 0)
+            return elem[0];
+        else
+            return null;
+    }
+
+    /** @return true if an element with the given key is currently in the queue. */
+    public boolean contains(int key) {
+        return key < pos.length && pos[key] != NONE;
+    }
+
+    /** Insert an element that is not identified by any key. */
+    public void insert(T e, double p) {
+        if (size == elem.length)
+            resize((int) (elem.length * GROW_FACTOR));
+        siftUp(size++, e, p, NONE);
+    }
+
+    /**
+     * Insert an element with the given key, or if an element with that key is already queued,
+     * replace it with the given element at the given priority. The new priority will usually be
+     * lower than the existing one, but higher priorities are also handled correctly.
+     */
+    public void insert_or_dec_key(int key, T e, double p) {
+        if (key >= pos.length)
+            growKeys(key + 1);
+        int i = pos[key];
+        if (i == NONE) {
+            if (size == elem.length)
+                resize((int) (elem.length * GROW_FACTOR));
+            siftUp(size++, e, p, key);
+        } else if (p < prio[i]) {
+            siftUp(i, e, p, key);
+        } else {
+            siftDown(i, e, p, key);
+        }
+    }
+
+    public T extract_min() {
+        if (size <= 0)
+            return null;
+        T minElem = elem[0];
+        if (keys[0] != NONE)
+            pos[keys[0]] = NONE;
+        size -= 1;
+        T lastElem = elem[size];
+        double lastPrio = prio[size];
+        int lastKey = keys[size];
+        elem[size] = null;
+        if (size > 0)
+            siftDown(0, lastElem, lastPrio, lastKey);
+        return minElem;
+    }
+
+    /** Empty the queue, clearing only the key positions that are actually in use. */
+    public void reset() {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != NONE)
+                pos[keys[i]] = NONE;
+            elem[i] = null;
+        }
+        size = 0;
+    }
+
+    public void resize(int capacity) {
+        if (capacity < size)
+            throw new IllegalStateException("IndexedFourAryHeap contains too many elements to fit in new capacity.");
+        prio = Arrays.copyOf(prio, capacity);
+        elem = Arrays.copyOf(elem, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    private void growKeys(int minLength) {
+        int oldLength = pos.length;
+        int newLength = Math.max(minLength, (int) (oldLength * GROW_FACTOR));
+        pos = Arrays.copyOf(pos, newLength);
+        Arrays.fill(pos, oldLength, newLength, NONE);
+    }
+
+    private void place(int i, T e, double p, int key) {
+        elem[i] = e;
+        prio[i] = p;
+        keys[i] = key;
+        if (key != NONE)
+            pos[key] = i;
+    }
+
+    /* Move the hole at slot i towards the root until the given element fits, then fill it. */
+    private void siftUp(int i, T e, double p, int key) {
+        while (i > 0) {
+            int parent = (i - 1) / D;
+            if (prio[parent] <= p)
+                break;
+            place(i, elem[parent], prio[parent], keys[parent]);
+            i = parent;
+        }
+        place(i, e, p, key);
+    }
+
+    /* Move the hole at slot i towards the leaves until the given element fits, then fill it. */
+    private void siftDown(int i, T e, double p, int key) {
+        while (true) {
+            int first = i * D + 1;
+            if (first >= size)
+                break;
+            int last = Math.min(first + D, size);
+            int child = first;
+            double childPrio = prio[first];
+            for (int c = first + 1; c < last; c++) {
+                if (prio[c] < childPrio) {
+                    child = c;
+                    childPrio = prio[c];
+                }
+            }
+            if (childPrio >= p)
+                break;
+            place(i, elem[child], childPrio, keys[child]);
+            i = child;
+        }
+        place(i, e, p, key);
+    }
+
+}
@@ -21,6 +21,7 @@ import java.util.List;
 
 import org.opentripplanner.graph_builder.services.GraphBuilder;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.CompactGraphFormat;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
@@ -47,6 +48,9 @@ public class GraphBuilderTask implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Should the graph be saved in the compact, memory-mappable format rather than as serialized objects? */
+    public boolean compactGraph = false;
+
     public void addGraphBuilder(GraphBuilder loader) {
         _graphBuilders.add(loader);
     }
@@ -143,7 +147,10 @@ public class GraphBuilderTask implements Runnable {
         graph.summarizeBuilderAnnotations();
         if (serializeGraph) {
             try {
-                graph.save(graphFile);
+                if (compactGraph)
+                    CompactGraphFormat.save(graph, graphFile);
+                else
+                    graph.save(graphFile);
             } catch (Exception ex) {
                 throw new IllegalStateException(ex);
             }
@@ -0,0 +1,75 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.opentripplanner.graph_builder.services.GraphBuilder;
+import org.opentripplanner.routing.contraction.ContractionHierarchyBuilder;
+import org.opentripplanner.routing.contraction.ContractionHierarchySet;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * {@link GraphBuilder} module that builds a contraction hierarchy of the street network for each
+ * of a list of routing profiles, by default driving, safe cycling and walking with the default
+ * request options. They are stored in the graph as a {@link ContractionHierarchySet} and used by
+ * ContractionHierarchyPathService for the street-only requests matching one of the profiles.
+ *
+ * This must run after every module that changes street edges or their weights (notably elevation).
+ */
+public class ContractionHierarchyGraphBuilderImpl implements GraphBuilder {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(ContractionHierarchyGraphBuilderImpl.class);
+
+    /** The options defining each hierarchy. Only the mode and the weighting options matter. */
+    public List<RoutingRequest> profiles = Lists.newArrayList(
+            new RoutingRequest(TraverseMode.CAR),
+            new RoutingRequest(TraverseMode.BICYCLE, OptimizeType.SAFE),
+            new RoutingRequest(TraverseMode.WALK));
+
+    public List<String> provides() {
+        return Arrays.asList("contraction hierarchies");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("streets");
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        ContractionHierarchySet hierarchies = new ContractionHierarchySet();
+        for (RoutingRequest profile : profiles) {
+            LOG.info("Building contraction hierarchy for {} ({})...", profile.modes,
+                    profile.optimize);
+            hierarchies.hierarchies.add(new ContractionHierarchyBuilder(graph, profile).build());
+        }
+        graph.putService(ContractionHierarchySet.class, hierarchies);
+    }
+
+    @Override
+    public void checkInputs() {
+        // no inputs
+    }
+
+}
@@ -0,0 +1,55 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.opentripplanner.graph_builder.services.GraphBuilder;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.landmarks.LandmarkSet;
+import org.opentripplanner.routing.landmarks.LandmarkSetBuilder;
+
+/**
+ * {@link GraphBuilder} module that chooses landmark vertices and stores the street distances from
+ * and to each of them as a {@link LandmarkSet} in the graph. Searches on a graph with a
+ * LandmarkSet use the LandmarkRemainingWeightHeuristic.
+ *
+ * This must run after every module that adds or changes street edges (notably elevation).
+ */
+public class LandmarkGraphBuilderImpl implements GraphBuilder {
+
+    /** More landmarks give tighter bounds, at 4 bytes per vertex each. */
+    public int landmarkCount = 16;
+
+    public List<String> provides() {
+        return Arrays.asList("landmarks");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("streets");
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        graph.putService(LandmarkSet.class, new LandmarkSetBuilder(graph, landmarkCount).build());
+    }
+
+    @Override
+    public void checkInputs() {
+        // no inputs
+    }
+
+}
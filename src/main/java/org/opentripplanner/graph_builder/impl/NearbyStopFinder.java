@@ -80,6 +80,8 @@ public class NearbyStopFinder {
             parsers = new PathParser[] {new TransferFinderParser()};
             earliestArrivalSPTService = new EarliestArrivalSPTService();
             earliestArrivalSPTService.maxDuration = (int) radius; // FIXME assuming 1 m/sec, use hard distance limiting to match straight-line mode
+            // One small search per stop: not worth a key array spanning every vertex in the graph.
+            earliestArrivalSPTService.decreaseKey = false;
         } else {
             streetIndex = new StreetVertexIndexServiceImpl(graph); // FIXME use the one already in the graph if it exists
             distanceLibrary = SphericalDistanceLibrary.getInstance();
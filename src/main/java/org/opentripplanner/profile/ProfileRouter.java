@@ -556,19 +556,19 @@ public class ProfileRouter {
                     int propagated_min = lb0 + egressWalkTimeSeconds;
                     int propagated_max = ub0 + egressWalkTimeSeconds;
                     int propagated_avg = (int)(((long) propagated_min + propagated_max) / 2); // FIXME HACK
-                    int existing_min = minSurface.times.get(vertex);
-                    int existing_max = maxSurface.times.get(vertex);
-                    int existing_avg = avgSurface.times.get(vertex);
+                    int existing_min = minSurface.getTime(vertex);
+                    int existing_max = maxSurface.getTime(vertex);
+                    int existing_avg = avgSurface.getTime(vertex);
                     // FIXME this is taking the least lower bound and the least upper bound
                     // which is not necessarily wrong but it's a crude way to perform the combination
                     if (existing_min == TimeSurface.UNREACHABLE || existing_min > propagated_min) {
-                        minSurface.times.put(vertex, propagated_min);
+                        minSurface.setTime(vertex, propagated_min);
                     }
                     if (existing_max == TimeSurface.UNREACHABLE || existing_max > propagated_max) {
-                        maxSurface.times.put(vertex, propagated_max);
+                        maxSurface.setTime(vertex, propagated_max);
                     }
                     if (existing_avg == TimeSurface.UNREACHABLE || existing_avg > propagated_avg) {
-                        avgSurface.times.put(vertex, propagated_avg);
+                        avgSurface.setTime(vertex, propagated_avg);
                     }
                 }
             }
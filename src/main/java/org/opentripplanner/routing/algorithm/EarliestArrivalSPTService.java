@@ -16,6 +16,7 @@ package org.opentripplanner.routing.algorithm;
 import java.util.Collection;
 
 import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedFourAryHeap;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -39,6 +40,14 @@ public class EarliestArrivalSPTService implements SPTService {
 
     public int maxDuration = 60 * 60 * 2;
 
+    /**
+     * Use a priority queue with decrease-key keyed on vertex index, so that each vertex has at most
+     * one queued state rather than one per improvement. This is safe here because the earliest
+     * arrival tree keeps a single state per vertex. The key space is sized to Vertex.getMaxIndex(),
+     * so very short searches run repeatedly on a large graph may prefer the plain binary heap.
+     */
+    public boolean decreaseKey = true;
+
     @Override
     public ShortestPathTree getShortestPathTree(RoutingRequest req) {
         return getShortestPathTree(req, -1, null); // negative timeout means no timeout
@@ -72,22 +81,35 @@ public class EarliestArrivalSPTService implements SPTService {
         State initialState = new State(options);
         spt.add(initialState);
 
-        BinHeap<State> pq = new BinHeap<State>();
-        pq.insert(initialState, 0);
+        // Only one of these queues is used, depending on whether decrease-key is enabled.
+        BinHeap<State> pq = null;
+        IndexedFourAryHeap<State> ipq = null;
+        if (decreaseKey) {
+            ipq = new IndexedFourAryHeap<State>(1000, Vertex.getMaxIndex());
+            ipq.insert_or_dec_key(initialState.getVertex().getIndex(), initialState, 0);
+        } else {
+            pq = new BinHeap<State>();
+            pq.insert(initialState, 0);
+        }
 
-        while (!pq.empty()) {
-            State u = pq.extract_min();
+        while (decreaseKey ? !ipq.empty() : !pq.empty()) {
+            State u = decreaseKey ? ipq.extract_min() : pq.extract_min();
             Vertex u_vertex = u.getVertex();
             if (!spt.visit(u))
                 continue;
-            Collection<Edge> edges = options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing();
+            Collection<Edge> edges = options.arriveBy ? options.rctx.getIncoming(u_vertex) : options.rctx.getOutgoing(u_vertex);
             for (Edge edge : edges) {
                 for (State v = edge.traverse(u); v != null; v = v.getNextResult()) {
                     if (isWorstTimeExceeded(v, options)) {
                         continue;
                     }
                     if (spt.add(v)) {
-                        pq.insert(v, v.getActiveTime()); // activeTime?
+                        // The tree keeps a single state per vertex, so any state still queued for
+                        // this vertex has just been replaced and can be rekeyed in place.
+                        if (decreaseKey)
+                            ipq.insert_or_dec_key(v.getVertex().getIndex(), v, v.getActiveTime());
+                        else
+                            pq.insert(v, v.getActiveTime()); // activeTime?
                     } 
                 }
             }
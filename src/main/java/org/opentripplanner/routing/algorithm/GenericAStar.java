@@ -13,17 +13,18 @@
 
 package org.opentripplanner.routing.algorithm;
 
-import java.util.Collection;
 import java.util.List;
 
 import org.opentripplanner.common.pqueue.BinHeap;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.core.OverlayGraph;
 import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.FrozenAdjacency;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.services.SPTService;
 import org.opentripplanner.routing.spt.*;
@@ -49,6 +50,12 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
 
     private TraverseVisitor traverseVisitor;
 
+    /**
+     * Use an IndexedMultiShortestPathTree (array-backed, pooled per thread) rather than a
+     * MultiShortestPathTree for multi-state searches.
+     */
+    private boolean indexedSpt = false;
+
     enum RunStatus {
         RUNNING, STOPPED
     }
@@ -99,9 +106,15 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
 
         runState = new RunState( options, terminationStrategy );
         runState.rctx = options.getRoutingContext();
+        options.compileTransitFilter();
         // TODO this is a hackish way of communicating which mode we are in (since search mode is currently server-wide)
-        runState.spt = options.longDistance ?
-                new WeightOnlyShortestPathTree(runState.options) : new MultiShortestPathTree(runState.options);
+        if (options.longDistance) {
+            runState.spt = new WeightOnlyShortestPathTree(runState.options);
+        } else if (indexedSpt) {
+            runState.spt = new IndexedMultiShortestPathTree(runState.options);
+        } else {
+            runState.spt = new MultiShortestPathTree(runState.options);
+        }
         runState.heuristic = options.batch ?
                 new TrivialRemainingWeightHeuristic() : runState.rctx.remainingWeightHeuristic;
 
@@ -169,64 +182,86 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
 
         runState.nVisited += 1;
         
-        Collection<Edge> edges = runState.options.arriveBy ? runState.u_vertex.getIncoming() : runState.u_vertex.getOutgoing();
-        for (Edge edge : edges) {
+        // Scan the frozen adjacency arrays when the vertex has not changed since they were built,
+        // which avoids wrapping the edge array of each expanded vertex in a new collection.
+        boolean arriveBy = runState.options.arriveBy;
+        FrozenAdjacency adjacency = runState.rctx.graph.adjacency;
+        int slot = adjacency == null ? -1 : adjacency.slot(runState.u_vertex);
+        if (slot >= 0) {
+            Edge[] edges = arriveBy ? adjacency.incomingEdges : adjacency.outgoingEdges;
+            int end = arriveBy ? adjacency.incomingEnd(slot) : adjacency.outgoingEnd(slot);
+            int start = arriveBy ? adjacency.incomingStart(slot) : adjacency.outgoingStart(slot);
+            for (int i = start; i < end; i++) {
+                traverseEdge(edges[i]);
+            }
+        } else {
+            for (Edge edge : arriveBy ? runState.u_vertex.getIncoming() : runState.u_vertex.getOutgoing()) {
+                traverseEdge(edge);
+            }
+        }
+        // temporary edges of this request leading to or from its endpoints
+        OverlayGraph temporaryEdges = runState.rctx.temporaryEdges;
+        for (Edge edge : arriveBy ? temporaryEdges.getIncoming(runState.u_vertex) : temporaryEdges.getOutgoing(runState.u_vertex)) {
+            traverseEdge(edge);
+        }
+        
+        return true;
+    }
 
-            // Iterate over traversal results. When an edge leads nowhere (as indicated by
-            // returning NULL), the iteration is over. TODO Use this to board multiple trips.
-            for (State v = edge.traverse(runState.u); v != null; v = v.getNextResult()) {
-                // Could be: for (State v : traverseEdge...)
+    /** Traverse one edge out of the current state, enqueueing the resulting states if hopeful. */
+    private void traverseEdge(Edge edge) {
+        // Iterate over traversal results. When an edge leads nowhere (as indicated by
+        // returning NULL), the iteration is over. TODO Use this to board multiple trips.
+        for (State v = edge.traverse(runState.u); v != null; v = v.getNextResult()) {
+            // Could be: for (State v : traverseEdge...)
 
-                if (traverseVisitor != null) {
-                    traverseVisitor.visitEdge(edge, v);
-                }
-                // TEST: uncomment to verify that all optimisticTraverse functions are actually
-                // admissible
-                // State lbs = edge.optimisticTraverse(u);
-                // if ( ! (lbs.getWeight() <= v.getWeight())) {
-                // System.out.printf("inadmissible lower bound %f vs %f on edge %s\n",
-                // lbs.getWeightDelta(), v.getWeightDelta(), edge);
-                // }
-
-                double remaining_w = computeRemainingWeight(runState.heuristic, v, runState.rctx.target, runState.options);
-                if (remaining_w < 0 || Double.isInfinite(remaining_w) ) {
-                    continue;
-                }
-                double estimate = v.getWeight() + remaining_w * runState.options.heuristicWeight;
+            if (traverseVisitor != null) {
+                traverseVisitor.visitEdge(edge, v);
+            }
+            // TEST: uncomment to verify that all optimisticTraverse functions are actually
+            // admissible
+            // State lbs = edge.optimisticTraverse(u);
+            // if ( ! (lbs.getWeight() <= v.getWeight())) {
+            // System.out.printf("inadmissible lower bound %f vs %f on edge %s\n",
+            // lbs.getWeightDelta(), v.getWeightDelta(), edge);
+            // }
+
+            double remaining_w = computeRemainingWeight(runState.heuristic, v, runState.rctx.target, runState.options);
+            if (remaining_w < 0 || Double.isInfinite(remaining_w) ) {
+                continue;
+            }
+            double estimate = v.getWeight() + remaining_w * runState.options.heuristicWeight;
 
-                if (verbose) {
-                    System.out.println("      edge " + edge);
-                    System.out.println("      " + runState.u.getWeight() + " -> " + v.getWeight()
-                            + "(w) + " + remaining_w + "(heur) = " + estimate + " vert = "
-                            + v.getVertex());
-                }
+            if (verbose) {
+                System.out.println("      edge " + edge);
+                System.out.println("      " + runState.u.getWeight() + " -> " + v.getWeight()
+                        + "(w) + " + remaining_w + "(heur) = " + estimate + " vert = "
+                        + v.getVertex());
+            }
 
-                // avoid enqueuing useless branches 
-                if (estimate > runState.options.maxWeight) {
-                    // too expensive to get here
-                    if (verbose)
-                        System.out.println("         too expensive to reach, not enqueued. estimated weight = " + estimate);
-                    continue;
-                }
-                if (isWorstTimeExceeded(v, runState.options)) {
-                    // too much time to get here
-                    if (verbose)
-                        System.out.println("         too much time to reach, not enqueued. time = " + v.getTimeSeconds());
-                    continue;
-                }
-                
-                // spt.add returns true if the state is hopeful; enqueue state if it's hopeful
-                if (runState.spt.add(v)) {
-                    // report to the visitor if there is one
-                    if (traverseVisitor != null)
-                        traverseVisitor.visitEnqueue(v);
-                    
-                    runState.pq.insert(v, estimate);
-                } 
+            // avoid enqueuing useless branches 
+            if (estimate > runState.options.maxWeight) {
+                // too expensive to get here
+                if (verbose)
+                    System.out.println("         too expensive to reach, not enqueued. estimated weight = " + estimate);
+                continue;
             }
+            if (isWorstTimeExceeded(v, runState.options)) {
+                // too much time to get here
+                if (verbose)
+                    System.out.println("         too much time to reach, not enqueued. time = " + v.getTimeSeconds());
+                continue;
+            }
+            
+            // spt.add returns true if the state is hopeful; enqueue state if it's hopeful
+            if (runState.spt.add(v)) {
+                // report to the visitor if there is one
+                if (traverseVisitor != null)
+                    traverseVisitor.visitEnqueue(v);
+                
+                runState.pq.insert(v, estimate);
+            } 
         }
-        
-        return true;
     }
     
     void runSearch(long abortTime){
@@ -337,4 +372,8 @@ public class GenericAStar implements SPTService { // maybe this should be wrappe
     public void setTraverseVisitor(TraverseVisitor traverseVisitor) {
         this.traverseVisitor = traverseVisitor;
     }
+
+    public void setIndexedSpt(boolean indexedSpt) {
+        this.indexedSpt = indexedSpt;
+    }
 }
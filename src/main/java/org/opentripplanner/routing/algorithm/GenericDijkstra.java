@@ -13,16 +13,20 @@
 
 package org.opentripplanner.routing.algorithm;
 
+import java.util.Collection;
+
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.SkipEdgeStrategy;
 import org.opentripplanner.routing.algorithm.strategies.SkipTraverseResultStrategy;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedFourAryHeap;
 import org.opentripplanner.routing.spt.BasicShortestPathTree;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 
@@ -41,6 +45,12 @@ public class GenericDijkstra {
 
     public TraverseVisitor traverseVisitor;
 
+    /**
+     * Use a priority queue with decrease-key keyed on vertex index rather than a BinHeap, so that
+     * improving the state at a vertex moves its queue entry instead of adding another one.
+     */
+    public boolean decreaseKey = false;
+
     private boolean verbose = false;
 
     private RemainingWeightHeuristic heuristic = new TrivialRemainingWeightHeuristic();
@@ -63,17 +73,28 @@ public class GenericDijkstra {
 
     public ShortestPathTree getShortestPathTree(State initialState) {
         Vertex target = null;
-        if (options.rctx != null) {
+        RoutingContext rctx = options.rctx;
+        if (rctx != null) {
             target = initialState.getOptions().rctx.target;
         }
         ShortestPathTree spt = new BasicShortestPathTree(options);
-        BinHeap<State> queue = new BinHeap<State>(1000);
+        // Only one of these queues is used, depending on whether decrease-key is enabled.
+        BinHeap<State> queue = null;
+        IndexedFourAryHeap<State> indexedQueue = null;
+        if (decreaseKey)
+            indexedQueue = new IndexedFourAryHeap<State>(1000, Vertex.getMaxIndex());
+        else
+            queue = new BinHeap<State>(1000);
 
         spt.add(initialState);
-        queue.insert(initialState, initialState.getWeight());
-
-        while (!queue.empty()) { // Until the priority queue is empty:
-            State u = queue.extract_min();
+        if (decreaseKey)
+            indexedQueue.insert_or_dec_key(initialState.getVertex().getIndex(), initialState,
+                    initialState.getWeight());
+        else
+            queue.insert(initialState, initialState.getWeight());
+
+        while (decreaseKey ? !indexedQueue.empty() : !queue.empty()) { // Until the priority queue is empty:
+            State u = decreaseKey ? indexedQueue.extract_min() : queue.extract_min();
             Vertex u_vertex = u.getVertex();
 
             if (traverseVisitor != null) {
@@ -94,7 +115,13 @@ public class GenericDijkstra {
                 break;
             }
 
-            for (Edge edge : options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing()) {
+            // without a routing context there are no temporary edges
+            Collection<Edge> edges;
+            if (rctx == null)
+                edges = options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing();
+            else
+                edges = options.arriveBy ? rctx.getIncoming(u_vertex) : rctx.getOutgoing(u_vertex);
+            for (Edge edge : edges) {
                 if (skipEdgeStrategy != null &&
                     skipEdgeStrategy.shouldSkipEdge(initialState.getVertex(), null, u, edge, spt, options)) {
                     continue;
@@ -115,7 +142,15 @@ public class GenericDijkstra {
                     if (v.exceedsWeightLimit(options.maxWeight)) continue;
                     if (spt.add(v)) {
                         double estimate = heuristic.computeForwardWeight(v, target);
-                        queue.insert(v, v.getWeight() + estimate);
+                        if (!decreaseKey) {
+                            queue.insert(v, v.getWeight() + estimate);
+                        } else if (spt.getState(v.getVertex()) == v) {
+                            // v replaced the best state at its vertex, rekey that vertex's entry
+                            indexedQueue.insert_or_dec_key(v.getVertex().getIndex(), v, v.getWeight() + estimate);
+                        } else {
+                            // v was kept alongside a better state because of turn restrictions
+                            indexedQueue.insert(v, v.getWeight() + estimate);
+                        }
                         if (traverseVisitor != null) traverseVisitor.visitEnqueue(v);
                     }
                 }
@@ -128,4 +163,8 @@ public class GenericDijkstra {
     public void setHeuristic(RemainingWeightHeuristic heuristic) {
         this.heuristic = heuristic;
     }
+
+    public void setDecreaseKey(boolean decreaseKey) {
+        this.decreaseKey = decreaseKey;
+    }
 }
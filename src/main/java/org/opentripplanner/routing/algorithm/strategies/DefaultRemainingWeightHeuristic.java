@@ -47,6 +47,13 @@ public class DefaultRemainingWeightHeuristic implements RemainingWeightHeuristic
     private double maxTransitSpeed;
     private double requiredWalkDistance;
 
+    /*
+     * The target and direction requiredWalkDistance was found for. Retries of a request share
+     * their routing context and so this heuristic: they need not search again.
+     */
+    private Vertex walkSearchTarget;
+    private boolean walkSearchArriveBy;
+
     @Override
     public void initialize(RoutingRequest options, Vertex origin, Vertex target, long abortTime) {
         RoutingRequest req = options;
@@ -64,7 +71,13 @@ public class DefaultRemainingWeightHeuristic implements RemainingWeightHeuristic
 
         lat = target.getLat();
         lon = target.getLon();
-        requiredWalkDistance = determineRequiredWalkDistance(req);
+        if (target != walkSearchTarget || req.arriveBy != walkSearchArriveBy) {
+            requiredWalkDistance = determineRequiredWalkDistance(req);
+            walkSearchTarget = target;
+            walkSearchArriveBy = req.arriveBy;
+        } else {
+            LOG.debug("Reusing the required walk distance found for this request.");
+        }
         walkReluctance = req.walkReluctance;
     }
 
@@ -158,4 +171,13 @@ public class DefaultRemainingWeightHeuristic implements RemainingWeightHeuristic
     @Override
     public void doSomeWork() {}
 
+    @Override
+    public RemainingWeightHeuristic copyForConcurrentSearch() {
+        DefaultRemainingWeightHeuristic ret = new DefaultRemainingWeightHeuristic();
+        ret.requiredWalkDistance = requiredWalkDistance;
+        ret.walkSearchTarget = walkSearchTarget;
+        ret.walkSearchArriveBy = walkSearchArriveBy;
+        return ret;
+    }
+
 }
@@ -15,11 +15,15 @@ package org.opentripplanner.routing.algorithm.strategies;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
+import gnu.trove.iterator.TObjectDoubleIterator;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
 import org.opentripplanner.common.geometry.DistanceLibrary;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.routing.algorithm.strategies.TargetSearchCache.TargetSearch;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.StreetTransitLink;
@@ -72,9 +76,32 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     BinHeap<Vertex> q;
 
     boolean finished = false;
+
+    /** The street searches made for this request, shared with copies of this heuristic. */
+    private StreetTrees streetTrees;
+
+    /** Street searches from earlier destinations, null to search from each one. */
+    private final TargetSearchCache targetSearchCache;
     
     public InterleavedBidirectionalHeuristic(Graph graph) {
+        this(graph, null);
+    }
+
+    public InterleavedBidirectionalHeuristic(Graph graph, TargetSearchCache targetSearchCache) {
         this.graph = graph;
+        this.targetSearchCache = targetSearchCache;
+    }
+
+    /**
+     * Make a heuristic for another search of the same request (e.g. with some trips banned) that
+     * may run at the same time as this one. It reuses the street searches this one made around
+     * the origin and destination, and redoes only the interleaved search through the transit
+     * network, whose state cannot be shared between threads.
+     */
+    public InterleavedBidirectionalHeuristic(InterleavedBidirectionalHeuristic other) {
+        this.graph = other.graph;
+        this.streetTrees = other.streetTrees;
+        this.targetSearchCache = other.targetSearchCache;
     }
 
     
@@ -101,31 +128,29 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             return;
         }
         long start = System.currentTimeMillis();
-        this.target = target;
-        // int nVertices = AbstractVertex.getMaxIndex(); // will be ever increasing?
-        int nVertices = graph.countVertices();
-        weights = new TObjectDoubleHashMap((int)(Math.log(nVertices)) + 1, 0.5f, Double.POSITIVE_INFINITY);
         this.options = options;
         this.origin = origin;
         // do not use soft limiting in long-distance mode
         options.softWalkLimiting = false;
         options.softPreTransitLimiting = false;
-        // make sure distance table is initialized before starting thread
-        LOG.debug("initializing heuristic computation thread");
-        // Forward street search first, mark street vertices around the origin so H evaluates to 0
-        List<State> search = streetSearch(options, false, abortTime); // ~30 msec
-        if (search == null) return; // Search timed out
-        LOG.debug("end foreward street search {} ms", System.currentTimeMillis() - start);
-        // create a new priority queue
+        if (streetTrees != null && streetTrees.origin == origin && streetTrees.target == target) {
+            LOG.debug("reusing street searches of another search for the same request");
+        } else {
+            streetTrees = streetSearches(options, abortTime);
+            if (streetTrees == null) return; // Search timed out
+            LOG.debug("end street searches {} ms", System.currentTimeMillis() - start);
+        }
+        this.target = target;
+        // the interleaved search starts from the stops within walking distance of the destination
+        weights = new TObjectDoubleHashMap<Vertex>(streetTrees.weights.size(), 0.5f,
+                Double.POSITIVE_INFINITY);
+        weights.putAll(streetTrees.weights);
         q = new BinHeap<Vertex>();
-        // Save weight to reach street vertices around the destination.
-        // Also enqueue states for each stop within walking distance of the destination.
-        search = streetSearch(options, true, abortTime);
-        if (search == null) return; // Search timed out
-        for (State stopState : search) {
-            q.insert(stopState.getVertex(), stopState.getWeight());
+        for (int i = 0; i < streetTrees.stops.length; i++) {
+            q.insert(streetTrees.stops[i], streetTrees.stopWeights[i]);
         }
-        LOG.debug("end backward street search {} ms", System.currentTimeMillis() - start);
+        maxFound = 0;
+        finished = false;
         // once street searches are done, raise the limits to max
         // because hard walk limiting is incorrect and is observed to cause problems 
         // for trips near the cutoff
@@ -135,6 +160,96 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         options.rctx.debugOutput.finishedPrecalculating();
     }
 
+    /**
+     * The street searches around the origin and destination, which only depend on the request
+     * endpoints and street options, not on the banned trips that vary between its searches.
+     * Read-only once made, so it can be shared by heuristics running at the same time.
+     */
+    private static class StreetTrees {
+
+        final Vertex origin;
+
+        final Vertex target;
+
+        /** -1 around the origin, the weight from the destination elsewhere (-2 near both). */
+        final TObjectDoubleHashMap<Vertex> weights;
+
+        /** The stops reached from the destination, where the interleaved search begins. */
+        final Vertex[] stops;
+
+        final double[] stopWeights;
+
+        StreetTrees(Vertex origin, Vertex target, TObjectDoubleHashMap<Vertex> weights,
+                TargetSearch targetSearch) {
+            this.origin = origin;
+            this.target = target;
+            this.weights = weights;
+            this.stops = targetSearch.stops;
+            this.stopWeights = targetSearch.stopWeights;
+        }
+    }
+
+    /** @return the street searches for this request, or null if they timed out. */
+    private StreetTrees streetSearches(RoutingRequest options, long abortTime) {
+        // int nVertices = AbstractVertex.getMaxIndex(); // will be ever increasing?
+        int nVertices = graph.countVertices();
+        TObjectDoubleHashMap<Vertex> streetWeights = new TObjectDoubleHashMap<Vertex>(
+                (int) (Math.log(nVertices)) + 1, 0.5f, Double.POSITIVE_INFINITY);
+        // Forward street search first, mark street vertices around the origin so H evaluates to 0
+        List<State> search = streetSearch(options, false, abortTime, streetWeights); // ~30 msec
+        if (search == null) return null;
+        // Weight to reach street vertices around the destination, and the stops within walking
+        // distance of it.
+        TargetSearch targetSearch = targetSearchCache == null ?
+                searchFromTarget(options, abortTime) :
+                targetSearchCache.get(options, new TargetSearchTask(options, abortTime));
+        if (targetSearch == null) return null;
+        TObjectDoubleIterator<Vertex> it = targetSearch.weights.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            double old_weight = streetWeights.get(it.key());
+            if (old_weight == -1) {
+                // Mark vertex as near both origin and destination.
+                // Because of potential transit use we still don't know how far to the destination.
+                streetWeights.put(it.key(), -2);
+            } else if (it.value() < old_weight) {
+                streetWeights.put(it.key(), it.value());
+            }
+        }
+        return new StreetTrees(options.rctx.origin, options.rctx.target, streetWeights,
+                targetSearch);
+    }
+
+    /** @return the street search from the target of the request, or null if it timed out. */
+    private static TargetSearch searchFromTarget(RoutingRequest options, long abortTime) {
+        TObjectDoubleHashMap<Vertex> targetWeights = new TObjectDoubleHashMap<Vertex>(100, 0.5f,
+                Double.POSITIVE_INFINITY);
+        List<State> stopStates = streetSearch(options, true, abortTime, targetWeights);
+        if (stopStates == null) return null;
+        return new TargetSearch(targetWeights, stopStates);
+    }
+
+    /** Searches from the target for the cache, which needs an exception on timeouts. */
+    private static class TargetSearchTask implements Callable<TargetSearch> {
+
+        private final RoutingRequest options;
+
+        private final long abortTime;
+
+        TargetSearchTask(RoutingRequest options, long abortTime) {
+            this.options = options;
+            this.abortTime = abortTime;
+        }
+
+        @Override
+        public TargetSearch call() throws TimeoutException {
+            TargetSearch ret = searchFromTarget(options, abortTime);
+            if (ret == null)
+                throw new TimeoutException();
+            return ret;
+        }
+    }
+
     /** Do up to N iterations as long as the queue is not empty */
     @Override
     public void doSomeWork() {
@@ -157,7 +272,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
 //                    Double.isInfinite(uw) ? -1.0 : uw);
 
             // OUTgoing for heuristic search when main search is arriveBy 
-            for (Edge e : options.arriveBy ? u.getOutgoing() : u.getIncoming()) {
+            for (Edge e : options.arriveBy ? options.rctx.getOutgoing(u) : options.rctx.getIncoming(u)) {
                 // Do not enter streets in this phase.
                 if (e instanceof StreetTransitLink) continue;
                 Vertex v = options.arriveBy ? e.getToVertex() : e.getFromVertex();
@@ -221,6 +336,11 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     @Override
     public void reset() {
     }
+
+    @Override
+    public RemainingWeightHeuristic copyForConcurrentSearch() {
+        return new InterleavedBidirectionalHeuristic(this);
+    }
         
 
     /*
@@ -262,7 +382,8 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     TODO perhaps reimplement using the generic dijkstra class
     */
 
-    private List<State> streetSearch (RoutingRequest rr, boolean fromTarget, long abortTime) {
+    private static List<State> streetSearch (RoutingRequest rr, boolean fromTarget, long abortTime,
+            TObjectDoubleHashMap<Vertex> weights) {
         rr = rr.clone();
         if (fromTarget)
             rr.setArriveBy( ! rr.arriveBy);
@@ -311,7 +432,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
                 }
             }
             // FIXME should only traverse when state is better than old_weight
-            for (Edge e : rr.arriveBy ? v.getIncoming() : v.getOutgoing()) {
+            for (Edge e : rr.arriveBy ? rr.rctx.getIncoming(v) : rr.rctx.getOutgoing(v)) {
                 // arriveBy has been set to match actual directional behavior in this subsearch
                 State s1 = e.traverse(s);
                 if (s1 == null)
@@ -0,0 +1,320 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.opentripplanner.common.geometry.DistanceLibrary;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.landmarks.LandmarkSet;
+import org.opentripplanner.routing.services.RemainingWeightHeuristicFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A remaining weight heuristic for street-only searches using the ALT lower bounds: by the
+ * triangle inequality, the distance from v to t is at least d(L, t) - d(L, v) and at least
+ * d(v, L) - d(t, L) for any landmark L. Where the network forces detours (rivers, highways,
+ * one-way streets) this is much tighter than the straight line distance, which is still used for
+ * vertices without stored distances and wherever it happens to be higher.
+ *
+ * Distances are turned into weights with the lowest weight per meter any street edge can have
+ * with the request options, so the bound holds for any mode, optimization and elevation data.
+ * Transit searches are passed on to a DefaultRemainingWeightHeuristic.
+ */
+public class LandmarkRemainingWeightHeuristic implements RemainingWeightHeuristic {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(LandmarkRemainingWeightHeuristic.class);
+
+    /** The most vertices searched around the target for the nearest vertices with distances. */
+    private static final int MAX_TARGET_SEARCH = 100;
+
+    private final LandmarkSet landmarks;
+
+    private final DefaultRemainingWeightHeuristic transitHeuristic;
+
+    private DistanceLibrary distanceLibrary = SphericalDistanceLibrary.getInstance();
+
+    private boolean transit;
+
+    private double lat;
+
+    private double lon;
+
+    /** The lowest weight of a meter along any street edge. */
+    private double weightPerMeter;
+
+    /** False if the target could not be bounded by vertices with distances. */
+    private boolean useLandmarks;
+
+    /** True when bounding the distance from the target (in an arriveBy search), not to it. */
+    private boolean reverse;
+
+    /*
+     * Quantized distances from the landmarks to the vertices around the target, and from these
+     * vertices to the landmarks: the lowest or highest, whichever keeps the bounds valid. -1 when
+     * the landmark gives no bound.
+     */
+
+    private int[] targetFromLandmark;
+
+    private int[] targetToLandmark;
+
+    /** The target bounded, so that retries of the same request need not search again. */
+    private Vertex boundedTarget;
+
+    public LandmarkRemainingWeightHeuristic(LandmarkSet landmarks) {
+        this(landmarks, new DefaultRemainingWeightHeuristic());
+    }
+
+    private LandmarkRemainingWeightHeuristic(LandmarkSet landmarks,
+            DefaultRemainingWeightHeuristic transitHeuristic) {
+        this.landmarks = landmarks;
+        this.transitHeuristic = transitHeuristic;
+    }
+
+    @Override
+    public void initialize(RoutingRequest options, Vertex origin, Vertex target, long abortTime) {
+        transit = options.modes.isTransit();
+        if (transit) {
+            transitHeuristic.initialize(options, origin, target, abortTime);
+            return;
+        }
+        lat = target.getLat();
+        lon = target.getLon();
+        weightPerMeter = weightPerMeter(options);
+        if (target == boundedTarget && reverse == options.arriveBy)
+            return;
+        reverse = options.arriveBy;
+        useLandmarks = options.rctx != null && boundTarget(options.rctx, target);
+        boundedTarget = target;
+    }
+
+    /**
+     * The lowest weight per meter of any street edge for these options, following the weight
+     * computations in StreetEdge for each mode the request may use. Walking weights never fall
+     * below length / speed, whatever the slope.
+     */
+    private double weightPerMeter(RoutingRequest options) {
+        double ret = Double.POSITIVE_INFINITY;
+        if (options.modes.getWalk())
+            ret = Math.min(ret, walkWeightPerMeter(options));
+        if (options.modes.getBicycle()) {
+            double ratio;
+            switch (options.optimize) {
+            case SAFE:
+                ratio = landmarks.minBicycleSafetyFactor;
+                break;
+            case GREENWAYS:
+                ratio = landmarks.minBicycleSafetyFactor * 0.66;
+                break;
+            case QUICK:
+                ratio = landmarks.minSlopeSpeedRatio;
+                break;
+            case TRIANGLE:
+                ratio = landmarks.minSlopeSpeedRatio * options.triangleTimeFactor
+                        + landmarks.minBicycleSafetyFactor * options.triangleSafetyFactor;
+                break;
+            default:
+                ratio = 1;
+            }
+            if (options.wheelchairAccessible)
+                ratio = landmarks.minSlopeSpeedRatio;
+            ret = Math.min(ret, reluctance(options) * ratio / options.bikeSpeed);
+            // bicycles are walked where they cannot be ridden
+            ret = Math.min(ret, walkWeightPerMeter(options.bikeWalkingOptions));
+        }
+        if (options.modes.getDriving()) {
+            double speed = Math.max(options.carSpeed, landmarks.maxCarSpeed);
+            double ratio = options.wheelchairAccessible ? landmarks.minSlopeSpeedRatio : 1;
+            ret = Math.min(ret, reluctance(options) * ratio / speed);
+        }
+        if (ret == Double.POSITIVE_INFINITY)
+            ret = options.walkReluctance / options.getStreetSpeedUpperBound();
+        return ret;
+    }
+
+    private double walkWeightPerMeter(RoutingRequest options) {
+        double ratio = options.wheelchairAccessible ? landmarks.minSlopeSpeedRatio : 1;
+        return reluctance(options) * ratio / options.walkSpeed;
+    }
+
+    private static double reluctance(RoutingRequest options) {
+        return Math.min(options.walkReluctance, options.stairsReluctance);
+    }
+
+    /**
+     * Find the vertices with distances closest to the target (the target itself if it has
+     * distances), such that every path to the target passes through one of them, or every path
+     * from it in an arriveBy search. Their distances to the landmarks then bound the target's.
+     */
+    private boolean boundTarget(RoutingContext rctx, Vertex target) {
+        Set<Vertex> visited = new HashSet<Vertex>();
+        Set<Integer> nodes = new HashSet<Integer>();
+        Deque<Vertex> queue = new ArrayDeque<Vertex>();
+        visited.add(target);
+        queue.add(target);
+        while (!queue.isEmpty()) {
+            Vertex v = queue.poll();
+            int node = landmarks.getNode(v);
+            if (node >= 0) {
+                nodes.add(node);
+                continue;
+            }
+            if (visited.size() > MAX_TARGET_SEARCH) {
+                LOG.debug("No vertex with landmark distances close to {}.", target);
+                return false;
+            }
+            for (Edge e : reverse ? rctx.getOutgoing(v) : rctx.getIncoming(v)) {
+                Vertex next = reverse ? e.getToVertex() : e.getFromVertex();
+                if (visited.add(next))
+                    queue.add(next);
+            }
+        }
+        if (nodes.isEmpty())
+            return false;
+        int k = landmarks.getLandmarkCount();
+        targetFromLandmark = new int[k];
+        targetToLandmark = new int[k];
+        for (int l = 0; l < k; l++) {
+            // d(L, t) for a forward search, d(t, L) for a reverse one: the lowest is a bound
+            int low = Integer.MAX_VALUE;
+            // d(t, L) for a forward search, d(L, t) for a reverse one: the highest is a bound
+            int high = -1;
+            for (int node : nodes) {
+                char from = landmarks.getFromLandmark(node, l);
+                char to = landmarks.getToLandmark(node, l);
+                char lowValue = reverse ? to : from;
+                char highValue = reverse ? from : to;
+                if (lowValue != LandmarkSet.UNREACHABLE)
+                    low = Math.min(low, lowValue);
+                if (highValue == LandmarkSet.UNREACHABLE || high == Integer.MAX_VALUE)
+                    high = Integer.MAX_VALUE;
+                else
+                    high = Math.max(high, highValue);
+            }
+            if (low == Integer.MAX_VALUE)
+                low = -1;
+            if (high == Integer.MAX_VALUE)
+                high = -1;
+            targetFromLandmark[l] = reverse ? high : low;
+            targetToLandmark[l] = reverse ? low : high;
+        }
+        LOG.debug("Target {} bounded by {} vertices: {} {}", target, nodes.size(),
+                Arrays.toString(targetFromLandmark), Arrays.toString(targetToLandmark));
+        return true;
+    }
+
+    /** @return a lower bound in meters on the street distance between v and the target. */
+    private double landmarkDistance(Vertex v) {
+        int node = landmarks.getNode(v);
+        if (node < 0)
+            return 0;
+        double max = 0;
+        int k = landmarks.getLandmarkCount();
+        for (int l = 0; l < k; l++) {
+            int from = landmarks.getFromLandmark(node, l);
+            int to = landmarks.getToLandmark(node, l);
+            int targetFrom = targetFromLandmark[l];
+            int targetTo = targetToLandmark[l];
+            // each stored value q stands for a distance between q and q + 1 units
+            int bound = 0;
+            if (reverse) {
+                // d(t, v) >= d(L, v) - d(L, t) and d(t, v) >= d(t, L) - d(v, L)
+                if (from != LandmarkSet.UNREACHABLE && targetFrom >= 0)
+                    bound = Math.max(bound, from - targetFrom - 1);
+                if (to != LandmarkSet.UNREACHABLE && targetTo >= 0)
+                    bound = Math.max(bound, targetTo - to - 1);
+            } else {
+                // d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L)
+                if (from != LandmarkSet.UNREACHABLE && targetFrom >= 0)
+                    bound = Math.max(bound, targetFrom - from - 1);
+                if (to != LandmarkSet.UNREACHABLE && targetTo >= 0)
+                    bound = Math.max(bound, to - targetTo - 1);
+            }
+            max = Math.max(max, bound * landmarks.getUnit(l));
+        }
+        return max;
+    }
+
+    @Override
+    public double computeForwardWeight(State s, Vertex target) {
+        if (transit)
+            return transitHeuristic.computeForwardWeight(s, target);
+        Vertex v = s.getVertex();
+        double distance = distanceLibrary.fastDistance(v.getLat(), v.getLon(), lat, lon);
+        if (useLandmarks)
+            distance = Math.max(distance, landmarkDistance(v));
+        return distance * weightPerMeter;
+    }
+
+    @Override
+    public double computeReverseWeight(State s, Vertex target) {
+        return computeForwardWeight(s, target);
+    }
+
+    @Override
+    public void reset() {}
+
+    @Override
+    public void doSomeWork() {}
+
+    @Override
+    public RemainingWeightHeuristic copyForConcurrentSearch() {
+        LandmarkRemainingWeightHeuristic ret = new LandmarkRemainingWeightHeuristic(landmarks,
+                (DefaultRemainingWeightHeuristic) transitHeuristic.copyForConcurrentSearch());
+        // the target bounds are not modified once found
+        ret.transit = transit;
+        ret.lat = lat;
+        ret.lon = lon;
+        ret.weightPerMeter = weightPerMeter;
+        ret.useLandmarks = useLandmarks;
+        ret.reverse = reverse;
+        ret.targetFromLandmark = targetFromLandmark;
+        ret.targetToLandmark = targetToLandmark;
+        ret.boundedTarget = boundedTarget;
+        return ret;
+    }
+
+    /**
+     * Returns landmark heuristics for street-only searches and Euclidean ones for transit
+     * searches, like DefaultRemainingWeightHeuristic does by itself.
+     */
+    public static class Factory implements RemainingWeightHeuristicFactory {
+
+        private final LandmarkSet landmarks;
+
+        public Factory(LandmarkSet landmarks) {
+            this.landmarks = landmarks;
+        }
+
+        @Override
+        public RemainingWeightHeuristic getInstanceForSearch(RoutingRequest opt) {
+            return new LandmarkRemainingWeightHeuristic(landmarks);
+        }
+    }
+
+}
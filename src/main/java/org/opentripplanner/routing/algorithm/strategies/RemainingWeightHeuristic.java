@@ -43,6 +43,13 @@ public interface RemainingWeightHeuristic extends Serializable {
      * estimate. Avoids thread synchronization evil by interleaving forward and backward searches. 
      */
     public void doSomeWork();
+
+    /**
+     * Make a heuristic for another search of the same request, e.g. with some trips banned, that
+     * may run at the same time as this one. It should reuse what this one precomputed for the
+     * request rather than initialize from scratch.
+     */
+    public RemainingWeightHeuristic copyForConcurrentSearch();
     
 }
 
@@ -0,0 +1,203 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import gnu.trove.iterator.TObjectDoubleIterator;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps the street searches InterleavedBidirectionalHeuristic makes from the destinations of
+ * requests, as the same destinations (stations, malls, campuses...) come up again and again. A
+ * search only depends on the destination and the street options of the request, which make the
+ * key: the destination vertex, or its coordinates when it is a temporary vertex made for the
+ * request.
+ * 
+ * The cache is bounded and safe for concurrent requests; a request finding another one searching
+ * from the same destination waits for its result. It belongs to a path service, which a reloaded
+ * graph replaces along with its cache; the graph is part of the key all the same.
+ */
+public class TargetSearchCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TargetSearchCache.class);
+
+    private final Cache<Key, TargetSearch> cache;
+
+    public TargetSearchCache(int maxSize) {
+        cache = CacheBuilder.newBuilder().concurrencyLevel(16).maximumSize(maxSize).build();
+    }
+
+    /** A street search from a destination, read-only once made. */
+    static class TargetSearch {
+
+        /** The weight from each permanent vertex reached to the destination. */
+        final TObjectDoubleHashMap<Vertex> weights;
+
+        /** The stops reached, where the interleaved search begins. */
+        final Vertex[] stops;
+
+        final double[] stopWeights;
+
+        TargetSearch(TObjectDoubleHashMap<Vertex> weights, List<State> stopStates) {
+            // temporary vertices belong to one request, and are never looked up
+            TObjectDoubleIterator<Vertex> it = weights.iterator();
+            while (it.hasNext()) {
+                it.advance();
+                if (it.key() instanceof TemporaryVertex)
+                    it.remove();
+            }
+            this.weights = weights;
+            stops = new Vertex[stopStates.size()];
+            stopWeights = new double[stopStates.size()];
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = stopStates.get(i).getVertex();
+                stopWeights[i] = stopStates.get(i).getWeight();
+            }
+        }
+    }
+
+    /** The destination and the request options the street search from it depends on. */
+    private static class Key {
+
+        final Graph graph;
+
+        final Object target;
+
+        final TraverseModeSet modes;
+
+        final boolean arriveBy;
+
+        final boolean wheelchairAccessible;
+
+        /* Switches for picking up or leaving a car or a bike on the way. */
+        final boolean allowBikeRental, bikeParkAndRide, parkAndRide, kissAndRide;
+
+        final OptimizeType optimize;
+
+        final int maxPreTransitTime, bikeSwitchTime, bikeSwitchCost;
+
+        final double maxWalkDistance, walkSpeed, bikeSpeed, carSpeed, walkReluctance,
+                stairsReluctance, turnReluctance, maxSlope, triangleTimeFactor,
+                triangleSlopeFactor, triangleSafetyFactor, bikeWalkSpeed, bikeWalkReluctance;
+
+        Key(RoutingRequest options) {
+            graph = options.rctx.graph;
+            Vertex v = options.rctx.target;
+            target = v instanceof TemporaryVertex ? v.getCoordinate() : v;
+            modes = options.modes.clone();
+            arriveBy = options.arriveBy;
+            wheelchairAccessible = options.wheelchairAccessible;
+            allowBikeRental = options.allowBikeRental;
+            bikeParkAndRide = options.bikeParkAndRide;
+            parkAndRide = options.parkAndRide;
+            kissAndRide = options.kissAndRide;
+            optimize = options.optimize;
+            maxPreTransitTime = options.maxPreTransitTime;
+            maxWalkDistance = options.maxWalkDistance;
+            walkSpeed = options.walkSpeed;
+            bikeSpeed = options.bikeSpeed;
+            carSpeed = options.carSpeed;
+            walkReluctance = options.walkReluctance;
+            stairsReluctance = options.stairsReluctance;
+            turnReluctance = options.turnReluctance;
+            maxSlope = options.maxSlope;
+            triangleTimeFactor = options.triangleTimeFactor;
+            triangleSlopeFactor = options.triangleSlopeFactor;
+            triangleSafetyFactor = options.triangleSafetyFactor;
+            // the options for walking a bike are derived from the above, save for these
+            RoutingRequest bikeWalking = options.bikeWalkingOptions;
+            bikeWalkSpeed = bikeWalking.walkSpeed;
+            bikeWalkReluctance = bikeWalking.walkReluctance;
+            bikeSwitchTime = bikeWalking.bikeSwitchTime;
+            bikeSwitchCost = bikeWalking.bikeSwitchCost;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return graph == other.graph && target.equals(other.target) && modes.equals(other.modes)
+                    && arriveBy == other.arriveBy
+                    && wheelchairAccessible == other.wheelchairAccessible
+                    && allowBikeRental == other.allowBikeRental
+                    && bikeParkAndRide == other.bikeParkAndRide
+                    && parkAndRide == other.parkAndRide && kissAndRide == other.kissAndRide
+                    && optimize == other.optimize && maxPreTransitTime == other.maxPreTransitTime
+                    && maxWalkDistance == other.maxWalkDistance && walkSpeed == other.walkSpeed
+                    && bikeSpeed == other.bikeSpeed && carSpeed == other.carSpeed
+                    && walkReluctance == other.walkReluctance
+                    && stairsReluctance == other.stairsReluctance
+                    && turnReluctance == other.turnReluctance && maxSlope == other.maxSlope
+                    && triangleTimeFactor == other.triangleTimeFactor
+                    && triangleSlopeFactor == other.triangleSlopeFactor
+                    && triangleSafetyFactor == other.triangleSafetyFactor
+                    && bikeWalkSpeed == other.bikeWalkSpeed
+                    && bikeWalkReluctance == other.bikeWalkReluctance
+                    && bikeSwitchTime == other.bikeSwitchTime
+                    && bikeSwitchCost == other.bikeSwitchCost;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(target, modes, arriveBy, optimize, parkAndRide, kissAndRide,
+                    maxWalkDistance, walkSpeed, bikeSpeed, carSpeed, walkReluctance);
+        }
+    }
+
+    /**
+     * @param search makes the search for the request when it is not in the cache, throwing a
+     *        TimeoutException if it times out.
+     * @return the search from the destination of the request, or null if it timed out.
+     */
+    TargetSearch get(RoutingRequest options, Callable<TargetSearch> search) {
+        try {
+            return cache.get(new Key(options), search);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                LOG.debug("Search from {} timed out, not cached.", options.rctx.target);
+                return null;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+}
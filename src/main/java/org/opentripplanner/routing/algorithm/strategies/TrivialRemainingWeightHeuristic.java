@@ -57,4 +57,9 @@ public class TrivialRemainingWeightHeuristic implements RemainingWeightHeuristic
     
     @Override
     public void doSomeWork() {}
+
+    @Override
+    public RemainingWeightHeuristic copyForConcurrentSearch() {
+        return this; // no state
+    }
 }
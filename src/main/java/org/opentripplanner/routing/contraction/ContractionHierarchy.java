@@ -0,0 +1,447 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A contraction hierarchy of the street network for one routing profile (a mode and the options
+ * that determine edge weights). Vertices are ranked, and shortcut arcs are added so that the
+ * shortest path between any two vertices can be found by two small Dijkstra searches that only
+ * ever move up in rank, one from each end, meeting at the highest vertex of the path. Such a
+ * search settles a few hundred vertices where A* over the street graph settles a large part of
+ * it, which makes long non-transit trips orders of magnitude faster.
+ *
+ * Arcs are stored in a table: each is either an original edge or a shortcut standing for two
+ * other arcs, which is how paths are unpacked back into edges. The arcs leaving each vertex
+ * upward and those entering it from above are stored in compressed sparse row form.
+ *
+ * Weights are those of traversing each edge alone, so turn costs and turn restrictions are not
+ * part of the hierarchy. The edges of a path found in the hierarchy are traversed again with the
+ * request options to build the States of the returned path, which applies them: the weight
+ * reported is the real one, but a path with many turns may be slightly worse than the one A*
+ * would have found, and a path that breaks a turn restriction is rejected.
+ *
+ * The hierarchy refers to vertices and edges as objects, not by index, because vertex indexes
+ * are reassigned when a graph is loaded. Built by ContractionHierarchyBuilder.
+ */
+public class ContractionHierarchy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Arc weights are integers, in thousandths of a unit of State weight. */
+    static final double WEIGHT_SCALE = 1000.0;
+
+    static final int INFINITY = Integer.MAX_VALUE;
+
+    /** Bounds the searches that link temporary endpoint vertices to the hierarchy. */
+    private static final int MAX_ACCESS_VERTICES = 100;
+
+    /**
+     * The options defining the weight of each edge. Bike switch costs are zeroed, they only
+     * depend on the previous edge and are applied when the path is traversed again.
+     */
+    public final RoutingRequest options;
+
+    /** The vertices of the hierarchy, by node number. */
+    final Vertex[] vertices;
+
+    /** Contraction rank of each node, higher ranks were contracted later. */
+    final int[] rank;
+
+    /** The original edges referred to by arcs. */
+    final Edge[] edges;
+
+    /* Arcs, by arc number. */
+
+    final int[] arcFrom;
+
+    final int[] arcTo;
+
+    final int[] arcWeight;
+
+    /** Index in edges of the edge this arc stands for, -1 for a shortcut. */
+    final int[] arcEdge;
+
+    /** The first half of a shortcut, -1 for an original edge. */
+    final int[] arcChild1;
+
+    /** The second half of a shortcut, -1 for an original edge. */
+    final int[] arcChild2;
+
+    /* Arcs leaving each node towards a higher ranked node, and entering it from one. */
+
+    final int[] upStart;
+
+    final int[] upArcs;
+
+    final int[] downStart;
+
+    final int[] downArcs;
+
+    /** The node number of each vertex, by Vertex.getIndex(). Rebuilt after deserialization. */
+    private transient int[] nodeForIndex;
+
+    ContractionHierarchy(RoutingRequest options, Vertex[] vertices, int[] rank, Edge[] edges,
+            int[] arcFrom, int[] arcTo, int[] arcWeight, int[] arcEdge, int[] arcChild1,
+            int[] arcChild2) {
+        this.options = options;
+        this.vertices = vertices;
+        this.rank = rank;
+        this.edges = edges;
+        this.arcFrom = arcFrom;
+        this.arcTo = arcTo;
+        this.arcWeight = arcWeight;
+        this.arcEdge = arcEdge;
+        this.arcChild1 = arcChild1;
+        this.arcChild2 = arcChild2;
+        int nNodes = vertices.length;
+        upStart = new int[nNodes + 1];
+        downStart = new int[nNodes + 1];
+        int nUp = 0, nDown = 0;
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (arcFrom[a] == arcTo[a])
+                continue;
+            if (rank[arcTo[a]] > rank[arcFrom[a]]) {
+                upStart[arcFrom[a] + 1]++;
+                nUp++;
+            } else {
+                downStart[arcTo[a] + 1]++;
+                nDown++;
+            }
+        }
+        for (int n = 0; n < nNodes; n++) {
+            upStart[n + 1] += upStart[n];
+            downStart[n + 1] += downStart[n];
+        }
+        upArcs = new int[nUp];
+        downArcs = new int[nDown];
+        int[] upFill = Arrays.copyOf(upStart, nNodes);
+        int[] downFill = Arrays.copyOf(downStart, nNodes);
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (arcFrom[a] == arcTo[a])
+                continue;
+            if (rank[arcTo[a]] > rank[arcFrom[a]])
+                upArcs[upFill[arcFrom[a]]++] = a;
+            else
+                downArcs[downFill[arcTo[a]]++] = a;
+        }
+    }
+
+    public int getNodeCount() {
+        return vertices.length;
+    }
+
+    public int getArcCount() {
+        return arcFrom.length;
+    }
+
+    /** @return true if the given vertex belongs in a hierarchy of the street network. */
+    static boolean isNode(Vertex v) {
+        return v instanceof StreetVertex && !(v instanceof TemporaryVertex);
+    }
+
+    /** @return the node number of the given vertex, or -1 if it is not part of this hierarchy. */
+    public int getNode(Vertex v) {
+        int[] table = nodeForIndex;
+        if (table == null)
+            table = indexNodes();
+        int index = v.getIndex();
+        if (index >= table.length)
+            return -1;
+        int node = table[index];
+        return (node >= 0 && vertices[node] == v) ? node : -1;
+    }
+
+    private synchronized int[] indexNodes() {
+        if (nodeForIndex == null) {
+            int maxIndex = 0;
+            for (Vertex v : vertices)
+                maxIndex = Math.max(maxIndex, v.getIndex());
+            int[] table = new int[maxIndex + 1];
+            Arrays.fill(table, -1);
+            for (int n = 0; n < vertices.length; n++)
+                table[vertices[n].getIndex()] = n;
+            nodeForIndex = table;
+        }
+        return nodeForIndex;
+    }
+
+    /**
+     * @return true if the given request can be answered with this hierarchy: a street-only trip
+     *         in the mode of this hierarchy, with all the options that influence edge weights set
+     *         as when it was built.
+     */
+    public boolean accepts(RoutingRequest req) {
+        if (req.modes.getMask() != options.modes.getMask())
+            return false;
+        if (req.wheelchairAccessible || req.parkAndRide || req.kissAndRide
+                || req.bikeParkAndRide || req.allowBikeRental || req.batch
+                || req.startingTransitTripId != null
+                || (req.intermediatePlaces != null && !req.intermediatePlaces.isEmpty()))
+            return false;
+        if (req.walkReluctance != options.walkReluctance
+                || req.stairsReluctance != options.stairsReluctance)
+            return false;
+        TraverseMode mode = req.modes.getModes().get(0);
+        switch (mode) {
+        case WALK:
+            return req.walkSpeed == options.walkSpeed
+                    && req.elevatorBoardCost == options.elevatorBoardCost
+                    && req.elevatorHopCost == options.elevatorHopCost;
+        case BICYCLE:
+            return req.bikeSpeed == options.bikeSpeed && req.optimize == options.optimize
+                    && req.optimize != OptimizeType.TRIANGLE
+                    && req.bikeWalkingOptions.walkSpeed == options.bikeWalkingOptions.walkSpeed
+                    && req.bikeWalkingOptions.walkReluctance == options.bikeWalkingOptions.walkReluctance;
+        case CAR:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Find the path of the given request in this hierarchy. The request must have a routing
+     * context and must be accepted by this hierarchy.
+     *
+     * @return the path, or null if none was found or if the path found could not be traversed
+     *         with the request options (because of a turn restriction, the walk limit or the path
+     *         parsers), in which case the request should be answered by a full search.
+     */
+    public GraphPath getPath(RoutingRequest req) {
+        RoutingContext rctx = req.rctx;
+        Vertex from = rctx.fromVertex;
+        Vertex to = rctx.toVertex;
+        if (from == null || to == null)
+            return null;
+        Map<Vertex, Access> forwardAccess = access(rctx, from, to, false);
+        Map<Vertex, Access> backwardAccess = access(rctx, to, from, true);
+        if (forwardAccess == null || backwardAccess == null)
+            return null; // the endpoints are linked without going through the hierarchy
+        List<Edge> path = search(forwardAccess, backwardAccess);
+        if (path == null)
+            return null;
+        State state = new State(req);
+        if (req.arriveBy)
+            Collections.reverse(path);
+        for (Edge e : path) {
+            state = e.traverse(state);
+            if (state == null)
+                return null;
+        }
+        if (state.getVertex() != rctx.target || !state.allPathParsersAccept())
+            return null;
+        if (!req.modes.getDriving() && state.getWalkDistance() > req.getMaxWalkDistance())
+            return null; // A* could have traded weight for less walking
+        return new GraphPath(state, false);
+    }
+
+    /** How a node of the hierarchy is reached from (or reaches) one endpoint of a request. */
+    private static class Access {
+
+        final int weight;
+
+        /** The edges from the endpoint to the node, in traversal order. */
+        final List<Edge> edges;
+
+        Access(int weight, List<Edge> edges) {
+            this.weight = weight;
+            this.edges = edges;
+        }
+    }
+
+    /**
+     * Find the nodes of the hierarchy nearest to an endpoint, following temporary edges and
+     * other vertices that are not nodes.
+     *
+     * @return the nodes reached, or null if the other endpoint can be reached this way.
+     */
+    private Map<Vertex, Access> access(RoutingContext rctx, Vertex endpoint, Vertex other,
+            boolean backward) {
+        Map<Vertex, Access> ret = new HashMap<Vertex, Access>();
+        if (getNode(endpoint) >= 0) {
+            ret.put(endpoint, new Access(0, Collections.<Edge> emptyList()));
+            return ret;
+        }
+        Map<Vertex, Access> reached = new HashMap<Vertex, Access>();
+        BinHeap<Vertex> queue = new BinHeap<Vertex>();
+        reached.put(endpoint, new Access(0, Collections.<Edge> emptyList()));
+        queue.insert(endpoint, 0);
+        int nExpanded = 0;
+        while (!queue.empty() && nExpanded++ < MAX_ACCESS_VERTICES) {
+            double key = queue.peek_min_key();
+            Vertex v = queue.extract_min();
+            Access current = reached.get(v);
+            if (key > current.weight)
+                continue;
+            for (Edge e : backward ? rctx.getIncoming(v) : rctx.getOutgoing(v)) {
+                Vertex u = backward ? e.getFromVertex() : e.getToVertex();
+                if (u == other)
+                    return null;
+                int w = weight(e, options);
+                if (w == INFINITY)
+                    continue;
+                List<Edge> edges = Lists.newArrayList();
+                if (backward) {
+                    edges.add(e);
+                    edges.addAll(current.edges);
+                } else {
+                    edges.addAll(current.edges);
+                    edges.add(e);
+                }
+                Access access = new Access(current.weight + w, edges);
+                boolean node = getNode(u) >= 0;
+                Map<Vertex, Access> target = node ? ret : reached;
+                Access existing = target.get(u);
+                if (existing == null || existing.weight > access.weight) {
+                    target.put(u, access);
+                    if (!node)
+                        queue.insert(u, access.weight);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Bidirectional upward search between the access nodes of both endpoints.
+     *
+     * @return the edges of the shortest path, in traversal order, or null if there is none.
+     */
+    private List<Edge> search(Map<Vertex, Access> forwardAccess, Map<Vertex, Access> backwardAccess) {
+        TIntIntMap[] dist = new TIntIntMap[] { new TIntIntHashMap(), new TIntIntHashMap() };
+        TIntIntMap[] parent = new TIntIntMap[] { new TIntIntHashMap(), new TIntIntHashMap() };
+        @SuppressWarnings("unchecked")
+        BinHeap<Integer>[] queue = new BinHeap[] { new BinHeap<Integer>(), new BinHeap<Integer>() };
+        List<Map<Vertex, Access>> accesses = Lists.newArrayList(forwardAccess, backwardAccess);
+        for (int dir = 0; dir < 2; dir++) {
+            for (Map.Entry<Vertex, Access> entry : accesses.get(dir).entrySet()) {
+                int node = getNode(entry.getKey());
+                dist[dir].put(node, entry.getValue().weight);
+                parent[dir].put(node, -1);
+                queue[dir].insert(node, entry.getValue().weight);
+            }
+        }
+        int best = INFINITY;
+        int meeting = -1;
+        while (true) {
+            int dir;
+            boolean forwardDone = queue[0].empty() || queue[0].peek_min_key() >= best;
+            boolean backwardDone = queue[1].empty() || queue[1].peek_min_key() >= best;
+            if (forwardDone && backwardDone)
+                break;
+            else if (forwardDone)
+                dir = 1;
+            else if (backwardDone)
+                dir = 0;
+            else
+                dir = queue[0].peek_min_key() <= queue[1].peek_min_key() ? 0 : 1;
+            int d = (int) queue[dir].peek_min_key();
+            int node = queue[dir].extract_min();
+            if (d > dist[dir].get(node))
+                continue; // already settled with a lower weight
+            if (dist[1 - dir].containsKey(node)) {
+                long total = (long) d + dist[1 - dir].get(node);
+                if (total < best) {
+                    best = (int) total;
+                    meeting = node;
+                }
+            }
+            int start = dir == 0 ? upStart[node] : downStart[node];
+            int end = dir == 0 ? upStart[node + 1] : downStart[node + 1];
+            for (int i = start; i < end; i++) {
+                int arc = dir == 0 ? upArcs[i] : downArcs[i];
+                int next = dir == 0 ? arcTo[arc] : arcFrom[arc];
+                long nd = (long) d + arcWeight[arc];
+                if (nd >= INFINITY)
+                    continue;
+                if (!dist[dir].containsKey(next) || nd < dist[dir].get(next)) {
+                    dist[dir].put(next, (int) nd);
+                    parent[dir].put(next, arc);
+                    queue[dir].insert(next, nd);
+                }
+            }
+        }
+        if (meeting < 0)
+            return null;
+        // walk back to the access node on each side, unpacking shortcuts on the way
+        List<Edge> forward = Lists.newArrayList();
+        int node = meeting;
+        for (int arc = parent[0].get(node); arc >= 0; arc = parent[0].get(node)) {
+            unpack(arc, forward, true);
+            node = arcFrom[arc];
+        }
+        Collections.reverse(forward);
+        List<Edge> path = Lists.newArrayList(forwardAccess.get(vertices[node]).edges);
+        path.addAll(forward);
+        node = meeting;
+        for (int arc = parent[1].get(node); arc >= 0; arc = parent[1].get(node)) {
+            unpack(arc, path, false);
+            node = arcTo[arc];
+        }
+        path.addAll(backwardAccess.get(vertices[node]).edges);
+        return path;
+    }
+
+    /** Append the edges of an arc to a list, in traversal order or in reverse order. */
+    private void unpack(int arc, List<Edge> out, boolean reverse) {
+        if (arcEdge[arc] >= 0) {
+            out.add(edges[arcEdge[arc]]);
+        } else if (reverse) {
+            unpack(arcChild2[arc], out, true);
+            unpack(arcChild1[arc], out, true);
+        } else {
+            unpack(arcChild1[arc], out, false);
+            unpack(arcChild2[arc], out, false);
+        }
+    }
+
+    /**
+     * @return the weight of traversing the given edge alone with the given options, in arc weight
+     *         units, or INFINITY if it cannot be traversed.
+     */
+    static int weight(Edge e, RoutingRequest options) {
+        State s1 = e.traverse(new State(e.getFromVertex(), options));
+        if (s1 == null || s1.getVertex() != e.getToVertex())
+            return INFINITY;
+        double weight = s1.getWeight() * WEIGHT_SCALE;
+        if (weight >= INFINITY / 4)
+            return INFINITY;
+        return (int) Math.max(0, Math.round(weight));
+    }
+
+}
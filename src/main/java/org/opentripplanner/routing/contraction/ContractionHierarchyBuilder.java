@@ -0,0 +1,314 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedFourAryHeap;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Builds a ContractionHierarchy of the street network of a graph for one set of routing options.
+ *
+ * Vertices are contracted one at a time, least important first. Contracting a vertex removes it
+ * from the remaining graph, adding a shortcut between two of its neighbours whenever the path
+ * through it was the only shortest one (which is checked by a bounded "witness" search around
+ * the neighbour). Importance is the edge difference (shortcuts added minus arcs removed) plus the
+ * number of neighbours already contracted, which spreads contraction evenly over the graph. It is
+ * updated for the neighbours of each contracted vertex, and lazily when a vertex comes up.
+ */
+public class ContractionHierarchyBuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContractionHierarchyBuilder.class);
+
+    /**
+     * Witness searches give up after settling this many vertices. Giving up early only adds
+     * shortcuts that were not strictly needed, it never loses a shortest path.
+     */
+    private static final int MAX_WITNESS_SETTLED = 500;
+
+    private final RoutingRequest options;
+
+    private final Vertex[] vertices;
+
+    private final Edge[] edges;
+
+    /* Arcs, growing as shortcuts are added. */
+
+    private final TIntArrayList arcFrom = new TIntArrayList();
+
+    private final TIntArrayList arcTo = new TIntArrayList();
+
+    private final TIntArrayList arcWeight = new TIntArrayList();
+
+    private final TIntArrayList arcEdge = new TIntArrayList();
+
+    private final TIntArrayList arcChild1 = new TIntArrayList();
+
+    private final TIntArrayList arcChild2 = new TIntArrayList();
+
+    /* Arcs leaving and entering each node, including arcs to nodes already contracted. */
+
+    private final TIntArrayList[] outArcs;
+
+    private final TIntArrayList[] inArcs;
+
+    private final boolean[] contracted;
+
+    private final int[] contractedNeighbours;
+
+    private final int[] rank;
+
+    /* Witness search state, reset after each search. */
+
+    private final int[] dist;
+
+    private final TIntArrayList touched = new TIntArrayList();
+
+    private final BinHeap<Integer> queue = new BinHeap<Integer>();
+
+    /**
+     * @param options the options defining edge weights, copied and kept by the hierarchy to match
+     *        requests and to weight the edges linking their endpoints at query time.
+     */
+    public ContractionHierarchyBuilder(Graph graph, RoutingRequest options) {
+        this.options = options.clone();
+        this.options.rctx = null;
+        this.options.bikeSwitchTime = this.options.bikeWalkingOptions.bikeSwitchTime = 0;
+        this.options.bikeSwitchCost = this.options.bikeWalkingOptions.bikeSwitchCost = 0;
+        List<Vertex> vertexList = Lists.newArrayList();
+        TObjectIntMap<Vertex> nodes = new TObjectIntHashMap<Vertex>(1000, 0.5f, -1);
+        for (Vertex v : graph.getVertices()) {
+            if (ContractionHierarchy.isNode(v)) {
+                nodes.put(v, vertexList.size());
+                vertexList.add(v);
+            }
+        }
+        int nNodes = vertexList.size();
+        vertices = vertexList.toArray(new Vertex[nNodes]);
+        outArcs = new TIntArrayList[nNodes];
+        inArcs = new TIntArrayList[nNodes];
+        for (int n = 0; n < nNodes; n++) {
+            outArcs[n] = new TIntArrayList(4);
+            inArcs[n] = new TIntArrayList(4);
+        }
+        List<Edge> edgeList = Lists.newArrayList();
+        for (int n = 0; n < nNodes; n++) {
+            for (Edge e : vertices[n].getOutgoing()) {
+                if (e instanceof TemporaryEdge)
+                    continue;
+                int to = nodes.get(e.getToVertex());
+                if (to < 0)
+                    continue;
+                int weight = ContractionHierarchy.weight(e, this.options);
+                if (weight == ContractionHierarchy.INFINITY)
+                    continue;
+                if (addArc(n, to, weight, edgeList.size(), -1, -1))
+                    edgeList.add(e);
+            }
+        }
+        edges = edgeList.toArray(new Edge[edgeList.size()]);
+        contracted = new boolean[nNodes];
+        contractedNeighbours = new int[nNodes];
+        rank = new int[nNodes];
+        dist = new int[nNodes];
+        Arrays.fill(dist, ContractionHierarchy.INFINITY);
+    }
+
+    public ContractionHierarchy build() {
+        long start = System.currentTimeMillis();
+        int nNodes = vertices.length;
+        int nOriginal = arcFrom.size();
+        IndexedFourAryHeap<Integer> order = new IndexedFourAryHeap<Integer>(nNodes, nNodes);
+        for (int n = 0; n < nNodes; n++)
+            order.insert_or_dec_key(n, n, priority(n));
+        int nextRank = 0;
+        while (!order.empty()) {
+            int node = order.extract_min();
+            // lazy update: contract later if the priority has increased past the next one
+            double priority = priority(node);
+            if (!order.empty() && priority > order.peek_min_key()) {
+                order.insert_or_dec_key(node, node, priority);
+                continue;
+            }
+            contract(node, false);
+            contracted[node] = true;
+            rank[node] = nextRank++;
+            TIntSet neighbours = new TIntHashSet();
+            for (int i = 0; i < outArcs[node].size(); i++)
+                neighbours.add(arcTo.get(outArcs[node].get(i)));
+            for (int i = 0; i < inArcs[node].size(); i++)
+                neighbours.add(arcFrom.get(inArcs[node].get(i)));
+            for (int neighbour : neighbours.toArray()) {
+                if (contracted[neighbour])
+                    continue;
+                contractedNeighbours[neighbour]++;
+                if (order.contains(neighbour))
+                    order.insert_or_dec_key(neighbour, neighbour, priority(neighbour));
+            }
+            if (nextRank % 100000 == 0)
+                LOG.info("Contracted {} of {} vertices...", nextRank, nNodes);
+        }
+        LOG.info("Contraction hierarchy of {} vertices built in {} msec, {} arcs and {} shortcuts.",
+                nNodes, System.currentTimeMillis() - start, nOriginal, arcFrom.size() - nOriginal);
+        return new ContractionHierarchy(options, vertices, rank, edges, arcFrom.toArray(),
+                arcTo.toArray(), arcWeight.toArray(), arcEdge.toArray(), arcChild1.toArray(),
+                arcChild2.toArray());
+    }
+
+    private double priority(int node) {
+        int degree = 0;
+        for (int i = 0; i < outArcs[node].size(); i++)
+            if (!contracted[arcTo.get(outArcs[node].get(i))])
+                degree++;
+        for (int i = 0; i < inArcs[node].size(); i++)
+            if (!contracted[arcFrom.get(inArcs[node].get(i))])
+                degree++;
+        return contract(node, true) - degree + contractedNeighbours[node];
+    }
+
+    /**
+     * Add the shortcuts needed to remove the given node from the remaining graph, or only count
+     * them if simulate is true.
+     *
+     * @return the number of shortcuts.
+     */
+    private int contract(int node, boolean simulate) {
+        int nShortcuts = 0;
+        TIntArrayList in = inArcs[node];
+        TIntArrayList out = outArcs[node];
+        for (int i = 0; i < in.size(); i++) {
+            int inArc = in.get(i);
+            int source = arcFrom.get(inArc);
+            if (contracted[source] || source == node)
+                continue;
+            int maxWeight = 0;
+            for (int j = 0; j < out.size(); j++) {
+                int target = arcTo.get(out.get(j));
+                if (!contracted[target] && target != source && target != node)
+                    maxWeight = Math.max(maxWeight, arcWeight.get(out.get(j)));
+            }
+            if (maxWeight == 0)
+                continue; // no other neighbour to connect to
+            maxWeight = saturatedSum(maxWeight, arcWeight.get(inArc));
+            witnessSearch(source, node, maxWeight);
+            for (int j = 0; j < out.size(); j++) {
+                int outArc = out.get(j);
+                int target = arcTo.get(outArc);
+                if (contracted[target] || target == source || target == node)
+                    continue;
+                int via = saturatedSum(arcWeight.get(inArc), arcWeight.get(outArc));
+                if (dist[target] <= via)
+                    continue; // a path at least as short avoids this node
+                nShortcuts++;
+                if (!simulate)
+                    addArc(source, target, via, -1, inArc, outArc);
+            }
+            clearWitnessSearch();
+        }
+        return nShortcuts;
+    }
+
+    /** Dijkstra from source in the remaining graph without the excluded node, up to maxWeight. */
+    private void witnessSearch(int source, int excluded, int maxWeight) {
+        dist[source] = 0;
+        touched.add(source);
+        queue.insert(source, 0);
+        int nSettled = 0;
+        while (!queue.empty()) {
+            int d = (int) queue.peek_min_key();
+            int node = queue.extract_min();
+            if (d > dist[node])
+                continue;
+            if (d > maxWeight || ++nSettled > MAX_WITNESS_SETTLED)
+                break;
+            TIntArrayList out = outArcs[node];
+            for (int i = 0; i < out.size(); i++) {
+                int arc = out.get(i);
+                int next = arcTo.get(arc);
+                if (contracted[next] || next == excluded)
+                    continue;
+                int nd = saturatedSum(d, arcWeight.get(arc));
+                if (nd < dist[next]) {
+                    if (dist[next] == ContractionHierarchy.INFINITY)
+                        touched.add(next);
+                    dist[next] = nd;
+                    queue.insert(next, nd);
+                }
+            }
+        }
+    }
+
+    private void clearWitnessSearch() {
+        for (int i = 0; i < touched.size(); i++)
+            dist[touched.get(i)] = ContractionHierarchy.INFINITY;
+        touched.resetQuick();
+        queue.reset();
+    }
+
+    /**
+     * Add an arc, unless an arc at most as heavy already connects the same nodes. A heavier one
+     * is replaced in place: an arc between two nodes that are not contracted yet is never part of
+     * a shortcut, so nothing refers to it.
+     *
+     * @return true if the arc was added or replaced an existing one.
+     */
+    private boolean addArc(int from, int to, int weight, int edge, int child1, int child2) {
+        TIntArrayList out = outArcs[from];
+        for (int i = 0; i < out.size(); i++) {
+            int arc = out.get(i);
+            if (arcTo.get(arc) == to) {
+                if (arcWeight.get(arc) <= weight)
+                    return false;
+                arcWeight.set(arc, weight);
+                arcEdge.set(arc, edge);
+                arcChild1.set(arc, child1);
+                arcChild2.set(arc, child2);
+                return true;
+            }
+        }
+        int arc = arcFrom.size();
+        arcFrom.add(from);
+        arcTo.add(to);
+        arcWeight.add(weight);
+        arcEdge.add(edge);
+        arcChild1.add(child1);
+        arcChild2.add(child2);
+        out.add(arc);
+        inArcs[to].add(arc);
+        return true;
+    }
+
+    private static int saturatedSum(int a, int b) {
+        long sum = (long) a + b;
+        return sum >= ContractionHierarchy.INFINITY ? ContractionHierarchy.INFINITY : (int) sum;
+    }
+
+}
@@ -0,0 +1,42 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The contraction hierarchies built for a graph, one per routing profile. Stored in the graph as
+ * a service, so it is saved and loaded along with it.
+ */
+public class ContractionHierarchySet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final List<ContractionHierarchy> hierarchies = Lists.newArrayList();
+
+    /** @return the first hierarchy that can answer the given request, or null if there is none. */
+    public ContractionHierarchy getHierarchy(RoutingRequest options) {
+        for (ContractionHierarchy hierarchy : hierarchies) {
+            if (hierarchy.accepts(options))
+                return hierarchy;
+        }
+        return null;
+    }
+
+}
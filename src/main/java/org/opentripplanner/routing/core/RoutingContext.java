@@ -21,6 +21,7 @@ import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.onebusaway.gtfs.services.calendar.CalendarService;
 import org.opentripplanner.api.resource.DebugOutput;
 import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.algorithm.strategies.LandmarkRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
 import org.opentripplanner.routing.edgetype.StreetEdge;
@@ -33,6 +34,7 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.impl.DefaultRemainingWeightHeuristicFactoryImpl;
+import org.opentripplanner.routing.landmarks.LandmarkSet;
 import org.opentripplanner.routing.location.StreetLocation;
 import org.opentripplanner.routing.location.TemporaryStreetLocation;
 import org.opentripplanner.routing.pathparser.PathParser;
@@ -46,9 +48,11 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -121,6 +125,14 @@ public class RoutingContext implements Cloneable {
 
     /** Indicates that the search timed out or was otherwise aborted. */
     public boolean aborted;
+
+    /**
+     * The temporary edges linking the temporary endpoint vertices of this request to permanent
+     * vertices, attached to the permanent vertices. Temporary edges are not added to the edge lists
+     * of permanent vertices, so concurrent requests do not modify the shared graph. Searches see
+     * them by expanding vertices through getOutgoing() and getIncoming().
+     */
+    public final OverlayGraph temporaryEdges = new OverlayGraph();
     
     /* CONSTRUCTORS */
 
@@ -278,12 +290,17 @@ public class RoutingContext implements Cloneable {
             TransitStop tstop = graph.index.stopVertexForStop.get(stop);
             startingStop = tstop.departVertex;
         }
+        addTemporaryEdges(fromVertex);
+        addTemporaryEdges(toVertex);
         origin = opt.arriveBy ? toVertex : fromVertex;
         originBackEdge = opt.arriveBy ? toBackEdge : fromBackEdge;
         target = opt.arriveBy ? fromVertex : toVertex;
         transferTable = graph.getTransferTable();
         if (opt.batch)
             remainingWeightHeuristic = new TrivialRemainingWeightHeuristic();
+        else if (graph.hasService(LandmarkSet.class))
+            remainingWeightHeuristic = new LandmarkRemainingWeightHeuristic.Factory(
+                    graph.getService(LandmarkSet.class)).getInstanceForSearch(opt);
         else
             remainingWeightHeuristic = heuristicFactory.getInstanceForSearch(opt);
 
@@ -299,8 +316,79 @@ public class RoutingContext implements Cloneable {
         }
     }
 
+    /**
+     * Add the temporary edges between the given temporary vertex and permanent vertices to the
+     * overlay, on the permanent side.
+     */
+    private void addTemporaryEdges(Vertex v) {
+        if (!(v instanceof TemporaryVertex))
+            return;
+        for (Edge e : v.getOutgoing()) {
+            if (!(e.getToVertex() instanceof TemporaryVertex))
+                temporaryEdges.addIncoming(e.getToVertex(), e);
+        }
+        for (Edge e : v.getIncoming()) {
+            if (!(e.getFromVertex() instanceof TemporaryVertex))
+                temporaryEdges.addOutgoing(e.getFromVertex(), e);
+        }
+    }
+
     /* INSTANCE METHODS */
 
+    /**
+     * Make a context for another search of the same trip (e.g. with some trips banned) that may
+     * run at the same time as the searches using this one. The endpoints, temporary edges and
+     * service days are shared; the abort flag and the debug output are not, nor the heuristic,
+     * which holds per-search state but reuses what was precomputed for the request. Only this
+     * context should be destroyed.
+     */
+    public RoutingContext concurrentCopy(RoutingRequest options) {
+        RoutingContext ret;
+        try {
+            ret = (RoutingContext) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e); // we implement Cloneable
+        }
+        ret.opt = options;
+        ret.remainingWeightHeuristic = remainingWeightHeuristic.copyForConcurrentSearch();
+        ret.pathParsers = pathParsers.clone();
+        ret.debugOutput = new DebugOutput();
+        ret.aborted = false;
+        return ret;
+    }
+
+    /**
+     * @return the edges leaving the given vertex in this request: those of the graph, from its
+     *         frozen adjacency if available, plus the temporary edges of this request.
+     */
+    public Collection<Edge> getOutgoing(Vertex v) {
+        Collection<Edge> edges = graph.adjacency == null ? v.getOutgoing() : graph.adjacency
+                .getOutgoing(v);
+        List<Edge> extra = temporaryEdges.getOutgoing(v);
+        if (extra.isEmpty())
+            return edges;
+        List<Edge> ret = new ArrayList<Edge>(edges.size() + extra.size());
+        ret.addAll(edges);
+        ret.addAll(extra);
+        return ret;
+    }
+
+    /**
+     * @return the edges entering the given vertex in this request: those of the graph, from its
+     *         frozen adjacency if available, plus the temporary edges of this request.
+     */
+    public Collection<Edge> getIncoming(Vertex v) {
+        Collection<Edge> edges = graph.adjacency == null ? v.getIncoming() : graph.adjacency
+                .getIncoming(v);
+        List<Edge> extra = temporaryEdges.getIncoming(v);
+        if (extra.isEmpty())
+            return edges;
+        List<Edge> ret = new ArrayList<Edge>(edges.size() + extra.size());
+        ret.addAll(edges);
+        ret.addAll(extra);
+        return ret;
+    }
+
     public void check() {
         ArrayList<String> notFound = new ArrayList<String>();
 
@@ -344,12 +432,18 @@ public class RoutingContext implements Cloneable {
         }
 
         for (String agency : graph.getAgencyIds()) {
-            addIfNotExists(this.serviceDays, new ServiceDay(graph, serviceDate.previous(),
-                    calendarService, agency));
-            addIfNotExists(this.serviceDays, new ServiceDay(graph, serviceDate, calendarService, agency));
-            addIfNotExists(this.serviceDays, new ServiceDay(graph, serviceDate.next(),
-                    calendarService, agency));
+            addIfNotExists(this.serviceDays, serviceDay(serviceDate.previous(), agency));
+            addIfNotExists(this.serviceDays, serviceDay(serviceDate, agency));
+            addIfNotExists(this.serviceDays, serviceDay(serviceDate.next(), agency));
+        }
+    }
+
+    /** ServiceDays from the graph's calendar are shared between requests. */
+    private ServiceDay serviceDay(ServiceDate serviceDate, String agency) {
+        if (calendarService != null && calendarService == graph.getCalendarService()) {
+            return graph.getServiceDay(serviceDate, agency);
         }
+        return new ServiceDay(graph, serviceDate, calendarService, agency);
     }
 
     private static <T> void addIfNotExists(ArrayList<T> list, T item) {
@@ -379,7 +473,8 @@ public class RoutingContext implements Cloneable {
     }
 
     /**
-     * Tear down this routing context, removing any temporary edges.
+     * Tear down this routing context, releasing any temporary edges. The graph itself was not
+     * modified by this request.
      */
     public void destroy() {
         if (origin instanceof TemporaryVertex) ((TemporaryVertex) origin).dispose();
@@ -37,6 +37,8 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.request.BannedStopSet;
+import org.opentripplanner.routing.request.TransitFilter;
+import org.opentripplanner.routing.vertextype.TransitVertex;
 import org.opentripplanner.util.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -372,6 +374,13 @@ public class RoutingRequest implements Cloneable, Serializable {
      */
     public RoutingContext rctx;
 
+    /**
+     * The bans and route preferences above compiled against the graph index, for bit tests during
+     * routing. Built by compileTransitFilter at the start of a search; null if that has not
+     * happened or the graph has no index, in which case the fields above are consulted directly.
+     */
+    public transient TransitFilter transitFilter;
+
     /** A transit stop that this trip must start from */
     public AgencyAndId startingTransitStopId;
     
@@ -797,6 +806,7 @@ public class RoutingRequest implements Cloneable, Serializable {
             clone.bannedTrips = (HashMap<AgencyAndId, BannedStopSet>) bannedTrips.clone();
             clone.bannedStops = bannedStops.clone();
             clone.bannedStopsHard = bannedStopsHard.clone();
+            clone.transitFilter = null;
             if (this.bikeWalkingOptions != this)
                 clone.bikeWalkingOptions = this.bikeWalkingOptions.clone();
             else
@@ -1121,6 +1131,43 @@ public class RoutingRequest implements Cloneable, Serializable {
         }
     }
 
+    /**
+     * Compile the trip, route, agency and stop restrictions of this request against the index of
+     * the routing context's graph. Search algorithms call this once before they start, as changes
+     * to the restrictions are not seen by an existing filter.
+     */
+    public void compileTransitFilter() {
+        if (rctx == null || rctx.graph == null || rctx.graph.index == null) {
+            transitFilter = null;
+        } else {
+            transitFilter = new TransitFilter(this, rctx.graph.index);
+        }
+    }
+
+    /** @return true if any preferred or unpreferred routes or agencies are set. */
+    public boolean hasRoutePreferences() {
+        return (preferredRoutes != null && !preferredRoutes.equals(RouteMatcher.emptyMatcher()))
+                || (preferredAgencies != null && !preferredAgencies.isEmpty())
+                || (unpreferredRoutes != null && !unpreferredRoutes.equals(RouteMatcher.emptyMatcher()))
+                || (unpreferredAgencies != null && !unpreferredAgencies.isEmpty());
+    }
+
+    /** @return true if the stop at the given vertex is banned (see bannedStops). */
+    public boolean stopIsBanned(TransitVertex vertex) {
+        if (transitFilter != null && vertex.stopIndex >= 0) {
+            return transitFilter.stopBanned(vertex.stopIndex);
+        }
+        return bannedStops.matches(vertex.getStop());
+    }
+
+    /** @return true if the stop at the given vertex is banned hard (see bannedStopsHard). */
+    public boolean stopIsBannedHard(TransitVertex vertex) {
+        if (transitFilter != null && vertex.stopIndex >= 0) {
+            return transitFilter.stopBannedHard(vertex.stopIndex);
+        }
+        return bannedStopsHard.matches(vertex.getStop());
+    }
+
     public void banTrip(AgencyAndId trip) {
         bannedTrips.put(trip, BannedStopSet.ALL);
     }
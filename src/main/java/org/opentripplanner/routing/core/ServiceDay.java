@@ -77,6 +77,14 @@ public class ServiceDay implements Serializable {
         return this.serviceIdsRunning.get(serviceCode);
     }
 
+    /**
+     * Do the same services run on this ServiceDay and the given one? Days with the same services
+     * (e.g. all regular weekdays) have the same active trips, which lets per-day data be shared.
+     */
+    public boolean sameServicesAs(ServiceDay other) {
+        return other == this || this.serviceIdsRunning.equals(other.serviceIdsRunning);
+    }
+
     /** Do any of the services for this set of service codes run on this ServiceDay? */
     public boolean anyServiceRunning(BitSet serviceCodes) {
         return this.serviceIdsRunning.intersects(serviceCodes);
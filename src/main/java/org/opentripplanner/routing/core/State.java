@@ -65,6 +65,13 @@ public class State implements Cloneable {
     // The time traveled pre-transit, for park and ride or kiss and ride searches
     int preTransitTime;
 
+    // The mode that was used to traverse the backEdge. This and backWalkingBike change from one
+    // street edge to the next in bike searches, so they live here rather than in StateData, which
+    // would otherwise be copied at each change.
+    protected TraverseMode backMode;
+
+    protected boolean backWalkingBike;
+
     // track the states of all path parsers -- probably changes frequently
     protected int[] pathParserStates;
     
@@ -373,11 +380,11 @@ public class State implements Cloneable {
     }
     
     public TraverseMode getBackMode () {
-        return stateData.backMode;
+        return backMode;
     }
     
     public boolean isBackWalkingBike () {
-        return stateData.backWalkingBike;
+        return backWalkingBike;
     }
 
     /**
@@ -585,7 +592,8 @@ public class State implements Cloneable {
     public boolean multipleOptionsBefore() {
         boolean foundAlternatePaths = false;
         TraverseMode requestedMode = getNonTransitMode();
-        for (Edge out : backState.vertex.getOutgoing()) {
+        RoutingContext rctx = getContext();
+        for (Edge out : rctx == null ? backState.vertex.getOutgoing() : rctx.getOutgoing(backState.vertex)) {
             if (out == backEdge) {
                 continue;
             }
@@ -607,7 +615,7 @@ public class State implements Cloneable {
             //now, from here, try a continuing path.
             Vertex tov = outState.getVertex();
             boolean found = false;
-            for (Edge out2 : tov.getOutgoing()) {
+            for (Edge out2 : rctx == null ? tov.getOutgoing() : rctx.getOutgoing(tov)) {
                 State outState2 = out2.traverse(outState);
                 if (outState2 != null && !outState2.getBackMode().equals(requestedMode)) {
                     // walking a bike, so, not really an exit
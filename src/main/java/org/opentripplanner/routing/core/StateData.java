@@ -25,7 +25,8 @@ import org.opentripplanner.routing.trippattern.TripTimes;
 /**
  * StateData contains the components of search state that are unlikely to be changed as often as
  * time or weight. This avoids frequent duplication, which should have a positive impact on both
- * time and space use during searches.
+ * time and space use during searches. Street traversals that do not board, alight, rent or park
+ * leave it untouched, so all the states of a street-only search share a single StateData.
  */
 public class StateData implements Cloneable {
 
@@ -85,13 +86,6 @@ public class StateData implements Cloneable {
      */
     protected int lastNextArrivalDelta;
 
-    /**
-     * The mode that was used to traverse the backEdge
-     */
-    protected TraverseMode backMode;
-
-    protected boolean backWalkingBike;
-
     public Set<String> bikeRentalNetworks;
 
     public StateData(RoutingRequest options) {
@@ -278,19 +278,11 @@ public class StateEditor {
     }
     
     public void setBackMode(TraverseMode mode) {
-        if (mode == child.stateData.backMode)
-            return;
-        
-        cloneStateDataAsNeeded();
-        child.stateData.backMode = mode;
+        child.backMode = mode;
     }
 
     public void setBackWalkingBike (boolean walkingBike) {
-        if (walkingBike == child.stateData.backWalkingBike)
-            return;
-        
-        cloneStateDataAsNeeded();
-        child.stateData.backWalkingBike = walkingBike;
+        child.backWalkingBike = walkingBike;
     }
 
     /** 
@@ -163,6 +163,6 @@ public class OnBoardDepartPatternHop extends Edge implements OnboardEdge, Tempor
 
     @Override
     public void dispose() {
-        tov.removeIncoming(this);
+        // this edge was never added to the permanent vertex, nothing to remove
     }
 }
@@ -65,11 +65,9 @@ public class PatternHop extends TablePatternEdge implements OnboardEdge, HopEdge
         RoutingRequest options = state0.getOptions();
         
         // Ignore this edge if either of its stop is banned hard
-        if (!options.bannedStopsHard.isEmpty()) {
-            if (options.bannedStopsHard.matches(((PatternStopVertex) fromv).getStop())
-                    || options.bannedStopsHard.matches(((PatternStopVertex) tov).getStop())) {
-                return null;
-            }
+        if (options.stopIsBannedHard((PatternStopVertex) fromv)
+                || options.stopIsBannedHard((PatternStopVertex) tov)) {
+            return null;
         }
         
     	int runningTime = getPattern().scheduledTimetable.getBestRunningTime(stopIndex);
@@ -94,11 +92,9 @@ public class PatternHop extends TablePatternEdge implements OnboardEdge, HopEdge
         RoutingRequest options = s0.getOptions();
         
         // Ignore this edge if either of its stop is banned hard
-        if (!options.bannedStopsHard.isEmpty()) {
-            if (options.bannedStopsHard.matches(((PatternStopVertex) fromv).getStop())
-                    || options.bannedStopsHard.matches(((PatternStopVertex) tov).getStop())) {
-                return null;
-            }
+        if (options.stopIsBannedHard((PatternStopVertex) fromv)
+                || options.stopIsBannedHard((PatternStopVertex) tov)) {
+            return null;
         }
         
         TripTimes tripTimes = s0.getTripTimes();
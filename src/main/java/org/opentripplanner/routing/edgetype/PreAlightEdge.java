@@ -47,15 +47,9 @@ public class PreAlightEdge extends FreeEdge implements StationEdge {
         // used.
 
         // Ignore this edge if its stop is banned
-        if (!options.bannedStops.isEmpty()) {
-            if (options.bannedStops.matches(((TransitStop) tov).getStop())) {
-                return null;
-            }
-        }
-        if (!options.bannedStopsHard.isEmpty()) {
-            if (options.bannedStopsHard.matches(((TransitStop) tov).getStop())) {
-                return null;
-            }
+        if (options.stopIsBanned((TransitStop) tov)
+                || options.stopIsBannedHard((TransitStop) tov)) {
+            return null;
         }
         
         if (options.arriveBy) {
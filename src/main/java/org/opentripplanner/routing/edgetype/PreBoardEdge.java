@@ -44,15 +44,9 @@ public class PreBoardEdge extends FreeEdge implements StationEdge {
         RoutingRequest options = s0.getOptions();
         
         // Ignore this edge if its stop is banned
-        if (!options.bannedStops.isEmpty()) {
-            if (options.bannedStops.matches(((TransitStop) fromv).getStop())) {
-                return null;
-            }
-        }
-        if (!options.bannedStopsHard.isEmpty()) {
-            if (options.bannedStopsHard.matches(((TransitStop) fromv).getStop())) {
-                return null;
-            }
+        if (options.stopIsBanned((TransitStop) fromv)
+                || options.stopIsBannedHard((TransitStop) fromv)) {
+            return null;
         }
         
         if (options.arriveBy) {
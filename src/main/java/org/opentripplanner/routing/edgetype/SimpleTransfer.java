@@ -43,16 +43,20 @@ public class SimpleTransfer extends Edge {
     @Override
     public State traverse(State s0) {
         RoutingRequest rr = s0.getOptions();
-        double walkspeed = rr.walkSpeed;
         StateEditor se = s0.edit(this);
         se.setBackMode(TraverseMode.WALK);
-        int time = (int) Math.ceil(distance / walkspeed) + 2 * StreetTransitLink.STL_TRAVERSE_COST;
+        int time = getTraverseTime(rr);
         se.incrementTimeInSeconds(time);
         se.incrementWeight(time * rr.walkReluctance);
         se.incrementWalkDistance(distance);
         return se.makeState();
     }
 
+    /** @return the time in seconds to walk this transfer, including the links at both stops. */
+    public int getTraverseTime(RoutingRequest rr) {
+        return (int) Math.ceil(distance / rr.walkSpeed) + 2 * StreetTransitLink.STL_TRAVERSE_COST;
+    }
+
     @Override
     public String getName() {
         return fromv.getName() + " => " + tov.getName();
@@ -532,7 +532,9 @@ public class StreetEdge extends Edge implements Cloneable {
     @Override
     public StreetEdge clone() {
         try {
-            return (StreetEdge) super.clone();
+            StreetEdge clone = (StreetEdge) super.clone();
+            clone.clearGraphAnnotations();
+            return clone;
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
@@ -685,6 +687,42 @@ public class StreetEdge extends Edge implements Cloneable {
 		return this.outAngle * 180 / 128;
 	}
 
+    /* RAW FIELD ACCESS FOR THE COMPACT GRAPH FORMAT */
+
+    public int[] getCompactGeometry() {
+        return compactGeometry;
+    }
+
+    public int getLengthMm() {
+        return length_mm;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    public byte getRawInAngle() {
+        return inAngle;
+    }
+
+    public byte getRawOutAngle() {
+        return outAngle;
+    }
+
+    /**
+     * Restore the fields that the constructor derives from the geometry, length and boolean
+     * properties, as they were stored by CompactGraphFormat. This skips re-encoding the geometry
+     * and recomputing the angles, which dominate the cost of constructing a street edge.
+     */
+    public void setCompactData(int[] compactGeometry, int lengthMm, byte flags, byte inAngle,
+            byte outAngle) {
+        this.compactGeometry = compactGeometry;
+        this.length_mm = lengthMm;
+        this.flags = flags;
+        this.inAngle = inAngle;
+        this.outAngle = outAngle;
+    }
+
     protected List<TurnRestriction> getTurnRestrictions(Graph graph) {
         return graph.getTurnRestrictions(this);
     }
@@ -13,7 +13,13 @@
 
 package org.opentripplanner.routing.edgetype;
 
-/** Marker interface for temporary edges */
+/**
+ * Marker interface for temporary edges. Temporary edges connect the temporary origin and
+ * destination vertices of a single request to the graph. They appear only in the edge lists of
+ * the temporary vertices, and are seen from the permanent vertices through the overlay of the
+ * RoutingContext, so they never need to be removed from the graph.
+ */
 public interface TemporaryEdge {
+    /** Release any resources held by this edge once the request is finished. */
     public void dispose();
 }
@@ -18,17 +18,13 @@ import org.opentripplanner.routing.location.TemporaryStreetLocation;
 import org.opentripplanner.routing.vertextype.StreetVertex;
 
 final public class TemporaryPartialStreetEdge extends PartialStreetEdge implements TemporaryEdge {
-    final private Boolean endEdge;  // A null value means that the vertices are temporary themselves
-
     public TemporaryPartialStreetEdge(StreetEdge parentEdge, TemporaryStreetLocation v1,
             TemporaryStreetLocation v2, LineString geometry, String name, double length) {
         super(parentEdge, v1, v2, geometry, name, length);
 
         if (v1.isEndVertex()) {
             throw new IllegalStateException("A temporary edge is directed away from an end vertex");
-        } else if (v2.isEndVertex()) {
-            endEdge = null;
-        } else {
+        } else if (!v2.isEndVertex()) {
             throw new IllegalStateException("A temporary edge is directed towards a start vertex");
         }
     }
@@ -39,8 +35,6 @@ final public class TemporaryPartialStreetEdge extends PartialStreetEdge implemen
 
         if (v1.isEndVertex()) {
             throw new IllegalStateException("A temporary edge is directed away from an end vertex");
-        } else {
-            endEdge = false;
         }
     }
 
@@ -48,22 +42,14 @@ final public class TemporaryPartialStreetEdge extends PartialStreetEdge implemen
             TemporaryStreetLocation v2, LineString geometry, String name, double length) {
         super(parentEdge, v1, v2, geometry, name, length);
 
-        if (v2.isEndVertex()) {
-            endEdge = true;
-        } else {
+        if (!v2.isEndVertex()) {
             throw new IllegalStateException("A temporary edge is directed towards a start vertex");
         }
     }
 
     @Override
     public void dispose() {
-        if (endEdge != null) {
-            if (endEdge) {
-                fromv.removeOutgoing(this);
-            } else {
-                tov.removeIncoming(this);
-            }
-        }
+        // this edge was never added to a permanent vertex, nothing to remove
     }
 
     @Override
@@ -15,10 +15,12 @@ package org.opentripplanner.routing.edgetype;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.beust.jcommander.internal.Lists;
 
@@ -27,6 +29,7 @@ import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.Trip;
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StopTransfer;
@@ -88,7 +91,40 @@ public class Timetable implements Serializable {
      * Helps determine whether a particular pattern is worth searching for departures at a given time. 
      */
     private transient int minTime, maxTime;
-    
+
+    /**
+     * For each stop, the indexes into tripTimes sorted by departure time at that stop. Trips may
+     * overtake one another, so each stop has its own order. Among trips departing at the same
+     * time, lower indexes come first.
+     */
+    private transient int[][] departureOrder;
+
+    /**
+     * For each stop, the indexes into tripTimes sorted by arrival time at that stop. Among trips
+     * arriving at the same time, lower indexes come last, so that they are met first when
+     * scanning backward from a given time.
+     */
+    private transient int[][] arrivalOrder;
+
+    /**
+     * Whether departureOrder and arrivalOrder reflect the current TripTimes. They are left in
+     * place but no longer used once a trip is updated or added, and are brought up to date by the
+     * next call to finish().
+     */
+    private transient boolean tripOrderValid = false;
+
+    /**
+     * The trips running on recently seen service days, with their per-stop orders restricted to
+     * those trips, so that departure searches neither scan trips that are not running nor search
+     * patterns with no service at all. Days running the same services share one entry. Entries
+     * are computed on first use and kept across requests; the array is replaced, never modified,
+     * and is reset whenever the trip orders change.
+     */
+    private transient volatile ActiveTrips[] activeTrips;
+
+    /** The maximum number of distinct service days for which active trips are kept. */
+    private static final int MAX_ACTIVE_TRIPS = 8;
+
     /** Construct an empty Timetable. */
     public Timetable(TripPattern pattern) {
         this.pattern = pattern;
@@ -102,6 +138,10 @@ public class Timetable implements Serializable {
         tripTimes.addAll(tt.tripTimes);
         this.serviceDate = serviceDate;
         this.pattern = tt.pattern;
+        // Start from the orders of the original timetable, so finish() only has to repair them.
+        // They are never modified in place, so sharing them is safe.
+        this.departureOrder = tt.departureOrder;
+        this.arrivalOrder = tt.arrivalOrder;
     }
 
     /**
@@ -141,34 +181,55 @@ public class Timetable implements Serializable {
         // NOTE the time is sometimes negative here. That is fine, we search for the first trip of the day.
         TripTimes bestTrip = null;
         Stop currentStop = pattern.getStop(stopIndex);
-        // Linear search through the timetable looking for the best departure.
-        // We no longer use a binary search on Timetables because:
-        // 1. we allow combining trips from different service IDs on the same tripPattern.
-        // 2. We mix frequency-based and one-off TripTimes together on tripPatterns.
-        // 3. Stoptimes may change with realtime updates, and we cannot count on them being sorted.
-        //    The complexity of keeping sorted indexes up to date does not appear to be worth the
-        //    apparently minor speed improvement.
         int bestTime = boarding ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-        // Hoping JVM JIT will distribute the loop over the if clauses as needed.
-        // We could invert this and skip some service days based on schedule overlap as in RRRR.
-        for (TripTimes tt : tripTimes) {
-            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
-            if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
-            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
-            if (adjustedTime == -1) continue;
-            if (boarding) {
-                int depTime = tt.getDepartureTime(stopIndex);
-                if (depTime < 0) continue;
-                if (depTime >= adjustedTime && depTime < bestTime) {
+        if (tripOrderValid) {
+            ActiveTrips active = getActiveTrips(serviceDay);
+            // Nothing on this pattern runs on this day: skip it altogether.
+            if (active == null) return null;
+            // Jump to the first running trip departing at or after the search time (or the last
+            // one arriving at or before it) in this stop's order, then walk in the search
+            // direction. Trips rejected by transfer rules are skipped. Transfer rules only ever
+            // move the usable time further in the search direction, so the first trip that is
+            // usable at all is the best one.
+            int[] order = boarding ? active.departureOrder(stopIndex)
+                    : active.arrivalOrder(stopIndex);
+            int step = boarding ? 1 : -1;
+            for (int i = findFirstCandidate(order, stopIndex, time, boarding);
+                    i >= 0 && i < order.length; i += step) {
+                TripTimes tt = tripTimes.get(order[i]);
+                int t = boarding ? tt.getDepartureTime(stopIndex) : tt.getArrivalTime(stopIndex);
+                if (t < 0) continue;
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (boarding ? t >= adjustedTime : t <= adjustedTime) {
                     bestTrip = tt;
-                    bestTime = depTime;
+                    bestTime = t;
+                    break;
                 }
-            } else {
-                int arvTime = tt.getArrivalTime(stopIndex);
-                if (arvTime < 0) continue;
-                if (arvTime <= adjustedTime && arvTime > bestTime) {
-                    bestTrip = tt;
-                    bestTime = arvTime;
+            }
+        } else {
+            // Linear search through a timetable whose trip order is not (or no longer) known,
+            // e.g. one that has been updated in place but not finished again.
+            for (TripTimes tt : tripTimes) {
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (boarding) {
+                    int depTime = tt.getDepartureTime(stopIndex);
+                    if (depTime < 0) continue;
+                    if (depTime >= adjustedTime && depTime < bestTime) {
+                        bestTrip = tt;
+                        bestTime = depTime;
+                    }
+                } else {
+                    int arvTime = tt.getArrivalTime(stopIndex);
+                    if (arvTime < 0) continue;
+                    if (arvTime <= adjustedTime && arvTime > bestTime) {
+                        bestTrip = tt;
+                        bestTime = arvTime;
+                    }
                 }
             }
         }
@@ -206,6 +267,58 @@ public class Timetable implements Serializable {
         return bestTrip;
     }
 
+    /**
+     * Get the first trip departing from the specified stop at or after the specified time, given
+     * in seconds since midnight on the given service day. This is the State-free counterpart of
+     * getNextTrip(State, ServiceDay, int, true) for searches that scan timetables directly: it
+     * applies the same trip acceptance criteria, but no transfer table rules.
+     * @return the TripTimes object representing the (possibly updated or materialized) best
+     * trip, or null if no trip matches both the time and other criteria.
+     */
+    public TripTimes getNextDeparture(ServiceDay serviceDay, int stopIndex, int time,
+            RoutingRequest options, boolean bicycle) {
+        TripTimes bestTrip = null;
+        int bestTime = Integer.MAX_VALUE;
+        if (tripOrderValid) {
+            ActiveTrips active = getActiveTrips(serviceDay);
+            if (active == null) return null;
+            int[] order = active.departureOrder(stopIndex);
+            for (int i = findFirstCandidate(order, stopIndex, time, true); i < order.length; i++) {
+                TripTimes tt = tripTimes.get(order[i]);
+                int t = tt.getDepartureTime(stopIndex);
+                if (t < 0) continue;
+                if ( ! tt.tripAcceptable(options, bicycle, stopIndex)) continue;
+                bestTrip = tt;
+                bestTime = t;
+                break;
+            }
+        } else {
+            for (TripTimes tt : tripTimes) {
+                int t = tt.getDepartureTime(stopIndex);
+                if (t < time || t >= bestTime) continue;
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+                if ( ! tt.tripAcceptable(options, bicycle, stopIndex)) continue;
+                bestTrip = tt;
+                bestTime = t;
+            }
+        }
+        FrequencyEntry bestFreq = null;
+        for (FrequencyEntry freq : frequencyEntries) {
+            TripTimes tt = freq.tripTimes;
+            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+            if ( ! tt.tripAcceptable(options, bicycle, stopIndex)) continue;
+            int t = freq.nextDepartureTime(stopIndex, time);
+            if (t >= time && t < bestTime) {
+                bestFreq = freq;
+                bestTime = t;
+            }
+        }
+        if (bestFreq != null) {
+            bestTrip = bestFreq.materialize(stopIndex, bestTime, true);
+        }
+        return bestTrip;
+    }
+
     /**
      * Check transfer table rules. Given the last alight time from the State,
      * return the boarding time t0 adjusted for this particular trip's minimum transfer time,
@@ -252,6 +365,7 @@ public class Timetable implements Serializable {
      */
     public void finish() {
         int nStops = pattern.stopPattern.size;
+        sortTrips(nStops);
         int nHops = nStops - 1;
         /* Find lower bounds on dwell and running times at each stop. */
         minDwellTimes = new int[nHops];
@@ -288,6 +402,190 @@ public class Timetable implements Serializable {
         }
     }
 
+    /**
+     * Bring the per-stop departure and arrival orders up to date with the current TripTimes.
+     * When orders already exist (from an earlier call, or copied from the timetable this one was
+     * derived from) they are repaired with an insertion sort, which takes time linear in the
+     * number of trips when only a few of them were changed or added by realtime updates.
+     */
+    private void sortTrips(int nStops) {
+        int nTrips = tripTimes.size();
+        int[][] oldDepartures = departureOrder;
+        int[][] oldArrivals = arrivalOrder;
+        boolean repair = oldDepartures != null && oldDepartures.length == nStops;
+        int[][] departures = new int[nStops][];
+        int[][] arrivals = new int[nStops][];
+        int[] times = new int[nTrips];
+        for (int s = 0; s < nStops; s++) {
+            for (int t = 0; t < nTrips; t++) times[t] = tripTimes.get(t).getDepartureTime(s);
+            departures[s] = repair ? repairOrder(oldDepartures[s], times, false)
+                    : sortOrder(times, false);
+            for (int t = 0; t < nTrips; t++) times[t] = tripTimes.get(t).getArrivalTime(s);
+            arrivals[s] = repair ? repairOrder(oldArrivals[s], times, true)
+                    : sortOrder(times, true);
+        }
+        departureOrder = departures;
+        arrivalOrder = arrivals;
+        activeTrips = null;
+        tripOrderValid = true;
+    }
+
+    /**
+     * @return the trips of this timetable running on the given service day, or null if neither
+     *         any trip nor any frequency entry runs on that day. Only valid while tripOrderValid.
+     */
+    private ActiveTrips getActiveTrips(ServiceDay serviceDay) {
+        ActiveTrips[] entries = activeTrips;
+        if (entries != null) {
+            for (ActiveTrips entry : entries) {
+                if (entry.serviceDay.sameServicesAs(serviceDay)) {
+                    return entry.any ? entry : null;
+                }
+            }
+        }
+        ActiveTrips entry = new ActiveTrips(serviceDay);
+        // Keep the most recently added entries. Concurrent searches may each add an entry for the
+        // same day, which only costs a little duplicated work.
+        int n = entries == null ? 0 : Math.min(entries.length, MAX_ACTIVE_TRIPS - 1);
+        ActiveTrips[] newEntries = new ActiveTrips[n + 1];
+        newEntries[0] = entry;
+        if (n > 0) System.arraycopy(entries, 0, newEntries, 1, n);
+        activeTrips = newEntries;
+        return entry.any ? entry : null;
+    }
+
+    /**
+     * The trips of this timetable running on one service day (and any other day with the same
+     * services), and the departure and arrival orders restricted to them, built stop by stop as
+     * they are first needed.
+     */
+    private class ActiveTrips {
+
+        final ServiceDay serviceDay;
+
+        /** Whether any trip or frequency entry runs on the day. */
+        final boolean any;
+
+        /** Running trips by index in tripTimes, or null if all trips are running. */
+        final BitSet running;
+
+        final int[][] departures = departureOrder;
+
+        final int[][] arrivals = arrivalOrder;
+
+        final AtomicReferenceArray<int[]> runningDepartures;
+
+        final AtomicReferenceArray<int[]> runningArrivals;
+
+        ActiveTrips(ServiceDay serviceDay) {
+            this.serviceDay = serviceDay;
+            int nTrips = tripTimes.size();
+            BitSet running = new BitSet(nTrips);
+            for (int t = 0; t < nTrips; t++) {
+                if (serviceDay.serviceRunning(tripTimes.get(t).serviceCode)) running.set(t);
+            }
+            boolean any = !running.isEmpty();
+            for (FrequencyEntry freq : frequencyEntries) {
+                if (serviceDay.serviceRunning(freq.tripTimes.serviceCode)) any = true;
+            }
+            this.any = any;
+            this.running = running.cardinality() == nTrips ? null : running;
+            int nStops = departures.length;
+            runningDepartures = this.running == null ? null : new AtomicReferenceArray<int[]>(nStops);
+            runningArrivals = this.running == null ? null : new AtomicReferenceArray<int[]>(nStops);
+        }
+
+        int[] departureOrder(int stopIndex) {
+            return order(departures, runningDepartures, stopIndex);
+        }
+
+        int[] arrivalOrder(int stopIndex) {
+            return order(arrivals, runningArrivals, stopIndex);
+        }
+
+        private int[] order(int[][] all, AtomicReferenceArray<int[]> cache, int stopIndex) {
+            if (running == null) return all[stopIndex];
+            int[] order = cache.get(stopIndex);
+            if (order == null) {
+                int[] full = all[stopIndex];
+                order = new int[running.cardinality()];
+                int n = 0;
+                for (int t : full) {
+                    if (running.get(t)) order[n++] = t;
+                }
+                cache.set(stopIndex, order);
+            }
+            return order;
+        }
+    }
+
+    /** @return trip indexes sorted by the given times, ties broken by trip index. */
+    private static int[] sortOrder(int[] times, boolean descendingTies) {
+        int n = times.length;
+        // Pack each time and index into one long so a primitive sort does all the work.
+        long[] keys = new long[n];
+        for (int t = 0; t < n; t++) {
+            int tie = descendingTies ? Integer.MAX_VALUE - t : t;
+            keys[t] = ((long) times[t] << 32) | tie;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            int tie = (int) keys[i];
+            order[i] = descendingTies ? Integer.MAX_VALUE - tie : tie;
+        }
+        return order;
+    }
+
+    /**
+     * @return the given (possibly stale) order of trip indexes re-sorted by the given times, with
+     *         any trips added since the order was built inserted at their proper place.
+     */
+    private static int[] repairOrder(int[] oldOrder, int[] times, boolean descendingTies) {
+        int n = times.length;
+        if (oldOrder.length > n) return sortOrder(times, descendingTies); // trips were removed
+        int[] order = Arrays.copyOf(oldOrder, n);
+        for (int t = oldOrder.length; t < n; t++) order[t] = t;
+        for (int i = 1; i < n; i++) {
+            int t = order[i];
+            int j = i - 1;
+            while (j >= 0 && comesAfter(order[j], t, times, descendingTies)) {
+                order[j + 1] = order[j];
+                j -= 1;
+            }
+            order[j + 1] = t;
+        }
+        return order;
+    }
+
+    private static boolean comesAfter(int a, int b, int[] times, boolean descendingTies) {
+        if (times[a] != times[b]) return times[a] > times[b];
+        return descendingTies ? a < b : a > b;
+    }
+
+    /**
+     * Binary search in a departure (arrival) order for the first (last) trip whose time at the
+     * given stop is at or after (before) the given time.
+     * @return the position of that trip in the order, which may be just outside the array if
+     *         there is no such trip.
+     */
+    private int findFirstCandidate(int[] order, int stopIndex, int time, boolean boarding) {
+        int lo = 0;
+        int hi = order.length;
+        // Find the first position whose time is >= time (boarding) or > time (alighting).
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            TripTimes tt = tripTimes.get(order[mid]);
+            if (boarding ? tt.getDepartureTime(stopIndex) < time
+                         : tt.getArrivalTime(stopIndex) <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return boarding ? lo : lo - 1;
+    }
+
     /** @return the index of TripTimes for this trip ID in this particular Timetable */
     public int getTripIndex(AgencyAndId tripId) {
         int ret = 0;
@@ -484,6 +782,7 @@ public class Timetable implements Serializable {
 
             // Update succeeded, save the new TripTimes back into this Timetable.
             tripTimes.set(tripIndex, newTimes);
+            tripOrderValid = false;
         } catch (Exception e) { // prevent server from dying while debugging
             e.printStackTrace();
             return false;
@@ -502,6 +801,7 @@ public class Timetable implements Serializable {
      */
     public void addTripTimes(TripTimes tt) {
         tripTimes.add(tt);
+        tripOrderValid = false;
     }
 
     /**
@@ -553,6 +853,7 @@ public class Timetable implements Serializable {
             TripTimes tt = freq.tripTimes;
             tt.serviceCode = serviceCodes.get(tt.trip.getServiceId());
         }
+        activeTrips = null;
     }
 
 } 
@@ -123,8 +123,9 @@ public class TimetableResolver {
      * It is perhaps better to index timetables as they are changed to avoid experiencing all
      * this lag at once, but we want to avoid re-indexing when receiving multiple updates for
      * the same timetable in rapid succession. This compromise is expressed by the
-     * maxSnapshotFrequency property of StoptimeUpdater. The indexing could be made much more
-     * efficient as well.
+     * maxSnapshotFrequency property of StoptimeUpdater. Timetables copied from the scheduled
+     * timetable only repair the sorted trip orders they inherit, so indexing cost grows with the
+     * number of updated trips rather than the size of the timetable.
      * @return an immutable copy of this TimetableResolver with all updates applied
      */
     public TimetableResolver commit() {
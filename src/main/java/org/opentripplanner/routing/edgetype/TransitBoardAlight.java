@@ -25,6 +25,7 @@ import org.opentripplanner.routing.core.StateEditor;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.request.TransitFilter;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.PatternStopVertex;
 import org.opentripplanner.routing.vertextype.TransitStopArrive;
@@ -215,7 +216,11 @@ public class TransitBoardAlight extends TablePatternEdge implements OnboardEdge
             }
 
             /* We assume all trips in a pattern are on the same route. Check if that route is banned. */
-            if (options.bannedRoutes != null && options.bannedRoutes.matches(getPattern().route)) {
+            TransitFilter filter = options.transitFilter;
+            int routeIndex = getPattern().routeIndex;
+            if (filter != null && routeIndex >= 0) {
+                if (filter.routeBanned(routeIndex)) return null;
+            } else if (options.bannedRoutes != null && options.bannedRoutes.matches(getPattern().route)) {
                 // TODO: remove route checks in/after the trip search
                 return null;
             }
@@ -264,11 +269,15 @@ public class TransitBoardAlight extends TablePatternEdge implements OnboardEdge
             Trip trip = bestTripTimes.trip;
             
             /* check if route and/or Agency are banned for this plan */
+            // The compiled filter has already checked both, during the trip search.
             // FIXME this should be done WHILE searching for a trip.
-            if (options.tripIsBanned(trip)) return null;
+            boolean filtered = filter != null && routeIndex >= 0 && bestTripTimes.tripIndex >= 0;
+            if (!filtered && options.tripIsBanned(trip)) return null;
 
             /* Check if route is preferred by the user. */
-            long preferences_penalty = options.preferencesPenaltyForRoute(getPattern().route);
+            long preferences_penalty = filter != null && routeIndex >= 0 ?
+                    filter.routePenalty(routeIndex) :
+                    options.preferencesPenaltyForRoute(getPattern().route);
             
             /* Compute penalty for non-preferred transfers. */
             int transferPenalty = 0;
@@ -95,6 +95,9 @@ public class TripPattern implements Serializable {
      */
     public final Route route;
 
+    /** The dense index of the route in the GraphIndex, or -1 if the graph has not been indexed. */
+    public int routeIndex = -1;
+
     /**
      * As for the route field, this depends on there being a single GFTFS route per journey pattern. That is not always true.
      */
@@ -0,0 +1,713 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph.LoadLevel;
+import org.opentripplanner.routing.services.StreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * A versioned, mostly columnar file format for graphs, which starts up a router much faster and
+ * with much less transient memory than reading one huge serialized object graph.
+ *
+ * The bulk of a typical graph is its street network of plain IntersectionVertices and
+ * StreetEdges. These are stored as flat primitive columns (one array per field, plus a shared
+ * pool of packed geometries) and are materialized from a memory-mapped buffer with bulk reads,
+ * bypassing the reflection and handle tables of ObjectInputStream. Everything else (the Graph
+ * object itself, transit vertices and edges, trip patterns and their timetables, services...)
+ * is stored in one Java serialization section, in which references to the columnar vertices and
+ * edges are replaced by their position in the columns. Builder annotations live in their own
+ * section, which is only read at LoadLevel.DEBUG.
+ *
+ * Layout: magic number and format version, the sections, a table giving the offset and length
+ * of each section, then the offset of that table and the magic number again.
+ *
+ * Graphs are saved in this format by the graph builder with --compactGraph. Graph.load and
+ * InputStreamGraphSource recognize it by its magic number, so no configuration is needed to
+ * load it and either format may be deployed as Graph.obj.
+ */
+public class CompactGraphFormat {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactGraphFormat.class);
+
+    /** "OTPG". Distinct from the 0xACED that starts a Java serialization stream. */
+    public static final int MAGIC = 0x4f545047;
+
+    /** Increment whenever the layout of any section changes. */
+    public static final int VERSION = 1;
+
+    private static final int STRINGS = 0;
+
+    private static final int VERTICES = 1;
+
+    private static final int GEOMETRIES = 2;
+
+    private static final int STREET_EDGES = 3;
+
+    private static final int OBJECTS = 4;
+
+    private static final int DEBUG = 5;
+
+    private static final int N_SECTIONS = 6;
+
+    /** Table of contents offset and trailing magic number. */
+    private static final int FOOTER_BYTES = 8 + 4;
+
+    private static final int TRAFFIC_LIGHT = 1;
+
+    private static final int FREE_FLOWING = 2;
+
+    private static final StreetTraversalPermission[] PERMISSIONS = StreetTraversalPermission
+            .values();
+
+    /** @return true if the file starts with the magic number of this format. */
+    public static boolean isCompact(File file) throws IOException {
+        if (file.length() < 8 + FOOTER_BYTES)
+            return false;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.readInt() == MAGIC;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return true if the stream starts with the magic number of this format. The stream must
+     *         support mark/reset, and is left at its starting position.
+     */
+    public static boolean isCompact(InputStream is) throws IOException {
+        is.mark(4);
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = is.read();
+            if (b < 0) {
+                is.reset();
+                return false;
+            }
+            magic = (magic << 8) | b;
+        }
+        is.reset();
+        return magic == MAGIC;
+    }
+
+    /* SAVING */
+
+    public static void save(Graph graph, File file) throws IOException {
+        LOG.info("Main graph size: |V|={} |E|={}", graph.countVertices(), graph.countEdges());
+        LOG.info("Writing compact graph " + file.getAbsolutePath() + " ...");
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            new Writer(graph).write(os);
+            os.close();
+        } catch (IOException | RuntimeException e) {
+            os.close();
+            file.delete(); // remove half-written file
+            throw e;
+        }
+        LOG.info("Graph written.");
+    }
+
+    private static class Writer {
+
+        private final Graph graph;
+
+        private final List<IntersectionVertex> vertices = new ArrayList<IntersectionVertex>();
+
+        private final Map<Vertex, Integer> vertexIndex = new HashMap<Vertex, Integer>();
+
+        private final List<StreetEdge> streetEdges = new ArrayList<StreetEdge>();
+
+        private final Map<Edge, Integer> edgeIndex = new IdentityHashMap<Edge, Integer>();
+
+        private final List<Edge> otherEdges = new ArrayList<Edge>();
+
+        private final List<String> strings = new ArrayList<String>();
+
+        private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+        /** Reverse edges share their geometry array, keep it that way. */
+        private final Map<int[], Integer> geometryIndex = new IdentityHashMap<int[], Integer>();
+
+        private final List<int[]> geometries = new ArrayList<int[]>();
+
+        private Writer(Graph graph) {
+            this.graph = graph;
+            LOG.debug("Assigning vertex/edge ID numbers...");
+            graph.rebuildVertexAndEdgeIndices();
+            for (Vertex v : graph.getVertices()) {
+                // Subclasses carry fields of their own, leave them to Java serialization.
+                if (v.getClass() == IntersectionVertex.class) {
+                    vertexIndex.put(v, vertices.size());
+                    vertices.add((IntersectionVertex) v);
+                }
+            }
+            for (Vertex v : graph.getVertices()) {
+                // there are assumed to be no edges in an incoming list that are not in an
+                // outgoing list
+                for (Edge e : v.getOutgoing()) {
+                    if (e.getClass() == StreetEdge.class && vertexIndex.containsKey(e.fromv)
+                            && vertexIndex.containsKey(e.tov)) {
+                        edgeIndex.put(e, streetEdges.size());
+                        streetEdges.add((StreetEdge) e);
+                    } else {
+                        otherEdges.add(e);
+                    }
+                }
+            }
+            LOG.debug("{} of {} vertices and {} of {} edges are stored in columns.",
+                    vertices.size(), graph.countVertices(), streetEdges.size(),
+                    streetEdges.size() + otherEdges.size());
+        }
+
+        private void write(OutputStream os) throws IOException {
+            CountingOutputStream counter = new CountingOutputStream(os);
+            DataOutputStream out = new DataOutputStream(counter);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long[] offsets = new long[N_SECTIONS];
+            long[] lengths = new long[N_SECTIONS];
+            for (int section = 0; section < N_SECTIONS; section++) {
+                out.flush();
+                offsets[section] = counter.getCount();
+                writeSection(section, out);
+                out.flush();
+                lengths[section] = counter.getCount() - offsets[section];
+            }
+            long tableOffset = counter.getCount();
+            for (int section = 0; section < N_SECTIONS; section++) {
+                out.writeLong(offsets[section]);
+                out.writeLong(lengths[section]);
+            }
+            out.writeLong(tableOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+        }
+
+        private void writeSection(int section, DataOutputStream out) throws IOException {
+            switch (section) {
+            case STRINGS:
+                // Strings are referenced by the later columns, so intern them all up front.
+                for (IntersectionVertex v : vertices) {
+                    intern(v.getLabel());
+                    intern(v.getName());
+                }
+                for (StreetEdge e : streetEdges) {
+                    intern(e.getName());
+                }
+                writeStrings(out);
+                break;
+            case VERTICES:
+                writeVertices(out);
+                break;
+            case GEOMETRIES:
+                for (StreetEdge e : streetEdges) {
+                    int[] geometry = e.getCompactGeometry();
+                    if (geometry != null && !geometryIndex.containsKey(geometry)) {
+                        geometryIndex.put(geometry, geometries.size());
+                        geometries.add(geometry);
+                    }
+                }
+                writeGeometries(out);
+                break;
+            case STREET_EDGES:
+                writeStreetEdges(out);
+                break;
+            case OBJECTS:
+                LOG.debug("Writing remaining objects...");
+                ObjectOutputStream objects = new RefReplacingObjectOutputStream(out, this);
+                objects.writeObject(graph);
+                objects.writeObject(otherEdges);
+                objects.flush();
+                break;
+            case DEBUG:
+                List<GraphBuilderAnnotation> annotations = graph.getBuilderAnnotations();
+                if (annotations != null) {
+                    LOG.debug("Writing debug data...");
+                    ObjectOutputStream debug = new RefReplacingObjectOutputStream(out, this);
+                    debug.writeObject(annotations);
+                    debug.flush();
+                }
+                break;
+            }
+        }
+
+        private int intern(String s) {
+            if (s == null)
+                return -1;
+            Integer i = stringIndex.get(s);
+            if (i == null) {
+                i = strings.size();
+                stringIndex.put(s, i);
+                strings.add(s);
+            }
+            return i;
+        }
+
+        private int stringId(String s) {
+            return s == null ? -1 : stringIndex.get(s);
+        }
+
+        private void writeStrings(DataOutputStream out) throws IOException {
+            List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+            for (String s : strings) {
+                encoded.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+            out.writeInt(encoded.size());
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+        }
+
+        private void writeVertices(DataOutputStream out) throws IOException {
+            out.writeInt(vertices.size());
+            for (IntersectionVertex v : vertices)
+                out.writeInt(stringId(v.getLabel()));
+            for (IntersectionVertex v : vertices)
+                out.writeInt(stringId(v.getName()));
+            for (IntersectionVertex v : vertices)
+                out.writeDouble(v.getX());
+            for (IntersectionVertex v : vertices)
+                out.writeDouble(v.getY());
+            for (IntersectionVertex v : vertices)
+                out.writeByte((v.trafficLight ? TRAFFIC_LIGHT : 0)
+                        | (v.freeFlowing ? FREE_FLOWING : 0));
+        }
+
+        private void writeGeometries(DataOutputStream out) throws IOException {
+            out.writeInt(geometries.size());
+            int offset = 0;
+            out.writeInt(offset);
+            for (int[] geometry : geometries) {
+                offset += geometry.length;
+                out.writeInt(offset);
+            }
+            for (int[] geometry : geometries) {
+                for (int c : geometry)
+                    out.writeInt(c);
+            }
+        }
+
+        private void writeStreetEdges(DataOutputStream out) throws IOException {
+            out.writeInt(streetEdges.size());
+            for (StreetEdge e : streetEdges)
+                out.writeInt(e.getId());
+            for (StreetEdge e : streetEdges)
+                out.writeInt(vertexIndex.get(e.fromv));
+            for (StreetEdge e : streetEdges)
+                out.writeInt(vertexIndex.get(e.tov));
+            for (StreetEdge e : streetEdges)
+                out.writeInt(stringId(e.getName()));
+            for (StreetEdge e : streetEdges)
+                out.writeInt(e.getLengthMm());
+            for (StreetEdge e : streetEdges)
+                out.writeInt(e.getStreetClass());
+            for (StreetEdge e : streetEdges)
+                out.writeFloat(e.getCarSpeed());
+            for (StreetEdge e : streetEdges)
+                out.writeFloat(e.getBicycleSafetyFactor());
+            for (StreetEdge e : streetEdges) {
+                int[] geometry = e.getCompactGeometry();
+                out.writeInt(geometry == null ? -1 : geometryIndex.get(geometry));
+            }
+            for (StreetEdge e : streetEdges)
+                out.writeByte(e.getFlags());
+            for (StreetEdge e : streetEdges)
+                out.writeByte(e.getPermission().ordinal());
+            for (StreetEdge e : streetEdges)
+                out.writeByte(e.getRawInAngle());
+            for (StreetEdge e : streetEdges)
+                out.writeByte(e.getRawOutAngle());
+        }
+    }
+
+    /* LOADING */
+
+    /**
+     * Load a graph by memory-mapping the given file. The sections are mapped separately, so no
+     * single section may exceed 2GB.
+     */
+    public static Graph load(File file, LoadLevel level, StreetVertexIndexFactory indexFactory)
+            throws IOException, ClassNotFoundException {
+        LOG.info("Mapping compact graph " + file.getAbsolutePath() + " ...");
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteBuffer[] sections = new ByteBuffer[N_SECTIONS];
+        try {
+            // mappings remain valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, 8);
+            checkHeader(header);
+            ByteBuffer footer = channel.map(MapMode.READ_ONLY, size - FOOTER_BYTES, FOOTER_BYTES);
+            long tableOffset = footer.getLong();
+            ByteBuffer table = channel.map(MapMode.READ_ONLY, tableOffset, N_SECTIONS * 16);
+            for (int section = 0; section < N_SECTIONS; section++) {
+                long offset = table.getLong();
+                long length = table.getLong();
+                sections[section] = channel.map(MapMode.READ_ONLY, offset, length);
+            }
+        } finally {
+            raf.close();
+        }
+        return load(sections, level, indexFactory);
+    }
+
+    /**
+     * Load a graph from a stream, for instance a graph bundled on the classpath or sent over the
+     * wire. The stream is read into memory in its entirety; prefer loading from a file, which
+     * can be memory-mapped.
+     */
+    public static Graph load(InputStream is, LoadLevel level,
+            StreetVertexIndexFactory indexFactory) throws IOException, ClassNotFoundException {
+        LOG.info("Reading compact graph from stream...");
+        ByteBuffer buffer = ByteBuffer.wrap(ByteStreams.toByteArray(is));
+        checkHeader(buffer);
+        buffer.position(buffer.limit() - FOOTER_BYTES);
+        buffer.position((int) buffer.getLong());
+        ByteBuffer[] sections = new ByteBuffer[N_SECTIONS];
+        for (int section = 0; section < N_SECTIONS; section++) {
+            int offset = (int) buffer.getLong();
+            int length = (int) buffer.getLong();
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.limit(offset + length);
+            sections[section] = slice.slice();
+        }
+        return load(sections, level, indexFactory);
+    }
+
+    private static void checkHeader(ByteBuffer header) {
+        if (header.getInt() != MAGIC)
+            throw new IllegalStateException("Not a compact graph file.");
+        int version = header.getInt();
+        if (version != VERSION) {
+            LOG.error("Compact graph format version {} is not supported by this version of OTP "
+                    + "(expected {}), please rebuild it.", version, VERSION);
+            throw new IllegalStateException("Compact graph format version mismatch.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Graph load(ByteBuffer[] sections, LoadLevel level,
+            StreetVertexIndexFactory indexFactory) throws IOException, ClassNotFoundException {
+        long start = System.currentTimeMillis();
+        String[] strings = readStrings(sections[STRINGS]);
+        IntersectionVertex[] vertices = readVertices(sections[VERTICES], strings);
+        int[][] geometries = readGeometries(sections[GEOMETRIES]);
+        StreetEdge[] streetEdges = readStreetEdges(sections[STREET_EDGES], strings, vertices,
+                geometries);
+        LOG.debug("Street network read from columns.");
+        long columnsEnd = System.currentTimeMillis();
+        Graph graph;
+        List<Edge> edges;
+        try {
+            ObjectInputStream in = new RefResolvingObjectInputStream(sections[OBJECTS], vertices,
+                    streetEdges);
+            graph = (Graph) in.readObject();
+            graph.getLoadMetrics().record("readColumns", start, columnsEnd);
+            graph.getLoadMetrics().record("readGraph", columnsEnd);
+            LOG.debug("Basic graph info read.");
+            if (graph.graphVersionMismatch())
+                throw new RuntimeException("Graph version mismatch detected.");
+            start = System.currentTimeMillis();
+            List<Edge> otherEdges = (List<Edge>) in.readObject();
+            graph.getLoadMetrics().record("readEdges", start);
+            edges = new ArrayList<Edge>(streetEdges.length + otherEdges.size());
+            for (StreetEdge e : streetEdges)
+                edges.add(e);
+            edges.addAll(otherEdges);
+        } catch (InvalidClassException ex) {
+            LOG.error("Stored graph is incompatible with this version of OTP, please rebuild it.");
+            throw new IllegalStateException("Stored Graph version error", ex);
+        }
+        start = System.currentTimeMillis();
+        graph.rebuildVertexMap(edges);
+        graph.getLoadMetrics().record("vertexMap", start);
+        LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
+        if (level == LoadLevel.BASIC)
+            return graph;
+
+        graph.index(indexFactory);
+        if (level == LoadLevel.FULL)
+            return graph;
+
+        if (sections[DEBUG].remaining() > 0) {
+            ObjectInputStream in = new RefResolvingObjectInputStream(sections[DEBUG], vertices,
+                    streetEdges);
+            graph.setBuilderAnnotations((List<GraphBuilderAnnotation>) in.readObject());
+            LOG.debug("Debug info read.");
+        } else {
+            LOG.warn("Graph file does not contain debug data.");
+        }
+        return graph;
+    }
+
+    private static String[] readStrings(ByteBuffer buf) {
+        int n = buf.getInt();
+        int[] offsets = getInts(buf, n + 1);
+        byte[] bytes = getBytes(buf, offsets[n]);
+        String[] strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            strings[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i],
+                    StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static IntersectionVertex[] readVertices(ByteBuffer buf, String[] strings) {
+        int n = buf.getInt();
+        int[] labels = getInts(buf, n);
+        int[] names = getInts(buf, n);
+        double[] xs = getDoubles(buf, n);
+        double[] ys = getDoubles(buf, n);
+        byte[] flags = getBytes(buf, n);
+        IntersectionVertex[] vertices = new IntersectionVertex[n];
+        for (int i = 0; i < n; i++) {
+            // a null graph keeps the vertex from registering itself, the map is rebuilt at the end
+            IntersectionVertex v = new IntersectionVertex(null, string(strings, labels[i]), xs[i],
+                    ys[i], string(strings, names[i]));
+            v.trafficLight = (flags[i] & TRAFFIC_LIGHT) != 0;
+            v.freeFlowing = (flags[i] & FREE_FLOWING) != 0;
+            vertices[i] = v;
+        }
+        return vertices;
+    }
+
+    private static int[][] readGeometries(ByteBuffer buf) {
+        int n = buf.getInt();
+        int[] offsets = getInts(buf, n + 1);
+        int[] coords = getInts(buf, offsets[n]);
+        int[][] geometries = new int[n][];
+        for (int i = 0; i < n; i++) {
+            geometries[i] = new int[offsets[i + 1] - offsets[i]];
+            System.arraycopy(coords, offsets[i], geometries[i], 0, geometries[i].length);
+        }
+        return geometries;
+    }
+
+    private static StreetEdge[] readStreetEdges(ByteBuffer buf, String[] strings,
+            IntersectionVertex[] vertices, int[][] geometries) {
+        int n = buf.getInt();
+        int[] ids = getInts(buf, n);
+        int[] from = getInts(buf, n);
+        int[] to = getInts(buf, n);
+        int[] names = getInts(buf, n);
+        int[] lengths = getInts(buf, n);
+        int[] streetClasses = getInts(buf, n);
+        float[] carSpeeds = getFloats(buf, n);
+        float[] bicycleSafetyFactors = getFloats(buf, n);
+        int[] geometryIds = getInts(buf, n);
+        byte[] flags = getBytes(buf, n);
+        byte[] permissions = getBytes(buf, n);
+        byte[] inAngles = getBytes(buf, n);
+        byte[] outAngles = getBytes(buf, n);
+        StreetEdge[] edges = new StreetEdge[n];
+        for (int i = 0; i < n; i++) {
+            StreetEdge e = new StreetEdge(vertices[from[i]], vertices[to[i]], null,
+                    string(strings, names[i]), 0, PERMISSIONS[permissions[i]], false);
+            e.setStreetClass(streetClasses[i]);
+            e.setCarSpeed(carSpeeds[i]);
+            e.setBicycleSafetyFactor(bicycleSafetyFactors[i]);
+            e.setCompactData(geometryIds[i] < 0 ? null : geometries[geometryIds[i]], lengths[i],
+                    flags[i], inAngles[i], outAngles[i]);
+            ((Edge) e).setId(ids[i]); // package-private, not inherited by StreetEdge
+            edges[i] = e;
+        }
+        return edges;
+    }
+
+    private static String string(String[] strings, int id) {
+        return id < 0 ? null : strings[id];
+    }
+
+    /* Bulk reads, advancing the position of the buffer. */
+
+    private static int[] getInts(ByteBuffer buf, int n) {
+        int[] ret = new int[n];
+        buf.asIntBuffer().get(ret);
+        buf.position(buf.position() + n * 4);
+        return ret;
+    }
+
+    private static float[] getFloats(ByteBuffer buf, int n) {
+        float[] ret = new float[n];
+        buf.asFloatBuffer().get(ret);
+        buf.position(buf.position() + n * 4);
+        return ret;
+    }
+
+    private static double[] getDoubles(ByteBuffer buf, int n) {
+        double[] ret = new double[n];
+        buf.asDoubleBuffer().get(ret);
+        buf.position(buf.position() + n * 8);
+        return ret;
+    }
+
+    private static byte[] getBytes(ByteBuffer buf, int n) {
+        byte[] ret = new byte[n];
+        buf.get(ret);
+        return ret;
+    }
+
+    /* REFERENCES FROM SERIALIZED OBJECTS TO THE COLUMNS */
+
+    private static class VertexRef implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+
+        VertexRef(int index) {
+            this.index = index;
+        }
+    }
+
+    private static class EdgeRef implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+
+        EdgeRef(int index) {
+            this.index = index;
+        }
+    }
+
+    private static class RefReplacingObjectOutputStream extends ObjectOutputStream {
+
+        private final Writer writer;
+
+        RefReplacingObjectOutputStream(OutputStream out, Writer writer) throws IOException {
+            // several object streams are written one after the other, do not let them close it
+            super(new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            });
+            this.writer = writer;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj instanceof Vertex) {
+                Integer index = writer.vertexIndex.get(obj);
+                if (index != null)
+                    return new VertexRef(index);
+            } else if (obj instanceof Edge) {
+                Integer index = writer.edgeIndex.get(obj);
+                if (index != null)
+                    return new EdgeRef(index);
+            }
+            return obj;
+        }
+    }
+
+    private static class RefResolvingObjectInputStream extends ObjectInputStream {
+
+        private final Vertex[] vertices;
+
+        private final Edge[] edges;
+
+        RefResolvingObjectInputStream(ByteBuffer buf, Vertex[] vertices, Edge[] edges)
+                throws IOException {
+            super(new ByteBufferInputStream(buf));
+            this.vertices = vertices;
+            this.edges = edges;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof VertexRef)
+                return vertices[((VertexRef) obj).index];
+            if (obj instanceof EdgeRef)
+                return edges[((EdgeRef) obj).index];
+            return obj;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buf.hasRemaining())
+                return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+}
@@ -17,15 +17,20 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 import javax.xml.bind.annotation.XmlTransient;
 
 import org.onebusaway.gtfs.model.Trip;
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
 import org.opentripplanner.routing.util.IncrementingIdGenerator;
 import org.opentripplanner.routing.util.UniqueIdGenerator;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
 
 import com.vividsolutions.jts.geom.LineString;
 
@@ -51,6 +56,19 @@ public abstract class Edge implements Serializable {
 
     protected Vertex tov;
 
+    /**
+     * Turn restrictions starting on this edge, kept here by the Graph so that traversal does not
+     * need a map lookup at every intersection. The list is immutable and replaced as a whole when
+     * restrictions are added or removed. The Graph's own map remains the serialized copy.
+     */
+    transient List<TurnRestriction> turnRestrictions = Collections.emptyList();
+
+    /** Whether the Graph holds any AlertPatch for this edge. */
+    transient volatile boolean hasAlertPatches;
+
+    /** Whether static street notes are attached to this edge. */
+    private transient boolean hasStaticNotes;
+
     protected Edge(Vertex v1, Vertex v2) {
         if (v1 == null || v2 == null) {
             String err = String.format("%s constructed with null vertex : %s %s", this.getClass(),
@@ -67,8 +85,14 @@ public abstract class Edge implements Serializable {
         // " constructed with bad vertex types");
         // }
 
-        fromv.addOutgoing(this);
-        tov.addIncoming(this);
+        // Temporary edges are only attached to the temporary vertices they connect. Routing contexts
+        // present them on the permanent vertices of the graph through a per-request overlay, so
+        // requests never modify the edge lists of the shared graph.
+        boolean temporary = this instanceof TemporaryEdge;
+        if (!temporary || fromv instanceof TemporaryVertex)
+            fromv.addOutgoing(this);
+        if (!temporary || tov instanceof TemporaryVertex)
+            tov.addIncoming(this);
     }
 
     public Vertex getFromVertex() {
@@ -208,6 +232,8 @@ public abstract class Edge implements Serializable {
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
+        // turn restrictions and annotation flags are restored by their owners
+        turnRestrictions = Collections.emptyList();
         // edge lists are transient, reconstruct them
         fromv.addOutgoing(this);
         tov.addIncoming(this);
@@ -264,8 +290,46 @@ public abstract class Edge implements Serializable {
         }
     }
     
+    /**
+     * Returns true if the graph has turn restrictions starting on this edge. This is a field
+     * access, cheap enough to call for every state in a search.
+     */
+    public boolean hasTurnRestrictions() {
+        return !turnRestrictions.isEmpty();
+    }
+
+    /** Returns true if any AlertPatch is attached to this edge in its graph. */
+    public boolean hasAlertPatches() {
+        return hasAlertPatches;
+    }
+
+    /** Returns true if static street notes are attached to this edge. */
+    public boolean hasStaticNotes() {
+        return hasStaticNotes;
+    }
+
+    /** Maintained by the static street notes source; not meant to be called otherwise. */
+    public void setHasStaticNotes(boolean hasStaticNotes) {
+        this.hasStaticNotes = hasStaticNotes;
+    }
+
+    /**
+     * Forget the turn restrictions and flags that the graph keeps on this edge. Used by copies of
+     * an edge, which are not registered in the graph under their own identity.
+     */
+    protected void clearGraphAnnotations() {
+        turnRestrictions = Collections.emptyList();
+        hasAlertPatches = false;
+        hasStaticNotes = false;
+    }
+
     public int getId(){
     	return this.id;
     }
 
+    /** Restore the identifier stored for this edge by CompactGraphFormat. */
+    void setId(int id) {
+        this.id = id;
+    }
+
 }
@@ -0,0 +1,179 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The incoming and outgoing edges of every vertex of a graph, frozen after the graph is loaded and
+ * stored in compressed sparse row form: all outgoing edges in a single array, grouped by vertex,
+ * with the edges of the vertex in slot s found between outgoingStart(s) and outgoingEnd(s). The
+ * slot of a vertex is its index relative to the lowest vertex index in the graph.
+ *
+ * Expanding a vertex during a search then scans a contiguous range of one shared array instead
+ * of wrapping the edge array of each vertex in a new collection, and nothing in the structure
+ * changes after construction, so it can be read by any number of threads.
+ *
+ * The graph can still be modified (by real-time updaters, or by temporary edges attached to
+ * permanent vertices). Vertices count their edge list modifications, so a vertex whose edges
+ * changed after freezing is detected by slot() and its own edge lists are used instead.
+ */
+public class FrozenAdjacency {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FrozenAdjacency.class);
+
+    private final int minIndex;
+
+    /** The edge list version of each vertex when frozen, by slot. */
+    private final int[] versions;
+
+    private final int[] outgoingStart;
+
+    private final int[] incomingStart;
+
+    public final Edge[] outgoingEdges;
+
+    public final Edge[] incomingEdges;
+
+    public FrozenAdjacency(Graph graph) {
+        long start = System.currentTimeMillis();
+        Collection<Vertex> vertices = graph.getVertices();
+        int min = Integer.MAX_VALUE, max = -1;
+        for (Vertex v : vertices) {
+            min = Math.min(min, v.getIndex());
+            max = Math.max(max, v.getIndex());
+        }
+        if (max < 0)
+            min = 0; // empty graph
+        minIndex = min;
+        int nSlots = max - min + 1;
+        versions = new int[nSlots];
+        outgoingStart = new int[nSlots + 1];
+        incomingStart = new int[nSlots + 1];
+        // Vertices without edges (and unused slots) keep an empty range. Versions of unused slots
+        // are never compared since no vertex maps to them.
+        int nOutgoing = 0, nIncoming = 0;
+        Vertex[] bySlot = new Vertex[nSlots];
+        for (Vertex v : vertices) {
+            bySlot[v.getIndex() - min] = v;
+        }
+        Edge[][] outgoing = new Edge[nSlots][];
+        Edge[][] incoming = new Edge[nSlots][];
+        for (int s = 0; s < nSlots; s++) {
+            Vertex v = bySlot[s];
+            if (v != null) {
+                // read the version before the edges, a concurrent change then leaves it stale
+                versions[s] = v.getEdgeListVersion();
+                outgoing[s] = v.getOutgoingArray();
+                incoming[s] = v.getIncomingArray();
+                nOutgoing += outgoing[s].length;
+                nIncoming += incoming[s].length;
+            }
+        }
+        outgoingEdges = new Edge[nOutgoing];
+        incomingEdges = new Edge[nIncoming];
+        for (int s = 0; s < nSlots; s++) {
+            outgoingStart[s + 1] = append(outgoing[s], outgoingEdges, outgoingStart[s]);
+            incomingStart[s + 1] = append(incoming[s], incomingEdges, incomingStart[s]);
+        }
+        LOG.info("Froze adjacency of {} vertices and {} edges in {} msec.", vertices.size(),
+                nOutgoing, System.currentTimeMillis() - start);
+    }
+
+    private static int append(Edge[] edges, Edge[] target, int position) {
+        if (edges == null)
+            return position;
+        System.arraycopy(edges, 0, target, position, edges.length);
+        return position + edges.length;
+    }
+
+    /**
+     * @return the slot of the given vertex, or -1 if it was not in the graph when this adjacency
+     *         was built or if its edges have changed since.
+     */
+    public int slot(Vertex v) {
+        int s = v.getIndex() - minIndex;
+        if (s < 0 || s >= versions.length || versions[s] != v.getEdgeListVersion())
+            return -1;
+        return s;
+    }
+
+    /** First position in outgoingEdges of the edges leaving the vertex in the given slot. */
+    public int outgoingStart(int slot) {
+        return outgoingStart[slot];
+    }
+
+    /** End position (exclusive) in outgoingEdges of the edges leaving the vertex in the given slot. */
+    public int outgoingEnd(int slot) {
+        return outgoingStart[slot + 1];
+    }
+
+    public int incomingStart(int slot) {
+        return incomingStart[slot];
+    }
+
+    public int incomingEnd(int slot) {
+        return incomingStart[slot + 1];
+    }
+
+    /** @return the outgoing edges of the given vertex, from the frozen arrays if still current. */
+    public Collection<Edge> getOutgoing(Vertex v) {
+        int s = slot(v);
+        if (s < 0)
+            return v.getOutgoing();
+        return new EdgeRange(outgoingEdges, outgoingStart[s], outgoingStart[s + 1]);
+    }
+
+    /** @return the incoming edges of the given vertex, from the frozen arrays if still current. */
+    public Collection<Edge> getIncoming(Vertex v) {
+        int s = slot(v);
+        if (s < 0)
+            return v.getIncoming();
+        return new EdgeRange(incomingEdges, incomingStart[s], incomingStart[s + 1]);
+    }
+
+    /** A read-only view of a range of one of the edge arrays. */
+    private static class EdgeRange extends AbstractList<Edge> implements RandomAccess {
+
+        private final Edge[] edges;
+
+        private final int start;
+
+        private final int size;
+
+        EdgeRange(Edge[] edges, int start, int end) {
+            this.edges = edges;
+            this.start = start;
+            this.size = end - start;
+        }
+
+        @Override
+        public Edge get(int i) {
+            if (i < 0 || i >= size)
+                throw new IndexOutOfBoundsException();
+            return edges[start + i];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+}
@@ -37,9 +37,17 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.util.prefs.Preferences;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.*;
 import org.joda.time.DateTime;
 import org.onebusaway.gtfs.impl.calendar.CalendarServiceImpl;
@@ -53,6 +61,7 @@ import org.opentripplanner.analyst.request.SampleFactory;
 import org.opentripplanner.api.resource.GraphMetadata;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.model.T2;
 import org.opentripplanner.common.geometry.GraphUtils;
 import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
 import org.opentripplanner.graph_builder.annotation.NoFutureDates;
@@ -60,6 +69,7 @@ import org.opentripplanner.model.GraphBundle;
 import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
+import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.edgetype.EdgeWithCleanup;
 import org.opentripplanner.routing.edgetype.StreetEdge;
@@ -95,6 +105,8 @@ public class Graph implements Serializable {
     // TODO Remove this field, use Router.routerId ?
     public String routerId;
 
+    private static final AlertPatch[] NO_ALERT_PATCHES = new AlertPatch[0];
+
     private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
 
     private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
@@ -117,6 +129,12 @@ public class Graph implements Serializable {
 
     private transient CalendarService calendarService;
 
+    /** ServiceDays by date and agency, see getServiceDay. */
+    private transient volatile Cache<T2<ServiceDate, String>, ServiceDay> serviceDays;
+
+    /** Three days per agency per distinct search date. */
+    private static final int MAX_SERVICE_DAYS = 1000;
+
     private boolean debugData = true;
 
     // TODO this would be more efficient if it was just an array.
@@ -128,10 +146,15 @@ public class Graph implements Serializable {
 
     public transient GraphIndex index;
 
+    /** Edges of all vertices in contiguous arrays, built by index(). Null if not indexed. */
+    public transient FrozenAdjacency adjacency;
+
     private transient GeometryIndex geomIndex;
 
     private transient SampleFactory sampleFactory;
 
+    private transient GraphLoadMetrics loadMetrics;
+
     public final Deduplicator deduplicator = new Deduplicator();
 
     /**
@@ -245,6 +268,7 @@ public class Graph implements Serializable {
             }
 
             turnRestrictions.remove(e);
+            e.clearGraphAnnotations();
             streetNotesService.removeStaticNotes(e);
             edgeById.remove(e.getId());
 
@@ -342,6 +366,7 @@ public class Graph implements Serializable {
                     this.alertPatches.put(edge, alertPatches);
                 }
             }
+            edge.hasAlertPatches = true;
         }
     }
 
@@ -358,6 +383,7 @@ public class Graph implements Serializable {
             if (alertPatches != null && alertPatches.contains(alertPatch)) {
                 if (alertPatches.size() < 2) {
                     this.alertPatches.remove(edge);
+                    edge.hasAlertPatches = false;
                 } else {
                     alertPatches.remove(alertPatch);
                 }
@@ -367,11 +393,12 @@ public class Graph implements Serializable {
 
     /**
      * Get the {@link AlertPatch} {@link Set} that belongs to an {@link Edge} and build a new array.
+     * Edges without alert patches are answered from a flag on the edge, without taking the lock.
      * @param edge
      * @return The {@link AlertPatch} array that belongs to the {@link Edge}
      */
     public AlertPatch[] getAlertPatches(Edge edge) {
-        if (edge != null) {
+        if (edge != null && edge.hasAlertPatches) {
             synchronized (alertPatches) {
                 Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
                 if (alertPatches != null) {
@@ -379,7 +406,7 @@ public class Graph implements Serializable {
                 }
             }
         }
-        return new AlertPatch[0];
+        return NO_ALERT_PATCHES;
     }
 
     /**
@@ -396,6 +423,7 @@ public class Graph implements Serializable {
             this.turnRestrictions.put(edge, turnRestrictions);
         }
         turnRestrictions.add(turnRestriction);
+        edge.turnRestrictions = ImmutableList.copyOf(turnRestrictions);
     }
 
     /**
@@ -410,25 +438,28 @@ public class Graph implements Serializable {
         if (turnRestrictions != null && turnRestrictions.contains(turnRestriction)) {
             if (turnRestrictions.size() < 2) {
                 this.turnRestrictions.remove(edge);
+                edge.turnRestrictions = Collections.emptyList();
             } else {
                 turnRestrictions.remove(turnRestriction);
+                edge.turnRestrictions = ImmutableList.copyOf(turnRestrictions);
             }
         }
     }
 
     /**
-     * Get the {@link TurnRestriction} {@link List} that belongs to an {@link Edge} and return an
-     * immutable copy. This method is thread-safe when used by itself, but not if addTurnRestriction
-     * or removeTurnRestriction is called concurrently.
+     * Get the {@link TurnRestriction} {@link List} that belongs to an {@link Edge}. The list is an
+     * immutable snapshot stored on the edge itself, so this is a field access rather than a map
+     * lookup and is safe to call on every traversal. The map in this class is only consulted when
+     * restrictions are added or removed, and is what gets serialized.
+     * 
+     * The result depends only on the edge, not on this graph instance. Code that only needs to know
+     * whether any restrictions exist should call {@link Edge#hasTurnRestrictions()} instead.
      * @param edge
      * @return The {@link TurnRestriction} {@link List} that belongs to the {@link Edge}
      */
     public List<TurnRestriction> getTurnRestrictions(Edge edge) {
         if (edge != null) {
-            List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge);
-            if (turnRestrictions != null) {
-                return ImmutableList.copyOf(turnRestrictions);
-            }
+            return edge.turnRestrictions;
         }
         return Collections.emptyList();
     }
@@ -610,6 +641,13 @@ public class Graph implements Serializable {
     private void readObject(ObjectInputStream inputStream) throws ClassNotFoundException,
             IOException {
         inputStream.defaultReadObject();
+        // the per-edge copies of turn restrictions and alert flags are transient
+        for (Map.Entry<Edge, List<TurnRestriction>> entry : turnRestrictions.entrySet()) {
+            entry.getKey().turnRestrictions = ImmutableList.copyOf(entry.getValue());
+        }
+        for (Edge edge : alertPatches.keySet()) {
+            edge.hasAlertPatches = true;
+        }
     }
 
     /**
@@ -637,7 +675,13 @@ public class Graph implements Serializable {
         BASIC, FULL, DEBUG;
     }
 
+    /**
+     * Load a graph from a file, which may be either in the compact format written by
+     * {@link CompactGraphFormat} (in which case it is memory-mapped) or a serialized object stream.
+     */
     public static Graph load(File file, LoadLevel level) throws IOException, ClassNotFoundException {
+        if (CompactGraphFormat.isCompact(file))
+            return CompactGraphFormat.load(file, level, new DefaultStreetVertexIndexFactory());
         LOG.info("Reading graph " + file.getAbsolutePath() + " ...");
         // cannot use getClassLoader() in static context
         ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
@@ -652,9 +696,20 @@ public class Graph implements Serializable {
         return load(in, level);
     }
 
+    /**
+     * Load a graph from a stream in either the compact format or as a serialized object stream.
+     */
     public static Graph load(InputStream is, LoadLevel level) throws ClassNotFoundException,
             IOException {
-        return load(new ObjectInputStream(is), level);
+        return load(is, level, new DefaultStreetVertexIndexFactory());
+    }
+
+    public static Graph load(InputStream is, LoadLevel level,
+            StreetVertexIndexFactory indexFactory) throws ClassNotFoundException, IOException {
+        is = new BufferedInputStream(is);
+        if (CompactGraphFormat.isCompact(is))
+            return CompactGraphFormat.load(is, level, indexFactory);
+        return load(new ObjectInputStream(is), level, indexFactory);
     }
 
     /**
@@ -677,20 +732,86 @@ public class Graph implements Serializable {
      * serialization. 
      * TODO: do we really need a factory for different street vertex indexes?
      */
-    public void index(StreetVertexIndexFactory indexFactory) {
-        streetIndex = indexFactory.newIndex(this);
-        LOG.debug("street index built.");
-        LOG.debug("Rebuilding edge and vertex indices.");
-        rebuildVertexAndEdgeIndices();
-        Set<TripPattern> tableTripPatterns = Sets.newHashSet();
-        for (PatternArriveVertex pav : Iterables.filter(this.getVertices(), PatternArriveVertex.class)) {
-            tableTripPatterns.add(pav.getTripPattern());
-        }
-        for (TripPattern ttp : tableTripPatterns) {
-            if (ttp != null) ttp.scheduledTimetable.finish(); // skip frequency-based patterns with no table (null)
+    public void index(final StreetVertexIndexFactory indexFactory) {
+        final GraphLoadMetrics metrics = getLoadMetrics();
+        long start = System.currentTimeMillis();
+        // These indexes only read the graph and each write their own fields, so they are built
+        // concurrently rather than leaving all but one core idle while a router starts up.
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            ForkJoinTask<StreetVertexIndexService> streetIndexTask = pool.submit(metrics.timed(
+                    "streetIndex", new Callable<StreetVertexIndexService>() {
+                        @Override
+                        public StreetVertexIndexService call() {
+                            return indexFactory.newIndex(Graph.this);
+                        }
+                    }));
+            ForkJoinTask<Void> idTask = pool.submit(metrics.timed("vertexAndEdgeIds",
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            LOG.debug("Rebuilding edge and vertex indices.");
+                            rebuildVertexAndEdgeIndices();
+                            return null;
+                        }
+                    }));
+            ForkJoinTask<GraphIndex> graphIndexTask = pool.submit(metrics.timed("graphIndex",
+                    new Callable<GraphIndex>() {
+                        @Override
+                        public GraphIndex call() {
+                            return new GraphIndex(Graph.this);
+                        }
+                    }));
+            ForkJoinTask<FrozenAdjacency> adjacencyTask = pool.submit(metrics.timed("adjacency",
+                    new Callable<FrozenAdjacency>() {
+                        @Override
+                        public FrozenAdjacency call() {
+                            return new FrozenAdjacency(Graph.this);
+                        }
+                    }));
+            long timetableStart = System.currentTimeMillis();
+            Set<TripPattern> tableTripPatterns = Sets.newHashSet();
+            for (PatternArriveVertex pav : Iterables.filter(this.getVertices(), PatternArriveVertex.class)) {
+                tableTripPatterns.add(pav.getTripPattern());
+            }
+            List<Callable<Void>> timetableTasks = Lists.newArrayList();
+            for (final TripPattern ttp : tableTripPatterns) {
+                if (ttp != null) { // skip frequency-based patterns with no table (null)
+                    timetableTasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            ttp.scheduledTimetable.finish();
+                            return null;
+                        }
+                    });
+                }
+            }
+            // TODO: Move this ^ stuff into the graph index
+            for (Future<Void> future : pool.invokeAll(timetableTasks)) {
+                future.get(); // rethrow any failure
+            }
+            metrics.record("timetables", timetableStart);
+            streetIndex = streetIndexTask.join();
+            LOG.debug("street index built.");
+            idTask.join();
+            this.index = graphIndexTask.join();
+            this.adjacency = adjacencyTask.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while indexing graph.", e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            pool.shutdown();
         }
-        // TODO: Move this ^ stuff into the graph index
-        this.index = new GraphIndex(this);
+        metrics.record("index", start);
+    }
+
+    /** @return the time spent in each phase of loading and indexing this graph. */
+    public synchronized GraphLoadMetrics getLoadMetrics() {
+        if (loadMetrics == null)
+            loadMetrics = new GraphLoadMetrics();
+        return loadMetrics;
     }
     
     /**
@@ -706,7 +827,10 @@ public class Graph implements Serializable {
     public static Graph load(ObjectInputStream in, LoadLevel level,
             StreetVertexIndexFactory indexFactory) throws IOException, ClassNotFoundException {
         try {
+            long start = System.currentTimeMillis();
             Graph graph = (Graph) in.readObject();
+            GraphLoadMetrics metrics = graph.getLoadMetrics();
+            metrics.record("readGraph", start);
             LOG.debug("Basic graph info read.");
             if (graph.graphVersionMismatch())
                 throw new RuntimeException("Graph version mismatch detected.");
@@ -715,13 +839,12 @@ public class Graph implements Serializable {
             // vertex edge lists are transient to avoid excessive recursion depth
             // vertex list is transient because it can be reconstructed from edges
             LOG.debug("Loading edges...");
+            start = System.currentTimeMillis();
             List<Edge> edges = (ArrayList<Edge>) in.readObject();
-            graph.vertices = new HashMap<String, Vertex>();
-            
-            for (Edge e : edges) {
-                graph.vertices.put(e.getFromVertex().getLabel(), e.getFromVertex());
-                graph.vertices.put(e.getToVertex().getLabel(), e.getToVertex());
-            }
+            metrics.record("readEdges", start);
+            start = System.currentTimeMillis();
+            graph.rebuildVertexMap(edges);
+            metrics.record("vertexMap", start);
 
             LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
             graph.index(indexFactory);
@@ -743,6 +866,23 @@ public class Graph implements Serializable {
         }
     }
 
+    /**
+     * Reconstruct the (transient) map of vertices by label from the endpoints of the given edges,
+     * after deserialization.
+     */
+    void rebuildVertexMap(Collection<Edge> edges) {
+        vertices = new HashMap<String, Vertex>();
+        for (Edge e : edges) {
+            vertices.put(e.getFromVertex().getLabel(), e.getFromVertex());
+            vertices.put(e.getToVertex().getLabel(), e.getToVertex());
+        }
+    }
+
+    /** Used when loading the debug section of a compact graph file. */
+    void setBuilderAnnotations(List<GraphBuilderAnnotation> graphBuilderAnnotations) {
+        this.graphBuilderAnnotations = graphBuilderAnnotations;
+    }
+
     /**
      * Compares the OTP version number stored in the graph with that of the currently running instance. Logs warnings explaining that mismatched
      * versions can cause problems.
@@ -750,7 +890,7 @@ public class Graph implements Serializable {
      * @return false if Maven versions match (even if commit ids do not match), true if Maven version of graph does not match this version of OTP or
      *         graphs are otherwise obviously incompatible.
      */
-    private boolean graphVersionMismatch() {
+    boolean graphVersionMismatch() {
         MavenVersion v = MavenVersion.VERSION;
         MavenVersion gv = this.mavenVersion;
         LOG.info("Graph version: {}", gv);
@@ -854,6 +994,36 @@ public class Graph implements Serializable {
         return this.calendarService;
     }
 
+    /**
+     * Get the ServiceDay for the given date in the time zone of the given agency, using this
+     * graph's calendar service. ServiceDays are shared between requests: besides saving the
+     * calendar lookups, this lets Timetables keep the trips active on each day from one request
+     * to the next.
+     */
+    public ServiceDay getServiceDay(final ServiceDate serviceDate, final String agencyId) {
+        Cache<T2<ServiceDate, String>, ServiceDay> cache = serviceDays;
+        if (cache == null) {
+            synchronized (this) {
+                if (serviceDays == null) {
+                    serviceDays = CacheBuilder.newBuilder().maximumSize(MAX_SERVICE_DAYS).build();
+                }
+                cache = serviceDays;
+            }
+        }
+        try {
+            return cache.get(new T2<ServiceDate, String>(serviceDate, agencyId),
+                    new Callable<ServiceDay>() {
+                        @Override
+                        public ServiceDay call() {
+                            return new ServiceDay(Graph.this, serviceDate, getCalendarService(),
+                                    agencyId);
+                        }
+                    });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
     public int removeEdgelessVertices() {
         int removed = 0;
         List<Vertex> toRemove = new LinkedList<Vertex>();
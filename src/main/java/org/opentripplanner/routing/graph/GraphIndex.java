@@ -37,9 +37,13 @@ import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.trippattern.FrequencyEntry;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.routing.vertextype.TransitVertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
@@ -77,6 +81,21 @@ public class GraphIndex {
     public final Map<Stop, StopCluster> stopClusterForStop = Maps.newHashMap();
     public final Map<String, StopCluster> stopClusterForId = Maps.newHashMap();
 
+    /*
+     * Dense integer indexes of agencies, routes, trips and stops, assigned in the constructor.
+     * The index of a trip is also stored in its TripTimes, that of a route in its TripPatterns
+     * and that of a stop in its TransitVertices, so that request filters compiled into BitSets
+     * (see TransitFilter) can be checked during routing without any map lookups.
+     */
+    public final List<Agency> agencyForIndex = Lists.newArrayList();
+    public final List<Route> routeForIndex = Lists.newArrayList();
+    public final List<Trip> tripForIndex = Lists.newArrayList();
+    public final List<Stop> stopForIndex = Lists.newArrayList();
+    public final TObjectIntMap<String> indexForAgency = new TObjectIntHashMap<String>(10, 0.5f, -1);
+    public final TObjectIntMap<AgencyAndId> indexForRoute = new TObjectIntHashMap<AgencyAndId>(10, 0.5f, -1);
+    public final TObjectIntMap<AgencyAndId> indexForTrip = new TObjectIntHashMap<AgencyAndId>(10, 0.5f, -1);
+    public final TObjectIntMap<AgencyAndId> indexForStop = new TObjectIntHashMap<AgencyAndId>(10, 0.5f, -1);
+
     /* Should eventually be replaced with new serviceId indexes. */
     private final CalendarService calendarService;
     private final Map<AgencyAndId,Integer> serviceCodes;
@@ -146,6 +165,7 @@ public class GraphIndex {
         for (Route route : patternsForRoute.asMap().keySet()) {
             routeForId.put(route.getId(), route);
         }
+        assignDenseIndexes(vertices);
 
         // Copy these two service indexes from the graph until we have better ones.
         calendarService = graph.getCalendarService();
@@ -154,6 +174,44 @@ public class GraphIndex {
         LOG.info("Done indexing graph.");
     }
 
+    /**
+     * Number the agencies, routes, trips and stops found above, and record these numbers on the
+     * graph elements that are consulted during routing.
+     */
+    private void assignDenseIndexes(Collection<Vertex> vertices) {
+        for (Agency agency : agencyForId.values()) {
+            indexForAgency.put(agency.getId(), agencyForIndex.size());
+            agencyForIndex.add(agency);
+        }
+        for (Route route : routeForId.values()) {
+            indexForRoute.put(route.getId(), routeForIndex.size());
+            routeForIndex.add(route);
+        }
+        for (Trip trip : tripForId.values()) {
+            indexForTrip.put(trip.getId(), tripForIndex.size());
+            tripForIndex.add(trip);
+        }
+        for (Stop stop : stopForId.values()) {
+            indexForStop.put(stop.getId(), stopForIndex.size());
+            stopForIndex.add(stop);
+        }
+        for (TripPattern pattern : patternForId.values()) {
+            pattern.routeIndex = indexForRoute.get(pattern.route.getId());
+            for (TripTimes tripTimes : pattern.scheduledTimetable.tripTimes) {
+                tripTimes.tripIndex = indexForTrip.get(tripTimes.trip.getId());
+            }
+            for (FrequencyEntry freq : pattern.scheduledTimetable.frequencyEntries) {
+                freq.tripTimes.tripIndex = indexForTrip.get(freq.tripTimes.trip.getId());
+            }
+        }
+        for (Vertex vertex : vertices) {
+            if (vertex instanceof TransitVertex) {
+                TransitVertex transitVertex = (TransitVertex) vertex;
+                transitVertex.stopIndex = indexForStop.get(transitVertex.getStopId());
+            }
+        }
+    }
+
     /**
      * Stop clustering is slow to perform and only used in profile routing for the moment.
      * Therefore it is not done automatically, and any method requiring stop clusters should call this method
@@ -0,0 +1,66 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wall-clock time spent in each phase of loading and indexing a graph, in the order the phases
+ * completed. Indexing phases run concurrently, so their durations may add up to more than the
+ * total. Exposed through the /routers/{routerId}/metrics endpoint.
+ */
+public class GraphLoadMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphLoadMetrics.class);
+
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+
+    /** Record a phase that started at the given time (as returned by System.currentTimeMillis). */
+    public void record(String phase, long startMillis) {
+        record(phase, startMillis, System.currentTimeMillis());
+    }
+
+    /** Record a phase that ran between the given times. */
+    public synchronized void record(String phase, long startMillis, long endMillis) {
+        long elapsed = endMillis - startMillis;
+        phaseMillis.put(phase, elapsed);
+        LOG.debug("{} took {} msec", phase, elapsed);
+    }
+
+    /** @return a copy of the phase durations in milliseconds, keyed on phase name. */
+    public synchronized Map<String, Long> getPhaseMillis() {
+        return new LinkedHashMap<String, Long>(phaseMillis);
+    }
+
+    /** Wrap the given task so that its execution is recorded as the given phase. */
+    public <T> Callable<T> timed(final String phase, final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.currentTimeMillis();
+                try {
+                    return task.call();
+                } finally {
+                    record(phase, start);
+                }
+            }
+        };
+    }
+
+}
@@ -57,6 +57,13 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     private transient Edge[] outgoing = new Edge[0];
 
+    /**
+     * Incremented on each change to the edge lists, lets FrozenAdjacency detect stale vertices.
+     * Volatile because it is read by search threads without locking: incrementing it after
+     * replacing an edge array publishes the new array to any thread which then reads the version.
+     */
+    private transient volatile int edgeListVersion = 0;
+
     
     /* CONSTRUCTORS */
 
@@ -143,6 +150,7 @@ public abstract class Vertex implements Serializable, Cloneable {
     public void addOutgoing(Edge edge) {
         synchronized (this) {
             outgoing = addEdge(outgoing, edge);
+            edgeListVersion++;
         }
     }
 
@@ -151,6 +159,7 @@ public abstract class Vertex implements Serializable, Cloneable {
         synchronized (this) {
             int n = outgoing.length;
             outgoing = removeEdge(outgoing, edge);
+            edgeListVersion++;
             return (outgoing.length < n);
         }
     }
@@ -159,6 +168,7 @@ public abstract class Vertex implements Serializable, Cloneable {
     public void addIncoming(Edge edge) {
         synchronized (this) {
             incoming = addEdge(incoming, edge);
+            edgeListVersion++;
         }
     }
 
@@ -167,6 +177,7 @@ public abstract class Vertex implements Serializable, Cloneable {
         synchronized (this) {
             int n = incoming.length;
             incoming = removeEdge(incoming, edge);
+            edgeListVersion++;
             return (incoming.length < n);
         }
     }
@@ -185,6 +196,19 @@ public abstract class Vertex implements Serializable, Cloneable {
         return Arrays.asList(incoming);
     }
 
+    /** The edge array itself, which is replaced rather than modified when edges are added. */
+    Edge[] getOutgoingArray() {
+        return outgoing;
+    }
+
+    Edge[] getIncomingArray() {
+        return incoming;
+    }
+
+    int getEdgeListVersion() {
+        return edgeListVersion;
+    }
+
     @XmlTransient
     public int getDegreeOut() {
         return outgoing.length;
@@ -274,6 +298,11 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     /* UTILITY METHODS FOR SEARCHING, GRAPH BUILDING, AND GENERATING WALKSTEPS */
 
+    /**
+     * @return the street edges in this vertex's own outgoing list. Temporary edges of a request
+     *         that leave a permanent vertex are not included; use RoutingContext.getOutgoing for
+     *         those.
+     */
     @XmlTransient
     public List<Edge> getOutgoingStreetEdges() {
         List<Edge> result = new ArrayList<Edge>();
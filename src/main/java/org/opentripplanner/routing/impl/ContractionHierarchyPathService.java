@@ -0,0 +1,81 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import java.util.List;
+
+import org.opentripplanner.routing.contraction.ContractionHierarchy;
+import org.opentripplanner.routing.contraction.ContractionHierarchySet;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.pathparser.BasicPathParser;
+import org.opentripplanner.routing.pathparser.NoThruTrafficPathParser;
+import org.opentripplanner.routing.pathparser.PathParser;
+import org.opentripplanner.routing.services.PathService;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A PathService answering street-only requests from the contraction hierarchies stored in the
+ * graph, and passing all other requests to another PathService. Requests are also passed on when
+ * no hierarchy matches their mode and weighting options, or when the path found in the hierarchy
+ * cannot be used as is (see ContractionHierarchy.getPath).
+ */
+public class ContractionHierarchyPathService implements PathService {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(ContractionHierarchyPathService.class);
+
+    private Graph graph;
+
+    private PathService fallback;
+
+    public ContractionHierarchyPathService(Graph graph, PathService fallback) {
+        this.graph = graph;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public List<GraphPath> getPaths(RoutingRequest options) {
+        ContractionHierarchySet hierarchies = graph.getService(ContractionHierarchySet.class);
+        ContractionHierarchy hierarchy = (options == null || hierarchies == null) ? null
+                : hierarchies.getHierarchy(options);
+        if (hierarchy != null) {
+            // same routing context as RetryingPathServiceImpl, so it can be passed on as is
+            if (options.rctx == null) {
+                options.setRoutingContext(graph);
+                options.rctx.pathParsers = new PathParser[] { new BasicPathParser(),
+                        new NoThruTrafficPathParser() };
+            }
+            long searchBeginTime = System.currentTimeMillis();
+            GraphPath path = hierarchy.getPath(options);
+            if (path != null) {
+                LOG.debug("Path found in contraction hierarchy in {} msec",
+                        System.currentTimeMillis() - searchBeginTime);
+                return Lists.newArrayList(path);
+            }
+            LOG.debug("No usable path in contraction hierarchy, falling back to a full search.");
+        }
+        return fallback.getPaths(options);
+    }
+
+    @Override
+    public void setSPTVisitor(SPTVisitor vis) {
+        fallback.setSPTVisitor(vis);
+    }
+
+}
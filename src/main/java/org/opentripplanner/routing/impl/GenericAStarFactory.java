@@ -8,9 +8,12 @@ public class GenericAStarFactory implements SPTServiceFactory{
 
 	private VisualTraverseVisitor traverseVisitor=null;
 
+	private boolean indexedSpt = false;
+
 	@Override
 	public SPTService instantiate() {
 		GenericAStar ret = new GenericAStar();
+		ret.setIndexedSpt(indexedSpt);
 		if(traverseVisitor!=null){
 			ret.setTraverseVisitor(traverseVisitor);
 		}
@@ -21,4 +24,9 @@ public class GenericAStarFactory implements SPTServiceFactory{
 		this.traverseVisitor = visitor;
 	}
 
+	/** Make the instantiated searches store their states in vertex-indexed arrays. */
+	public void setIndexedSpt(boolean indexedSpt) {
+		this.indexedSpt = indexedSpt;
+	}
+
 }
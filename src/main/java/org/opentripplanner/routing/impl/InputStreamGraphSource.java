@@ -18,15 +18,16 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.util.prefs.Preferences;
 
+import org.opentripplanner.routing.graph.CompactGraphFormat;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.services.GraphSource;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
 import org.opentripplanner.standalone.Router;
 import org.opentripplanner.standalone.Router.LifecycleManager;
+import org.opentripplanner.standalone.RouterWarmup;
 import org.opentripplanner.updater.PropertiesPreferences;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,7 +54,13 @@ public class InputStreamGraphSource implements GraphSource {
      * */
     private static final long LOAD_DELAY_SEC = 10;
 
-    private Router router;
+    /**
+     * How long to wait for requests still running on a router replaced by a reload to complete
+     * before shutting it down.
+     */
+    private static final long DRAIN_TIMEOUT_SEC = 60;
+
+    private volatile Router router;
 
     private String routerId;
 
@@ -131,8 +138,10 @@ public class InputStreamGraphSource implements GraphSource {
                 return true;
             if (preEvict) {
                 synchronized (preEvictMutex) {
-                    if (router != null && routerLifecycleManager != null) {
-                        routerLifecycleManager.shutdownRouter(router);
+                    if (router != null) {
+                        router.retire();
+                        if (routerLifecycleManager != null)
+                            routerLifecycleManager.shutdownRouter(router);
                     }
                     /*
                      * Forcing router to null here should remove any references to the graph once
@@ -140,24 +149,35 @@ public class InputStreamGraphSource implements GraphSource {
                      * memory.
                      */
                     router = null;
-                    router = loadGraph();
+                    // Clients are blocked until the graph is loaded, do not keep them waiting longer.
+                    router = loadGraph(false);
                 }
             } else {
-                Router newRouter = loadGraph();
+                /*
+                 * The current router keeps serving requests while the new one is loaded and warmed
+                 * up. The new one is then swapped in, and the old one is shut down once the
+                 * requests it was handling have completed.
+                 */
+                Router newRouter = loadGraph(true);
                 if (newRouter != null) {
                     // Load OK
-                    if (router != null && routerLifecycleManager != null) {
-                        routerLifecycleManager.shutdownRouter(router);
-                    }
+                    Router oldRouter = router;
                     router = newRouter; // Assignment in java is atomic
+                    if (oldRouter != null && routerLifecycleManager != null) {
+                        drain(oldRouter);
+                        routerLifecycleManager.shutdownRouter(oldRouter);
+                    }
                 } else {
                     // Load failed
                     if (force || router == null) {
                         LOG.warn("Unable to load data for router '{}'.", routerId);
-                        if (router != null && routerLifecycleManager != null) {
-                            routerLifecycleManager.shutdownRouter(router);
-                        }
+                        Router oldRouter = router;
                         router = null;
+                        if (oldRouter != null) {
+                            oldRouter.retire();
+                            if (routerLifecycleManager != null)
+                                routerLifecycleManager.shutdownRouter(oldRouter);
+                        }
                     } else {
                         // No shutdown, since we keep current one.
                         LOG.warn("Unable to load data for router '{}', keeping old data.", routerId);
@@ -178,6 +198,18 @@ public class InputStreamGraphSource implements GraphSource {
         }
     }
 
+    /** Wait for the requests being handled by a router that has been replaced to complete. */
+    private void drain(Router oldRouter) {
+        oldRouter.retire();
+        try {
+            if (!oldRouter.awaitIdle(DRAIN_TIMEOUT_SEC * 1000))
+                LOG.warn("Requests still running on the previous graph of router '{}' after {} sec.",
+                        routerId, DRAIN_TIMEOUT_SEC);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Check if a graph has been modified since the last time it has been loaded.
      * 
@@ -203,10 +235,13 @@ public class InputStreamGraphSource implements GraphSource {
     public void evict() {
         synchronized (this) {
             if (router != null) {
+                // Unpublish the router first, so that acquireRouter() does not retry on it.
+                Router oldRouter = router;
+                router = null;
+                oldRouter.retire();
                 if (routerLifecycleManager != null) {
-                    routerLifecycleManager.shutdownRouter(router);
+                    routerLifecycleManager.shutdownRouter(oldRouter);
                 }
-                router = null;
             }
         }
     }
@@ -215,26 +250,32 @@ public class InputStreamGraphSource implements GraphSource {
      * Do the actual operation of graph loading. Load configuration if present, and startup the
      * router with the help of the router lifecycle manager.
      * 
+     * @param warmUp True to run the warm-up queries of the router configuration (if any) before
+     *        returning the new router.
      * @return
      */
-    private Router loadGraph() {
+    private Router loadGraph(boolean warmUp) {
         final Graph newGraph;
-        try (InputStream is = graphInputStream.getGraphInputStream()) {
-            LOG.info("Loading graph...");
-            try {
-                newGraph = Graph.load(new ObjectInputStream(is), loadLevel,
-                        streetVertexIndexFactory);
-            } catch (Exception ex) {
-                LOG.error("Exception while loading graph '{}'.", routerId);
-                ex.printStackTrace();
-                return null;
+        File graphFile = graphInputStream.getGraphFile();
+        try {
+            if (graphFile != null && CompactGraphFormat.isCompact(graphFile)) {
+                // Map the file rather than reading it through a stream.
+                LOG.info("Loading compact graph...");
+                newGraph = CompactGraphFormat.load(graphFile, loadLevel, streetVertexIndexFactory);
+                newGraph.routerId = (routerId);
+            } else {
+                newGraph = loadGraphFromStream();
             }
-
-            newGraph.routerId = (routerId);
         } catch (IOException e) {
             LOG.warn("Graph file not found or not openable for routerId '{}': {}", routerId, e);
             return null;
+        } catch (Exception ex) {
+            LOG.error("Exception while loading graph '{}'.", routerId);
+            ex.printStackTrace();
+            return null;
         }
+        if (newGraph == null)
+            return null;
 
         // Decorate the graph. Even if a config file is not present
         // one could be bundled inside.
@@ -244,6 +285,10 @@ public class InputStreamGraphSource implements GraphSource {
             if (routerLifecycleManager != null) {
                 routerLifecycleManager.startupRouter(newRouter, config);
             }
+            RouterWarmup warmup = RouterWarmup.fromConfig(config);
+            if (warmUp && warmup != null) {
+                warmup.warmUp(newRouter);
+            }
             return newRouter;
         } catch (IOException e) {
             LOG.error("Can't read config file", e);
@@ -251,6 +296,28 @@ public class InputStreamGraphSource implements GraphSource {
         }
     }
 
+    /** Read the graph from the stream, in either the serialized or the compact format. */
+    private Graph loadGraphFromStream() {
+        final Graph newGraph;
+        try (InputStream is = graphInputStream.getGraphInputStream()) {
+            LOG.info("Loading graph...");
+            try {
+                // Either format can be read from a stream, Graph.load tells them apart.
+                newGraph = Graph.load(is, loadLevel, streetVertexIndexFactory);
+            } catch (Exception ex) {
+                LOG.error("Exception while loading graph '{}'.", routerId);
+                ex.printStackTrace();
+                return null;
+            }
+
+            newGraph.routerId = (routerId);
+        } catch (IOException e) {
+            LOG.warn("Graph file not found or not openable for routerId '{}': {}", routerId, e);
+            return null;
+        }
+        return newGraph;
+    }
+
     /**
      * InputStreamGraphSource delegates to some actual implementation the fact of getting the input
      * stream and checking the last modification timestamp for a given routerId.
@@ -258,6 +325,9 @@ public class InputStreamGraphSource implements GraphSource {
     private interface GraphInputStream {
         public abstract InputStream getGraphInputStream() throws IOException;
 
+        /** @return the graph file if it is on the file system and can be mapped, null otherwise. */
+        public abstract File getGraphFile();
+
         public abstract InputStream getConfigInputStream() throws IOException;
 
         public abstract long getLastModified();
@@ -278,6 +348,11 @@ public class InputStreamGraphSource implements GraphSource {
             return new FileInputStream(graphFile);
         }
 
+        @Override
+        public File getGraphFile() {
+            return new File(path, GRAPH_FILENAME);
+        }
+
         @Override
         public InputStream getConfigInputStream() throws IOException {
             File configFile = new File(path, CONFIG_FILENAME);
@@ -312,6 +387,11 @@ public class InputStreamGraphSource implements GraphSource {
                     .getResourceAsStream(graphFile.getPath());
         }
 
+        @Override
+        public File getGraphFile() {
+            return null;
+        }
+
         @Override
         public InputStream getConfigInputStream() {
             File configFile = new File(path, CONFIG_FILENAME);
@@ -25,6 +25,7 @@ import static org.opentripplanner.routing.automata.Nonterminal.star;
 import org.opentripplanner.routing.algorithm.strategies.DefaultRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.InterleavedBidirectionalHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
+import org.opentripplanner.routing.algorithm.strategies.TargetSearchCache;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
 import org.opentripplanner.routing.automata.DFA;
 import org.opentripplanner.routing.automata.Nonterminal;
@@ -63,10 +64,14 @@ public class LongDistancePathService implements PathService {
 
     private static final double DEFAULT_MAX_WALK = 2000;
     private static final double CLAMP_MAX_WALK = 15000;
+    private static final int TARGET_SEARCH_CACHE_SIZE = 500;
 
     private Graph graph;
     private SPTServiceFactory sptServiceFactory;
 
+    /** Street searches from recent destinations, reused by the heuristics of later requests. */
+    private TargetSearchCache targetSearchCache = new TargetSearchCache(TARGET_SEARCH_CACHE_SIZE);
+
     public LongDistancePathService(Graph graph, SPTServiceFactory sptServiceFactory) {
         this.graph = graph;
         this.sptServiceFactory = sptServiceFactory;
@@ -99,7 +104,8 @@ public class LongDistancePathService implements PathService {
             heuristic = new TrivialRemainingWeightHeuristic();
         } else if (options.modes.isTransit()) {
            // Only use the BiDi heuristic for transit.
-            heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph);
+            heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph,
+                    targetSearchCache);
         } else {
             heuristic = new DefaultRemainingWeightHeuristic();
         }
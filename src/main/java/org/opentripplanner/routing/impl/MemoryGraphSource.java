@@ -28,7 +28,7 @@ import org.opentripplanner.updater.PropertiesPreferences;
  */
 public class MemoryGraphSource implements GraphSource {
 
-    private Router router;
+    private volatile Router router;
 
     private Preferences config;
 
@@ -67,11 +67,13 @@ public class MemoryGraphSource implements GraphSource {
 
     @Override
     public void evict() {
-        if (router != null) {
+        Router oldRouter = router;
+        router = null;
+        if (oldRouter != null) {
+            oldRouter.retire();
             if (routerLifecycleManager != null) {
-                routerLifecycleManager.shutdownRouter(router);
+                routerLifecycleManager.shutdownRouter(oldRouter);
             }
         }
-        router = null;
     }
 }
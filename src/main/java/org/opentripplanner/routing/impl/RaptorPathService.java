@@ -0,0 +1,97 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import java.util.List;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.pathparser.BasicPathParser;
+import org.opentripplanner.routing.pathparser.NoThruTrafficPathParser;
+import org.opentripplanner.routing.pathparser.PathParser;
+import org.opentripplanner.routing.raptor.RaptorData;
+import org.opentripplanner.routing.raptor.RaptorSearch;
+import org.opentripplanner.routing.services.PathService;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A PathService answering walk and transit requests with a round-based RaptorSearch, which
+ * returns the Pareto set of journeys by arrival time and number of vehicles in one search instead
+ * of banning trips and searching again. Other requests (arriveBy, bicycle or car legs...) and
+ * those for which no journey is found are passed to another PathService.
+ *
+ * Transfers between stops follow the SimpleTransfer edges of the graph, so it should be built
+ * with DirectTransferGenerator (--longDistance).
+ *
+ * It is selected for a router in its Graph.properties:
+ *
+ * <pre>
+ * pathService = raptor
+ * </pre>
+ */
+public class RaptorPathService implements PathService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorPathService.class);
+
+    public static final String CONFIG_KEY = "pathService";
+
+    public static final String RAPTOR = "raptor";
+
+    private Graph graph;
+
+    private PathService fallback;
+
+    private RaptorData data;
+
+    public RaptorPathService(Graph graph, PathService fallback) {
+        this.graph = graph;
+        this.fallback = fallback;
+    }
+
+    /** Lazy-init the array-based copy of the transit network, from the graph index. */
+    private synchronized RaptorData getData() {
+        if (data == null)
+            data = new RaptorData(graph.index.patternForId.values());
+        return data;
+    }
+
+    @Override
+    public List<GraphPath> getPaths(RoutingRequest options) {
+        if (options != null && RaptorSearch.accepts(options)) {
+            // same routing context as RetryingPathServiceImpl, so it can be passed on as is
+            if (options.rctx == null) {
+                options.setRoutingContext(graph);
+                options.rctx.pathParsers = new PathParser[] { new BasicPathParser(),
+                        new NoThruTrafficPathParser() };
+            }
+            long searchBeginTime = System.currentTimeMillis();
+            List<GraphPath> paths = new RaptorSearch(getData(), options).getPaths();
+            if (!paths.isEmpty()) {
+                LOG.debug("{} paths found by round-based search in {} msec", paths.size(),
+                        System.currentTimeMillis() - searchBeginTime);
+                return paths;
+            }
+            LOG.debug("No path found by round-based search, falling back to a full search.");
+        }
+        return fallback.getPaths(options);
+    }
+
+    @Override
+    public void setSPTVisitor(SPTVisitor vis) {
+        fallback.setSPTVisitor(vis);
+    }
+
+}
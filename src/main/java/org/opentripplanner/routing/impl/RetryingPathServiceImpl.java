@@ -18,6 +18,12 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.onebusaway.gtfs.model.AgencyAndId;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -79,6 +85,32 @@ public class RetryingPathServiceImpl implements PathService {
         multiPathTimeout = seconds;
     }
 
+    /** Runs the searches for additional itineraries, null to run them one after the other. */
+    private ExecutorService executor;
+
+    private int concurrentSearches = 0;
+
+    /**
+     * Once the first itinerary is found, search for the additional ones concurrently on the given
+     * executor, this many at a time. Rather than only banning the trips of each itinerary found in
+     * turn, the trips of the first itinerary are then also banned one by one, giving independent
+     * searches. Within the multiPathTimeout, which is then counted for all of them together,
+     * results are taken in the order the searches were queued, whatever order they complete in.
+     * Zero or less, or a null executor, runs one search at a time (the default).
+     *
+     * The executor is not owned by this service, so that one pool can be shared by the path
+     * services of all routers and outlive graph reloads; whoever created it shuts it down.
+     */
+    public void setConcurrentSearches (int nSearches, ExecutorService executor) {
+        if (nSearches > 0 && executor != null) {
+            this.concurrentSearches = nSearches;
+            this.executor = executor;
+        } else {
+            this.concurrentSearches = 0;
+            this.executor = null;
+        }
+    }
+
     @Override
     public List<GraphPath> getPaths(RoutingRequest options) {
 
@@ -108,6 +140,10 @@ public class RetryingPathServiceImpl implements PathService {
         SPTService sptService = this.sptServiceFactory.instantiate();
         
         while (paths.size() < options.numItineraries) {
+            if (executor != null && !paths.isEmpty()) {
+                searchConcurrently(options, optionQueue, paths, maxWalk, searchBeginTime);
+                break;
+            }
             currOptions = optionQueue.poll();
             if (currOptions == null) {
                 LOG.debug("Ran out of options to try.");
@@ -131,6 +167,7 @@ public class RetryingPathServiceImpl implements PathService {
                 break;
             }
             List<GraphPath> somePaths = spt.getPaths(); // somePaths may be empty, but is never null.
+            spt.release(); // paths hold on to their own states, the tree is no longer needed
             LOG.debug("END SUBSEARCH ({} msec of {} msec total)", 
                     System.currentTimeMillis() - subsearchBeginTime,
                     System.currentTimeMillis() - searchBeginTime);
@@ -146,15 +183,11 @@ public class RetryingPathServiceImpl implements PathService {
                     LOG.debug("New trips: {}", path.getTrips());
                     // ban the trips in this path
                     // unless is is a non-transit trip (in which case this would cause a useless retry)
-                    if ( ! path.getTrips().isEmpty()) {
-                        RoutingRequest newOptions = currOptions.clone();
-                        for (AgencyAndId trip : path.getTrips()) {
-                            newOptions.banTrip(trip);
-                        }
+                    for (RoutingRequest newOptions : banTrips(currOptions, path)) {
                         if (!optionQueue.contains(newOptions)) {
                             optionQueue.add(newOptions);
                         }
-                    }           
+                    }
                 }
             }
             LOG.debug("{} / {} itineraries", paths.size(), currOptions.numItineraries);
@@ -205,6 +238,147 @@ public class RetryingPathServiceImpl implements PathService {
         return paths;
     }
 
+    /**
+     * @return the options for the searches avoiding the trips of the given path: all of them,
+     *         and each one in turn when searching concurrently. Non-transit paths give none, as
+     *         banning nothing would only repeat the search.
+     */
+    private List<RoutingRequest> banTrips(RoutingRequest currOptions, GraphPath path) {
+        List<RoutingRequest> ret = new ArrayList<RoutingRequest>();
+        List<AgencyAndId> trips = path.getTrips();
+        if (trips.isEmpty()) {
+            return ret;
+        }
+        RoutingRequest newOptions = currOptions.clone();
+        for (AgencyAndId trip : trips) {
+            newOptions.banTrip(trip);
+        }
+        ret.add(newOptions);
+        if (executor != null && trips.size() > 1) {
+            for (AgencyAndId trip : trips) {
+                newOptions = currOptions.clone();
+                newOptions.banTrip(trip);
+                ret.add(newOptions);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Run the queued searches in batches on the executor until enough paths are found, the
+     * queue is exhausted or the multiPathTimeout is over. Each search gets its own copy of the
+     * routing context, as the heuristics and the abort flag are per search.
+     */
+    private void searchConcurrently(RoutingRequest options, Queue<RoutingRequest> optionQueue,
+            List<GraphPath> paths, double maxWalk, long searchBeginTime) {
+        long deadline = multiPathTimeout > 0 ?
+                searchBeginTime + (long) (multiPathTimeout * 1000) : Long.MAX_VALUE;
+        List<RoutingRequest> tried = new ArrayList<RoutingRequest>();
+        while (paths.size() < options.numItineraries && !optionQueue.isEmpty()) {
+            List<RoutingRequest> batch = new ArrayList<RoutingRequest>();
+            List<Future<List<GraphPath>>> futures = new ArrayList<Future<List<GraphPath>>>();
+            while (batch.size() < concurrentSearches && !optionQueue.isEmpty()) {
+                RoutingRequest currOptions = optionQueue.poll();
+                if (tried.contains(currOptions)) {
+                    continue;
+                }
+                tried.add(currOptions);
+                double timeout = 0;
+                if (deadline != Long.MAX_VALUE) {
+                    timeout = (deadline - System.currentTimeMillis()) / 1000.0;
+                    if (timeout <= 0) {
+                        break;
+                    }
+                }
+                currOptions.setMaxWalkDistance(maxWalk);
+                currOptions.rctx = options.rctx.concurrentCopy(currOptions);
+                batch.add(currOptions);
+                futures.add(executor.submit(new SubSearch(currOptions, timeout)));
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            LOG.debug("Running {} subsearches concurrently.", batch.size());
+            boolean aborted = false;
+            for (int i = 0; i < batch.size(); i++) {
+                RoutingRequest currOptions = batch.get(i);
+                List<GraphPath> somePaths = null;
+                try {
+                    if (deadline == Long.MAX_VALUE) {
+                        somePaths = futures.get(i).get();
+                    } else {
+                        long wait = Math.max(0, deadline - System.currentTimeMillis());
+                        somePaths = futures.get(i).get(wait, TimeUnit.MILLISECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    LOG.debug("Subsearch did not complete before the timeout.");
+                    aborted = true;
+                } catch (ExecutionException e) {
+                    LOG.warn("Subsearch failed.", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    aborted = true;
+                }
+                if (aborted) {
+                    for (Future<List<GraphPath>> future : futures) {
+                        future.cancel(true);
+                    }
+                    break;
+                }
+                if (somePaths == null) {
+                    continue;
+                }
+                for (GraphPath path : somePaths) {
+                    if (paths.size() >= options.numItineraries) {
+                        break;
+                    }
+                    if ( ! paths.contains(path)) {
+                        if (path.getWalkDistance() > maxWalk) {
+                            maxWalk = path.getWalkDistance() * 1.25;
+                        }
+                        paths.add(path);
+                        LOG.debug("New trips: {}", path.getTrips());
+                        for (RoutingRequest newOptions : banTrips(currOptions, path)) {
+                            if (!optionQueue.contains(newOptions)) {
+                                optionQueue.add(newOptions);
+                            }
+                        }
+                    }
+                }
+                aborted |= currOptions.rctx.aborted;
+            }
+            LOG.debug("{} / {} itineraries", paths.size(), options.numItineraries);
+            if (aborted) {
+                break;
+            }
+        }
+    }
+
+    /** One search for additional itineraries, run on the executor. */
+    private class SubSearch implements Callable<List<GraphPath>> {
+
+        private final RoutingRequest options;
+
+        private final double timeout;
+
+        SubSearch(RoutingRequest options, double timeout) {
+            this.options = options;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public List<GraphPath> call() {
+            SPTService sptService = sptServiceFactory.instantiate();
+            ShortestPathTree spt = sptService.getShortestPathTree(options, timeout);
+            if (spt == null) {
+                return null;
+            }
+            List<GraphPath> somePaths = spt.getPaths();
+            spt.release();
+            return somePaths;
+        }
+    }
+
     @Override
     public void setSPTVisitor(SPTVisitor vis) {
         throw new UnsupportedOperationException();
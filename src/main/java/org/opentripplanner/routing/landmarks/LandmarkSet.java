@@ -0,0 +1,145 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.landmarks;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.OnboardVertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+import org.opentripplanner.routing.vertextype.TransitStopArrive;
+import org.opentripplanner.routing.vertextype.TransitStopDepart;
+
+/**
+ * Street network distances from and to a small set of landmark vertices, for the ALT (A*,
+ * landmarks, triangle inequality) lower bounds of LandmarkRemainingWeightHeuristic. Built by
+ * LandmarkSetBuilder and stored in the graph as a service.
+ *
+ * Distances are the length in meters of the shortest path along street edges, counting every
+ * other edge as free, so they are a lower bound on the distance covered along any path. They are
+ * quantized to 16 bits per landmark, vertex and direction: each landmark has its own unit, and a
+ * stored value q means a distance between q and q + 1 units.
+ */
+public class LandmarkSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Stored value for a vertex that cannot be reached from or cannot reach a landmark. */
+    public static final char UNREACHABLE = Character.MAX_VALUE;
+
+    /** The vertices for which distances are stored, by node number. */
+    final Vertex[] vertices;
+
+    /** The node number of each landmark. */
+    final int[] landmarks;
+
+    /** The length in meters of one stored distance unit, by landmark. */
+    final double[] unit;
+
+    /** Quantized distance from landmark l to node n, at n * landmarks.length + l. */
+    final char[] fromLandmark;
+
+    /** Quantized distance from node n to landmark l, at n * landmarks.length + l. */
+    final char[] toLandmark;
+
+    /* Bounds over all street edges, to turn distances into weights for any set of options. */
+
+    /** The highest car speed of any street edge, in m/s. */
+    public final double maxCarSpeed;
+
+    /** The lowest bicycle safety factor of any street edge. */
+    public final double minBicycleSafetyFactor;
+
+    /** The lowest ratio of slope-adjusted length to actual length of any street edge. */
+    public final double minSlopeSpeedRatio;
+
+    /** The node number of each vertex, by Vertex.getIndex(). Rebuilt after deserialization. */
+    private transient int[] nodeForIndex;
+
+    LandmarkSet(Vertex[] vertices, int[] landmarks, double[] unit, char[] fromLandmark,
+            char[] toLandmark, double maxCarSpeed, double minBicycleSafetyFactor,
+            double minSlopeSpeedRatio) {
+        this.vertices = vertices;
+        this.landmarks = landmarks;
+        this.unit = unit;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+        this.maxCarSpeed = maxCarSpeed;
+        this.minBicycleSafetyFactor = minBicycleSafetyFactor;
+        this.minSlopeSpeedRatio = minSlopeSpeedRatio;
+    }
+
+    /**
+     * @return true if distances are stored for the given vertex: every permanent vertex except
+     *         those only reachable on board a transit vehicle.
+     */
+    static boolean isNode(Vertex v) {
+        return !(v instanceof TemporaryVertex || v instanceof OnboardVertex
+                || v instanceof TransitStopArrive || v instanceof TransitStopDepart);
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.length;
+    }
+
+    public int getNodeCount() {
+        return vertices.length;
+    }
+
+    public Vertex getLandmark(int l) {
+        return vertices[landmarks[l]];
+    }
+
+    public double getUnit(int l) {
+        return unit[l];
+    }
+
+    /** @return the node number of the given vertex, or -1 if no distances are stored for it. */
+    public int getNode(Vertex v) {
+        int[] table = nodeForIndex;
+        if (table == null)
+            table = indexNodes();
+        int index = v.getIndex();
+        if (index >= table.length)
+            return -1;
+        int node = table[index];
+        return (node >= 0 && vertices[node] == v) ? node : -1;
+    }
+
+    private synchronized int[] indexNodes() {
+        if (nodeForIndex == null) {
+            int maxIndex = 0;
+            for (Vertex v : vertices)
+                maxIndex = Math.max(maxIndex, v.getIndex());
+            int[] table = new int[maxIndex + 1];
+            Arrays.fill(table, -1);
+            for (int n = 0; n < vertices.length; n++)
+                table[vertices[n].getIndex()] = n;
+            nodeForIndex = table;
+        }
+        return nodeForIndex;
+    }
+
+    /** @return the quantized distance from landmark l to the given node, or UNREACHABLE. */
+    public char getFromLandmark(int node, int l) {
+        return fromLandmark[node * landmarks.length + l];
+    }
+
+    /** @return the quantized distance from the given node to landmark l, or UNREACHABLE. */
+    public char getToLandmark(int node, int l) {
+        return toLandmark[node * landmarks.length + l];
+    }
+
+}
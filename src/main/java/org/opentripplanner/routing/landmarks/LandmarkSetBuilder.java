@@ -0,0 +1,223 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.landmarks;
+
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Builds a LandmarkSet for a graph. Landmarks are chosen by farthest point selection: the first
+ * one is the vertex farthest from an arbitrary vertex, and each next one the vertex farthest from
+ * all landmarks already chosen. This puts them on the edges of the network, where they give the
+ * best bounds for the trips passing between them.
+ */
+public class LandmarkSetBuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LandmarkSetBuilder.class);
+
+    private final int landmarkCount;
+
+    private final Vertex[] vertices;
+
+    /* Edges leaving and entering each node, with their length in meters. */
+
+    private final int[] outStart;
+
+    private final int[] outTarget;
+
+    private final float[] outLength;
+
+    private final int[] inStart;
+
+    private final int[] inTarget;
+
+    private final float[] inLength;
+
+    private double maxCarSpeed = 0;
+
+    private double minBicycleSafetyFactor = 1;
+
+    private double minSlopeSpeedRatio = 1;
+
+    public LandmarkSetBuilder(Graph graph, int landmarkCount) {
+        this.landmarkCount = landmarkCount;
+        List<Vertex> vertexList = Lists.newArrayList();
+        TObjectIntMap<Vertex> nodes = new TObjectIntHashMap<Vertex>(1000, 0.5f, -1);
+        for (Vertex v : graph.getVertices()) {
+            if (LandmarkSet.isNode(v)) {
+                nodes.put(v, vertexList.size());
+                vertexList.add(v);
+            }
+        }
+        int nNodes = vertexList.size();
+        vertices = vertexList.toArray(new Vertex[nNodes]);
+        TIntArrayList from = new TIntArrayList();
+        TIntArrayList to = new TIntArrayList();
+        TFloatArrayList length = new TFloatArrayList();
+        for (int n = 0; n < nNodes; n++) {
+            for (Edge e : vertices[n].getOutgoing()) {
+                if (e instanceof StreetEdge)
+                    updateEdgeBounds((StreetEdge) e);
+                if (e instanceof TemporaryEdge)
+                    continue;
+                int target = nodes.get(e.getToVertex());
+                if (target < 0)
+                    continue;
+                from.add(n);
+                to.add(target);
+                length.add(e instanceof StreetEdge ? (float) e.getDistance() : 0f);
+            }
+        }
+        outStart = new int[nNodes + 1];
+        outTarget = new int[from.size()];
+        outLength = new float[from.size()];
+        inStart = new int[nNodes + 1];
+        inTarget = new int[from.size()];
+        inLength = new float[from.size()];
+        for (int i = 0; i < from.size(); i++) {
+            outStart[from.get(i) + 1]++;
+            inStart[to.get(i) + 1]++;
+        }
+        for (int n = 0; n < nNodes; n++) {
+            outStart[n + 1] += outStart[n];
+            inStart[n + 1] += inStart[n];
+        }
+        int[] outNext = Arrays.copyOf(outStart, nNodes);
+        int[] inNext = Arrays.copyOf(inStart, nNodes);
+        for (int i = 0; i < from.size(); i++) {
+            int out = outNext[from.get(i)]++;
+            outTarget[out] = to.get(i);
+            outLength[out] = length.get(i);
+            int in = inNext[to.get(i)]++;
+            inTarget[in] = from.get(i);
+            inLength[in] = length.get(i);
+        }
+    }
+
+    private void updateEdgeBounds(StreetEdge e) {
+        maxCarSpeed = Math.max(maxCarSpeed, e.getCarSpeed());
+        minBicycleSafetyFactor = Math.min(minBicycleSafetyFactor, e.getBicycleSafetyFactor());
+        if (e.getDistance() > 0)
+            minSlopeSpeedRatio = Math.min(minSlopeSpeedRatio, e.getSlopeSpeedEffectiveLength()
+                    / e.getDistance());
+    }
+
+    public LandmarkSet build() {
+        long start = System.currentTimeMillis();
+        int nNodes = vertices.length;
+        int k = Math.min(landmarkCount, nNodes);
+        int[] landmarks = new int[k];
+        double[] unit = new double[k];
+        char[] fromLandmark = new char[nNodes * k];
+        char[] toLandmark = new char[nNodes * k];
+        // distance from the closest landmark chosen so far, to pick the next one
+        double[] closest = new double[nNodes];
+        if (k > 0)
+            Arrays.fill(closest, Double.POSITIVE_INFINITY);
+        double[] dist = new double[nNodes];
+        double[] reverseDist = new double[nNodes];
+        for (int l = 0; l < k; l++) {
+            if (l == 0) {
+                dijkstra(0, false, dist);
+                landmarks[0] = farthest(dist);
+            } else {
+                landmarks[l] = farthest(closest);
+            }
+            dijkstra(landmarks[l], false, dist);
+            dijkstra(landmarks[l], true, reverseDist);
+            double max = 0;
+            for (int n = 0; n < nNodes; n++) {
+                if (dist[n] < closest[n])
+                    closest[n] = dist[n];
+                if (dist[n] != Double.POSITIVE_INFINITY)
+                    max = Math.max(max, dist[n]);
+                if (reverseDist[n] != Double.POSITIVE_INFINITY)
+                    max = Math.max(max, reverseDist[n]);
+            }
+            unit[l] = max > 0 ? max / (LandmarkSet.UNREACHABLE - 1) : 1;
+            for (int n = 0; n < nNodes; n++) {
+                fromLandmark[n * k + l] = quantize(dist[n], unit[l]);
+                toLandmark[n * k + l] = quantize(reverseDist[n], unit[l]);
+            }
+            LOG.debug("Landmark {} at {}, farthest vertex at {} m.", l, vertices[landmarks[l]],
+                    (int) max);
+        }
+        LOG.info("{} landmarks for {} vertices chosen in {} msec.", k, nNodes,
+                System.currentTimeMillis() - start);
+        return new LandmarkSet(vertices, landmarks, unit, fromLandmark, toLandmark, maxCarSpeed,
+                minBicycleSafetyFactor, minSlopeSpeedRatio);
+    }
+
+    /** Rounds down, so that stored distances stay lower bounds. */
+    private static char quantize(double d, double unit) {
+        if (d == Double.POSITIVE_INFINITY)
+            return LandmarkSet.UNREACHABLE;
+        return (char) Math.min(LandmarkSet.UNREACHABLE - 1, (int) (d / unit));
+    }
+
+    /** @return the node with the highest finite distance, or 0 if there is none. */
+    private static int farthest(double[] dist) {
+        int farthest = 0;
+        double max = -1;
+        for (int n = 0; n < dist.length; n++) {
+            if (dist[n] != Double.POSITIVE_INFINITY && dist[n] > max) {
+                max = dist[n];
+                farthest = n;
+            }
+        }
+        return farthest;
+    }
+
+    /** Distances from (or to, if reverse is true) the source node to every node. */
+    private void dijkstra(int source, boolean reverse, double[] dist) {
+        int[] start = reverse ? inStart : outStart;
+        int[] target = reverse ? inTarget : outTarget;
+        float[] length = reverse ? inLength : outLength;
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        BinHeap<Integer> queue = new BinHeap<Integer>();
+        dist[source] = 0;
+        queue.insert(source, 0);
+        while (!queue.empty()) {
+            double d = queue.peek_min_key();
+            int node = queue.extract_min();
+            if (d > dist[node])
+                continue;
+            for (int i = start[node]; i < start[node + 1]; i++) {
+                int next = target[i];
+                double nd = d + length[i];
+                if (nd < dist[next]) {
+                    dist[next] = nd;
+                    queue.insert(next, nd);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.raptor;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.opentripplanner.routing.edgetype.PreAlightEdge;
+import org.opentripplanner.routing.edgetype.PreBoardEdge;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.TransitBoardAlight;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The transit network of a graph as arrays for round-based searches: numbered stops, the stops of
+ * each trip pattern, the patterns serving each stop and the transfers leaving each stop. Trip
+ * times are not copied, they are read from the (possibly real-time updated) timetables of the
+ * patterns during each search.
+ *
+ * This is a snapshot of the patterns in the graph index when it is built. Trip patterns added
+ * later, e.g. by real-time updates adding trips, are not seen.
+ */
+public class RaptorData {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorData.class);
+
+    /** The stop vertices, by stop number. */
+    public final TransitStop[] stops;
+
+    public final TripPattern[] patterns;
+
+    /** The stop number at each position of each pattern, -1 where it cannot be used. */
+    public final int[][] patternStops;
+
+    /** The edges from the stop to the pattern at each position, null where it cannot board. */
+    final PreBoardEdge[][] preBoardEdges;
+
+    /** The edges from the pattern to the stop at each position, null where it cannot alight. */
+    final PreAlightEdge[][] preAlightEdges;
+
+    /** The patterns that can be boarded at each stop. */
+    public final int[][] stopPatterns;
+
+    /** The transfers leaving each stop. */
+    final SimpleTransfer[][] transfers;
+
+    /** The stop number at the end of each transfer. */
+    final int[][] transferTargets;
+
+    private final TObjectIntMap<Vertex> stopForVertex;
+
+    public RaptorData(Collection<TripPattern> tripPatterns) {
+        stopForVertex = new TObjectIntHashMap<Vertex>(1000, 0.5f, -1);
+        List<TransitStop> stopList = Lists.newArrayList();
+        patterns = tripPatterns.toArray(new TripPattern[tripPatterns.size()]);
+        patternStops = new int[patterns.length][];
+        preBoardEdges = new PreBoardEdge[patterns.length][];
+        preAlightEdges = new PreAlightEdge[patterns.length][];
+        for (int p = 0; p < patterns.length; p++) {
+            TripPattern pattern = patterns[p];
+            int nStops = pattern.stopPattern.size;
+            patternStops[p] = new int[nStops];
+            preBoardEdges[p] = new PreBoardEdge[nStops];
+            preAlightEdges[p] = new PreAlightEdge[nStops];
+            for (int i = 0; i < nStops; i++) {
+                TransitStop stop = null;
+                TransitBoardAlight board = pattern.boardEdges[i];
+                if (board != null) {
+                    preBoardEdges[p][i] = preBoardEdge(board.getFromVertex());
+                    if (preBoardEdges[p][i] != null)
+                        stop = (TransitStop) preBoardEdges[p][i].getFromVertex();
+                }
+                TransitBoardAlight alight = pattern.alightEdges[i];
+                if (alight != null) {
+                    preAlightEdges[p][i] = preAlightEdge(alight.getToVertex());
+                    if (preAlightEdges[p][i] != null)
+                        stop = (TransitStop) preAlightEdges[p][i].getToVertex();
+                }
+                patternStops[p][i] = stop == null ? -1 : stopNumber(stop, stopList);
+            }
+        }
+        stops = stopList.toArray(new TransitStop[stopList.size()]);
+
+        TIntArrayList[] patternsForStop = new TIntArrayList[stops.length];
+        for (int s = 0; s < stops.length; s++)
+            patternsForStop[s] = new TIntArrayList(4);
+        for (int p = 0; p < patterns.length; p++) {
+            for (int i = 0; i < patternStops[p].length; i++) {
+                int s = patternStops[p][i];
+                if (preBoardEdges[p][i] != null && !patternsForStop[s].contains(p))
+                    patternsForStop[s].add(p);
+            }
+        }
+        stopPatterns = new int[stops.length][];
+        transfers = new SimpleTransfer[stops.length][];
+        transferTargets = new int[stops.length][];
+        int nTransfers = 0;
+        for (int s = 0; s < stops.length; s++) {
+            stopPatterns[s] = patternsForStop[s].toArray();
+            List<SimpleTransfer> stopTransfers = Lists.newArrayList();
+            TIntArrayList targets = new TIntArrayList();
+            for (Edge e : stops[s].getOutgoing()) {
+                if (!(e instanceof SimpleTransfer))
+                    continue;
+                int target = stopForVertex.get(e.getToVertex());
+                if (target < 0)
+                    continue; // a stop without patterns, no use going there
+                stopTransfers.add((SimpleTransfer) e);
+                targets.add(target);
+            }
+            transfers[s] = stopTransfers.toArray(new SimpleTransfer[stopTransfers.size()]);
+            transferTargets[s] = targets.toArray();
+            nTransfers += targets.size();
+        }
+        LOG.info("Raptor data built: {} stops, {} patterns, {} transfers.", stops.length,
+                patterns.length, nTransfers);
+    }
+
+    private int stopNumber(TransitStop stop, List<TransitStop> stopList) {
+        int s = stopForVertex.get(stop);
+        if (s < 0) {
+            s = stopList.size();
+            stopList.add(stop);
+            stopForVertex.put(stop, s);
+        }
+        return s;
+    }
+
+    private static PreBoardEdge preBoardEdge(Vertex stopDepart) {
+        for (Edge e : stopDepart.getIncoming())
+            if (e instanceof PreBoardEdge)
+                return (PreBoardEdge) e;
+        return null;
+    }
+
+    private static PreAlightEdge preAlightEdge(Vertex stopArrive) {
+        for (Edge e : stopArrive.getOutgoing())
+            if (e instanceof PreAlightEdge)
+                return (PreAlightEdge) e;
+        return null;
+    }
+
+    /** @return the stop number of the given vertex, or -1 if it is not a stop on any pattern. */
+    public int getStop(Vertex v) {
+        return stopForVertex.get(v);
+    }
+
+}
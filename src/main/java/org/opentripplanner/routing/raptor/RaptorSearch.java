@@ -0,0 +1,389 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.raptor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.opentripplanner.routing.algorithm.GenericDijkstra;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A round-based (RAPTOR) transit search for one request. Round k finds the earliest arrival at
+ * each stop using k transit vehicles: it scans each pattern serving a stop improved in the
+ * previous round once, from the first such stop to its end, hopping on earlier trips where
+ * possible, then follows the transfers from the stops it improved. A journey is kept whenever a
+ * round reaches the destination earlier than all rounds before it, giving the Pareto set of
+ * arrival times and number of vehicles.
+ *
+ * The street legs at both ends come from walk-only searches around the origin and destination.
+ * The journeys found are turned into GraphPaths by traversing their edges from the origin, so
+ * that they carry the same States (times, weights, fares...) as paths from a state-based search.
+ *
+ * Only trips departing after a given time are searched (no arriveBy), walking is the only street
+ * mode, and transfers between stops use the SimpleTransfer edges made by DirectTransferGenerator.
+ * Transfer table rules are not applied while scanning, but they are when traversing the edges:
+ * a journey broken by them is dropped.
+ */
+public class RaptorSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorSearch.class);
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    /** Limits the searches around the origin and destination when no walk limit is given. */
+    public static final double DEFAULT_MAX_ACCESS_WALK = 2000;
+
+    private final RaptorData data;
+
+    private final RoutingRequest options;
+
+    /** Search start time, in seconds since the epoch. Times are in seconds after it. */
+    private final long startTime;
+
+    /** Earliest arrival at each stop in any round so far. */
+    private final int[] bestArrival;
+
+    /** Time to walk from each stop to the destination. */
+    private final int[] egressTime;
+
+    private final GraphPath[] egressPaths;
+
+    /** The best way to reach each stop after each round. */
+    private final List<Leg[]> rounds = Lists.newArrayList();
+
+    private int bestTargetArrival = UNREACHED;
+
+    /** The journeys found, in increasing number of rides and decreasing arrival time. */
+    private final List<List<Edge>> journeys = Lists.newArrayList();
+
+    /** How a stop was reached: a chain of legs back to the origin. */
+    private static class Leg {
+
+        final int stop;
+
+        /** Arrival time at the stop, after the alight slack for rides. */
+        final int time;
+
+        final Leg previous;
+
+        /** The path from the origin, for the first leg. */
+        final GraphPath access;
+
+        /** The pattern ridden and the positions of boarding and alighting, for rides. */
+        final int pattern, boardPosition, alightPosition;
+
+        /** The transfer edge walked, for transfers. */
+        final SimpleTransfer transfer;
+
+        Leg(int stop, int time, Leg previous, GraphPath access, int pattern, int boardPosition,
+                int alightPosition, SimpleTransfer transfer) {
+            this.stop = stop;
+            this.time = time;
+            this.previous = previous;
+            this.access = access;
+            this.pattern = pattern;
+            this.boardPosition = boardPosition;
+            this.alightPosition = alightPosition;
+            this.transfer = transfer;
+        }
+    }
+
+    /**
+     * @param options a request with a routing context, departing after a given time.
+     */
+    public RaptorSearch(RaptorData data, RoutingRequest options) {
+        this.data = data;
+        this.options = options;
+        this.startTime = options.getSecondsSinceEpoch();
+        bestArrival = new int[data.stops.length];
+        Arrays.fill(bestArrival, UNREACHED);
+        egressTime = new int[data.stops.length];
+        Arrays.fill(egressTime, UNREACHED);
+        egressPaths = new GraphPath[data.stops.length];
+    }
+
+    /** @return true if requests with these options can be answered by a RaptorSearch. */
+    public static boolean accepts(RoutingRequest options) {
+        TraverseModeSet streetModes = options.modes.getNonTransitSet();
+        return options.modes.isTransit() && !options.arriveBy && streetModes.getWalk()
+                && !streetModes.getBicycle() && !streetModes.getDriving()
+                && !options.allowBikeRental && !options.parkAndRide && !options.kissAndRide
+                && !options.bikeParkAndRide && options.startingTransitTripId == null
+                && (options.intermediatePlaces == null || options.intermediatePlaces.isEmpty());
+    }
+
+    /** @return the paths of the journeys found, in the order they were found. */
+    public List<GraphPath> getPaths() {
+        long searchBeginTime = System.currentTimeMillis();
+        options.compileTransitFilter();
+        Leg[] access = accessSearch();
+        egressSearch();
+        rounds.add(access);
+        BitSet marked = new BitSet(data.stops.length);
+        for (int s = 0; s < access.length; s++) {
+            if (access[s] != null) {
+                bestArrival[s] = access[s].time;
+                marked.set(s);
+            }
+        }
+        for (int round = 1; round <= options.maxTransfers + 1 && !marked.isEmpty(); round++)
+            marked = round(round, marked);
+        List<GraphPath> paths = Lists.newArrayList();
+        for (List<Edge> journey : journeys) {
+            GraphPath path = traverse(journey);
+            if (path != null)
+                paths.add(path);
+        }
+        LOG.debug("{} rounds, {} of {} journeys usable, in {} msec.", rounds.size() - 1,
+                paths.size(), journeys.size(), System.currentTimeMillis() - searchBeginTime);
+        return paths;
+    }
+
+    private RoutingRequest walkOptions() {
+        RoutingRequest walk = options.clone();
+        walk.setModes(new TraverseModeSet(TraverseMode.WALK));
+        walk.softWalkLimiting = false;
+        if (walk.maxWalkDistance == Double.MAX_VALUE)
+            walk.maxWalkDistance = DEFAULT_MAX_ACCESS_WALK;
+        return walk;
+    }
+
+    /** Walk from the origin to the stops, and to the destination itself. */
+    private Leg[] accessSearch() {
+        RoutingRequest walk = walkOptions();
+        ShortestPathTree spt = new GenericDijkstra(walk).getShortestPathTree(new State(walk));
+        Leg[] access = new Leg[data.stops.length];
+        State direct = null;
+        for (State state : spt.getAllStates()) {
+            int time = (int) state.getElapsedTimeSeconds();
+            if (state.getVertex() == options.rctx.target) {
+                if (direct == null || time < direct.getElapsedTimeSeconds())
+                    direct = state;
+                continue;
+            }
+            int s = data.getStop(state.getVertex());
+            if (s >= 0 && (access[s] == null || time < access[s].time))
+                access[s] = new Leg(s, time, null, new GraphPath(state, false), -1, -1, -1, null);
+        }
+        // walking all the way is the journey without rides
+        if (direct != null) {
+            bestTargetArrival = (int) direct.getElapsedTimeSeconds();
+            journeys.add(new GraphPath(direct, false).edges);
+        }
+        return access;
+    }
+
+    /** Walk from the stops to the destination, searching backward from it. */
+    private void egressSearch() {
+        RoutingRequest walk = walkOptions();
+        walk.setArriveBy(true);
+        // Only the destination is needed. Passing the origin as well would make the new context
+        // wire a second partial edge between the request's temporary endpoints. This context adds
+        // nothing to the shared vertices, so it is not destroyed: that would dispose endpoints
+        // still owned by the request's own context.
+        walk.setRoutingContext(options.rctx.graph, null, options.rctx.toVertex);
+        ShortestPathTree spt = new GenericDijkstra(walk).getShortestPathTree(new State(walk));
+        for (State state : spt.getAllStates()) {
+            int s = data.getStop(state.getVertex());
+            if (s < 0)
+                continue;
+            int time = (int) state.getElapsedTimeSeconds();
+            if (time < egressTime[s]) {
+                egressTime[s] = time;
+                egressPaths[s] = new GraphPath(state, false);
+            }
+        }
+    }
+
+    /**
+     * Ride one more vehicle from the stops marked in the previous round, then transfer.
+     * @return the stops improved in this round.
+     */
+    private BitSet round(int round, BitSet marked) {
+        Leg[] previous = rounds.get(round - 1);
+        Leg[] current = previous.clone();
+        rounds.add(current);
+
+        // the first position of each pattern at a marked stop
+        int[] firstPosition = new int[data.patterns.length];
+        Arrays.fill(firstPosition, -1);
+        for (int s = marked.nextSetBit(0); s >= 0; s = marked.nextSetBit(s + 1)) {
+            for (int p : data.stopPatterns[s]) {
+                int[] stops = data.patternStops[p];
+                for (int i = 0; i < stops.length; i++) {
+                    if (stops[i] == s && data.preBoardEdges[p][i] != null) {
+                        if (firstPosition[p] < 0 || i < firstPosition[p])
+                            firstPosition[p] = i;
+                        break;
+                    }
+                }
+            }
+        }
+
+        BitSet improved = new BitSet(data.stops.length);
+        int slack = round == 1 ? options.boardSlack : options.transferSlack - options.alightSlack;
+        for (int p = 0; p < data.patterns.length; p++) {
+            if (firstPosition[p] < 0 || !usable(data.patterns[p]))
+                continue;
+            TripPattern pattern = data.patterns[p];
+            int[] stops = data.patternStops[p];
+            TripTimes trip = null;
+            ServiceDay tripDay = null;
+            int boardPosition = -1;
+            Leg boardLeg = null;
+            for (int i = firstPosition[p]; i < stops.length; i++) {
+                int s = stops[i];
+                if (s < 0 || (options.wheelchairAccessible && !pattern.wheelchairAccessible(i)))
+                    continue;
+                if (trip != null && data.preAlightEdges[p][i] != null) {
+                    int arrival = time(tripDay, trip.getArrivalTime(i)) + options.alightSlack;
+                    if (arrival < bestArrival[s] && arrival < bestTargetArrival) {
+                        bestArrival[s] = arrival;
+                        current[s] = new Leg(s, arrival, boardLeg, null, p, boardPosition, i,
+                                null);
+                        improved.set(s);
+                    }
+                }
+                Leg leg = previous[s];
+                if (leg != null && data.preBoardEdges[p][i] != null) {
+                    int ready = leg.time + slack;
+                    int departure = trip == null ? UNREACHED : time(tripDay,
+                            trip.getDepartureTime(i));
+                    if (ready <= departure) {
+                        for (ServiceDay sd : options.rctx.serviceDays) {
+                            Timetable timetable = pattern.getUpdatedTimetable(options, sd);
+                            TripTimes tt = timetable.getNextDeparture(sd, i,
+                                    sd.secondsSinceMidnight(startTime + ready), options, false);
+                            if (tt == null)
+                                continue;
+                            int t = time(sd, tt.getDepartureTime(i));
+                            if (t < departure) {
+                                departure = t;
+                                trip = tt;
+                                tripDay = sd;
+                                boardPosition = i;
+                                boardLeg = leg;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // transfers from the stops reached by vehicle, not from those reached by transfer
+        BitSet marks = (BitSet) improved.clone();
+        for (int s = improved.nextSetBit(0); s >= 0; s = improved.nextSetBit(s + 1)) {
+            Leg ride = current[s];
+            for (int t = 0; t < data.transfers[s].length; t++) {
+                SimpleTransfer transfer = data.transfers[s][t];
+                int target = data.transferTargets[s][t];
+                int arrival = ride.time + transfer.getTraverseTime(options);
+                if (arrival < bestArrival[target] && arrival < bestTargetArrival) {
+                    bestArrival[target] = arrival;
+                    current[target] = new Leg(target, arrival, ride, null, -1, -1, -1, transfer);
+                    marks.set(target);
+                }
+            }
+        }
+
+        // keep the journey of this round if it beats those with fewer rides
+        Leg best = null;
+        for (int s = marks.nextSetBit(0); s >= 0; s = marks.nextSetBit(s + 1)) {
+            if (egressTime[s] == UNREACHED)
+                continue;
+            int arrival = current[s].time + egressTime[s];
+            if (arrival < bestTargetArrival) {
+                bestTargetArrival = arrival;
+                best = current[s];
+            }
+        }
+        if (best != null)
+            journeys.add(edges(best));
+        return marks;
+    }
+
+    private boolean usable(TripPattern pattern) {
+        if (!options.modes.contains(pattern.mode))
+            return false;
+        if (options.transitFilter != null && pattern.routeIndex >= 0)
+            return !options.transitFilter.routeBanned(pattern.routeIndex);
+        return options.bannedRoutes == null || !options.bannedRoutes.matches(pattern.route);
+    }
+
+    private int time(ServiceDay sd, int secondsSinceMidnight) {
+        return (int) (sd.time(secondsSinceMidnight) - startTime);
+    }
+
+    /** @return the edges from the origin to the destination through the given leg. */
+    private List<Edge> edges(Leg last) {
+        LinkedList<Edge> edges = new LinkedList<Edge>(egressPaths[last.stop].edges);
+        for (Leg leg = last; leg != null; leg = leg.previous) {
+            if (leg.access != null) {
+                edges.addAll(0, leg.access.edges);
+            } else if (leg.transfer != null) {
+                edges.addFirst(leg.transfer);
+            } else {
+                TripPattern pattern = data.patterns[leg.pattern];
+                edges.addFirst(data.preAlightEdges[leg.pattern][leg.alightPosition]);
+                edges.addFirst(pattern.alightEdges[leg.alightPosition]);
+                for (int i = leg.alightPosition - 1; i >= leg.boardPosition; i--) {
+                    edges.addFirst(pattern.hopEdges[i]);
+                    if (i > leg.boardPosition)
+                        edges.addFirst(pattern.dwellEdges[i]);
+                }
+                edges.addFirst(pattern.boardEdges[leg.boardPosition]);
+                edges.addFirst(data.preBoardEdges[leg.pattern][leg.boardPosition]);
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Traverse the edges of a journey from the origin.
+     * @return the resulting path, or null if the edges cannot be traversed in this order.
+     */
+    private GraphPath traverse(List<Edge> journey) {
+        State state = new State(options);
+        for (Edge edge : journey) {
+            if (edge == null || edge.getFromVertex() != state.getVertex())
+                return null;
+            state = edge.traverse(state);
+            if (state == null)
+                return null;
+        }
+        if (state.getVertex() != options.rctx.target || !state.isFinal()
+                || !state.allPathParsersAccept())
+            return null;
+        return new GraphPath(state, true);
+    }
+
+}
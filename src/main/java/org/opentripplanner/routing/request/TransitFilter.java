@@ -0,0 +1,138 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.request;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.Trip;
+import org.opentripplanner.routing.core.RouteMatcher;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.StopMatcher;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+/**
+ * The trip, route, agency and stop restrictions of a RoutingRequest compiled against the dense
+ * indexes of a GraphIndex, so that boarding checks are bit tests rather than lookups in hash maps
+ * of ids and name matching in RouteMatchers. Agency bans are folded into the banned trips, and
+ * route preferences into a penalty per route.
+ *
+ * A filter is a snapshot: it is compiled at the beginning of a search (see
+ * RoutingRequest.compileTransitFilter) and does not see later changes to the request. Trips,
+ * routes and stops that are not in the index (index -1, e.g. trips added by real-time updates)
+ * must be checked against the request itself.
+ */
+public class TransitFilter {
+
+    /** Routes that may not be used, by route index. */
+    private final BitSet bannedRoutes = new BitSet();
+
+    /** Trips banned at every stop (including all trips of banned agencies), by trip index. */
+    private final BitSet bannedTrips = new BitSet();
+
+    /** Trips banned at some of their stops only, by trip index. Null if there are none. */
+    private TIntObjectMap<BannedStopSet> partiallyBannedTrips = null;
+
+    private final BitSet bannedStops = new BitSet();
+
+    private final BitSet bannedStopsHard = new BitSet();
+
+    /** Preference penalty for each route index, or null if the request has no preferences. */
+    private long[] routePenalties = null;
+
+    public TransitFilter(RoutingRequest options, GraphIndex index) {
+        if (options.bannedRoutes != null
+                && !options.bannedRoutes.equals(RouteMatcher.emptyMatcher())) {
+            for (int r = 0; r < index.routeForIndex.size(); r++) {
+                if (options.bannedRoutes.matches(index.routeForIndex.get(r))) {
+                    bannedRoutes.set(r);
+                }
+            }
+        }
+        if (options.hasRoutePreferences()) {
+            routePenalties = new long[index.routeForIndex.size()];
+            for (int r = 0; r < routePenalties.length; r++) {
+                routePenalties[r] = options.preferencesPenaltyForRoute(index.routeForIndex.get(r));
+            }
+        }
+        if (options.bannedAgencies != null && !options.bannedAgencies.isEmpty()) {
+            for (int t = 0; t < index.tripForIndex.size(); t++) {
+                Trip trip = index.tripForIndex.get(t);
+                if (options.bannedAgencies.contains(trip.getId().getAgencyId())) {
+                    bannedTrips.set(t);
+                }
+            }
+        }
+        for (Map.Entry<AgencyAndId, BannedStopSet> entry : options.bannedTrips.entrySet()) {
+            int t = index.indexForTrip.get(entry.getKey());
+            if (t < 0) continue; // not a scheduled trip, checked against the request
+            if (entry.getValue() == BannedStopSet.ALL) {
+                bannedTrips.set(t);
+            } else {
+                if (partiallyBannedTrips == null) {
+                    partiallyBannedTrips = new TIntObjectHashMap<BannedStopSet>();
+                }
+                partiallyBannedTrips.put(t, entry.getValue());
+            }
+        }
+        compileStops(options.bannedStops, index, bannedStops);
+        compileStops(options.bannedStopsHard, index, bannedStopsHard);
+    }
+
+    private static void compileStops(StopMatcher matcher, GraphIndex index, BitSet bits) {
+        if (matcher == null || matcher.isEmpty()) return;
+        for (int s = 0; s < index.stopForIndex.size(); s++) {
+            Stop stop = index.stopForIndex.get(s);
+            if (matcher.matches(stop)) {
+                bits.set(s);
+            }
+        }
+    }
+
+    /** @return true if the route with the given index is banned. */
+    public boolean routeBanned(int routeIndex) {
+        return bannedRoutes.get(routeIndex);
+    }
+
+    /** @return the preference penalty for boarding the route with the given index. */
+    public long routePenalty(int routeIndex) {
+        return routePenalties == null ? 0 : routePenalties[routeIndex];
+    }
+
+    /**
+     * @return true if the trip with the given index may not be boarded or alighted at the given
+     * position in its pattern, or is run by a banned agency.
+     */
+    public boolean tripBanned(int tripIndex, int stopIndex) {
+        if (bannedTrips.get(tripIndex)) return true;
+        if (partiallyBannedTrips == null) return false;
+        BannedStopSet banned = partiallyBannedTrips.get(tripIndex);
+        return banned != null && banned.contains(stopIndex);
+    }
+
+    public boolean stopBanned(int stopIndex) {
+        return bannedStops.get(stopIndex);
+    }
+
+    public boolean stopBannedHard(int stopIndex) {
+        return bannedStopsHard.get(stopIndex);
+    }
+
+}
@@ -135,6 +135,23 @@ public class GraphService {
         return router;
     }
 
+    /**
+     * Look up the router for the given router ID and record a request on it, see
+     * Router.requestStarted(). The caller must call requestFinished() on the returned router in a
+     * finally block. If a reload swaps the router between the lookup and the recording of the
+     * request, the lookup is retried so that the request is always counted on a router which will
+     * not be shut down before it completes.
+     */
+    public Router acquireRouter(String routerId) throws GraphNotFoundException {
+        while (true) {
+            Router router = getRouter(routerId);
+            if (router.requestStarted())
+                return router;
+            // Retired between the lookup and the count: the graph source holds its replacement.
+            Thread.yield();
+        }
+    }
+
     /**
      * Reload all registered graphs from wherever they came from.
      * 
@@ -13,6 +13,8 @@
 
 package org.opentripplanner.routing.services.notes;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
@@ -62,6 +64,7 @@ public class StaticStreetNotesSource implements StreetNotesSource, Serializable
         if (LOG.isDebugEnabled())
             LOG.debug("Adding note {} to {} with matcher {}", note, edge, matcher);
         notesForEdge.put(edge, buildMatcherAndAlert(matcher, note));
+        edge.setHasStaticNotes(true);
     }
 
     /**
@@ -74,6 +77,10 @@ public class StaticStreetNotesSource implements StreetNotesSource, Serializable
         if (edge instanceof PartialStreetEdge) {
             edge = ((PartialStreetEdge) edge).getParentEdge();
         }
+        /* Most edges have no notes: check the flag on the edge before hashing it. */
+        if (edge == null || !edge.hasStaticNotes()) {
+            return null;
+        }
         Set<MatcherAndAlert> maas = notesForEdge.get(edge);
         if (maas == null || maas.isEmpty()) {
             return null;
@@ -91,6 +98,15 @@ public class StaticStreetNotesSource implements StreetNotesSource, Serializable
         if (LOG.isDebugEnabled())
             LOG.debug("Removing notes for edge: {}", edge);
         notesForEdge.removeAll(edge);
+        edge.setHasStaticNotes(false);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // the flags on the edges are transient, restore them from the map
+        for (Edge edge : notesForEdge.keySet()) {
+            edge.setHasStaticNotes(true);
+        }
     }
 
     /**
@@ -24,7 +24,6 @@ import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.graph.Edge;
-import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 
 /**
@@ -71,7 +70,6 @@ public class BasicShortestPathTree extends AbstractShortestPathTree {
 
     @Override
     public boolean add(State state) {
-        Graph graph = state.getOptions().rctx.graph;
         Vertex here = state.getVertex();
         State existing = states.get(here);
         if (existing == null || state.betterThan(existing)) {
@@ -83,7 +81,7 @@ public class BasicShortestPathTree extends AbstractShortestPathTree {
             // the search because the previous path may be prevented by from reaching the end by
             // turn restrictions.
 
-            return !graph.getTurnRestrictions(backEdge).isEmpty();
+            return backEdge != null && backEdge.hasTurnRestrictions();
         }
     }
 
@@ -103,10 +101,9 @@ public class BasicShortestPathTree extends AbstractShortestPathTree {
 
     @Override
     public boolean visit(State s) {
-        final Graph graph = s.getOptions().rctx.graph;
         final State existing = states.get(s.getVertex());
         final Edge backEdge = existing.getBackEdge();
-        if (!graph.getTurnRestrictions(backEdge).isEmpty()) {
+        if (backEdge != null && backEdge.hasTurnRestrictions()) {
             // If the previous back edge had turn restrictions, we need to continue
             // the search because the previous path may be prevented by from reaching the end by
             // turn restrictions.
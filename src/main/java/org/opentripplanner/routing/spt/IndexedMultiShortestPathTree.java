@@ -0,0 +1,147 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Vertex;
+
+/**
+ * A drop-in replacement for {@link MultiShortestPathTree} that applies the same dominance rules,
+ * but keeps the per-vertex sets of states in {@link StateBuckets} addressed by vertex index
+ * instead of in a map of ArrayLists. Adding and visiting states therefore neither hashes vertices
+ * nor allocates collections.
+ *
+ * The buckets are borrowed from a per-thread pool when the tree is created. Callers that are done
+ * with the tree (after extracting paths or travel times from it) should call {@link #release()}
+ * so the next search on the same thread can reuse the arrays. A tree that is never released is
+ * simply garbage collected along with its arrays.
+ */
+public class IndexedMultiShortestPathTree extends AbstractShortestPathTree {
+
+    private StateBuckets buckets;
+
+    public IndexedMultiShortestPathTree(RoutingRequest options) {
+        super(options);
+        buckets = StateBuckets.acquire();
+    }
+
+    /****
+     * {@link ShortestPathTree} Interface
+     ****/
+
+    @Override
+    public boolean add(State newState) {
+        int index = newState.getVertex().getIndex();
+        // if the vertex has any states that dominate the new state, don't add the state
+        // if the new state dominates any old states, remove them
+        int prev = StateBuckets.NONE;
+        int slot = buckets.first(index);
+        while (slot != StateBuckets.NONE) {
+            State oldState = buckets.get(slot);
+            int nextSlot = buckets.next(slot);
+            // order is important, because in the case of a tie
+            // we want to reject the new state
+            if (MultiShortestPathTree.dominates(oldState, newState))
+                return false;
+            if (MultiShortestPathTree.dominates(newState, oldState))
+                buckets.remove(index, prev, slot);
+            else
+                prev = slot;
+            slot = nextSlot;
+        }
+        // any states remaining are codominant with the new state
+        buckets.add(index, newState);
+        return true;
+    }
+
+    /** See {@link MultiShortestPathTree#visit(State)}. */
+    @Override
+    public boolean visit(State state) {
+        int slot = buckets.first(state.getVertex().getIndex());
+        while (slot != StateBuckets.NONE) {
+            if (buckets.get(slot) == state)
+                return true;
+            slot = buckets.next(slot);
+        }
+        return false;
+    }
+
+    @Override
+    public State getState(Vertex dest) {
+        State ret = null;
+        int slot = buckets.first(dest.getIndex());
+        while (slot != StateBuckets.NONE) {
+            State s = buckets.get(slot);
+            if ((ret == null || s.betterThan(ret)) && s.isFinal() && s.allPathParsersAccept()) {
+                ret = s;
+            }
+            slot = buckets.next(slot);
+        }
+        return ret;
+    }
+
+    @Override
+    public List<State> getStates(Vertex dest) {
+        int slot = buckets.first(dest.getIndex());
+        if (slot == StateBuckets.NONE)
+            return null;
+        List<State> states = new ArrayList<State>(4);
+        while (slot != StateBuckets.NONE) {
+            states.add(buckets.get(slot));
+            slot = buckets.next(slot);
+        }
+        return states;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return buckets.getVertexCount();
+    }
+
+    @Override
+    public Collection<State> getAllStates() {
+        List<State> allStates = new ArrayList<State>(buckets.getStateCount());
+        for (int i = 0; i < buckets.getVertexCount(); i++) {
+            int slot = buckets.first(buckets.getTouchedVertex(i));
+            while (slot != StateBuckets.NONE) {
+                allStates.add(buckets.get(slot));
+                slot = buckets.next(slot);
+            }
+        }
+        return allStates;
+    }
+
+    /**
+     * Hand the underlying arrays back to the pool of the calling thread. The tree must not be
+     * used after it has been released, although any States or GraphPaths taken from it remain
+     * valid.
+     */
+    @Override
+    public void release() {
+        if (buckets != null) {
+            buckets.release();
+            buckets = null;
+        }
+    }
+
+    public String toString() {
+        return "IndexedMultiSPT(" + getVertexCount() + " vertices)";
+    }
+
+}
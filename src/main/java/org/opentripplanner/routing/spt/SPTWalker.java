@@ -19,6 +19,7 @@ import java.util.Set;
 
 import org.opentripplanner.common.geometry.DistanceLibrary;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.StreetEdge;
@@ -89,7 +90,8 @@ public class SPTWalker {
             State s0 = spt.getState(v);
             if (s0 == null || !s0.isFinal())
                 continue;
-            for (Edge e : s0.getVertex().getIncoming()) {
+            RoutingContext rctx = s0.getContext();
+            for (Edge e : rctx == null ? v.getIncoming() : rctx.getIncoming(v)) {
                 // Take only street
                 if (e != null && visitor.accept(e)) {
                     State s1 = spt.getState(e.getFromVertex());
@@ -114,4 +114,10 @@ public interface ShortestPathTree {
     /** Visit a vertex after it has been settled */
     public void postVisit(State u);
 
+    /**
+     * Release any pooled storage held by this tree. The tree must not be used afterward, but
+     * States and GraphPaths already extracted from it remain valid.
+     */
+    public void release();
+
 }
\ No newline at end of file
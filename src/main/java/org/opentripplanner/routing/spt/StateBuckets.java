@@ -0,0 +1,199 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import java.util.Arrays;
+
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Vertex;
+
+/**
+ * Per-vertex lists of States stored in flat arrays keyed on Vertex.getIndex(), rather than in a
+ * map of per-vertex ArrayLists. Each vertex index points to the slot of the first State in its
+ * bucket, and the slots are chained together through a parallel array of next-slot indexes.
+ * Slots freed by removing dominated states are recycled through a free list.
+ *
+ * Clearing the structure only touches the vertices that were actually used, so a single instance
+ * can be reused across many searches on the same thread without paying for the size of the graph
+ * each time. Use {@link #acquire()} and {@link #release()} to borrow and return the instance
+ * pooled for the current thread.
+ */
+public class StateBuckets {
+
+    /** Marks the end of a bucket chain, an empty bucket, or an empty free list. */
+    public static final int NONE = -1;
+
+    /** Marks the bucket of a vertex that has held states which have all been removed. */
+    private static final int EMPTIED = -2;
+
+    private static final int INITIAL_SLOTS = 1024;
+
+    private static final ThreadLocal<StateBuckets> POOL = new ThreadLocal<StateBuckets>();
+
+    /** For each vertex index, the slot of the first state at that vertex. */
+    private int[] head;
+
+    /** The states themselves, addressed by slot. */
+    private State[] slots;
+
+    /** For each slot, the slot of the next state at the same vertex. */
+    private int[] next;
+
+    /** Number of slots that have ever been handed out since the last reset. */
+    private int nSlots;
+
+    /** Head of the chain of free (recycled) slots. */
+    private int free = NONE;
+
+    /** Vertex indexes that have a non-empty bucket, in the order they were first reached. */
+    private int[] touched;
+
+    private int nTouched;
+
+    private int nStates;
+
+    public StateBuckets() {
+        this(Vertex.getMaxIndex());
+    }
+
+    public StateBuckets(int nVertices) {
+        head = new int[Math.max(nVertices, 16)];
+        Arrays.fill(head, NONE);
+        slots = new State[INITIAL_SLOTS];
+        next = new int[INITIAL_SLOTS];
+        touched = new int[INITIAL_SLOTS];
+    }
+
+    /**
+     * Borrow the instance pooled for the calling thread, creating one if the pool is empty. The
+     * instance is removed from the pool until it is handed back with {@link #release()}, so two
+     * trees that are alive at the same time on one thread never share storage.
+     */
+    public static StateBuckets acquire() {
+        StateBuckets buckets = POOL.get();
+        if (buckets == null) {
+            return new StateBuckets();
+        }
+        POOL.remove();
+        return buckets;
+    }
+
+    /** Clear this instance and return it to the pool of the calling thread. */
+    public void release() {
+        reset();
+        POOL.set(this);
+    }
+
+    /** Empty every bucket, touching only the vertices that were used. */
+    public void reset() {
+        for (int i = 0; i < nTouched; i++) {
+            head[touched[i]] = NONE;
+        }
+        // let the garbage collector have the states
+        Arrays.fill(slots, 0, nSlots, null);
+        nTouched = 0;
+        nSlots = 0;
+        nStates = 0;
+        free = NONE;
+    }
+
+    /** @return the slot of the first state at the given vertex index, or NONE. */
+    public int first(int vertexIndex) {
+        if (vertexIndex >= head.length)
+            return NONE;
+        int h = head[vertexIndex];
+        return h == EMPTIED ? NONE : h;
+    }
+
+    /** @return the slot following the given one in the same bucket, or NONE. */
+    public int next(int slot) {
+        return next[slot];
+    }
+
+    public State get(int slot) {
+        return slots[slot];
+    }
+
+    /** Prepend a state to the bucket for the given vertex index. */
+    public void add(int vertexIndex, State state) {
+        if (vertexIndex >= head.length) {
+            growVertices(vertexIndex + 1);
+        }
+        int h = head[vertexIndex];
+        if (h == NONE) {
+            if (nTouched == touched.length)
+                touched = Arrays.copyOf(touched, touched.length * 2);
+            touched[nTouched++] = vertexIndex;
+        }
+        int slot = allocateSlot();
+        slots[slot] = state;
+        next[slot] = h == EMPTIED ? NONE : h;
+        head[vertexIndex] = slot;
+        nStates += 1;
+    }
+
+    /**
+     * Remove the state in the given slot from the bucket for the given vertex index.
+     *
+     * @param prev the slot preceding the one to remove in the bucket chain, or NONE if the slot
+     *        to remove is the first one.
+     */
+    public void remove(int vertexIndex, int prev, int slot) {
+        if (prev == NONE)
+            // keep the vertex from being recorded as touched a second time
+            head[vertexIndex] = next[slot] == NONE ? EMPTIED : next[slot];
+        else
+            next[prev] = next[slot];
+        slots[slot] = null;
+        next[slot] = free;
+        free = slot;
+        nStates -= 1;
+    }
+
+    /** @return the number of vertices that have been given at least one state. */
+    public int getVertexCount() {
+        return nTouched;
+    }
+
+    /** @return the index of the i-th vertex to have been given a state. */
+    public int getTouchedVertex(int i) {
+        return touched[i];
+    }
+
+    public int getStateCount() {
+        return nStates;
+    }
+
+    private int allocateSlot() {
+        if (free != NONE) {
+            int slot = free;
+            free = next[slot];
+            return slot;
+        }
+        if (nSlots == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+            next = Arrays.copyOf(next, next.length * 2);
+        }
+        return nSlots++;
+    }
+
+    /* Temporary vertices created during routing get indexes beyond those of the graph. */
+    private void growVertices(int minLength) {
+        int oldLength = head.length;
+        int newLength = Math.max(minLength, Math.max(Vertex.getMaxIndex(), oldLength + oldLength / 2));
+        head = Arrays.copyOf(head, newLength);
+        Arrays.fill(head, oldLength, newLength, NONE);
+    }
+
+}
@@ -30,6 +30,7 @@ import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.request.BannedStopSet;
+import org.opentripplanner.routing.request.TransitFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +64,12 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     /** The code for the service on which this trip runs. For departure search optimizations. */
     // not final because these are set later, after TripTimes construction.
     public int serviceCode = -1;
+
+    /**
+     * The dense index of the trip in the GraphIndex, used to check trip bans as bit tests. Set
+     * when the graph is indexed; trips added later by real-time updates keep -1.
+     */
+    public int tripIndex = -1;
     
     /**
      * Both trip_headsign and stop_headsign (per stop on a particular trip) are optional GTFS
@@ -155,6 +162,7 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     public TripTimes(TripTimes object) {
         this.trip = object.trip;
         this.serviceCode = object.serviceCode;
+        this.tripIndex = object.tripIndex;
         this.timeShift = object.timeShift;
         this.headsigns = object.headsigns;
         this.scheduledDepartureTimes = object.scheduledDepartureTimes;
@@ -305,16 +313,30 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
      * and transfers with minimum time or forbidden transfers.
      */
     public boolean tripAcceptable(State state0, int stopIndex) {
-        RoutingRequest options = state0.getOptions();
-        BannedStopSet banned = options.bannedTrips.get(trip.getId());
-        if (banned != null && banned.contains(stopIndex)) {
-            return false;
+        // Establish whether we have a rented _or_ owned bicycle.
+        boolean bicycle = state0.getNonTransitMode() == TraverseMode.BICYCLE;
+        return tripAcceptable(state0.getOptions(), bicycle, stopIndex);
+    }
+
+    /**
+     * Same as tripAcceptable(State, int) for searches without States, given the request and
+     * whether a bicycle is carried on board.
+     */
+    public boolean tripAcceptable(RoutingRequest options, boolean bicycle, int stopIndex) {
+        TransitFilter filter = options.transitFilter;
+        if (filter != null && tripIndex >= 0) {
+            if (filter.tripBanned(tripIndex, stopIndex)) {
+                return false;
+            }
+        } else {
+            BannedStopSet banned = options.bannedTrips.get(trip.getId());
+            if (banned != null && banned.contains(stopIndex)) {
+                return false;
+            }
         }
         if (options.wheelchairAccessible && trip.getWheelchairAccessible() != 1) {
             return false;
         }
-        // Establish whether we have a rented _or_ owned bicycle.
-        boolean bicycle = state0.getNonTransitMode() == TraverseMode.BICYCLE;
         if (bicycle && BikeAccess.fromTrip(trip) != BikeAccess.ALLOWED) {
             return false;
         }
@@ -25,6 +25,9 @@ public abstract class TransitVertex extends Vertex {
 
     private final Stop stop;
 
+    /** The dense index of the stop in the GraphIndex, or -1 if the graph has not been indexed. */
+    public int stopIndex = -1;
+
     public TransitVertex(Graph graph, String label, Stop stop) {
         super(graph, label, stop.getLon(), stop.getLat(), stop.getName());
         this.stop = stop;
@@ -78,6 +78,10 @@ public class CommandLineParameters implements Cloneable {
             description = "Pass the graph to the server in-memory after building it, and saving to disk.")
     public boolean preFlight;
 
+    @Parameter(names = {"--compactGraph"},
+            description = "Save the graph in the compact format, which is memory-mapped at load time.")
+    public boolean compactGraph;
+
     @Parameter(names = {"--noTransit"},
             description = "Skip all transit input files (GTFS).")
     public boolean noTransit;
@@ -110,6 +114,14 @@ public class CommandLineParameters implements Cloneable {
             description = "Based on GTFS data, guess which OSM streets each bus runs on to improve stop linking.")
     public boolean matchBusRoutesToStreets = false;
 
+    @Parameter(names = {"--contractionHierarchies"},
+            description = "Precompute contraction hierarchies to speed up long car, bicycle and walk-only trips.")
+    public boolean contractionHierarchies = false;
+
+    @Parameter(names = {"--landmarks"},
+            description = "Precompute distances to landmark vertices for a tighter A* heuristic on street-only trips.")
+    public boolean landmarks = false;
+
 
     /* Options for the server sub-task. */
 
@@ -117,6 +129,14 @@ public class CommandLineParameters implements Cloneable {
             description = "Enable OTP Analyst extensions.")
     public boolean analyst;
 
+    @Parameter(names = {"--surfaceCacheMegabytes"},
+            description = "Memory budget in megabytes for the travel time surfaces kept by Analyst.")
+    public int surfaceCacheMegabytes = 512;
+
+    @Parameter(names = {"--spillSurfaces"},
+            description = "Write travel time surfaces evicted from memory to CACHE/surfaces and reload them on demand.")
+    public boolean spillSurfaces = false;
+
     @Parameter(names = {"--bindAddress"},
             description = "Specify which network interface to bind to by address. 0.0.0.0 means all interfaces.")
     public String bindAddress = "0.0.0.0";
@@ -140,6 +160,14 @@ public class CommandLineParameters implements Cloneable {
             description = "Use an algorithm tailored for big graphs (the size of New York or the Netherlands).")
     public boolean longDistance = false;
 
+    @Parameter(names = {"--indexedSpt"},
+            description = "Store search states in arrays indexed by vertex rather than in hash maps.")
+    public boolean indexedSpt = false;
+
+    @Parameter(names = {"--concurrentSearches"},
+            description = "Search for alternative itineraries on a shared pool of this many threads (0 searches one at a time).")
+    public int concurrentSearches = 0;
+
     @Parameter(names = {"--port"}, validateWith = AvailablePort.class,
             description = "Server port for plain HTTP.")
     public Integer port;
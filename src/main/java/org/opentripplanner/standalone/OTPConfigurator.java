@@ -17,6 +17,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.prefs.Preferences;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -29,8 +31,10 @@ import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.TileCache;
 import org.opentripplanner.api.resource.PlanGenerator;
 import org.opentripplanner.graph_builder.GraphBuilderTask;
+import org.opentripplanner.graph_builder.impl.ContractionHierarchyGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.EmbeddedConfigGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.GtfsGraphBuilderImpl;
+import org.opentripplanner.graph_builder.impl.LandmarkGraphBuilderImpl;
 import org.opentripplanner.graph_builder.impl.PruneFloatingIslands;
 import org.opentripplanner.graph_builder.impl.DirectTransferGenerator;
 import org.opentripplanner.graph_builder.impl.TransitToStreetNetworkGraphBuilderImpl;
@@ -47,12 +51,15 @@ import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFacto
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.openstreetmap.impl.AnyFileBasedOpenStreetMapProviderImpl;
 import org.opentripplanner.openstreetmap.services.OpenStreetMapProvider;
+import org.opentripplanner.routing.contraction.ContractionHierarchySet;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.ContractionHierarchyPathService;
 import org.opentripplanner.routing.impl.DefaultFareServiceFactory;
 import org.opentripplanner.routing.impl.GenericAStarFactory;
 import org.opentripplanner.routing.impl.GraphScanner;
 import org.opentripplanner.routing.impl.InputStreamGraphSource;
 import org.opentripplanner.routing.impl.LongDistancePathService;
+import org.opentripplanner.routing.impl.RaptorPathService;
 import org.opentripplanner.routing.impl.MemoryGraphSource;
 import org.opentripplanner.routing.impl.RetryingPathServiceImpl;
 import org.opentripplanner.routing.services.GraphService;
@@ -65,6 +72,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.opentripplanner.graph_builder.impl.map.BusRouteStreetMatcher;
 
 public class OTPConfigurator {
@@ -246,7 +254,15 @@ public class OTPConfigurator {
             GraphBuilder elevationBuilder = new ElevationGraphBuilderImpl(gcf);
             graphBuilder.addGraphBuilder(elevationBuilder);
         }
+        // Contraction and landmarks use the final street weights, so they must come after elevation.
+        if ( hasOSM && params.contractionHierarchies ) {
+            graphBuilder.addGraphBuilder(new ContractionHierarchyGraphBuilderImpl());
+        }
+        if ( hasOSM && params.landmarks ) {
+            graphBuilder.addGraphBuilder(new LandmarkGraphBuilderImpl());
+        }
         graphBuilder.serializeGraph = ( ! params.inMemory ) || params.preFlight;
+        graphBuilder.compactGraph = params.compactGraph;
         return graphBuilder;
     }
 
@@ -274,6 +290,21 @@ public class OTPConfigurator {
 
         private GraphUpdaterConfigurator graphConfigurator = new GraphUpdaterConfigurator();
 
+        /**
+         * Runs the concurrent searches for alternative itineraries of all routers. Shared rather
+         * than one per path service, so that reloading a graph does not leave a pool behind.
+         */
+        private ExecutorService searchExecutor;
+
+        private synchronized ExecutorService getSearchExecutor() {
+            if (searchExecutor == null && params.concurrentSearches > 0) {
+                searchExecutor = Executors.newFixedThreadPool(params.concurrentSearches,
+                        new ThreadFactoryBuilder().setNameFormat("RetryingPathService-%d")
+                                .setDaemon(true).build());
+            }
+            return searchExecutor;
+        }
+
         /**
          * Create a new Router, owning a Graph and all it's associated services.
          * 
@@ -286,7 +317,9 @@ public class OTPConfigurator {
         @Override
         public void startupRouter(Router router, Preferences config) {
 
-            router.sptServiceFactory = new GenericAStarFactory();
+            GenericAStarFactory sptServiceFactory = new GenericAStarFactory();
+            sptServiceFactory.setIndexedSpt(params.indexedSpt);
+            router.sptServiceFactory = sptServiceFactory;
             // Choose a PathService to wrap the SPTService, depending on expected maximum path lengths
             if (params.longDistance) {
                 LongDistancePathService pathService = new LongDistancePathService(router.graph,
@@ -297,10 +330,21 @@ public class OTPConfigurator {
                         router.sptServiceFactory);
                 pathService.setFirstPathTimeout(10.0);
                 pathService.setMultiPathTimeout(1.0);
+                pathService.setConcurrentSearches(params.concurrentSearches, getSearchExecutor());
                 router.pathService = pathService;
+                // Answer street-only requests from the contraction hierarchies if the graph has them
+                if (router.graph.hasService(ContractionHierarchySet.class)) {
+                    router.pathService = new ContractionHierarchyPathService(router.graph,
+                            pathService);
+                }
                 // cpf.bind(RemainingWeightHeuristicFactory.class,
                 //        new DefaultRemainingWeightHeuristicFactoryImpl());
             }
+            // Answer walk and transit requests with the round-based search if the router asks for it
+            if (config != null && RaptorPathService.RAPTOR.equals(
+                    config.get(RaptorPathService.CONFIG_KEY, null))) {
+                router.pathService = new RaptorPathService(router.graph, router.pathService);
+            }
             router.planGenerator = new PlanGenerator(router.graph, router.pathService);
             router.tileRendererManager = new TileRendererManager(router.graph);
 
@@ -53,7 +53,8 @@ public class OTPServer {
 
         // Optional Analyst Modules.
         if (params.analyst) {
-            surfaceCache = new SurfaceCache(30);
+            File spillDirectory = params.spillSurfaces ? new File(params.cacheDirectory, "surfaces") : null;
+            surfaceCache = new SurfaceCache(params.surfaceCacheMegabytes * 1024L * 1024L, spillDirectory);
             pointSetCache = new DiskBackedPointSetCache(100, params.pointSetDirectory);
         }
 
@@ -83,6 +84,11 @@ public class OTPServer {
         return graphService.getRouter(routerId);
     }
 
+    /** @see GraphService#acquireRouter(String) */
+    public Router acquireRouter(String routerId) throws GraphNotFoundException {
+        return graphService.acquireRouter(routerId);
+    }
+
     /**
      * Return an HK2 Binder that injects this specific OTPServer instance into Jersey web resources.
      * This should be registered in the ResourceConfig (Jersey) or Application (JAX-RS) as a singleton.
@@ -61,9 +61,65 @@ public class Router {
     public IsoChroneSPTRenderer isoChroneSPTRenderer;
     public SampleGridRenderer sampleGridRenderer;
 
+    /** Number of requests currently being handled by this router, see requestStarted(). */
+    private int activeRequests = 0;
+
+    /** Set once this router has been replaced or evicted, after which it accepts no new requests. */
+    private boolean retired = false;
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
     }
 
+    /**
+     * Record that a request is being handled by this router. When this returns true, it must be
+     * paired with a call to requestFinished() in a finally block. This allows a router replaced by
+     * a reload to be shut down only once the requests it was serving have completed.
+     *
+     * Request handlers should not call this directly but use GraphService.acquireRouter(), which
+     * looks up the router and records the request in one step. Only the routing and analyst
+     * endpoints that run searches are counted; the endpoints which merely read from the graph
+     * (metadata, index, tiles...) are not, and may fail if a reload shuts the router down while
+     * they are running.
+     *
+     * @return false if the router has been retired, in which case the request is not recorded
+     *         and must be sent to the router which replaced this one.
+     */
+    public synchronized boolean requestStarted() {
+        if (retired)
+            return false;
+        activeRequests++;
+        return true;
+    }
+
+    public synchronized void requestFinished() {
+        activeRequests--;
+        if (activeRequests == 0)
+            notifyAll();
+    }
+
+    /**
+     * Refuse any further request, because this router has been replaced or evicted. Requests
+     * already started are not affected, see awaitIdle().
+     */
+    public synchronized void retire() {
+        retired = true;
+    }
+
+    /**
+     * Wait until no request is being handled by this router, or the timeout elapses.
+     * @return true if the router is idle, false if the timeout elapsed first.
+     */
+    public synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (activeRequests > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
 }
@@ -0,0 +1,161 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.standalone;
+
+import java.util.List;
+import java.util.prefs.Preferences;
+
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Runs a set of queries against a freshly loaded router before it starts serving requests, so that
+ * the JIT has compiled the routing code and lazily built indexes and caches are populated. Without
+ * this, the first minutes after a graph reload show much higher response times.
+ *
+ * The queries are configured in Graph.properties, as pairs of origin and destination coordinates
+ * separated by semicolons:
+ *
+ * <pre>
+ * warmupQueries = 45.52,-122.68 45.49,-122.60; 45.51,-122.66 45.53,-122.70
+ * warmupIterations = 3
+ * </pre>
+ *
+ * Each query is used for a trip plan, a one-to-many (isochrone) search from the origin and spatial
+ * index lookups around both points. Failures are logged and ignored: warming up is best-effort.
+ */
+public class RouterWarmup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RouterWarmup.class);
+
+    public static final String QUERIES_KEY = "warmupQueries";
+
+    public static final String ITERATIONS_KEY = "warmupIterations";
+
+    /** Limits the one-to-many searches, which would otherwise explore the whole graph. */
+    private static final int ISOCHRONE_SECONDS = 60 * 60;
+
+    private static final double NEARBY_STOPS_RADIUS_METERS = 500;
+
+    private final List<String[]> queries = Lists.newArrayList();
+
+    private final int iterations;
+
+    public RouterWarmup(String queries, int iterations) {
+        for (String query : queries.split(";")) {
+            query = query.trim();
+            if (query.isEmpty())
+                continue;
+            String[] fromTo = query.split("\\s+");
+            if (fromTo.length != 2) {
+                LOG.warn("Ignoring warm-up query '{}', expected an origin and a destination.",
+                        query);
+                continue;
+            }
+            this.queries.add(fromTo);
+        }
+        this.iterations = iterations;
+    }
+
+    /** @return the warm-up configured in the given router config, or null if there is none. */
+    public static RouterWarmup fromConfig(Preferences config) {
+        if (config == null)
+            return null;
+        String queries = config.get(QUERIES_KEY, null);
+        if (queries == null)
+            return null;
+        return new RouterWarmup(queries, config.getInt(ITERATIONS_KEY, 1));
+    }
+
+    public void warmUp(Router router) {
+        LOG.info("Warming up router '{}' with {} queries...", router.id, queries.size());
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            for (String[] fromTo : queries) {
+                try {
+                    plan(router, fromTo[0], fromTo[1]);
+                } catch (Exception e) {
+                    LOG.warn("Warm-up plan {} -> {} failed: {}", fromTo[0], fromTo[1], e);
+                }
+                try {
+                    isochrone(router, fromTo[0]);
+                } catch (Exception e) {
+                    LOG.warn("Warm-up isochrone from {} failed: {}", fromTo[0], e);
+                }
+                indexLookups(router.graph, fromTo[0]);
+                indexLookups(router.graph, fromTo[1]);
+            }
+        }
+        LOG.info("Router '{}' warmed up in {} msec.", router.id,
+                System.currentTimeMillis() - start);
+    }
+
+    private void plan(Router router, String from, String to) {
+        if (router.planGenerator == null)
+            return;
+        RoutingRequest request = newRequest(router);
+        request.setFromString(from);
+        request.setToString(to);
+        try {
+            router.planGenerator.generate(request);
+        } finally {
+            request.cleanup();
+        }
+    }
+
+    private void isochrone(Router router, String from) {
+        if (router.sptServiceFactory == null)
+            return;
+        RoutingRequest request = newRequest(router);
+        request.batch = true;
+        request.setFromString(from);
+        request.worstTime = request.dateTime + ISOCHRONE_SECONDS;
+        try {
+            request.setRoutingContext(router.graph);
+            router.sptServiceFactory.instantiate().getShortestPathTree(request);
+        } finally {
+            request.cleanup();
+        }
+    }
+
+    private RoutingRequest newRequest(Router router) {
+        RoutingRequest request = new RoutingRequest();
+        request.routerId = router.id;
+        if (!router.graph.hasTransit)
+            request.setModes(new TraverseModeSet(TraverseMode.WALK));
+        return request;
+    }
+
+    private void indexLookups(Graph graph, String place) {
+        Coordinate coordinate = GenericLocation.fromOldStyleString(place).getCoordinate();
+        if (coordinate == null || graph.streetIndex == null)
+            return;
+        graph.streetIndex.getNearbyTransitStops(coordinate, NEARBY_STOPS_RADIUS_METERS);
+        Envelope envelope = new Envelope(coordinate);
+        envelope.expandBy(SphericalDistanceLibrary.metersToLonDegrees(NEARBY_STOPS_RADIUS_METERS,
+                coordinate.y), SphericalDistanceLibrary.metersToDegrees(NEARBY_STOPS_RADIUS_METERS));
+        graph.streetIndex.getVerticesForEnvelope(envelope);
+    }
+
+}
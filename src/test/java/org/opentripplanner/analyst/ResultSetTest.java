@@ -0,0 +1,94 @@
+package org.opentripplanner.analyst;
+
+import static org.junit.Assert.*;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class ResultSetTest {
+
+    private static final int N_STREETS = 10;
+
+    /** Histograms merged from disjoint ranges are those of the whole range. */
+    @Test
+    public void testMergePartialHistograms() {
+        int[] times = new int[] { 30, 90, 600, -1, 4000, Integer.MAX_VALUE, 95, 70000 };
+        int[] weights = new int[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+        Histogram whole = new Histogram(times, weights);
+        for (int split = 0; split <= times.length; split++) {
+            Histogram.Partial left = new Histogram.Partial();
+            left.add(times, weights, 0, split);
+            Histogram.Partial right = new Histogram.Partial();
+            right.add(times, weights, split, times.length);
+            left.merge(right);
+            Histogram merged = left.toHistogram();
+            assertArrayEquals(whole.counts, merged.counts);
+            assertArrayEquals(whole.sums, merged.sums);
+        }
+        assertEquals(70000 / 60, whole.counts.length);
+        assertEquals(1, whole.counts[0]);
+        assertEquals(9, whole.sums[1]);
+    }
+
+    /** Large PointSets are evaluated in parallel, with the same result as a sequential evaluation. */
+    @Test
+    public void testParallelEvaluation() {
+        Graph graph = new Graph();
+        IntersectionVertex[][] grid = new IntersectionVertex[N_STREETS][N_STREETS];
+        for (int x = 0; x < N_STREETS; x++) {
+            for (int y = 0; y < N_STREETS; y++) {
+                grid[x][y] = new IntersectionVertex(graph, "v" + x + "_" + y, -122 + x * 0.002, 45 + y * 0.002);
+                if (x > 0) edge(grid[x - 1][y], grid[x][y]);
+                if (y > 0) edge(grid[x][y - 1], grid[x][y]);
+            }
+        }
+        int n = ResultSet.PARALLEL_THRESHOLD + 1234;
+        PointSet pset = new PointSet(n);
+        int[] jobs = new int[n];
+        int[] people = new int[n];
+        for (int i = 0; i < n; i++) {
+            pset.lons[i] = -122 + (i % 250) * 0.0001;
+            pset.lats[i] = 45 + (i / 250) * 0.0001;
+            jobs[i] = i % 7;
+            people[i] = i % 13;
+        }
+        pset.properties.put("jobs", jobs);
+        pset.properties.put("people", people);
+        SampleSet samples = new SampleSet(pset, graph);
+
+        RoutingRequest options = new RoutingRequest();
+        options.batch = true;
+        options.from = new GenericLocation(grid[0][0].getY(), grid[0][0].getX());
+        options.setRoutingContext(graph, grid[0][0], null);
+        TimeSurface surface = new TimeSurface(new GenericAStar().getShortestPathTree(options));
+        options.cleanup();
+
+        ResultSet parallel = new ResultSet(samples, surface);
+        ResultSet sequential = new ResultSet();
+        sequential.buildHistograms(samples.eval(surface), pset);
+        assertEquals(sequential.histograms.keySet(), parallel.histograms.keySet());
+        for (String cat : sequential.histograms.keySet()) {
+            assertTrue(sequential.histograms.get(cat).counts.length > 1);
+            assertArrayEquals(sequential.histograms.get(cat).counts, parallel.histograms.get(cat).counts);
+            assertArrayEquals(sequential.histograms.get(cat).sums, parallel.histograms.get(cat).sums);
+        }
+    }
+
+    private void edge(IntersectionVertex vA, IntersectionVertex vB) {
+        Coordinate[] coords = new Coordinate[] { vA.getCoordinate(), vB.getCoordinate() };
+        LineString geom = GeometryUtils.getGeometryFactory().createLineString(coords);
+        String name = vA.getLabel() + "_" + vB.getLabel();
+        new StreetEdge(vA, vB, geom, name, 160, StreetTraversalPermission.ALL, false);
+        new StreetEdge(vB, vA, geom, name, 160, StreetTraversalPermission.ALL, true);
+    }
+
+}
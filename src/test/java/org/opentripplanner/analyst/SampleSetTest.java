@@ -0,0 +1,134 @@
+package org.opentripplanner.analyst;
+
+import static org.junit.Assert.*;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+public class SampleSetTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final int N_STREETS = 5;
+    private static final int N_POINTS = 3000;
+
+    private Graph graph;
+    private PointSet pset;
+
+    /** A grid of streets a little over 100 meters apart, with points scattered over it. */
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        graph.routerId = "test";
+        IntersectionVertex[][] grid = new IntersectionVertex[N_STREETS][N_STREETS];
+        for (int x = 0; x < N_STREETS; x++) {
+            for (int y = 0; y < N_STREETS; y++) {
+                grid[x][y] = new IntersectionVertex(graph, "v" + x + "_" + y, -122 + x * 0.001, 45 + y * 0.001);
+                if (x > 0) edge(grid[x - 1][y], grid[x][y]);
+                if (y > 0) edge(grid[x][y - 1], grid[x][y]);
+            }
+        }
+        pset = new PointSet(N_POINTS);
+        for (int i = 0; i < N_POINTS; i++) {
+            pset.lons[i] = -122 + (i % 60) * 0.0001;
+            pset.lats[i] = 45 + (i / 60) * 0.0001;
+        }
+    }
+
+    /** Parallel linking gives the same samples as linking each point in turn. */
+    @Test
+    public void testLinking() {
+        SampleSet samples = new SampleSet(pset, graph);
+        assertTrue(samples.isFor(graph));
+        SampleFactory sfac = graph.getSampleFactory();
+        int linked = 0;
+        for (int i = 0; i < N_POINTS; i++) {
+            Sample sample = sfac.getSample(pset.lons[i], pset.lats[i]);
+            if (sample == null) {
+                assertEquals(-1, samples.i0s[i]);
+                assertTrue(Float.isNaN(samples.d0s[i]));
+                continue;
+            }
+            linked++;
+            assertEquals(sample.v0.getIndex(), samples.i0s[i]);
+            assertEquals(sample.v1.getIndex(), samples.i1s[i]);
+            assertEquals(sample.t0, samples.d0s[i], 0);
+            assertEquals(sample.t1, samples.d1s[i], 0);
+        }
+        assertTrue(linked > N_POINTS / 2);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        SampleSet samples = new SampleSet(pset, graph);
+        File file = temporaryFolder.newFile("pset.linkage");
+        samples.write(file, graph);
+        SampleSet read = SampleSet.read(file, pset, graph);
+        assertNotNull(read);
+        assertTrue(read.isFor(graph));
+        assertArrayEquals(samples.i0s, read.i0s);
+        assertArrayEquals(samples.i1s, read.i1s);
+        assertTrue(Arrays.equals(samples.d0s, read.d0s));
+        assertTrue(Arrays.equals(samples.d1s, read.d1s));
+
+        // A linkage is only valid for the graph build and PointSet it was made for
+        assertNull(SampleSet.read(file, new PointSet(N_POINTS + 1), graph));
+        graph.buildTime.setTime(graph.buildTime.getTime() + 1000);
+        assertNull(SampleSet.read(file, pset, graph));
+    }
+
+    /** A PointSet loaded from a file persists its linkage next to it and reloads it rather than linking again. */
+    @Test
+    public void testPersistedLinkage() throws Exception {
+        File source = temporaryFolder.newFile("grid.csv");
+        source.setLastModified(new Date().getTime() - 60000);
+        pset.setSourceFile(source);
+        SampleSet samples = pset.getSampleSet(graph);
+        assertSame(samples, pset.getSampleSet(graph));
+        File linkageFile = new File(temporaryFolder.getRoot(), "grid.csv.test.linkage");
+        assertTrue(linkageFile.exists());
+
+        // Fake a different linkage on disk, which a fresh load of the PointSet must pick up instead of relinking
+        SampleSet fake = new SampleSet(new PointSet(N_POINTS), graph);
+        fake.write(linkageFile, graph);
+        PointSet reloaded = new PointSet(N_POINTS);
+        reloaded.lons = pset.lons;
+        reloaded.lats = pset.lats;
+        reloaded.setSourceFile(source);
+        SampleSet read = reloaded.getSampleSet(graph);
+        assertArrayEquals(fake.i0s, read.i0s);
+
+        // Once the source file changes the linkage is stale and is recomputed
+        source.setLastModified(linkageFile.lastModified() + 2000);
+        PointSet changed = new PointSet(N_POINTS);
+        changed.lons = pset.lons;
+        changed.lats = pset.lats;
+        changed.setSourceFile(source);
+        assertArrayEquals(samples.i0s, changed.getSampleSet(graph).i0s);
+    }
+
+    private void edge(IntersectionVertex vA, IntersectionVertex vB) {
+        Coordinate[] coords = new Coordinate[] { vA.getCoordinate(), vB.getCoordinate() };
+        LineString geom = GeometryUtils.getGeometryFactory().createLineString(coords);
+        String name = vA.getLabel() + "_" + vB.getLabel();
+        new StreetEdge(vA, vB, geom, name, 100, StreetTraversalPermission.ALL, false);
+        new StreetEdge(vB, vA, geom, name, 100, StreetTraversalPermission.ALL, true);
+    }
+
+}
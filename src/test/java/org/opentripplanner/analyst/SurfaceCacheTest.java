@@ -0,0 +1,133 @@
+package org.opentripplanner.analyst;
+
+import static org.junit.Assert.*;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SurfaceCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private Graph graph;
+
+    private IntersectionVertex a, b;
+    private ShortestPathTree spt;
+
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        a = new IntersectionVertex(graph, "a", -122.000, 45.000);
+        b = new IntersectionVertex(graph, "b", -122.001, 45.000);
+        Coordinate[] coords = new Coordinate[] { a.getCoordinate(), b.getCoordinate() };
+        LineString geom = GeometryUtils.getGeometryFactory().createLineString(coords);
+        new StreetEdge(a, b, geom, "a_b", 100, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, a, geom, "a_b", 100, StreetTraversalPermission.ALL, true);
+
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.batch = true;
+        options.from = new GenericLocation(a.getY(), a.getX());
+        options.setRoutingContext(graph, a, null);
+        spt = new GenericAStar().getShortestPathTree(options);
+        options.cleanup();
+    }
+
+    /** Without a spill directory, surfaces beyond the byte budget are dropped. */
+    @Test
+    public void testEvictionByBytes() {
+        TimeSurface first = new TimeSurface(spt);
+        SurfaceCache surfaceCache = new SurfaceCache(first.estimateBytes() * 2);
+        int[] ids = new int[10];
+        ids[0] = surfaceCache.add(first);
+        for (int i = 1; i < ids.length; i++) {
+            ids[i] = surfaceCache.add(new TimeSurface(spt));
+        }
+        assertTrue(surfaceCache.cache.size() < ids.length);
+        int found = 0;
+        for (int id : ids) {
+            if (surfaceCache.get(id) != null) found++;
+        }
+        assertEquals(surfaceCache.cache.size(), found);
+        assertNull(surfaceCache.get(SurfaceCache.NONE));
+    }
+
+    /** With a spill directory, evicted surfaces are written to disk and reloaded by ID. */
+    @Test
+    public void testSpillAndReload() throws Exception {
+        File spillDirectory = new File(temporaryFolder.getRoot(), "surfaces");
+        TimeSurface first = new TimeSurface(spt);
+        first.description = "first";
+        SurfaceCache surfaceCache = new SurfaceCache(first.estimateBytes() * 2, spillDirectory);
+        int[] ids = new int[10];
+        ids[0] = surfaceCache.add(first);
+        for (int i = 1; i < ids.length; i++) {
+            ids[i] = surfaceCache.add(new TimeSurface(spt));
+        }
+        assertTrue(surfaceCache.cache.size() < ids.length);
+        assertTrue(spillDirectory.list().length > 0);
+        for (int id : ids) {
+            TimeSurface surface = surfaceCache.get(id);
+            assertNotNull(surface);
+            assertEquals(id, surface.id);
+            assertTrue(surface.isFor(graph));
+            assertEquals(0, surface.getTime(a));
+            assertEquals(first.getTime(b), surface.getTime(b));
+        }
+        assertEquals("first", surfaceCache.get(ids[0]).description);
+        assertNull(surfaceCache.get(SurfaceCache.NONE));
+
+        // A new cache must not serve surfaces spilled by an earlier one, since IDs are not stable across runs.
+        new SurfaceCache(first.estimateBytes() * 2, spillDirectory);
+        assertEquals(0, spillDirectory.list().length);
+    }
+
+    /** Surfaces being evicted by one thread are never reported missing to another. */
+    @Test
+    public void testGetWhileSpilling() throws Exception {
+        File spillDirectory = new File(temporaryFolder.getRoot(), "surfaces");
+        TimeSurface first = new TimeSurface(spt);
+        final SurfaceCache surfaceCache = new SurfaceCache(first.estimateBytes() * 2, spillDirectory);
+        final List<Integer> ids = new CopyOnWriteArrayList<Integer>();
+        ids.add(surfaceCache.add(first));
+        Thread adder = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 500; i++) {
+                    ids.add(surfaceCache.add(new TimeSurface(spt)));
+                }
+            }
+        };
+        adder.start();
+        Random random = new Random(1);
+        while (adder.isAlive()) {
+            // mostly the oldest surfaces still in memory, which are the next to be evicted
+            int n = ids.size();
+            int id = ids.get(random.nextBoolean() ? Math.max(0, n - 3) : random.nextInt(n));
+            assertNotNull(surfaceCache.get(id));
+        }
+        adder.join();
+        for (int id : ids) {
+            assertNotNull(surfaceCache.get(id));
+        }
+    }
+
+}
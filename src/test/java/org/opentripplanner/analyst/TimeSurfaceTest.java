@@ -0,0 +1,109 @@
+package org.opentripplanner.analyst;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import junit.framework.TestCase;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class TimeSurfaceTest extends TestCase {
+
+    private Graph graph;
+    private IntersectionVertex a, b, c, island;
+    private TimeSurface surface;
+
+    @Override
+    protected void setUp() {
+        graph = new Graph();
+        a = new IntersectionVertex(graph, "a", -122.000, 45.000);
+        b = new IntersectionVertex(graph, "b", -122.001, 45.000);
+        c = new IntersectionVertex(graph, "c", -122.002, 45.000);
+        island = new IntersectionVertex(graph, "island", -122.010, 45.010);
+        edge(a, b, 100);
+        edge(b, c, 100);
+
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.batch = true;
+        options.from = new GenericLocation(a.getY(), a.getX());
+        options.setRoutingContext(graph, a, null);
+        ShortestPathTree spt = new GenericAStar().getShortestPathTree(options);
+        surface = new TimeSurface(spt);
+        options.cleanup();
+    }
+
+    public void testTimesFromShortestPathTree() {
+        assertEquals(0, surface.getTime(a));
+        assertTrue(surface.getTime(b) > 0);
+        assertTrue(surface.getTime(c) > surface.getTime(b));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(island));
+        assertEquals(3, surface.countReached());
+        assertEquals(surface.getTime(b), surface.getTime(b.getIndex()));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(-1));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(Integer.MAX_VALUE));
+    }
+
+    /** Vertices created after the surface, such as temporary vertices, have indexes beyond its array. */
+    public void testSetTimeBeyondInitialSize() {
+        IntersectionVertex late = null;
+        for (int i = 0; i < 100; i++) {
+            late = new IntersectionVertex(graph, "late" + i, -122.020, 45.020);
+        }
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(late));
+        surface.setTime(late, 600);
+        assertEquals(600, surface.getTime(late));
+        assertEquals(4, surface.countReached());
+        assertEquals(0, surface.getTime(a));
+        surface.setTime(late, TimeSurface.UNREACHABLE);
+        assertEquals(3, surface.countReached());
+    }
+
+    public void testSampleGridWithoutSPT() {
+        surface.sampleGrid = null;
+        surface.makeSampleGridWithoutSPT(graph);
+        assertNotNull(surface.sampleGrid);
+    }
+
+    /** Vertex indexes are only valid for the graph instance the surface was made on. */
+    public void testBoundToGraph() {
+        assertTrue(surface.isFor(graph));
+        Graph reloaded = new Graph();
+        IntersectionVertex reloadedA = new IntersectionVertex(reloaded, "a", -122.000, 45.000);
+        assertFalse(surface.isFor(reloaded));
+        assertFalse(surface.isFor(null));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(reloadedA));
+        try {
+            surface.makeSampleGridWithoutSPT(reloaded);
+            fail("A surface must not be sampled against another graph");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /** The times array covers the index range of the graph, not every vertex index handed out so far. */
+    public void testSizedFromGraph() {
+        Graph other = new Graph();
+        for (int i = 0; i < 10000; i++) {
+            new IntersectionVertex(other, "other" + i, -122.0, 45.0);
+        }
+        setUp();
+        assertTrue(surface.estimateBytes() < 4 * 10000);
+        assertEquals(0, surface.getTime(a));
+        assertEquals(3, surface.countReached());
+    }
+
+    private StreetEdge edge(IntersectionVertex vA, IntersectionVertex vB, double length) {
+        Coordinate[] coords = new Coordinate[] { vA.getCoordinate(), vB.getCoordinate() };
+        LineString geom = GeometryUtils.getGeometryFactory().createLineString(coords);
+        String name = vA.getLabel() + "_" + vB.getLabel();
+        new StreetEdge(vB, vA, geom, name, length, StreetTraversalPermission.ALL, true);
+        return new StreetEdge(vA, vB, geom, name, length, StreetTraversalPermission.ALL, false);
+    }
+
+}
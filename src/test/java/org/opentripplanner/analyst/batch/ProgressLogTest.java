@@ -0,0 +1,100 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.analyst.batch;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+public class ProgressLogTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompletedOriginsAreReadBack() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "progress.csv");
+        ProgressLog log = new ProgressLog(file);
+        assertTrue(log.readCompleted().isEmpty());
+        log.open(false);
+        log.completed(0, 12.5, "first, with a comma");
+        log.completed(7, Double.NaN, null);
+        log.close();
+
+        ProgressLog.Completed completed = new ProgressLog(file).readCompleted();
+        assertEquals(2, completed.size());
+        assertEquals(12.5, completed.getValue(0), 0);
+        assertTrue(Double.isNaN(completed.getValue(7)));
+        assertFalse(completed.contains(1));
+        // labels are compared as they were written, to detect origins that changed between runs
+        assertEquals("first, with a comma", completed.getLabel(0));
+        assertTrue(completed.labelMatches(0, "first, with a comma"));
+        assertFalse(completed.labelMatches(0, "another origin"));
+        assertTrue(completed.labelMatches(7, null));
+        assertFalse(completed.labelMatches(7, "unlabelled before"));
+    }
+
+    /** A line cut short by a crash is ignored, and resuming does not glue the next record onto it. */
+    @Test
+    public void testResumeAfterTruncatedLine() throws Exception {
+        File file = temporaryFolder.newFile("progress.csv");
+        Files.write("0,1.0,a\n1,2.0,b\n2,3.", file, Charset.forName("utf-8"));
+        ProgressLog log = new ProgressLog(file);
+        ProgressLog.Completed completed = log.readCompleted();
+        assertEquals(2, completed.size());
+        assertFalse(completed.contains(2));
+        assertTrue(completed.labelMatches(1, "b"));
+
+        log.open(true);
+        log.completed(2, 3.5, "c");
+        log.close();
+        completed = new ProgressLog(file).readCompleted();
+        assertEquals(3, completed.size());
+        assertEquals(3.5, completed.getValue(2), 0);
+        assertEquals("c", completed.getLabel(2));
+
+        assertEquals("0,1.0,a\n1,2.0,b\n2,3.5,c\n", Files.toString(file, Charset.forName("utf-8")));
+
+        // starting over discards earlier records
+        log.open(false);
+        log.close();
+        assertTrue(new ProgressLog(file).readCompleted().isEmpty());
+    }
+
+    /** A last line holding all its fields may still have had its label cut short. */
+    @Test
+    public void testUnterminatedLastLineIsIgnored() throws Exception {
+        File file = temporaryFolder.newFile("progress.csv");
+        Files.write("0,1.0,a\n12,3.5,Blo", file, Charset.forName("utf-8"));
+        ProgressLog log = new ProgressLog(file);
+        ProgressLog.Completed completed = log.readCompleted();
+        assertEquals(1, completed.size());
+        assertFalse(completed.contains(12));
+
+        // resuming removes the partial line, so a run that stops before redoing it leaves no bad record behind
+        log.open(true);
+        log.close();
+        assertEquals("0,1.0,a\n", Files.toString(file, Charset.forName("utf-8")));
+        completed = log.readCompleted();
+        assertEquals(1, completed.size());
+        assertFalse(completed.contains(12));
+    }
+
+}
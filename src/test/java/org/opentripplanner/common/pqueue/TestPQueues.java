@@ -14,6 +14,7 @@
 package org.opentripplanner.common.pqueue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.PriorityQueue;
 import junit.framework.TestCase;
@@ -143,4 +144,66 @@ public class TestPQueues extends TestCase {
 
         }
     }    
+
+    public void testFourAryHeap() {
+        List<Integer> input, expected;
+        input = new ArrayList<Integer>(N);
+        for (int i=0; i<N; i++) input.add((int) (Math.random() * 10000));
+        expected = new ArrayList<Integer>(input);
+        Collections.sort(expected);
+
+        IndexedFourAryHeap<Integer> q = new IndexedFourAryHeap<Integer>(20, 0);
+        for (Integer i : input) {
+            q.insert(i, i * 0.5);
+        }
+        List<Integer> result = new ArrayList<Integer>(N);
+        while (!q.empty()) {
+            result.add(q.extract_min());
+        }
+        assertEquals(expected, result);
+        assertEquals(0, q.size());
+        assertNull(q.peek_min());
+        assertNull(q.extract_min());
+    }
+
+    /*
+     * Each key should be present at most once, and rekeying should move the element up or down.
+     */
+    public void testDecreaseKey() {
+        final int N = 5000;
+        IndexedFourAryHeap<Integer> q = new IndexedFourAryHeap<Integer>(20, 10);
+        for (int iter = 0; iter < 2; iter++) {
+            q.reset();
+            double[] best = new double[N];
+            for (int k = 0; k < N; k++) {
+                best[k] = Math.random() * 10000;
+                q.insert_or_dec_key(k, k, best[k]);
+            }
+            // rekey every element a few times, both up and down
+            for (int round = 0; round < 3; round++) {
+                for (int k = 0; k < N; k++) {
+                    best[k] = Math.random() * 10000;
+                    q.insert_or_dec_key(k, k, best[k]);
+                }
+            }
+            assertEquals(N, q.size());
+            assertTrue(q.contains(N - 1));
+            // unkeyed elements coexist with keyed ones
+            q.insert(-1, -1.0);
+            assertEquals(N + 1, q.size());
+            assertEquals(Integer.valueOf(-1), q.extract_min());
+            double last = Double.NEGATIVE_INFINITY;
+            int n = 0;
+            while (!q.empty()) {
+                double p = q.peek_min_key();
+                Integer k = q.extract_min();
+                assertEquals(best[k], p);
+                assertTrue(p >= last);
+                assertFalse(q.contains(k));
+                last = p;
+                n++;
+            }
+            assertEquals(N, n);
+        }
+    }
 }
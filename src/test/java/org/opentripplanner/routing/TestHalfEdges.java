@@ -461,6 +461,46 @@ public class TestHalfEdges extends TestCase {
         walking.cleanup();
     }
 
+    public void testTemporaryEdgesDoNotModifyGraph() {
+        StreetVertexIndexServiceImpl finder = new StreetVertexIndexServiceImpl(graph);
+        int nEdges = graph.getEdges().size();
+        int[] degreesOut = new int[] { br.getDegreeOut(), tr.getDegreeOut(), bl.getDegreeOut(),
+                tl.getDegreeOut() };
+        int[] degreesIn = new int[] { br.getDegreeIn(), tr.getDegreeIn(), bl.getDegreeIn(),
+                tl.getDegreeIn() };
+
+        RoutingRequest walking = new RoutingRequest(TraverseMode.WALK);
+        TemporaryStreetLocation start = (TemporaryStreetLocation) finder.getVertexForLocation(
+                new GenericLocation(40.004, -74.01), walking, false);
+        TemporaryStreetLocation end = (TemporaryStreetLocation) finder.getVertexForLocation(
+                new GenericLocation(40.008, -74.0), walking, true);
+        walking.setRoutingContext(graph, start, end);
+
+        // permanent vertices are untouched, the request sees the temporary edges on them anyway
+        assertEquals(nEdges, graph.getEdges().size());
+        assertEquals(degreesOut[0], br.getDegreeOut());
+        assertEquals(degreesOut[1], tr.getDegreeOut());
+        assertEquals(degreesOut[2], bl.getDegreeOut());
+        assertEquals(degreesOut[3], tl.getDegreeOut());
+        assertEquals(degreesIn[0], br.getDegreeIn());
+        assertEquals(degreesIn[1], tr.getDegreeIn());
+        assertEquals(degreesIn[2], bl.getDegreeIn());
+        assertEquals(degreesIn[3], tl.getDegreeIn());
+        for (Edge e : start.getOutgoing()) {
+            assertFalse(e.getToVertex().getIncoming().contains(e));
+            assertTrue(walking.rctx.getIncoming(e.getToVertex()).contains(e));
+        }
+        for (Edge e : end.getIncoming()) {
+            assertFalse(e.getFromVertex().getOutgoing().contains(e));
+            assertTrue(walking.rctx.getOutgoing(e.getFromVertex()).contains(e));
+        }
+
+        ShortestPathTree spt = aStar.getShortestPathTree(walking);
+        assertNotNull(spt.getPath(end, false));
+        walking.cleanup();
+        assertEquals(nEdges, graph.getEdges().size());
+    }
+
     public void testNetworkLinker() {
         int numVerticesBefore = graph.getVertices().size();
         NetworkLinker nl = new NetworkLinker(graph);
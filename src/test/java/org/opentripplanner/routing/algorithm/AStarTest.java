@@ -115,6 +115,34 @@ public class AStarTest {
         assertEquals("leary_20th", states.get(6).getVertex().getLabel());
     }
 
+    @Test
+    public void testForwardIndexedSpt() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        ShortestPathTree tree = new GenericAStar().getShortestPathTree(options);
+        GenericAStar indexedAStar = new GenericAStar();
+        indexedAStar.setIndexedSpt(true);
+        ShortestPathTree indexedTree = indexedAStar.getShortestPathTree(options);
+
+        GraphPath path = tree.getPath(_graph.getVertex("leary_20th"), false);
+        GraphPath indexedPath = indexedTree.getPath(_graph.getVertex("leary_20th"), false);
+        indexedTree.release();
+
+        assertEquals(path.states.size(), indexedPath.states.size());
+        for (int i = 0; i < path.states.size(); i++) {
+            assertEquals(path.states.get(i).getVertex(), indexedPath.states.get(i).getVertex());
+        }
+        assertEquals(path.getWeight(), indexedPath.getWeight(), 0.0);
+
+        // a second search on the same thread reuses the pooled arrays
+        indexedTree = indexedAStar.getShortestPathTree(options);
+        indexedPath = indexedTree.getPath(_graph.getVertex("leary_20th"), false);
+        assertEquals(path.getWeight(), indexedPath.getWeight(), 0.0);
+        assertEquals(tree.getVertexCount(), indexedTree.getVertexCount());
+        indexedTree.release();
+    }
+
     @Test
     public void testBack() {
 
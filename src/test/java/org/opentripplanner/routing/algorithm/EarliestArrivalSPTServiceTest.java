@@ -0,0 +1,98 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class EarliestArrivalSPTServiceTest extends TestCase {
+
+    private static final int N = 6;
+
+    private Graph graph;
+    private IntersectionVertex[][] grid;
+
+    @Override
+    protected void setUp() {
+        graph = new Graph();
+        grid = new IntersectionVertex[N][N];
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                grid[i][j] = new IntersectionVertex(graph, "v" + i + "_" + j,
+                        -122.0 + j * 0.001, 45.0 + i * 0.001);
+            }
+        }
+        // Uneven lengths, so that many vertices are improved more than once before being visited.
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                if (j + 1 < N)
+                    edge(grid[i][j], grid[i][j + 1], 80 + 37 * ((i + j) % 3));
+                if (i + 1 < N)
+                    edge(grid[i][j], grid[i + 1][j], 80 + 53 * ((i * j) % 4));
+            }
+        }
+    }
+
+    /** The decrease-key queue must produce exactly the same tree as the plain binary heap. */
+    public void testDecreaseKeyMatchesBinaryHeap() {
+        ShortestPathTree withHeap = search(false);
+        ShortestPathTree withDecreaseKey = search(true);
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                State s1 = withHeap.getState(grid[i][j]);
+                State s2 = withDecreaseKey.getState(grid[i][j]);
+                assertNotNull(s1);
+                assertNotNull(s2);
+                assertEquals(s1.getTimeSeconds(), s2.getTimeSeconds());
+            }
+        }
+    }
+
+    public void testDecreaseKeyIsDefault() {
+        assertTrue(new EarliestArrivalSPTService().decreaseKey);
+    }
+
+    private ShortestPathTree search(boolean decreaseKey) {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.batch = true;
+        options.from = new GenericLocation(grid[0][0].getY(), grid[0][0].getX());
+        options.setRoutingContext(graph, grid[0][0], null);
+        EarliestArrivalSPTService service = new EarliestArrivalSPTService();
+        service.decreaseKey = decreaseKey;
+        ShortestPathTree spt = service.getShortestPathTree(options);
+        options.cleanup();
+        return spt;
+    }
+
+    private void edge(IntersectionVertex vA, IntersectionVertex vB, double length) {
+        LineString geom = GeometryUtils.getGeometryFactory().createLineString(new Coordinate[] {
+                vA.getCoordinate(), vB.getCoordinate() });
+        new StreetEdge(vA, vB, geom, "", length, StreetTraversalPermission.ALL, false);
+        new StreetEdge(vB, vA, (LineString) geom.reverse(), "", length,
+                StreetTraversalPermission.ALL, true);
+    }
+}
@@ -0,0 +1,166 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opentripplanner.graph_builder.impl.LandmarkGraphBuilderImpl;
+import org.opentripplanner.graph_builder.impl.osm.DefaultWayPropertySetSource;
+import org.opentripplanner.graph_builder.impl.osm.OpenStreetMapGraphBuilderImpl;
+import org.opentripplanner.openstreetmap.impl.FileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.algorithm.TraverseVisitor;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.landmarks.LandmarkSet;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+public class LandmarkRemainingWeightHeuristicTest {
+
+    private static Graph graph;
+
+    private static LandmarkSet landmarks;
+
+    @BeforeClass
+    public static void onlyOnce() throws Exception {
+        graph = new Graph();
+        OpenStreetMapGraphBuilderImpl loader = new OpenStreetMapGraphBuilderImpl();
+        loader.setDefaultWayPropertySetSource(new DefaultWayPropertySetSource());
+        FileBasedOpenStreetMapProviderImpl provider = new FileBasedOpenStreetMapProviderImpl();
+        File file = new File(URLDecoder.decode(LandmarkRemainingWeightHeuristicTest.class
+                .getResource("/org/opentripplanner/graph_builder/impl/osm/map.osm.gz").getFile(),
+                "UTF-8"));
+        provider.setPath(file);
+        loader.setProvider(provider);
+        loader.buildGraph(graph, new HashMap<Class<?>, Object>());
+        new LandmarkGraphBuilderImpl().buildGraph(graph, new HashMap<Class<?>, Object>());
+        graph.index(new DefaultStreetVertexIndexFactory());
+        landmarks = graph.getService(LandmarkSet.class);
+    }
+
+    /** Counts the states taken off the queue. */
+    private static class CountingVisitor implements TraverseVisitor {
+        int nVisited = 0;
+
+        @Override
+        public void visitEdge(Edge edge, State state) {
+        }
+
+        @Override
+        public void visitVertex(State state) {
+            nVisited++;
+        }
+
+        @Override
+        public void visitEnqueue(State state) {
+        }
+    }
+
+    private GraphPath search(RoutingRequest options, RemainingWeightHeuristic heuristic,
+            CountingVisitor visitor) {
+        if (heuristic != null)
+            options.rctx.remainingWeightHeuristic = heuristic;
+        GenericAStar astar = new GenericAStar();
+        astar.setTraverseVisitor(visitor);
+        return astar.getShortestPathTree(options).getPath(options.rctx.target, false);
+    }
+
+    @Test
+    public void testLandmarks() {
+        assertNotNull(landmarks);
+        assertEquals(16, landmarks.getLandmarkCount());
+        for (int l = 0; l < landmarks.getLandmarkCount(); l++) {
+            int node = landmarks.getNode(landmarks.getLandmark(l));
+            assertEquals(0, landmarks.getFromLandmark(node, l));
+            assertEquals(0, landmarks.getToLandmark(node, l));
+        }
+    }
+
+    @Test
+    public void testSameWeightsAsDijkstra() {
+        Random random = new Random(42);
+        List<Vertex> vertices = new ArrayList<Vertex>();
+        for (Vertex v : graph.getVertices())
+            if (v instanceof StreetVertex)
+                vertices.add(v);
+        OptimizeType[] optimize = { OptimizeType.QUICK, OptimizeType.SAFE, OptimizeType.QUICK };
+        TraverseMode[] modes = { TraverseMode.CAR, TraverseMode.BICYCLE, TraverseMode.WALK };
+        CountingVisitor landmarkCount = new CountingVisitor();
+        CountingVisitor euclideanCount = new CountingVisitor();
+        for (int m = 0; m < modes.length; m++) {
+            int nPaths = 0;
+            for (int i = 0; i < 30; i++) {
+                Vertex from = landmarks.getLandmark(0);
+                Vertex to = from;
+                while (to == from) {
+                    from = vertices.get(random.nextInt(vertices.size()));
+                    to = vertices.get(random.nextInt(vertices.size()));
+                }
+                RoutingRequest options = new RoutingRequest(modes[m], optimize[m]);
+                options.setArriveBy(i % 2 == 1);
+                options.setRoutingContext(graph, from, to);
+                assertTrue(options.rctx.remainingWeightHeuristic
+                        instanceof LandmarkRemainingWeightHeuristic);
+                GraphPath path = search(options, null, landmarkCount);
+                options.setRoutingContext(graph, from, to);
+                GraphPath dijkstraPath = search(options, new TrivialRemainingWeightHeuristic(),
+                        new CountingVisitor());
+                options.setRoutingContext(graph, from, to);
+                search(options, new DefaultRemainingWeightHeuristic(), euclideanCount);
+                if (dijkstraPath == null) {
+                    assertNull(path);
+                    continue;
+                }
+                nPaths++;
+                assertNotNull(path);
+                assertEquals(dijkstraPath.getWeight(), path.getWeight(), 0.001);
+            }
+            assertTrue(nPaths > 10);
+        }
+        assertTrue(landmarkCount.nVisited < euclideanCount.nVisited);
+    }
+
+    @Test
+    public void testTransitUsesDefault() {
+        RoutingRequest options = new RoutingRequest("WALK,TRANSIT");
+        Vertex from = landmarks.getLandmark(0);
+        Vertex to = landmarks.getLandmark(1);
+        options.setRoutingContext(graph, from, to);
+        LandmarkRemainingWeightHeuristic heuristic = new LandmarkRemainingWeightHeuristic(
+                landmarks);
+        heuristic.initialize(options, from, to, -1);
+        DefaultRemainingWeightHeuristic euclidean = new DefaultRemainingWeightHeuristic();
+        euclidean.initialize(options, from, to, -1);
+        State s = new State(from, options);
+        assertEquals(euclidean.computeForwardWeight(s, to), heuristic.computeForwardWeight(s, to),
+                0.0);
+    }
+
+}
@@ -0,0 +1,139 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import java.io.File;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.graph_builder.impl.osm.DefaultWayPropertySetSource;
+import org.opentripplanner.graph_builder.impl.osm.OpenStreetMapGraphBuilderImpl;
+import org.opentripplanner.openstreetmap.impl.FileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+public class TargetSearchCacheTest extends TestCase {
+
+    private static Graph graph;
+
+    private static List<Vertex> vertices;
+
+    public void setUp() throws Exception {
+        if (graph != null)
+            return;
+        graph = new Graph();
+        OpenStreetMapGraphBuilderImpl loader = new OpenStreetMapGraphBuilderImpl();
+        loader.setDefaultWayPropertySetSource(new DefaultWayPropertySetSource());
+        FileBasedOpenStreetMapProviderImpl provider = new FileBasedOpenStreetMapProviderImpl();
+        File file = new File(URLDecoder.decode(TargetSearchCacheTest.class
+                .getResource("/org/opentripplanner/graph_builder/impl/osm/map.osm.gz").getFile(),
+                "UTF-8"));
+        provider.setPath(file);
+        loader.setProvider(provider);
+        loader.buildGraph(graph, new HashMap<Class<?>, Object>());
+        graph.index(new DefaultStreetVertexIndexFactory());
+        vertices = new ArrayList<Vertex>();
+        for (Vertex v : graph.getVertices())
+            if (v instanceof StreetVertex)
+                vertices.add(v);
+    }
+
+    private RoutingRequest request(Vertex from, Vertex to, double maxWalk) {
+        RoutingRequest options = new RoutingRequest("WALK");
+        options.setMaxWalkDistance(maxWalk);
+        options.setRoutingContext(graph, from, to);
+        return options;
+    }
+
+    private InterleavedBidirectionalHeuristic initialize(RoutingRequest options,
+            TargetSearchCache cache) {
+        InterleavedBidirectionalHeuristic heuristic = new InterleavedBidirectionalHeuristic(graph,
+                cache);
+        heuristic.initialize(options, options.rctx.origin, options.rctx.target, Long.MAX_VALUE);
+        return heuristic;
+    }
+
+    /** Heuristics using the cache give the same weights as those searching by themselves. */
+    public void testSameWeights() {
+        TargetSearchCache cache = new TargetSearchCache(10);
+        Random random = new Random(1);
+        Vertex target = vertices.get(random.nextInt(vertices.size()));
+        for (int i = 0; i < 5; i++) {
+            Vertex origin = vertices.get(random.nextInt(vertices.size()));
+            RoutingRequest options = request(origin, target, 1000);
+            InterleavedBidirectionalHeuristic cached = initialize(options, cache);
+            options = request(origin, target, 1000);
+            InterleavedBidirectionalHeuristic uncached = initialize(options, null);
+            assertEquals(1, cache.size());
+            for (Vertex v : vertices) {
+                State s = new State(v, options);
+                assertEquals(uncached.computeForwardWeight(s, target),
+                        cached.computeForwardWeight(s, target), 0.0);
+            }
+        }
+    }
+
+    public void testKey() {
+        TargetSearchCache cache = new TargetSearchCache(10);
+        Vertex origin = vertices.get(0);
+        Vertex target = vertices.get(vertices.size() / 2);
+        initialize(request(origin, target, 1000), cache);
+        initialize(request(vertices.get(1), target, 1000), cache);
+        assertEquals(1, cache.size());
+        // the walk limit and the destination change the search
+        initialize(request(origin, target, 500), cache);
+        assertEquals(2, cache.size());
+        initialize(request(origin, vertices.get(1), 1000), cache);
+        assertEquals(3, cache.size());
+        // temporary destinations at the same place share their search
+        cache.clear();
+        for (int i = 0; i < 2; i++) {
+            RoutingRequest options = new RoutingRequest("WALK");
+            options.setMaxWalkDistance(1000);
+            options.from = new GenericLocation(origin.getLat(), origin.getLon());
+            options.to = new GenericLocation(target.getLat() + 0.0001, target.getLon());
+            options.setRoutingContext(graph);
+            initialize(options, cache);
+            options.rctx.destroy();
+        }
+        assertEquals(1, cache.size());
+    }
+
+    /** Searches from the same destination made with and without a car to park do not mix. */
+    public void testParkAndRideKey() {
+        TargetSearchCache cache = new TargetSearchCache(10);
+        Vertex origin = vertices.get(0);
+        Vertex target = vertices.get(vertices.size() / 2);
+        initialize(request(origin, target, 1000), cache);
+        assertEquals(1, cache.size());
+        RoutingRequest options = request(origin, target, 1000);
+        options.parkAndRide = true;
+        initialize(options, cache);
+        assertEquals(2, cache.size());
+        initialize(request(origin, target, 1000), cache);
+        assertEquals(2, cache.size());
+    }
+
+}
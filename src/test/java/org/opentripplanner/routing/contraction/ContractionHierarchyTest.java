@@ -0,0 +1,184 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.graph_builder.impl.ContractionHierarchyGraphBuilderImpl;
+import org.opentripplanner.graph_builder.impl.osm.DefaultWayPropertySetSource;
+import org.opentripplanner.graph_builder.impl.osm.OpenStreetMapGraphBuilderImpl;
+import org.opentripplanner.openstreetmap.impl.FileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.core.ConstantIntersectionTraversalCostModel;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.ContractionHierarchyPathService;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.impl.SPTVisitor;
+import org.opentripplanner.routing.services.PathService;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class ContractionHierarchyTest {
+
+    private static Graph graph;
+
+    private static ContractionHierarchySet hierarchies;
+
+    @BeforeClass
+    public static void onlyOnce() throws Exception {
+        graph = new Graph();
+        OpenStreetMapGraphBuilderImpl loader = new OpenStreetMapGraphBuilderImpl();
+        loader.setDefaultWayPropertySetSource(new DefaultWayPropertySetSource());
+        FileBasedOpenStreetMapProviderImpl provider = new FileBasedOpenStreetMapProviderImpl();
+        File file = new File(URLDecoder.decode(ContractionHierarchyTest.class.getResource(
+                "/org/opentripplanner/graph_builder/impl/osm/map.osm.gz").getFile(),
+                "UTF-8"));
+        provider.setPath(file);
+        loader.setProvider(provider);
+        loader.buildGraph(graph, new HashMap<Class<?>, Object>());
+        new ContractionHierarchyGraphBuilderImpl().buildGraph(graph,
+                new HashMap<Class<?>, Object>());
+        graph.index(new DefaultStreetVertexIndexFactory());
+        hierarchies = graph.getService(ContractionHierarchySet.class);
+    }
+
+    /** Options without turn costs, so that weights in the hierarchy are exact. */
+    private RoutingRequest options(TraverseMode mode, OptimizeType optimize, boolean arriveBy) {
+        RoutingRequest options = new RoutingRequest(mode, optimize);
+        options.traversalCostModel = new ConstantIntersectionTraversalCostModel(0.0);
+        options.setArriveBy(arriveBy);
+        return options;
+    }
+
+    private GraphPath dijkstra(RoutingRequest options) {
+        options.rctx.remainingWeightHeuristic = new TrivialRemainingWeightHeuristic();
+        ShortestPathTree spt = new GenericAStar().getShortestPathTree(options);
+        return spt.getPath(options.rctx.target, false);
+    }
+
+    @Test
+    public void testSameWeightsAsDijkstra() {
+        assertNotNull(hierarchies);
+        assertEquals(3, hierarchies.hierarchies.size());
+        Random random = new Random(42);
+        OptimizeType[] optimize = { OptimizeType.QUICK, OptimizeType.SAFE, OptimizeType.QUICK };
+        TraverseMode[] modes = { TraverseMode.CAR, TraverseMode.BICYCLE, TraverseMode.WALK };
+        for (int m = 0; m < modes.length; m++) {
+            int nPaths = 0;
+            for (int i = 0; i < 40; i++) {
+                RoutingRequest options = options(modes[m], optimize[m], i % 2 == 1);
+                ContractionHierarchy hierarchy = hierarchies.getHierarchy(options);
+                assertNotNull(hierarchy);
+                assertEquals(modes[m], hierarchy.options.modes.getModes().get(0));
+                Vertex from = hierarchy.vertices[random.nextInt(hierarchy.getNodeCount())];
+                Vertex to = hierarchy.vertices[random.nextInt(hierarchy.getNodeCount())];
+                if (from == to)
+                    continue;
+                RoutingRequest chOptions = options.clone();
+                chOptions.setRoutingContext(graph, from, to);
+                GraphPath chPath = hierarchy.getPath(chOptions);
+                options.setRoutingContext(graph, from, to);
+                GraphPath path = dijkstra(options);
+                if (chPath == null)
+                    continue; // rejected, e.g. because of a turn restriction
+                nPaths++;
+                assertNotNull(path);
+                assertSame(from, chPath.states.getFirst().getVertex());
+                assertSame(to, chPath.states.getLast().getVertex());
+                assertEquals(path.getWeight(), chPath.getWeight(), 0.001 * chPath.edges.size());
+            }
+            assertTrue(nPaths > 20);
+        }
+    }
+
+    @Test
+    public void testTemporaryEndpoints() {
+        RoutingRequest options = options(TraverseMode.WALK, OptimizeType.QUICK, false);
+        ContractionHierarchy hierarchy = hierarchies.getHierarchy(options);
+        // the middle of two street edges, far enough apart to need the hierarchy
+        options.from = midpoint(hierarchy.edges[0]);
+        options.to = midpoint(hierarchy.edges[hierarchy.edges.length / 2]);
+        RoutingRequest chOptions = options.clone();
+        chOptions.setRoutingContext(graph);
+        GraphPath chPath = hierarchy.getPath(chOptions);
+        options.setRoutingContext(graph);
+        GraphPath path = dijkstra(options);
+        assertNotNull(path);
+        assertNotNull(chPath);
+        assertSame(chOptions.rctx.fromVertex, chPath.states.getFirst().getVertex());
+        assertSame(chOptions.rctx.toVertex, chPath.states.getLast().getVertex());
+        assertEquals(path.getWeight(), chPath.getWeight(), 0.001 * chPath.edges.size());
+        options.cleanup();
+        chOptions.cleanup();
+    }
+
+    private GenericLocation midpoint(Edge edge) {
+        Coordinate c = edge.getGeometry().getCentroid().getCoordinate();
+        return new GenericLocation(c.y, c.x);
+    }
+
+    @Test
+    public void testFallback() {
+        final int[] calls = new int[1];
+        PathService fallback = new PathService() {
+            @Override
+            public List<GraphPath> getPaths(RoutingRequest options) {
+                calls[0]++;
+                return null;
+            }
+
+            @Override
+            public void setSPTVisitor(SPTVisitor vis) {
+            }
+        };
+        PathService pathService = new ContractionHierarchyPathService(graph, fallback);
+        Vertex from = hierarchies.hierarchies.get(0).vertices[0];
+        Vertex to = hierarchies.hierarchies.get(0).vertices[1];
+
+        // transit, wheelchair and changed weighting options are not in any hierarchy
+        RoutingRequest transit = new RoutingRequest(new TraverseModeSet("WALK,TRANSIT"));
+        RoutingRequest wheelchair = new RoutingRequest(TraverseMode.WALK);
+        wheelchair.wheelchairAccessible = true;
+        RoutingRequest slowWalk = new RoutingRequest(TraverseMode.WALK);
+        slowWalk.walkSpeed = 0.5;
+        RoutingRequest triangle = new RoutingRequest(TraverseMode.BICYCLE, OptimizeType.TRIANGLE);
+        for (RoutingRequest options : new RoutingRequest[] { transit, wheelchair, slowWalk,
+                triangle }) {
+            assertNull(hierarchies.getHierarchy(options));
+            options.setRoutingContext(graph, from, to);
+            pathService.getPaths(options);
+        }
+        assertEquals(4, calls[0]);
+        assertNotNull(hierarchies.getHierarchy(new RoutingRequest(TraverseMode.CAR)));
+    }
+
+}
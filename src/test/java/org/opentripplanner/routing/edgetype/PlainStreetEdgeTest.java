@@ -187,6 +187,31 @@ public class PlainStreetEdgeTest {
         assertEquals(73, s5.getElapsedTimeSeconds());
     }
 
+    /**
+     * Switching between riding and walking a bike changes only fields of the State itself, so
+     * street-only traversals never copy the StateData of their parent.
+     */
+    @Test
+    public void testStreetTraversalSharesStateData() {
+        StreetEdge e0 = edge(v0, v1, 50.0, StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE);
+        StreetEdge e1 = edge(v1, v2, 18.4, StreetTraversalPermission.PEDESTRIAN);
+
+        RoutingRequest forward = proto.clone();
+        forward.setMode(TraverseMode.BICYCLE);
+        forward.setRoutingContext(_graph, v0, v2);
+
+        State s0 = new State(forward);
+        State s1 = e0.traverse(s0);
+        State s2 = e1.traverse(s1);
+
+        assertEquals(TraverseMode.BICYCLE, s1.getBackMode());
+        assertFalse(s1.isBackWalkingBike());
+        assertEquals(TraverseMode.WALK, s2.getBackMode());
+        assertTrue(s2.isBackWalkingBike());
+        assertSame(s0.stateData, s1.stateData);
+        assertSame(s0.stateData, s2.stateData);
+    }
+
     /**
      * Test the traversal of two edges with different traverse modes, with a focus on walking.
      * This test will fail unless the following three conditions are met:
@@ -16,6 +16,7 @@ package org.opentripplanner.routing.edgetype;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.opentripplanner.util.TestUtils.AUGUST;
 
@@ -36,6 +37,8 @@ import org.opentripplanner.gtfs.GtfsContext;
 import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.routing.algorithm.GenericAStar;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.factory.GTFSPatternHopFactory;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
@@ -298,4 +301,96 @@ public class TimetableTest {
         tripUpdate = tripUpdateBuilder.build();
         assertFalse(timetable.update(tripUpdate, timeZone, serviceDate));
     }
+
+    /**
+     * Delaying a trip so that it is overtaken by the next one must be reflected in the per-stop
+     * trip orders once the updated timetable is finished, as it is when a snapshot is committed.
+     */
+    @Test
+    public void testGetNextTripAfterOvertaking() {
+        Timetable updated = new Timetable(timetable, serviceDate);
+        updated.finish();
+
+        // delay trip 1.1 by 30 minutes, so it runs 10 minutes behind trip 1.2
+        TripDescriptor.Builder tripDescriptorBuilder = TripDescriptor.newBuilder();
+        tripDescriptorBuilder.setTripId("1.1");
+        tripDescriptorBuilder.setScheduleRelationship(
+                TripDescriptor.ScheduleRelationship.SCHEDULED);
+        TripUpdate.Builder tripUpdateBuilder = TripUpdate.newBuilder();
+        tripUpdateBuilder.setTrip(tripDescriptorBuilder);
+        StopTimeUpdate.Builder stopTimeUpdateBuilder = tripUpdateBuilder.addStopTimeUpdateBuilder(0);
+        stopTimeUpdateBuilder.setStopSequence(1);
+        stopTimeUpdateBuilder.setScheduleRelationship(
+                StopTimeUpdate.ScheduleRelationship.SCHEDULED);
+        stopTimeUpdateBuilder.getArrivalBuilder().setDelay(30 * 60);
+        stopTimeUpdateBuilder.getDepartureBuilder().setDelay(30 * 60);
+        assertTrue(updated.update(tripUpdateBuilder.build(), timeZone, serviceDate));
+
+        ServiceDay serviceDay = new ServiceDay(graph, serviceDate, graph.getCalendarService(),
+                "agency");
+        long midnight = TestUtils.dateInSeconds("America/New_York", 2009, AUGUST, 7, 0, 0, 0);
+        RoutingRequest options = new RoutingRequest();
+        Vertex stop_a = graph.getVertex("agency:A");
+        Vertex stop_c = graph.getVertex("agency:C");
+
+        // the same answers are expected from the linear scan before finishing, and the index after
+        for (int pass = 0; pass < 2; pass++) {
+            State s0 = new State(stop_a, midnight, options);
+            assertEquals("1.2", updated.getNextTrip(s0, serviceDay, 0, true).trip.getId().getId());
+            s0 = new State(stop_a, midnight + 25 * 60, options);
+            assertEquals("1.1", updated.getNextTrip(s0, serviceDay, 0, true).trip.getId().getId());
+            s0 = new State(stop_c, midnight + 45 * 60, options);
+            assertEquals("1.2", updated.getNextTrip(s0, serviceDay, 2, false).trip.getId().getId());
+            s0 = new State(stop_c, midnight + 55 * 60, options);
+            assertEquals("1.1", updated.getNextTrip(s0, serviceDay, 2, false).trip.getId().getId());
+            s0 = new State(stop_c, midnight + 30 * 60, options);
+            assertNull(updated.getNextTrip(s0, serviceDay, 2, false));
+            updated.finish();
+        }
+    }
+
+    /**
+     * Trips not running on a service day must be skipped, and patterns with no trip running on it
+     * at all must yield nothing, whether or not the same day was seen before.
+     */
+    @Test
+    public void testGetNextTripOnlyVisitsRunningTrips() {
+        // A copy of the timetable of route 1 in which trip 1.2 only runs on weekdays
+        Timetable mixed = new Timetable(timetable, null);
+        int trip_1_2_index = mixed.getTripIndex(new AgencyAndId("agency", "1.2"));
+        TripTimes weekdayTrip = new TripTimes(mixed.getTripTimes(trip_1_2_index));
+        weekdayTrip.serviceCode = graph.serviceCodes.get(new AgencyAndId("agency", "weekdays"));
+        mixed.tripTimes.set(trip_1_2_index, weekdayTrip);
+        mixed.finish();
+
+        ServiceDay friday = graph.getServiceDay(serviceDate, "agency");
+        ServiceDay saturday = graph.getServiceDay(serviceDate.next(), "agency");
+        assertTrue(friday == graph.getServiceDay(new ServiceDate(2009, 8, 7), "agency"));
+        assertTrue(friday.sameServicesAs(graph.getServiceDay(serviceDate.previous(), "agency")));
+        assertFalse(friday.sameServicesAs(saturday));
+
+        long fridayMidnight = TestUtils.dateInSeconds("America/New_York", 2009, AUGUST, 7, 0, 0, 0);
+        long saturdayMidnight = fridayMidnight + 24 * 60 * 60;
+        RoutingRequest options = new RoutingRequest();
+        Vertex stop_a = graph.getVertex("agency:A");
+        Vertex stop_c = graph.getVertex("agency:C");
+        for (int pass = 0; pass < 2; pass++) {
+            State s0 = new State(stop_a, fridayMidnight + 5 * 60, options);
+            assertEquals("1.2", mixed.getNextTrip(s0, friday, 0, true).trip.getId().getId());
+            s0 = new State(stop_a, saturdayMidnight + 5 * 60, options);
+            assertEquals("1.3", mixed.getNextTrip(s0, saturday, 0, true).trip.getId().getId());
+            s0 = new State(stop_c, saturdayMidnight + 50 * 60, options);
+            assertEquals("1.1", mixed.getNextTrip(s0, saturday, 2, false).trip.getId().getId());
+            assertEquals("1.3", mixed.getNextDeparture(saturday, 0, 5 * 60, options, false)
+                    .trip.getId().getId());
+        }
+
+        // Route 4 only runs on weekdays
+        Timetable weekdays = patternIndex.get(new AgencyAndId("agency", "4.1")).scheduledTimetable;
+        Vertex stop_4 = graph.getVertex("agency:" + weekdays.pattern.getStop(0).getId().getId());
+        State s0 = new State(stop_4, fridayMidnight, options);
+        assertNotNull(weekdays.getNextTrip(s0, friday, 0, true));
+        s0 = new State(stop_4, saturdayMidnight, options);
+        assertNull(weekdays.getNextTrip(s0, saturday, 0, true));
+    }
 }
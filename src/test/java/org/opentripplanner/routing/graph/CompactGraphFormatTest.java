@@ -0,0 +1,146 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.graph_builder.impl.osm.DefaultWayPropertySetSource;
+import org.opentripplanner.graph_builder.impl.osm.OpenStreetMapGraphBuilderImpl;
+import org.opentripplanner.openstreetmap.impl.FileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Graph.LoadLevel;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class CompactGraphFormatTest extends TestCase {
+
+    private Graph graph;
+
+    private File file;
+
+    public void setUp() throws Exception {
+        graph = new Graph();
+        OpenStreetMapGraphBuilderImpl loader = new OpenStreetMapGraphBuilderImpl();
+        loader.setDefaultWayPropertySetSource(new DefaultWayPropertySetSource());
+        FileBasedOpenStreetMapProviderImpl provider = new FileBasedOpenStreetMapProviderImpl();
+        provider.setPath(new File(URLDecoder.decode(OpenStreetMapGraphBuilderImpl.class
+                .getResource("map.osm.gz").getFile(), "UTF-8")));
+        loader.setProvider(provider);
+        loader.buildGraph(graph, new HashMap<Class<?>, Object>());
+        // An edge that is not a StreetEdge goes through the serialized object section.
+        new SimpleConcreteEdge(graph.getVertex("osm:node:280592578"),
+                graph.getVertex("osm:node:280107802"));
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        file = File.createTempFile("graph", ".obj");
+        CompactGraphFormat.save(graph, file);
+    }
+
+    public void tearDown() {
+        file.delete();
+    }
+
+    public void testRoundTrip() throws Exception {
+        assertTrue(CompactGraphFormat.isCompact(file));
+        Graph loaded = Graph.load(file, LoadLevel.FULL);
+        assertSameGraph(graph, loaded);
+    }
+
+    public void testRoundTripFromStream() throws Exception {
+        InputStream is = new FileInputStream(file);
+        try {
+            Graph loaded = Graph.load(is, LoadLevel.DEBUG);
+            assertSameGraph(graph, loaded);
+            assertEquals(graph.getBuilderAnnotations().size(),
+                    loaded.getBuilderAnnotations().size());
+        } finally {
+            is.close();
+        }
+    }
+
+    public void testSerializedGraphIsNotCompact() throws Exception {
+        File serialized = File.createTempFile("graph", ".obj");
+        try {
+            graph.save(serialized);
+            assertFalse(CompactGraphFormat.isCompact(serialized));
+        } finally {
+            serialized.delete();
+        }
+    }
+
+    private void assertSameGraph(Graph expected, Graph actual) {
+        assertEquals(expected.countVertices(), actual.countVertices());
+        assertEquals(expected.countEdges(), actual.countEdges());
+        int nStreetEdges = 0;
+        for (Vertex v : expected.getVertices()) {
+            Vertex w = actual.getVertex(v.getLabel());
+            assertNotNull(w);
+            assertEquals(v.getClass(), w.getClass());
+            assertEquals(v.getName(), w.getName());
+            assertEquals(v.getX(), w.getX());
+            assertEquals(v.getY(), w.getY());
+            assertEquals(v.getDegreeOut(), w.getDegreeOut());
+            assertEquals(v.getDegreeIn(), w.getDegreeIn());
+            if (v instanceof IntersectionVertex) {
+                assertEquals(((IntersectionVertex) v).trafficLight,
+                        ((IntersectionVertex) w).trafficLight);
+            }
+            for (Edge e : v.getOutgoing()) {
+                Edge f = actual.getEdgeById(e.getId());
+                assertNotNull(f);
+                assertEquals(e.getClass(), f.getClass());
+                assertSame(w, f.getFromVertex());
+                assertEquals(e.getToVertex().getLabel(), f.getToVertex().getLabel());
+                if (e instanceof StreetEdge) {
+                    StreetEdge se = (StreetEdge) e;
+                    StreetEdge sf = (StreetEdge) f;
+                    assertEquals(se.getName(), sf.getName());
+                    assertEquals(se.getDistance(), sf.getDistance());
+                    assertEquals(se.getPermission(), sf.getPermission());
+                    assertEquals(se.getCarSpeed(), sf.getCarSpeed());
+                    assertEquals(se.getBicycleSafetyFactor(), sf.getBicycleSafetyFactor());
+                    assertEquals(se.getStreetClass(), sf.getStreetClass());
+                    assertEquals(se.isBack(), sf.isBack());
+                    assertEquals(se.getInAngle(), sf.getInAngle());
+                    assertEquals(se.getOutAngle(), sf.getOutAngle());
+                    assertEquals(se.getGeometry(), sf.getGeometry());
+                    nStreetEdges++;
+                }
+            }
+        }
+        assertTrue(nStreetEdges > 0);
+        assertEquals(pathWeight(expected), pathWeight(actual));
+    }
+
+    private double pathWeight(Graph g) {
+        Vertex from = g.getVertex("osm:node:280592578");
+        Vertex to = g.getVertex("osm:node:288970952");
+        RoutingRequest options = new RoutingRequest();
+        options.setRoutingContext(g, from, to);
+        ShortestPathTree tree = new GenericAStar().getShortestPathTree(options);
+        GraphPath path = tree.getPath(to, false);
+        assertNotNull(path);
+        return path.getWeight();
+    }
+}
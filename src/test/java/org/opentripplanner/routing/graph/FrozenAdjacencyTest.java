@@ -0,0 +1,82 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrozenAdjacencyTest {
+
+    private Graph graph;
+
+    private Vertex v0, v1, v2, isolated;
+
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        v0 = new SimpleConcreteVertex(graph, "v0", 0, 0);
+        v1 = new SimpleConcreteVertex(graph, "v1", 0, 1);
+        isolated = new SimpleConcreteVertex(graph, "isolated", 5, 5);
+        v2 = new SimpleConcreteVertex(graph, "v2", 1, 1);
+        new SimpleConcreteEdge(v0, v1);
+        new SimpleConcreteEdge(v1, v0);
+        new SimpleConcreteEdge(v1, v2);
+        new SimpleConcreteEdge(v0, v2);
+    }
+
+    @Test
+    public void testEdgesMatchVertices() {
+        FrozenAdjacency adjacency = new FrozenAdjacency(graph);
+        assertEquals(4, adjacency.outgoingEdges.length);
+        assertEquals(4, adjacency.incomingEdges.length);
+        for (Vertex v : graph.getVertices()) {
+            int slot = adjacency.slot(v);
+            assertTrue(slot >= 0);
+            assertEquals(new ArrayList<Edge>(v.getOutgoing()),
+                    new ArrayList<Edge>(adjacency.getOutgoing(v)));
+            assertEquals(new ArrayList<Edge>(v.getIncoming()),
+                    new ArrayList<Edge>(adjacency.getIncoming(v)));
+            int i = adjacency.outgoingStart(slot);
+            for (Edge e : v.getOutgoing())
+                assertSame(e, adjacency.outgoingEdges[i++]);
+            assertEquals(adjacency.outgoingEnd(slot), i);
+        }
+        int slot = adjacency.slot(isolated);
+        assertEquals(adjacency.outgoingStart(slot), adjacency.outgoingEnd(slot));
+        assertEquals(adjacency.incomingStart(slot), adjacency.incomingEnd(slot));
+    }
+
+    @Test
+    public void testModifiedVerticesAreStale() {
+        FrozenAdjacency adjacency = new FrozenAdjacency(graph);
+        Edge added = new SimpleConcreteEdge(v2, isolated);
+        assertEquals(-1, adjacency.slot(v2));
+        assertEquals(-1, adjacency.slot(isolated));
+        assertTrue(adjacency.slot(v0) >= 0);
+        // stale vertices fall back on their own edge lists
+        assertTrue(adjacency.getOutgoing(v2).contains(added));
+        assertTrue(adjacency.getIncoming(isolated).contains(added));
+        // vertices created later are not in the adjacency
+        Vertex v3 = new SimpleConcreteVertex(graph, "v3", 2, 2);
+        assertEquals(-1, adjacency.slot(v3));
+        assertTrue(adjacency.getOutgoing(v3).isEmpty());
+    }
+
+}
@@ -15,13 +15,46 @@ package org.opentripplanner.routing.graph;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.opentripplanner.util.ArrayUtils.contains;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
 import org.junit.Test;
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 
 public class GraphTest {
+    @Test
+    public final void testIndexRecordsLoadMetrics() {
+        Graph graph = new Graph();
+        Vertex vertex0 = new SimpleConcreteVertex(graph, "Vertex 0", 0, 0);
+        Vertex vertex1 = new SimpleConcreteVertex(graph, "Vertex 1", 0, 1);
+        Edge edge0 = new SimpleConcreteEdge(vertex0, vertex1);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        assertNotNull(graph.streetIndex);
+        assertSame(vertex1, graph.index.vertexForId.get("Vertex 1"));
+        assertSame(edge0, graph.getEdgeById(edge0.getId()));
+        Map<String, Long> phases = graph.getLoadMetrics().getPhaseMillis();
+        assertTrue(phases.containsKey("streetIndex"));
+        assertTrue(phases.containsKey("vertexAndEdgeIds"));
+        assertTrue(phases.containsKey("timetables"));
+        assertTrue(phases.containsKey("graphIndex"));
+        assertTrue(phases.containsKey("adjacency"));
+        assertNotNull(graph.adjacency);
+        assertTrue(phases.containsKey("index"));
+    }
+
     @Test
     public final void testAlertPatch() {
         final AlertPatch alertPatches[][] = new AlertPatch[10][];
@@ -124,4 +157,53 @@ public class GraphTest {
         assertFalse(contains (alertPatches[9], alertPatch2));
         assertFalse(contains (alertPatches[9], alertPatch3));
     }
+
+    @Test
+    public final void testTurnRestrictionsAndAlertFlagsOnEdges() throws Exception {
+        Graph graph = new Graph();
+        Vertex vertex0 = new SimpleConcreteVertex(graph, "Vertex 0", 0, 0);
+        Vertex vertex1 = new SimpleConcreteVertex(graph, "Vertex 1", 0, 1);
+        Vertex vertex2 = new SimpleConcreteVertex(graph, "Vertex 2", 1, 1);
+        Edge edge0 = new SimpleConcreteEdge(vertex0, vertex1);
+        Edge edge1 = new SimpleConcreteEdge(vertex1, vertex2);
+        TurnRestriction restriction = new TurnRestriction(edge0, edge1,
+                TurnRestrictionType.NO_TURN, TraverseModeSet.allModes());
+        AlertPatch alertPatch = new AlertPatch();
+        alertPatch.setId("A");
+
+        assertFalse(edge0.hasTurnRestrictions());
+        assertFalse(edge0.hasAlertPatches());
+        graph.addTurnRestriction(edge0, restriction);
+        graph.addAlertPatch(edge1, alertPatch);
+        assertTrue(edge0.hasTurnRestrictions());
+        assertFalse(edge1.hasTurnRestrictions());
+        assertSame(restriction, graph.getTurnRestrictions(edge0).get(0));
+        assertTrue(edge1.hasAlertPatches());
+        assertFalse(edge0.hasAlertPatches());
+
+        // The per-edge copies are transient and must be restored when the graph is loaded
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        graph.save(out);
+        out.close();
+        Graph copy = Graph.load(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                Graph.LoadLevel.FULL);
+        TurnRestriction restrictionCopy = null;
+        for (Edge edge : copy.getEdges()) {
+            if (edge.hasTurnRestrictions()) {
+                restrictionCopy = copy.getTurnRestrictions(edge).get(0);
+                assertSame(edge, restrictionCopy.from);
+            }
+        }
+        assertNotNull(restrictionCopy);
+        assertTrue(restrictionCopy.to.hasAlertPatches());
+        assertEquals(1, copy.getAlertPatches(restrictionCopy.to).length);
+
+        graph.removeTurnRestriction(edge0, restriction);
+        graph.removeAlertPatch(edge1, alertPatch);
+        assertFalse(edge0.hasTurnRestrictions());
+        assertTrue(graph.getTurnRestrictions(edge0).isEmpty());
+        assertFalse(edge1.hasAlertPatches());
+        assertEquals(0, graph.getAlertPatches(edge1).length);
+    }
 }
@@ -19,17 +19,31 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.Preferences;
 
 import junit.framework.TestCase;
 
 import org.junit.Test;
+import org.opentripplanner.routing.algorithm.GenericAStar;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
 import org.opentripplanner.routing.error.GraphNotFoundException;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.routing.services.SPTService;
 import org.opentripplanner.routing.vertextype.IntersectionVertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.standalone.Router;
+import org.opentripplanner.standalone.RouterWarmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 
 public class GraphServiceTest extends TestCase {
 
@@ -199,6 +213,89 @@ public class GraphServiceTest extends TestCase {
         assertEquals(0, graphService.getRouterIds().size());
     }
 
+    @Test
+    public final void testStagedReload() throws Exception {
+
+        final List<Router> shutdown = Collections.synchronizedList(new ArrayList<Router>());
+        final AtomicInteger warmupSearches = new AtomicInteger();
+        final AtomicBoolean requestDone = new AtomicBoolean(false);
+        final List<Boolean> requestDoneAtShutdown = Collections
+                .synchronizedList(new ArrayList<Boolean>());
+        GraphService graphService = new GraphService();
+        graphService.routerLifecycleManager = new Router.LifecycleManager() {
+            @Override
+            public void startupRouter(Router router, Preferences config) {
+                router.sptServiceFactory = new SPTServiceFactory() {
+                    @Override
+                    public SPTService instantiate() {
+                        warmupSearches.incrementAndGet();
+                        return new GenericAStar();
+                    }
+                };
+            }
+
+            @Override
+            public void shutdownRouter(Router router) {
+                requestDoneAtShutdown.add(requestDone.get());
+                shutdown.add(router);
+            }
+        };
+        InputStreamGraphSource.FileFactory graphSourceFactory = new InputStreamGraphSource.FileFactory(basePath);
+        graphSourceFactory.save("A", new ByteArrayInputStream(smallGraphData));
+        Files.write(RouterWarmup.QUERIES_KEY + "=0.0,0.0 0.1,0.0\n" + RouterWarmup.ITERATIONS_KEY
+                + "=2\n", new File(new File(basePath, "A"),
+                InputStreamGraphSource.CONFIG_FILENAME), Charsets.UTF_8);
+
+        assertTrue(graphService.registerGraph("A", graphSourceFactory.createGraphSource("A")));
+        assertEquals(2, warmupSearches.get());
+        final Router oldRouter = graphService.getRouter("A");
+
+        // A request is still running on the old router while the graph is reloaded
+        oldRouter.requestStarted();
+        Thread request = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                }
+                requestDone.set(true);
+                oldRouter.requestFinished();
+            }
+        };
+        request.start();
+        assertTrue(graphService.reloadGraphs(false));
+        request.join();
+
+        Router newRouter = graphService.getRouter("A");
+        assertNotSame(oldRouter, newRouter);
+        assertEquals(4, warmupSearches.get());
+        assertEquals(Arrays.asList(oldRouter), shutdown);
+        // The old router is only shut down once its request has completed
+        assertEquals(Arrays.asList(true), requestDoneAtShutdown);
+
+        // The replaced router refuses new requests, which are counted on its replacement instead
+        assertFalse(oldRouter.requestStarted());
+        assertSame(newRouter, graphService.acquireRouter("A"));
+        newRouter.requestFinished();
+    }
+
+    @Test
+    public final void testAcquireEvictedRouter() {
+        GraphService graphService = new GraphService();
+        graphService.registerGraph("A", new MemoryGraphSource("A", emptyGraph));
+        Router router = graphService.acquireRouter("A");
+        router.requestFinished();
+
+        graphService.evictRouter("A");
+        assertFalse(router.requestStarted());
+        try {
+            graphService.acquireRouter("A");
+            fail("An evicted router must not be acquired");
+        } catch (GraphNotFoundException e) {
+        }
+    }
+
     @Test
     public final void testGraphServiceAutoscan() throws IOException {
 
@@ -0,0 +1,123 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.util.TestUtils;
+
+public class RetryingPathServiceImplTest extends TestCase {
+
+    private Graph graph;
+
+    public void setUp() {
+        graph = ConstantsForTests.buildGraph(ConstantsForTests.FAKE_GTFS);
+    }
+
+    private RoutingRequest request(String from, String to) {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = TestUtils.dateInSeconds("America/New_York", 2009, 8, 7, 0, 0, 0);
+        options.setNumItineraries(4);
+        options.setRoutingContext(graph, "agency:" + from, "agency:" + to);
+        return options;
+    }
+
+    private static List<List<AgencyAndId>> trips(List<GraphPath> paths) {
+        List<List<AgencyAndId>> ret = new ArrayList<List<AgencyAndId>>();
+        for (GraphPath path : paths)
+            ret.add(path.getTrips());
+        return ret;
+    }
+
+    public void testConcurrentSearches() {
+        RetryingPathServiceImpl sequential = new RetryingPathServiceImpl(graph,
+                new GenericAStarFactory());
+        RetryingPathServiceImpl concurrent = new RetryingPathServiceImpl(graph,
+                new GenericAStarFactory());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        concurrent.setConcurrentSearches(4, executor);
+        try {
+            String[][] pairs = { { "A", "C" }, { "A", "D" }, { "A", "E" }, { "B", "E" } };
+            for (String[] pair : pairs) {
+                List<GraphPath> expected = sequential.getPaths(request(pair[0], pair[1]));
+                RoutingRequest options = request(pair[0], pair[1]);
+                List<GraphPath> paths = concurrent.getPaths(options);
+                assertNotNull(paths);
+                assertEquals(Math.min(expected.size(), options.numItineraries), paths.size());
+                // the first search is the same, and no itinerary is repeated
+                assertTrue(paths.contains(expected.get(0)));
+                for (int i = 0; i < paths.size(); i++) {
+                    assertEquals(1, Collections.frequency(paths, paths.get(i)));
+                    if (i > 0)
+                        assertTrue(paths.get(i - 1).getEndTime() <= paths.get(i).getEndTime());
+                }
+                // whatever order the searches complete in
+                for (int i = 0; i < 5; i++)
+                    assertEquals(trips(paths),
+                            trips(concurrent.getPaths(request(pair[0], pair[1]))));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testConcurrentCopy() {
+        RoutingRequest options = request("A", "C");
+        RoutingRequest banned = options.clone();
+        RoutingContext copy = options.rctx.concurrentCopy(banned);
+        assertSame(banned, copy.opt);
+        assertSame(options.rctx.target, copy.target);
+        assertSame(options.rctx.temporaryEdges, copy.temporaryEdges);
+        assertSame(options.rctx.serviceDays, copy.serviceDays);
+        assertNotSame(options.rctx.remainingWeightHeuristic, copy.remainingWeightHeuristic);
+        assertNotSame(options.rctx.debugOutput, copy.debugOutput);
+        copy.aborted = true;
+        assertFalse(options.rctx.aborted);
+    }
+
+    public void testHeuristicReused() {
+        RoutingRequest options = request("A", "C");
+        RemainingWeightHeuristic heuristic = options.rctx.remainingWeightHeuristic;
+        heuristic.initialize(options, options.rctx.origin, options.rctx.target, Long.MAX_VALUE);
+        State state = new State(options);
+        double weight = heuristic.computeForwardWeight(state, options.rctx.target);
+        assertTrue(weight > 0);
+        // a retry, or a concurrent search, has nothing to search for again: without its routing
+        // context it could not
+        RoutingRequest retry = options.clone();
+        retry.rctx = null;
+        heuristic.initialize(retry, options.rctx.origin, options.rctx.target, Long.MAX_VALUE);
+        assertEquals(weight, heuristic.computeForwardWeight(state, options.rctx.target), 0.0);
+        RemainingWeightHeuristic copy = heuristic.copyForConcurrentSearch();
+        assertNotSame(heuristic, copy);
+        copy.initialize(retry, options.rctx.origin, options.rctx.target, Long.MAX_VALUE);
+        assertEquals(weight, copy.computeForwardWeight(state, options.rctx.target), 0.0);
+    }
+
+}
@@ -0,0 +1,152 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.raptor;
+
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.graph_builder.impl.DirectTransferGenerator;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.impl.GenericAStarFactory;
+import org.opentripplanner.routing.impl.RaptorPathService;
+import org.opentripplanner.routing.impl.RetryingPathServiceImpl;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.util.TestUtils;
+
+public class RaptorSearchTest extends TestCase {
+
+    private Graph graph;
+
+    private RetryingPathServiceImpl retrying;
+
+    private long startTime;
+
+    public void setUp() throws Exception {
+        graph = ConstantsForTests.buildGraph(ConstantsForTests.FAKE_GTFS);
+        new DirectTransferGenerator().buildGraph(graph, new HashMap<Class<?>, Object>());
+        // lines A-B-C and F-G-H are not connected otherwise
+        new SimpleTransfer(stop("C"), stop("F"), 1000, null);
+        graph.index = new GraphIndex(graph);
+        retrying = new RetryingPathServiceImpl(graph, new GenericAStarFactory());
+        startTime = TestUtils.dateInSeconds("America/New_York", 2009, 8, 7, 0, 0, 0);
+    }
+
+    private TransitStop stop(String id) {
+        return (TransitStop) graph.getVertex("agency:" + id);
+    }
+
+    private RoutingRequest request(TransitStop from, TransitStop to) {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = startTime;
+        options.setNumItineraries(1);
+        options.setRoutingContext(graph, from, to);
+        return options;
+    }
+
+    private static long earliestArrival(List<GraphPath> paths) {
+        long ret = Long.MAX_VALUE;
+        for (GraphPath path : paths)
+            ret = Math.min(ret, path.getEndTime());
+        return ret;
+    }
+
+    public void testData() {
+        RaptorData data = new RaptorData(graph.index.patternForId.values());
+        assertEquals(graph.index.patternForId.size(), data.patterns.length);
+        int c = data.getStop(stop("C"));
+        int f = data.getStop(stop("F"));
+        assertTrue(c >= 0);
+        assertTrue(f >= 0);
+        assertEquals(-1, data.getStop(graph.getVertex("agency:C_depart")));
+        boolean found = false;
+        for (int t = 0; t < data.transfers[c].length; t++)
+            found |= data.transferTargets[c][t] == f;
+        assertTrue(found);
+        for (int s = 0; s < data.stops.length; s++)
+            for (int p : data.stopPatterns[s])
+                assertTrue(data.patterns[p].getStops().contains(data.stops[s].getStop()));
+    }
+
+    /** Between any two stops, arrive no later than the state-based search. */
+    public void testNoLaterThanFullSearch() {
+        RaptorData data = new RaptorData(graph.index.patternForId.values());
+        int nPaths = 0;
+        for (TransitStop from : data.stops) {
+            for (TransitStop to : data.stops) {
+                if (from == to)
+                    continue;
+                List<GraphPath> reference = retrying.getPaths(request(from, to));
+                if (reference == null || reference.isEmpty())
+                    continue;
+                nPaths++;
+                List<GraphPath> paths = new RaptorSearch(data, request(from, to)).getPaths();
+                assertFalse(paths.isEmpty());
+                for (GraphPath path : paths) {
+                    assertEquals(from, path.states.getFirst().getVertex());
+                    assertEquals(to, path.states.getLast().getVertex());
+                }
+                assertTrue(earliestArrival(paths) <= earliestArrival(reference));
+                // each journey rides more vehicles to arrive earlier
+                for (int i = 1; i < paths.size(); i++) {
+                    assertTrue(paths.get(i).getEndTime() < paths.get(i - 1).getEndTime());
+                    assertTrue(paths.get(i).getTrips().size()
+                            > paths.get(i - 1).getTrips().size());
+                }
+            }
+        }
+        assertTrue(nPaths > 20);
+    }
+
+    public void testTransfer() {
+        RaptorPathService raptor = new RaptorPathService(graph, retrying);
+        List<GraphPath> paths = raptor.getPaths(request(stop("A"), stop("H")));
+        assertEquals(1, paths.size());
+        GraphPath path = paths.get(0);
+        assertEquals(2, path.getTrips().size());
+        boolean transfer = false;
+        for (Edge e : path.edges)
+            transfer |= e instanceof SimpleTransfer;
+        assertTrue(transfer);
+        assertEquals(TestUtils.dateInSeconds("America/New_York", 2009, 8, 7, 6, 0, 0),
+                path.getEndTime());
+    }
+
+    public void testFallback() {
+        RoutingRequest options = request(stop("A"), stop("C"));
+        options.setArriveBy(true);
+        options.dateTime = TestUtils.dateInSeconds("America/New_York", 2009, 8, 7, 9, 0, 0);
+        assertFalse(RaptorSearch.accepts(options));
+        options.setArriveBy(false);
+        options.setModes(new TraverseModeSet("BICYCLE,TRANSIT"));
+        assertFalse(RaptorSearch.accepts(options));
+        options.setModes(new TraverseModeSet("WALK,TRANSIT"));
+        assertTrue(RaptorSearch.accepts(options));
+
+        // no journey at all: the fallback is asked too
+        RaptorPathService raptor = new RaptorPathService(graph, retrying);
+        List<GraphPath> paths = raptor.getPaths(request(stop("C"), stop("A")));
+        assertTrue(paths == null || paths.isEmpty());
+    }
+
+}
@@ -0,0 +1,142 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.request;
+
+import junit.framework.TestCase;
+
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.Trip;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.algorithm.GenericAStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.util.TestUtils;
+
+public class TransitFilterTest extends TestCase {
+
+    private Graph graph;
+
+    private long startTime;
+
+    public void setUp() throws Exception {
+        graph = ConstantsForTests.buildGraph(ConstantsForTests.FAKE_GTFS);
+        graph.index = new GraphIndex(graph);
+        startTime = TestUtils.dateInSeconds("America/New_York", 2009, 8, 7, 0, 0, 0);
+    }
+
+    private RoutingRequest request(String from, String to) {
+        RoutingRequest options = new RoutingRequest();
+        options.dateTime = startTime;
+        options.setRoutingContext(graph, "agency:" + from, "agency:" + to);
+        return options;
+    }
+
+    public void testIndexesAssigned() {
+        GraphIndex index = graph.index;
+        for (int r = 0; r < index.routeForIndex.size(); r++) {
+            assertEquals(r, index.indexForRoute.get(index.routeForIndex.get(r).getId()));
+        }
+        for (TripPattern pattern : index.patternForId.values()) {
+            assertSame(pattern.route, index.routeForIndex.get(pattern.routeIndex));
+            for (TripTimes tripTimes : pattern.scheduledTimetable.tripTimes) {
+                assertSame(tripTimes.trip, index.tripForIndex.get(tripTimes.tripIndex));
+            }
+        }
+        for (TransitStop stop : index.stopVertexForStop.values()) {
+            assertSame(stop.getStop(), index.stopForIndex.get(stop.stopIndex));
+        }
+    }
+
+    /** The compiled filter must agree with the matchers and maps of the request it came from. */
+    public void testFilterAgreesWithRequest() {
+        RoutingRequest options = request("A", "C");
+        options.setBannedRoutes("agency__2,_5");
+        options.setBannedStops("agency:B");
+        options.setBannedStopsHard("agency:C");
+        options.setUnpreferredRoutes("agency__3");
+        options.banTrip(new AgencyAndId("agency", "1.1"));
+        BannedStopSet someStops = new BannedStopSet();
+        someStops.add(1);
+        options.bannedTrips.put(new AgencyAndId("agency", "1.2"), someStops);
+        options.compileTransitFilter();
+        TransitFilter filter = options.transitFilter;
+        assertNotNull(filter);
+
+        GraphIndex index = graph.index;
+        int bannedRoutes = 0;
+        for (int r = 0; r < index.routeForIndex.size(); r++) {
+            Route route = index.routeForIndex.get(r);
+            assertEquals(options.bannedRoutes.matches(route), filter.routeBanned(r));
+            assertEquals(options.preferencesPenaltyForRoute(route), filter.routePenalty(r));
+            if (filter.routeBanned(r)) bannedRoutes++;
+        }
+        assertEquals(2, bannedRoutes);
+        for (int t = 0; t < index.tripForIndex.size(); t++) {
+            Trip trip = index.tripForIndex.get(t);
+            BannedStopSet banned = options.bannedTrips.get(trip.getId());
+            for (int s = 0; s < 3; s++) {
+                assertEquals(banned != null && banned.contains(s), filter.tripBanned(t, s));
+            }
+        }
+        for (int s = 0; s < index.stopForIndex.size(); s++) {
+            Stop stop = index.stopForIndex.get(s);
+            assertEquals(options.bannedStops.matches(stop), filter.stopBanned(s));
+            assertEquals(options.bannedStopsHard.matches(stop), filter.stopBannedHard(s));
+        }
+    }
+
+    public void testBannedAgency() {
+        RoutingRequest options = request("A", "C");
+        options.setBannedAgencies("agency");
+        options.compileTransitFilter();
+        for (int t = 0; t < graph.index.tripForIndex.size(); t++) {
+            assertTrue(options.transitFilter.tripBanned(t, 0));
+        }
+    }
+
+    public void testSearchUsesFilter() {
+        GenericAStar aStar = new GenericAStar();
+        RoutingRequest options = request("A", "C");
+        Vertex target = options.rctx.target;
+        ShortestPathTree spt = aStar.getShortestPathTree(options);
+        GraphPath path = spt.getPath(target, true);
+        assertNotNull(path);
+        assertEquals(startTime + 20 * 60, path.getEndTime());
+
+        // The first trip is banned, so the second one (20 minutes later) has to be taken
+        options = request("A", "C");
+        options.banTrip(new AgencyAndId("agency", "1.1"));
+        spt = aStar.getShortestPathTree(options);
+        assertNotNull(options.transitFilter);
+        path = spt.getPath(target, true);
+        assertNotNull(path);
+        assertEquals(startTime + 40 * 60, path.getEndTime());
+
+        // Banning the route leaves no way to get there
+        options = request("A", "C");
+        options.setBannedRoutes("agency__1");
+        spt = aStar.getShortestPathTree(options);
+        assertNull(spt.getPath(target, true));
+    }
+}
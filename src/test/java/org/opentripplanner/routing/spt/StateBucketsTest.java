@@ -0,0 +1,50 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.opentripplanner.routing.core.State;
+
+public class StateBucketsTest {
+
+    /** The buckets only hold references, so the states themselves do not need a search behind them. */
+    private static final State NO_STATE = null;
+
+    /** A vertex whose bucket is emptied and then filled again is still counted once. */
+    @Test
+    public void testRefilledBucketIsCountedOnce() {
+        StateBuckets buckets = new StateBuckets(16);
+        buckets.add(3, NO_STATE);
+        assertEquals(1, buckets.getVertexCount());
+
+        buckets.remove(3, StateBuckets.NONE, buckets.first(3));
+        assertEquals(StateBuckets.NONE, buckets.first(3));
+        assertEquals(0, buckets.getStateCount());
+
+        buckets.add(3, NO_STATE);
+        assertEquals(1, buckets.getVertexCount());
+        assertEquals(3, buckets.getTouchedVertex(0));
+        assertEquals(1, buckets.getStateCount());
+        assertEquals(StateBuckets.NONE, buckets.next(buckets.first(3)));
+
+        buckets.reset();
+        assertEquals(StateBuckets.NONE, buckets.first(3));
+        assertEquals(0, buckets.getVertexCount());
+        buckets.add(3, NO_STATE);
+        assertEquals(1, buckets.getVertexCount());
+    }
+
+}